@@ -0,0 +1,92 @@
+package qub;
+
+/**
+ * A {@link ZipByteSource} that uses positional reads against a file on the local disk.
+ */
+public class FileChannelZipByteSource implements ZipByteSource
+{
+    private final java.nio.channels.FileChannel fileChannel;
+    private final long byteCount;
+    private volatile boolean disposed;
+
+    private FileChannelZipByteSource(java.nio.channels.FileChannel fileChannel, long byteCount)
+    {
+        PreCondition.assertNotNull(fileChannel, "fileChannel");
+        PreCondition.assertGreaterThanOrEqualTo(byteCount, 0, "byteCount");
+
+        this.fileChannel = fileChannel;
+        this.byteCount = byteCount;
+    }
+
+    public static Result<FileChannelZipByteSource> create(java.nio.file.Path filePath)
+    {
+        PreCondition.assertNotNull(filePath, "filePath");
+
+        return Result.create(() ->
+        {
+            try
+            {
+                final java.nio.channels.FileChannel fileChannel = java.nio.channels.FileChannel.open(filePath, java.nio.file.StandardOpenOption.READ);
+                return new FileChannelZipByteSource(fileChannel, fileChannel.size());
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+        });
+    }
+
+    @Override
+    public long getByteCount()
+    {
+        return this.byteCount;
+    }
+
+    @Override
+    public int readBytes(long position, byte[] outputBytes, int startIndex, int length)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertNotNull(outputBytes, "outputBytes");
+        PreCondition.assertStartIndex(startIndex, outputBytes.length);
+        PreCondition.assertLength(length, startIndex, outputBytes.length);
+        PreCondition.assertNotDisposed(this, "this");
+
+        try
+        {
+            return this.fileChannel.read(java.nio.ByteBuffer.wrap(outputBytes, startIndex, length), position);
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    @Override
+    public boolean isDisposed()
+    {
+        return this.disposed;
+    }
+
+    @Override
+    public Result<Boolean> dispose()
+    {
+        return Result.create(() ->
+        {
+            final boolean result = !this.disposed;
+            if (result)
+            {
+                this.disposed = true;
+
+                try
+                {
+                    this.fileChannel.close();
+                }
+                catch (Exception e)
+                {
+                    throw Exceptions.asRuntime(e);
+                }
+            }
+            return result;
+        });
+    }
+}
@@ -0,0 +1,103 @@
+package qub;
+
+/**
+ * A {@link ZipByteSource} that reads from a byte array.
+ */
+public class InMemoryZipByteSource implements ZipByteSource
+{
+    private final byte[] bytes;
+    private volatile boolean disposed;
+
+    private InMemoryZipByteSource(byte[] bytes)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+
+        this.bytes = bytes;
+    }
+
+    public static InMemoryZipByteSource create(byte[] bytes)
+    {
+        return new InMemoryZipByteSource(bytes);
+    }
+
+    /**
+     * Read all of the bytes from the provided stream into a new {@link InMemoryZipByteSource}.
+     * @param readStream The stream to read.
+     * @return The new {@link InMemoryZipByteSource}.
+     */
+    public static InMemoryZipByteSource create(ByteReadStream readStream)
+    {
+        PreCondition.assertNotNull(readStream, "readStream");
+
+        final byte[] bytes;
+        try (final java.io.InputStream inputStream = ByteReadStreamToInputStream.create(readStream))
+        {
+            bytes = inputStream.readAllBytes();
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+        return InMemoryZipByteSource.create(bytes);
+    }
+
+    @Override
+    public long getByteCount()
+    {
+        return this.bytes.length;
+    }
+
+    @Override
+    public int readBytes(long position, byte[] outputBytes, int startIndex, int length)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertNotNull(outputBytes, "outputBytes");
+        PreCondition.assertStartIndex(startIndex, outputBytes.length);
+        PreCondition.assertLength(length, startIndex, outputBytes.length);
+        PreCondition.assertNotDisposed(this, "this");
+
+        int result;
+        if (position >= this.bytes.length)
+        {
+            result = -1;
+        }
+        else
+        {
+            result = (int)Math.min(length, this.bytes.length - position);
+            System.arraycopy(this.bytes, (int)position, outputBytes, startIndex, result);
+        }
+        return result;
+    }
+
+    @Override
+    public java.nio.ByteBuffer readByteBuffer(long position, int maximumLength)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertGreaterThanOrEqualTo(maximumLength, 0, "maximumLength");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return position >= this.bytes.length
+            ? null
+            : java.nio.ByteBuffer.wrap(this.bytes, (int)position, (int)Math.min(maximumLength, this.bytes.length - position)).asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean isDisposed()
+    {
+        return this.disposed;
+    }
+
+    @Override
+    public Result<Boolean> dispose()
+    {
+        return Result.create(() ->
+        {
+            final boolean result = !this.disposed;
+            if (result)
+            {
+                this.disposed = true;
+            }
+            return result;
+        });
+    }
+}
@@ -0,0 +1,275 @@
+package qub;
+
+/**
+ * A {@link ZipByteSource} that memory-maps a file on the local disk. The mapped regions are
+ * unmapped once the {@link MemoryMappedZipByteSource} is disposed and every view that it has
+ * returned from {@link #readByteBuffer(long, int)} has been released with
+ * {@link #releaseByteBuffer(java.nio.ByteBuffer)}, instead of waiting for the garbage collector.
+ * Views that are never released keep the regions mapped until they are garbage collected.
+ */
+public class MemoryMappedZipByteSource implements ZipByteSource
+{
+    /**
+     * The maximum number of bytes in a single mapped region. A {@link java.nio.ByteBuffer} can't
+     * address more than {@link Integer#MAX_VALUE} bytes, so larger files are mapped as several
+     * regions.
+     */
+    private static final long regionByteCount = 1L << 30;
+
+    private final java.nio.channels.FileChannel fileChannel;
+    private final java.nio.MappedByteBuffer[] regions;
+    private final long byteCount;
+    private volatile boolean disposed;
+    private int leaseCount;
+
+    private MemoryMappedZipByteSource(java.nio.channels.FileChannel fileChannel, java.nio.MappedByteBuffer[] regions, long byteCount)
+    {
+        PreCondition.assertNotNull(fileChannel, "fileChannel");
+        PreCondition.assertNotNull(regions, "regions");
+        PreCondition.assertGreaterThanOrEqualTo(byteCount, 0, "byteCount");
+
+        this.fileChannel = fileChannel;
+        this.regions = regions;
+        this.byteCount = byteCount;
+    }
+
+    public static Result<MemoryMappedZipByteSource> create(java.nio.file.Path filePath)
+    {
+        PreCondition.assertNotNull(filePath, "filePath");
+
+        return Result.create(() ->
+        {
+            try
+            {
+                final java.nio.channels.FileChannel fileChannel = java.nio.channels.FileChannel.open(filePath, java.nio.file.StandardOpenOption.READ);
+                try
+                {
+                    final long byteCount = fileChannel.size();
+                    final int regionCount = (int)((byteCount + MemoryMappedZipByteSource.regionByteCount - 1) / MemoryMappedZipByteSource.regionByteCount);
+                    final java.nio.MappedByteBuffer[] regions = new java.nio.MappedByteBuffer[regionCount];
+                    for (int i = 0; i < regionCount; ++i)
+                    {
+                        final long regionStart = i * MemoryMappedZipByteSource.regionByteCount;
+                        final long regionLength = Math.min(MemoryMappedZipByteSource.regionByteCount, byteCount - regionStart);
+                        regions[i] = fileChannel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, regionStart, regionLength);
+                    }
+                    return new MemoryMappedZipByteSource(fileChannel, regions, byteCount);
+                }
+                catch (java.io.IOException | RuntimeException e)
+                {
+                    fileChannel.close();
+                    throw e;
+                }
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+        });
+    }
+
+    /**
+     * Unmap the provided region now instead of when it is garbage collected. Java doesn't have a
+     * public way to do this, so this uses Unsafe.invokeCleaner() on Java 9 and later and the
+     * buffer's cleaner on Java 8. If neither is available, then the region is left for the
+     * garbage collector to unmap.
+     * @param region The region to unmap.
+     * @return Whether the region was unmapped.
+     */
+    static boolean unmap(java.nio.MappedByteBuffer region)
+    {
+        PreCondition.assertNotNull(region, "region");
+
+        boolean result = false;
+        try
+        {
+            final String specificationVersion = System.getProperty("java.specification.version", "");
+            if (specificationVersion.startsWith("1."))
+            {
+                final java.lang.reflect.Method cleanerMethod = region.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(region);
+                if (cleaner != null)
+                {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                    result = true;
+                }
+            }
+            else
+            {
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final java.lang.reflect.Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafeField.setAccessible(true);
+                final Object unsafe = theUnsafeField.get(null);
+                unsafeClass.getMethod("invokeCleaner", java.nio.ByteBuffer.class).invoke(unsafe, region);
+                result = true;
+            }
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            // Leave the region for the garbage collector to unmap.
+        }
+        return result;
+    }
+
+    @Override
+    public long getByteCount()
+    {
+        return this.byteCount;
+    }
+
+    @Override
+    public int readBytes(long position, byte[] outputBytes, int startIndex, int length)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertNotNull(outputBytes, "outputBytes");
+        PreCondition.assertStartIndex(startIndex, outputBytes.length);
+        PreCondition.assertLength(length, startIndex, outputBytes.length);
+        PreCondition.assertNotDisposed(this, "this");
+
+        int result;
+        if (position >= this.byteCount)
+        {
+            result = -1;
+        }
+        else
+        {
+            final java.nio.ByteBuffer view = this.acquireView(position, length);
+            try
+            {
+                result = view.remaining();
+                view.get(outputBytes, startIndex, result);
+            }
+            finally
+            {
+                this.releaseView();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc} The returned view keeps its region mapped after this
+     * {@link MemoryMappedZipByteSource} is disposed until it is released with
+     * {@link #releaseByteBuffer(java.nio.ByteBuffer)}.
+     */
+    @Override
+    public java.nio.ByteBuffer readByteBuffer(long position, int maximumLength)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertGreaterThanOrEqualTo(maximumLength, 0, "maximumLength");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return position >= this.byteCount
+            ? null
+            : this.acquireView(position, maximumLength);
+    }
+
+    @Override
+    public void releaseByteBuffer(java.nio.ByteBuffer view)
+    {
+        PreCondition.assertNotNull(view, "view");
+
+        this.releaseView();
+    }
+
+    /**
+     * Get a view of the region that contains the provided position and count it as a lease that
+     * keeps the regions mapped until {@link #releaseView()} is called.
+     */
+    private java.nio.ByteBuffer acquireView(long position, int maximumLength)
+    {
+        final int regionIndex = (int)(position / MemoryMappedZipByteSource.regionByteCount);
+        final int regionPosition = (int)(position % MemoryMappedZipByteSource.regionByteCount);
+
+        final java.nio.MappedByteBuffer region;
+        synchronized (this)
+        {
+            PreCondition.assertNotDisposed(this, "this");
+
+            region = this.regions[regionIndex];
+            ++this.leaseCount;
+        }
+
+        // Each caller gets its own view of the region so that concurrent readers don't
+        // interfere with each other's position and limit.
+        final java.nio.ByteBuffer result = region.duplicate();
+        result.position(regionPosition);
+        result.limit(regionPosition + Math.min(maximumLength, result.capacity() - regionPosition));
+        return result;
+    }
+
+    /**
+     * Release a lease that was counted by {@link #acquireView(long, int)}, and unmap the regions
+     * if this was the last lease of a disposed {@link MemoryMappedZipByteSource}.
+     */
+    private void releaseView()
+    {
+        final boolean unmapRegions;
+        synchronized (this)
+        {
+            --this.leaseCount;
+            unmapRegions = this.disposed && this.leaseCount == 0;
+        }
+
+        if (unmapRegions)
+        {
+            this.unmapRegions();
+        }
+    }
+
+    private void unmapRegions()
+    {
+        // A mapped region stays mapped until its buffer is garbage collected, which can keep
+        // gigabytes of address space and the file itself locked long after this source is
+        // done with them.
+        for (int i = 0; i < this.regions.length; ++i)
+        {
+            final java.nio.MappedByteBuffer region = this.regions[i];
+            this.regions[i] = null;
+            MemoryMappedZipByteSource.unmap(region);
+        }
+    }
+
+    @Override
+    public boolean isDisposed()
+    {
+        return this.disposed;
+    }
+
+    @Override
+    public Result<Boolean> dispose()
+    {
+        return Result.create(() ->
+        {
+            final boolean result;
+            final boolean unmapRegions;
+            synchronized (this)
+            {
+                result = !this.disposed;
+                this.disposed = true;
+                unmapRegions = result && this.leaseCount == 0;
+            }
+
+            if (result)
+            {
+                // Regions that are still being read from are unmapped when their last view is
+                // released. Unmapping them now would crash the JVM on the reader's next access.
+                if (unmapRegions)
+                {
+                    this.unmapRegions();
+                }
+
+                try
+                {
+                    this.fileChannel.close();
+                }
+                catch (Exception e)
+                {
+                    throw Exceptions.asRuntime(e);
+                }
+            }
+            return result;
+        });
+    }
+}
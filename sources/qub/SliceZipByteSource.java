@@ -0,0 +1,101 @@
+package qub;
+
+/**
+ * A {@link ZipByteSource} that reads a range of the bytes of another {@link ZipByteSource}, such
+ * as the data of a stored entry that is itself a zip archive. Reads are passed straight through
+ * to the other source's positional reads, so nothing is copied. Disposing of a
+ * {@link SliceZipByteSource} doesn't dispose of the source that it reads from.
+ */
+public class SliceZipByteSource implements ZipByteSource
+{
+    private final ZipByteSource byteSource;
+    private final long startPosition;
+    private final long byteCount;
+    private volatile boolean disposed;
+
+    private SliceZipByteSource(ZipByteSource byteSource, long startPosition, long byteCount)
+    {
+        PreCondition.assertNotNull(byteSource, "byteSource");
+        PreCondition.assertNotDisposed(byteSource, "byteSource");
+        PreCondition.assertGreaterThanOrEqualTo(startPosition, 0, "startPosition");
+        PreCondition.assertGreaterThanOrEqualTo(byteCount, 0, "byteCount");
+        PreCondition.assertTrue(startPosition + byteCount <= byteSource.getByteCount(), "startPosition + byteCount <= byteSource.getByteCount()");
+
+        this.byteSource = byteSource;
+        this.startPosition = startPosition;
+        this.byteCount = byteCount;
+    }
+
+    /**
+     * Create a new {@link SliceZipByteSource} that reads the provided range of the provided
+     * {@link ZipByteSource}'s bytes.
+     * @param byteSource The source to read from.
+     * @param startPosition The position in the source where the slice starts.
+     * @param byteCount The number of bytes in the slice.
+     * @return The new {@link SliceZipByteSource}.
+     */
+    public static SliceZipByteSource create(ZipByteSource byteSource, long startPosition, long byteCount)
+    {
+        return new SliceZipByteSource(byteSource, startPosition, byteCount);
+    }
+
+    @Override
+    public long getByteCount()
+    {
+        return this.byteCount;
+    }
+
+    @Override
+    public int readBytes(long position, byte[] outputBytes, int startIndex, int length)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertNotNull(outputBytes, "outputBytes");
+        PreCondition.assertStartIndex(startIndex, outputBytes.length);
+        PreCondition.assertLength(length, startIndex, outputBytes.length);
+        PreCondition.assertNotDisposed(this, "this");
+
+        return position >= this.byteCount
+            ? -1
+            : this.byteSource.readBytes(this.startPosition + position, outputBytes, startIndex, (int)Math.min(length, this.byteCount - position));
+    }
+
+    @Override
+    public java.nio.ByteBuffer readByteBuffer(long position, int maximumLength)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertGreaterThanOrEqualTo(maximumLength, 0, "maximumLength");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return position >= this.byteCount
+            ? null
+            : this.byteSource.readByteBuffer(this.startPosition + position, (int)Math.min(maximumLength, this.byteCount - position));
+    }
+
+    @Override
+    public void releaseByteBuffer(java.nio.ByteBuffer view)
+    {
+        PreCondition.assertNotNull(view, "view");
+
+        this.byteSource.releaseByteBuffer(view);
+    }
+
+    @Override
+    public boolean isDisposed()
+    {
+        return this.disposed;
+    }
+
+    @Override
+    public Result<Boolean> dispose()
+    {
+        return Result.create(() ->
+        {
+            final boolean result = !this.disposed;
+            if (result)
+            {
+                this.disposed = true;
+            }
+            return result;
+        });
+    }
+}
@@ -0,0 +1,127 @@
+package qub;
+
+/**
+ * Statistics about the decisions that a {@link ZipWriteStream}'s adaptive compression has made.
+ */
+public class ZipAdaptiveCompressionStatistics
+{
+    private long sampledEntryCount;
+    private long storedEntryCount;
+    private long storedByteCount;
+    private long uncompressedDeflatedEntryCount;
+    private long uncompressedDeflatedByteCount;
+    private long sampleNanoseconds;
+    private long savedNanoseconds;
+
+    private ZipAdaptiveCompressionStatistics()
+    {
+    }
+
+    public static ZipAdaptiveCompressionStatistics create()
+    {
+        return new ZipAdaptiveCompressionStatistics();
+    }
+
+    /**
+     * Get the number of entries whose data was sampled to decide whether to compress it.
+     */
+    public long getSampledEntryCount()
+    {
+        return this.sampledEntryCount;
+    }
+
+    /**
+     * Get the number of entries that were written with the stored compression method because
+     * their sampled data didn't compress well and the whole entry fit in its sample.
+     */
+    public long getStoredEntryCount()
+    {
+        return this.storedEntryCount;
+    }
+
+    /**
+     * Get the number of uncompressed bytes in the entries that were written with the stored
+     * compression method.
+     */
+    public DataSize getStoredSize()
+    {
+        return DataSize.bytes(this.storedByteCount);
+    }
+
+    /**
+     * Get the number of entries that were written with the deflated compression method at level
+     * 0 because their sampled data didn't compress well but the entry was larger than its
+     * sample. These entries aren't compressed, but they aren't counted as stored entries because
+     * their central directory entries have the deflated compression method.
+     */
+    public long getUncompressedDeflatedEntryCount()
+    {
+        return this.uncompressedDeflatedEntryCount;
+    }
+
+    /**
+     * Get the number of uncompressed bytes in the entries that were written with the deflated
+     * compression method at level 0.
+     */
+    public DataSize getUncompressedDeflatedSize()
+    {
+        return DataSize.bytes(this.uncompressedDeflatedByteCount);
+    }
+
+    /**
+     * Get the total time that was spent compressing samples.
+     */
+    public Duration getSampleDuration()
+    {
+        return Duration.nanoseconds(this.sampleNanoseconds);
+    }
+
+    /**
+     * Get an estimate of the compression time that was saved by not compressing entries. The
+     * estimate extrapolates the sample compression time of each stored entry and each entry that
+     * was deflated at level 0 to the entry's full size and subtracts the time that was spent compressing every sample, so
+     * it can be negative when few entries are left uncompressed.
+     */
+    public Duration getEstimatedCompressionTimeSaved()
+    {
+        return Duration.nanoseconds(this.savedNanoseconds);
+    }
+
+    /**
+     * Record the decision that was made for a sampled entry.
+     * @param compressed Whether the entry was compressed because its sample compressed well.
+     * @param compressionMethod The compression method that the entry was written with.
+     * @param entryByteCount The number of uncompressed bytes in the entry.
+     * @param sampleByteCount The number of bytes in the entry's sample.
+     * @param sampleNanoseconds The number of nanoseconds that it took to compress the sample.
+     */
+    public void addEntry(boolean compressed, int compressionMethod, long entryByteCount, long sampleByteCount, long sampleNanoseconds)
+    {
+        PreCondition.assertTrue(compressionMethod == ZipFormat.storedCompressionMethod || compressionMethod == ZipFormat.deflatedCompressionMethod, "compressionMethod == ZipFormat.storedCompressionMethod || compressionMethod == ZipFormat.deflatedCompressionMethod");
+        PreCondition.assertFalse(compressed && compressionMethod == ZipFormat.storedCompressionMethod, "compressed && compressionMethod == ZipFormat.storedCompressionMethod");
+        PreCondition.assertGreaterThanOrEqualTo(sampleByteCount, 0, "sampleByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(entryByteCount, sampleByteCount, "entryByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(sampleNanoseconds, 0, "sampleNanoseconds");
+
+        ++this.sampledEntryCount;
+        this.sampleNanoseconds += sampleNanoseconds;
+        this.savedNanoseconds -= sampleNanoseconds;
+        if (!compressed)
+        {
+            if (compressionMethod == ZipFormat.storedCompressionMethod)
+            {
+                ++this.storedEntryCount;
+                this.storedByteCount += entryByteCount;
+            }
+            else
+            {
+                ++this.uncompressedDeflatedEntryCount;
+                this.uncompressedDeflatedByteCount += entryByteCount;
+            }
+            if (sampleByteCount > 0)
+            {
+                this.savedNanoseconds += (long)((double)sampleNanoseconds * entryByteCount / sampleByteCount);
+            }
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package qub;
+
+/**
+ * A {@link java.io.OutputStream} that writes the structure of a zip archive (local file headers,
+ * data descriptors, and the central directory) around the entry data that is written to it.
+ */
+public class ZipArchiveOutputStream extends java.io.OutputStream
+{
+    private final java.io.OutputStream outputStream;
+    private final java.nio.channels.FileChannel seekableChannel;
+    private final ZipCentralDirectory existingCentralDirectory;
+    private final byte[] existingCentralDirectoryBytes;
+    private final List<ZipCentralDirectoryEntry> centralDirectoryEntries;
+    private final java.util.Map<Long,Long> reservedZip64ExtraFieldPositions;
+    private long position;
+    private boolean finished;
+
+    private ZipArchiveOutputStream(java.io.OutputStream outputStream, java.nio.channels.FileChannel seekableChannel, ZipCentralDirectory existingCentralDirectory, byte[] existingCentralDirectoryBytes)
+    {
+        PreCondition.assertNotNull(outputStream, "outputStream");
+        PreCondition.assertTrue((existingCentralDirectory == null) == (existingCentralDirectoryBytes == null), "(existingCentralDirectory == null) == (existingCentralDirectoryBytes == null)");
+
+        this.outputStream = new java.io.BufferedOutputStream(outputStream);
+        this.seekableChannel = seekableChannel;
+        this.existingCentralDirectory = existingCentralDirectory;
+        this.existingCentralDirectoryBytes = existingCentralDirectoryBytes;
+        this.centralDirectoryEntries = List.create();
+        this.reservedZip64ExtraFieldPositions = new java.util.HashMap<>();
+        this.position = existingCentralDirectory == null ? 0 : existingCentralDirectory.getOffset();
+    }
+
+    public static ZipArchiveOutputStream create(java.io.OutputStream outputStream)
+    {
+        return new ZipArchiveOutputStream(outputStream, null, null, null);
+    }
+
+    /**
+     * Create a new {@link ZipArchiveOutputStream} that appends entries to an existing zip
+     * archive. The provided {@link java.io.OutputStream} must be positioned where the existing
+     * archive's central directory starts. When this stream is finished, the existing central
+     * directory file headers are written unchanged, followed by the headers of the appended
+     * entries, and the existing archive's comment is kept.
+     * @param outputStream The stream to write to.
+     * @param existingCentralDirectory The central directory of the existing archive.
+     * @param existingCentralDirectoryBytes The raw bytes of the existing archive's central
+     * directory file headers. See {@link ZipCentralDirectory#readBytes(ZipByteSource)}.
+     * @return The new {@link ZipArchiveOutputStream}.
+     */
+    public static ZipArchiveOutputStream create(java.io.OutputStream outputStream, ZipCentralDirectory existingCentralDirectory, byte[] existingCentralDirectoryBytes)
+    {
+        PreCondition.assertNotNull(existingCentralDirectory, "existingCentralDirectory");
+        PreCondition.assertNotNull(existingCentralDirectoryBytes, "existingCentralDirectoryBytes");
+
+        return new ZipArchiveOutputStream(outputStream, null, existingCentralDirectory, existingCentralDirectoryBytes);
+    }
+
+    /**
+     * Create a new {@link ZipArchiveOutputStream} that writes to a file that it can also write
+     * back into. Instead of following each entry's data with a data descriptor, the entry's
+     * CRC-32 and sizes are written into its local file header when the entry is finished. See
+     * {@link #finishEntryData(long, int, long, long, long)}.
+     * @param outputStream The stream to write to. It must write to the provided
+     * {@link java.nio.channels.FileChannel} at the channel's current position.
+     * @param seekableChannel The channel that local file headers are written back into.
+     * @param existingCentralDirectory The central directory of the existing archive that entries
+     * are being appended to, or null if a new archive is being written. See
+     * {@link #create(java.io.OutputStream, ZipCentralDirectory, byte[])}.
+     * @param existingCentralDirectoryBytes The raw bytes of the existing archive's central
+     * directory file headers, or null if a new archive is being written.
+     * @return The new {@link ZipArchiveOutputStream}.
+     */
+    public static ZipArchiveOutputStream createSeekable(java.io.OutputStream outputStream, java.nio.channels.FileChannel seekableChannel, ZipCentralDirectory existingCentralDirectory, byte[] existingCentralDirectoryBytes)
+    {
+        PreCondition.assertNotNull(seekableChannel, "seekableChannel");
+
+        return new ZipArchiveOutputStream(outputStream, seekableChannel, existingCentralDirectory, existingCentralDirectoryBytes);
+    }
+
+    /**
+     * Get whether this stream writes the CRC-32 and sizes of finished entries back into their
+     * local file headers instead of writing data descriptors.
+     */
+    public boolean isSeekable()
+    {
+        return this.seekableChannel != null;
+    }
+
+    /**
+     * Get the position in the archive that the next byte will be written to.
+     */
+    public long getPosition()
+    {
+        return this.position;
+    }
+
+    /**
+     * Get the central directory entries that will be written when this stream is finished.
+     */
+    public Iterable<ZipCentralDirectoryEntry> getCentralDirectoryEntries()
+    {
+        return this.centralDirectoryEntries;
+    }
+
+    @Override
+    public void write(int value) throws java.io.IOException
+    {
+        this.outputStream.write(value);
+        ++this.position;
+    }
+
+    @Override
+    public void write(byte[] bytes, int startIndex, int length) throws java.io.IOException
+    {
+        this.outputStream.write(bytes, startIndex, length);
+        this.position += length;
+    }
+
+    /**
+     * Write the provided entry data to this stream.
+     * @param bytes The bytes to write.
+     * @param startIndex The index of the first byte to write.
+     * @param length The number of bytes to write.
+     */
+    public void writeData(byte[] bytes, int startIndex, int length)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertStartIndex(startIndex, bytes.length);
+        PreCondition.assertLength(length, startIndex, bytes.length);
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        try
+        {
+            this.write(bytes, startIndex, length);
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    /**
+     * Write the local file header for the provided entry at the current position. If the entry's
+     * flags include {@link ZipFormat#dataDescriptorFlag}, then the entry's CRC-32 and sizes are
+     * not written because they will follow the entry's data in a data descriptor. If this stream
+     * is seekable, then such a header also gets a ZIP64 extra field with zeroed sizes, so that
+     * the sizes of an entry that turns out to be 4 GiB or larger can be written back into it.
+     * @param entry The entry to write the local file header for.
+     */
+    public void writeLocalFileHeader(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        final boolean hasDataDescriptor = (entry.getFlags() & ZipFormat.dataDescriptorFlag) != 0;
+        final long crc32 = hasDataDescriptor ? 0 : entry.getCrc32();
+        final long compressedByteCount = hasDataDescriptor ? 0 : entry.getCompressedByteCount();
+        final long uncompressedByteCount = hasDataDescriptor ? 0 : entry.getUncompressedByteCount();
+        final boolean isZip64 = compressedByteCount >= ZipFormat.zip64Magic32 || uncompressedByteCount >= ZipFormat.zip64Magic32;
+        final boolean reservesZip64ExtraField = hasDataDescriptor && this.seekableChannel != null;
+
+        final byte[] nameBytes = entry.getName().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        try
+        {
+            final java.io.ByteArrayOutputStream extraField = new java.io.ByteArrayOutputStream();
+            if (isZip64 || reservesZip64ExtraField)
+            {
+                ZipFormat.writeUnsignedShort(extraField, ZipFormat.zip64ExtraFieldId);
+                ZipFormat.writeUnsignedShort(extraField, 16);
+                ZipFormat.writeLong(extraField, uncompressedByteCount);
+                ZipFormat.writeLong(extraField, compressedByteCount);
+            }
+            ZipArchiveOutputStream.writeExtendedTimestampExtraField(extraField, entry);
+
+            if (reservesZip64ExtraField)
+            {
+                // The ZIP64 extra field is the first extra field, and its sizes follow its
+                // 4-byte header.
+                this.reservedZip64ExtraFieldPositions.put(this.position, this.position + 30 + nameBytes.length + 4);
+            }
+
+            ZipFormat.writeUnsignedInt(this, ZipFormat.localFileHeaderSignature);
+            ZipFormat.writeUnsignedShort(this, isZip64 ? ZipFormat.zip64Version : ZipFormat.defaultVersion);
+            ZipFormat.writeUnsignedShort(this, entry.getFlags());
+            ZipFormat.writeUnsignedShort(this, entry.getCompressionMethod());
+            ZipFormat.writeUnsignedInt(this, entry.getDosDateTime());
+            ZipFormat.writeUnsignedInt(this, crc32);
+            ZipFormat.writeUnsignedInt(this, isZip64 ? ZipFormat.zip64Magic32 : compressedByteCount);
+            ZipFormat.writeUnsignedInt(this, isZip64 ? ZipFormat.zip64Magic32 : uncompressedByteCount);
+            ZipFormat.writeUnsignedShort(this, nameBytes.length);
+            ZipFormat.writeUnsignedShort(this, extraField.size());
+            this.write(nameBytes);
+            extraField.writeTo(this);
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    /**
+     * Write a data descriptor with the provided values at the current position.
+     * @param crc32 The CRC-32 checksum of the entry's uncompressed data.
+     * @param compressedByteCount The number of bytes in the entry's compressed data.
+     * @param uncompressedByteCount The number of bytes in the entry's uncompressed data.
+     */
+    public void writeDataDescriptor(long crc32, long compressedByteCount, long uncompressedByteCount)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(compressedByteCount, 0, "compressedByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(uncompressedByteCount, 0, "uncompressedByteCount");
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        try
+        {
+            ZipFormat.writeUnsignedInt(this, ZipFormat.dataDescriptorSignature);
+            ZipFormat.writeUnsignedInt(this, crc32);
+
+            // Readers decide between the 32-bit and 64-bit data descriptor formats based on the
+            // number of bytes that they actually read and inflated.
+            if (compressedByteCount >= ZipFormat.zip64Magic32 || uncompressedByteCount >= ZipFormat.zip64Magic32)
+            {
+                ZipFormat.writeLong(this, compressedByteCount);
+                ZipFormat.writeLong(this, uncompressedByteCount);
+            }
+            else
+            {
+                ZipFormat.writeUnsignedInt(this, compressedByteCount);
+                ZipFormat.writeUnsignedInt(this, uncompressedByteCount);
+            }
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    /**
+     * Finish the data of an entry whose local file header was written with
+     * {@link ZipFormat#dataDescriptorFlag}. If this stream is seekable, then the entry's CRC-32
+     * and sizes are written into its local file header and the header's data descriptor flag is
+     * cleared. Sizes of 4 GiB or more are written into the header's reserved ZIP64 extra field.
+     * Otherwise a data descriptor is written at the current position.
+     * @param localFileHeaderOffset The position of the entry's local file header.
+     * @param flags The flags that the entry's local file header was written with.
+     * @param crc32 The CRC-32 checksum of the entry's uncompressed data.
+     * @param compressedByteCount The number of bytes in the entry's compressed data.
+     * @param uncompressedByteCount The number of bytes in the entry's uncompressed data.
+     * @return The flags that the entry's central directory file header should have.
+     */
+    public int finishEntryData(long localFileHeaderOffset, int flags, long crc32, long compressedByteCount, long uncompressedByteCount)
+    {
+        PreCondition.assertBetween(0, localFileHeaderOffset, this.position, "localFileHeaderOffset");
+        PreCondition.assertGreaterThanOrEqualTo(compressedByteCount, 0, "compressedByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(uncompressedByteCount, 0, "uncompressedByteCount");
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        int result = flags;
+        final Long zip64ExtraFieldPosition = this.reservedZip64ExtraFieldPositions.remove(localFileHeaderOffset);
+        final boolean isZip64 = compressedByteCount >= ZipFormat.zip64Magic32 || uncompressedByteCount >= ZipFormat.zip64Magic32;
+        if (this.seekableChannel == null || (isZip64 && zip64ExtraFieldPosition == null))
+        {
+            this.writeDataDescriptor(crc32, compressedByteCount, uncompressedByteCount);
+        }
+        else
+        {
+            result = flags & ~ZipFormat.dataDescriptorFlag;
+            try
+            {
+                // The local file header may still be in the buffer, so the buffer is written to
+                // the file before the header is written over.
+                this.outputStream.flush();
+
+                final java.nio.ByteBuffer versionAndFlagsBytes = java.nio.ByteBuffer.allocate(4).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+                versionAndFlagsBytes.putShort((short)(isZip64 ? ZipFormat.zip64Version : ZipFormat.defaultVersion)).putShort((short)result).flip();
+                ZipArchiveOutputStream.writeFully(this.seekableChannel, versionAndFlagsBytes, localFileHeaderOffset + 4);
+
+                final java.nio.ByteBuffer crcAndSizeBytes = java.nio.ByteBuffer.allocate(12).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+                crcAndSizeBytes
+                    .putInt((int)crc32)
+                    .putInt((int)Math.min(compressedByteCount, ZipFormat.zip64Magic32))
+                    .putInt((int)Math.min(uncompressedByteCount, ZipFormat.zip64Magic32))
+                    .flip();
+                ZipArchiveOutputStream.writeFully(this.seekableChannel, crcAndSizeBytes, localFileHeaderOffset + 14);
+
+                if (isZip64)
+                {
+                    final java.nio.ByteBuffer zip64SizeBytes = java.nio.ByteBuffer.allocate(16).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+                    zip64SizeBytes.putLong(uncompressedByteCount).putLong(compressedByteCount).flip();
+                    ZipArchiveOutputStream.writeFully(this.seekableChannel, zip64SizeBytes, zip64ExtraFieldPosition);
+                }
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+        }
+        return result;
+    }
+
+    private static void writeFully(java.nio.channels.FileChannel fileChannel, java.nio.ByteBuffer bytes, long position) throws java.io.IOException
+    {
+        long writePosition = position;
+        while (bytes.hasRemaining())
+        {
+            writePosition += fileChannel.write(bytes, writePosition);
+        }
+    }
+
+    /**
+     * Add the provided entry to the central directory that will be written when this stream is
+     * finished.
+     * @param entry The entry to add.
+     */
+    public void addCentralDirectoryEntry(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        this.centralDirectoryEntries.add(entry);
+    }
+
+    /**
+     * Write the central directory and the end of central directory record, and then flush this
+     * stream. Nothing else can be written to this stream after it has been finished.
+     */
+    public void finish()
+    {
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        try
+        {
+            final long centralDirectoryOffset = this.position;
+            long entryCount = this.centralDirectoryEntries.getCount();
+            if (this.existingCentralDirectory != null)
+            {
+                this.write(this.existingCentralDirectoryBytes);
+                entryCount += this.existingCentralDirectory.getEntryCount();
+            }
+            for (final ZipCentralDirectoryEntry entry : this.centralDirectoryEntries)
+            {
+                this.writeCentralDirectoryFileHeader(entry);
+            }
+            final long centralDirectoryByteCount = this.position - centralDirectoryOffset;
+
+            final boolean isZip64 = entryCount >= ZipFormat.zip64Magic16 ||
+                centralDirectoryByteCount >= ZipFormat.zip64Magic32 ||
+                centralDirectoryOffset >= ZipFormat.zip64Magic32;
+            if (isZip64)
+            {
+                final long zip64EndOfCentralDirectoryOffset = this.position;
+                ZipFormat.writeUnsignedInt(this, ZipFormat.zip64EndOfCentralDirectorySignature);
+                ZipFormat.writeLong(this, ZipFormat.zip64EndOfCentralDirectoryByteCount - 12);
+                ZipFormat.writeUnsignedShort(this, ZipFormat.zip64Version);
+                ZipFormat.writeUnsignedShort(this, ZipFormat.zip64Version);
+                ZipFormat.writeUnsignedInt(this, 0);
+                ZipFormat.writeUnsignedInt(this, 0);
+                ZipFormat.writeLong(this, entryCount);
+                ZipFormat.writeLong(this, entryCount);
+                ZipFormat.writeLong(this, centralDirectoryByteCount);
+                ZipFormat.writeLong(this, centralDirectoryOffset);
+
+                ZipFormat.writeUnsignedInt(this, ZipFormat.zip64EndOfCentralDirectoryLocatorSignature);
+                ZipFormat.writeUnsignedInt(this, 0);
+                ZipFormat.writeLong(this, zip64EndOfCentralDirectoryOffset);
+                ZipFormat.writeUnsignedInt(this, 1);
+            }
+
+            ZipFormat.writeUnsignedInt(this, ZipFormat.endOfCentralDirectorySignature);
+            ZipFormat.writeUnsignedShort(this, 0);
+            ZipFormat.writeUnsignedShort(this, 0);
+            ZipFormat.writeUnsignedShort(this, (int)Math.min(entryCount, ZipFormat.zip64Magic16));
+            ZipFormat.writeUnsignedShort(this, (int)Math.min(entryCount, ZipFormat.zip64Magic16));
+            ZipFormat.writeUnsignedInt(this, Math.min(centralDirectoryByteCount, ZipFormat.zip64Magic32));
+            ZipFormat.writeUnsignedInt(this, Math.min(centralDirectoryOffset, ZipFormat.zip64Magic32));
+            final String comment = this.existingCentralDirectory == null ? null : this.existingCentralDirectory.getComment();
+            final byte[] commentBytes = comment == null ? new byte[0] : comment.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            ZipFormat.writeUnsignedShort(this, commentBytes.length);
+            this.write(commentBytes);
+
+            this.flush();
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+
+        this.finished = true;
+    }
+
+    private void writeCentralDirectoryFileHeader(ZipCentralDirectoryEntry entry) throws java.io.IOException
+    {
+        final long compressedByteCount = entry.getCompressedByteCount();
+        final long uncompressedByteCount = entry.getUncompressedByteCount();
+        final long localFileHeaderOffset = entry.getLocalFileHeaderOffset();
+
+        final java.io.ByteArrayOutputStream extraField = new java.io.ByteArrayOutputStream();
+        final java.io.ByteArrayOutputStream zip64ExtraFieldData = new java.io.ByteArrayOutputStream();
+        if (uncompressedByteCount >= ZipFormat.zip64Magic32)
+        {
+            ZipFormat.writeLong(zip64ExtraFieldData, uncompressedByteCount);
+        }
+        if (compressedByteCount >= ZipFormat.zip64Magic32)
+        {
+            ZipFormat.writeLong(zip64ExtraFieldData, compressedByteCount);
+        }
+        if (localFileHeaderOffset >= ZipFormat.zip64Magic32)
+        {
+            ZipFormat.writeLong(zip64ExtraFieldData, localFileHeaderOffset);
+        }
+        final boolean isZip64 = zip64ExtraFieldData.size() > 0;
+        if (isZip64)
+        {
+            ZipFormat.writeUnsignedShort(extraField, ZipFormat.zip64ExtraFieldId);
+            ZipFormat.writeUnsignedShort(extraField, zip64ExtraFieldData.size());
+            zip64ExtraFieldData.writeTo(extraField);
+        }
+        ZipArchiveOutputStream.writeExtendedTimestampExtraField(extraField, entry);
+
+        final byte[] nameBytes = entry.getName().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        final String comment = entry.getComment();
+        final byte[] commentBytes = comment == null ? new byte[0] : comment.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        final int version = isZip64 ? ZipFormat.zip64Version : ZipFormat.defaultVersion;
+
+        ZipFormat.writeUnsignedInt(this, ZipFormat.centralDirectoryFileHeaderSignature);
+        ZipFormat.writeUnsignedShort(this, version);
+        ZipFormat.writeUnsignedShort(this, version);
+        ZipFormat.writeUnsignedShort(this, entry.getFlags());
+        ZipFormat.writeUnsignedShort(this, entry.getCompressionMethod());
+        ZipFormat.writeUnsignedInt(this, entry.getDosDateTime());
+        ZipFormat.writeUnsignedInt(this, entry.getCrc32());
+        ZipFormat.writeUnsignedInt(this, Math.min(compressedByteCount, ZipFormat.zip64Magic32));
+        ZipFormat.writeUnsignedInt(this, Math.min(uncompressedByteCount, ZipFormat.zip64Magic32));
+        ZipFormat.writeUnsignedShort(this, nameBytes.length);
+        ZipFormat.writeUnsignedShort(this, extraField.size());
+        ZipFormat.writeUnsignedShort(this, commentBytes.length);
+        ZipFormat.writeUnsignedShort(this, 0);
+        ZipFormat.writeUnsignedShort(this, 0);
+        ZipFormat.writeUnsignedInt(this, 0);
+        ZipFormat.writeUnsignedInt(this, Math.min(localFileHeaderOffset, ZipFormat.zip64Magic32));
+        this.write(nameBytes);
+        extraField.writeTo(this);
+        this.write(commentBytes);
+    }
+
+    /**
+     * MS-DOS dates can't represent times before 1980 or after 2107, so those times are also
+     * written as an extended timestamp with the modification time in seconds since the epoch.
+     */
+    private static void writeExtendedTimestampExtraField(java.io.OutputStream extraField, ZipCentralDirectoryEntry entry) throws java.io.IOException
+    {
+        final long lastModifiedMilliseconds = entry.getLastModifiedMilliseconds();
+        if (!ZipFormat.isDosDateTimeRange(lastModifiedMilliseconds))
+        {
+            ZipFormat.writeUnsignedShort(extraField, ZipFormat.extendedTimestampExtraFieldId);
+            ZipFormat.writeUnsignedShort(extraField, 5);
+            extraField.write(0x1);
+            ZipFormat.writeUnsignedInt(extraField, Math.floorDiv(lastModifiedMilliseconds, 1000) & 0xFFFFFFFFL);
+        }
+    }
+
+    @Override
+    public void flush() throws java.io.IOException
+    {
+        this.outputStream.flush();
+    }
+
+    @Override
+    public void close() throws java.io.IOException
+    {
+        this.outputStream.close();
+    }
+}
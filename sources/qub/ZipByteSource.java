@@ -0,0 +1,103 @@
+package qub;
+
+/**
+ * A source of zip archive bytes that can be read from any position.
+ */
+public interface ZipByteSource extends Disposable
+{
+    /**
+     * Get the number of bytes in this source.
+     */
+    long getByteCount();
+
+    /**
+     * Read up to the provided length of bytes from this source, starting at the provided
+     * position, into the provided outputBytes.
+     * @param position The position in this source to start reading from.
+     * @param outputBytes The array to put the read bytes into.
+     * @param startIndex The index in outputBytes to start putting bytes at.
+     * @param length The maximum number of bytes to read.
+     * @return The number of bytes that were read, or -1 if the position is at the end of this
+     * source.
+     */
+    int readBytes(long position, byte[] outputBytes, int startIndex, int length);
+
+    /**
+     * Get a read-only view of up to the provided length of bytes from this source, starting at
+     * the provided position, without copying them. Sources that can't provide views of their
+     * bytes return null, as do sources where the position is at the end of the source. Every
+     * view that is returned must be given back to {@link #releaseByteBuffer(java.nio.ByteBuffer)}
+     * once it is no longer used.
+     * @param position The position in this source to start the view at.
+     * @param maximumLength The maximum number of bytes in the view.
+     * @return The view of this source's bytes, or null if no view can be provided.
+     */
+    default java.nio.ByteBuffer readByteBuffer(long position, int maximumLength)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertGreaterThanOrEqualTo(maximumLength, 0, "maximumLength");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return null;
+    }
+
+    /**
+     * Release a view that was returned by {@link #readByteBuffer(long, int)}. The view must not
+     * be used after it has been released. Sources whose views don't hold on to anything don't
+     * need to do anything here.
+     * @param view The view to release.
+     */
+    default void releaseByteBuffer(java.nio.ByteBuffer view)
+    {
+        PreCondition.assertNotNull(view, "view");
+    }
+
+    /**
+     * Read exactly the provided length of bytes from this source, starting at the provided
+     * position, into the provided outputBytes.
+     * @param position The position in this source to start reading from.
+     * @param outputBytes The array to put the read bytes into.
+     * @param startIndex The index in outputBytes to start putting bytes at.
+     * @param length The number of bytes to read.
+     */
+    default void readAllBytes(long position, byte[] outputBytes, int startIndex, int length)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertNotNull(outputBytes, "outputBytes");
+        PreCondition.assertStartIndex(startIndex, outputBytes.length);
+        PreCondition.assertLength(length, startIndex, outputBytes.length);
+        PreCondition.assertNotDisposed(this, "this");
+
+        int bytesRead = 0;
+        while (bytesRead < length)
+        {
+            final int readResult = this.readBytes(position + bytesRead, outputBytes, startIndex + bytesRead, length - bytesRead);
+            if (readResult < 0)
+            {
+                throw new ZipFormatException("Expected " + length + " bytes at position " + position + ", but the source ended after " + bytesRead + " bytes.");
+            }
+            bytesRead += readResult;
+        }
+    }
+
+    /**
+     * Read exactly the provided number of bytes from this source, starting at the provided
+     * position.
+     * @param position The position in this source to start reading from.
+     * @param length The number of bytes to read.
+     * @return The bytes that were read.
+     */
+    default byte[] readAllBytes(long position, int length)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertGreaterThanOrEqualTo(length, 0, "length");
+        PreCondition.assertNotDisposed(this, "this");
+
+        final byte[] result = new byte[length];
+        this.readAllBytes(position, result, 0, length);
+
+        PostCondition.assertNotNull(result, "result");
+
+        return result;
+    }
+}
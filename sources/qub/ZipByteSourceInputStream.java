@@ -0,0 +1,89 @@
+package qub;
+
+/**
+ * A {@link java.io.InputStream} that reads a range of bytes from a {@link ZipByteSource}.
+ */
+public class ZipByteSourceInputStream extends java.io.InputStream
+{
+    private final ZipByteSource byteSource;
+    private final byte[] singleByte;
+    private long position;
+    private long remainingByteCount;
+    private boolean closed;
+
+    private ZipByteSourceInputStream(ZipByteSource byteSource, long position, long byteCount)
+    {
+        PreCondition.assertNotNull(byteSource, "byteSource");
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertGreaterThanOrEqualTo(byteCount, 0, "byteCount");
+
+        this.byteSource = byteSource;
+        this.singleByte = new byte[1];
+        this.position = position;
+        this.remainingByteCount = byteCount;
+    }
+
+    public static ZipByteSourceInputStream create(ZipByteSource byteSource, long position, long byteCount)
+    {
+        return new ZipByteSourceInputStream(byteSource, position, byteCount);
+    }
+
+    @Override
+    public int read() throws java.io.IOException
+    {
+        final int readResult = this.read(this.singleByte, 0, 1);
+        return readResult <= 0 ? -1 : (this.singleByte[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] outputBytes, int startIndex, int length) throws java.io.IOException
+    {
+        if (this.closed)
+        {
+            throw new java.io.IOException("Stream closed");
+        }
+
+        int result;
+        if (length == 0)
+        {
+            result = 0;
+        }
+        else if (this.remainingByteCount == 0)
+        {
+            result = -1;
+        }
+        else
+        {
+            final int bytesToRead = (int)Math.min(length, this.remainingByteCount);
+            result = this.byteSource.readBytes(this.position, outputBytes, startIndex, bytesToRead);
+            if (result < 0)
+            {
+                throw new java.io.EOFException("Unexpected end of zip archive.");
+            }
+            this.position += result;
+            this.remainingByteCount -= result;
+        }
+        return result;
+    }
+
+    @Override
+    public long skip(long byteCount)
+    {
+        final long result = Math.max(0, Math.min(byteCount, this.remainingByteCount));
+        this.position += result;
+        this.remainingByteCount -= result;
+        return result;
+    }
+
+    @Override
+    public int available()
+    {
+        return (int)Math.min(Integer.MAX_VALUE, this.remainingByteCount);
+    }
+
+    @Override
+    public void close()
+    {
+        this.closed = true;
+    }
+}
@@ -0,0 +1,266 @@
+package qub;
+
+/**
+ * The parsed central directory of a zip archive. A {@link ZipCentralDirectory} is never modified
+ * after it is parsed, so it can be shared by many threads.
+ */
+public class ZipCentralDirectory
+{
+    private final List<ZipCentralDirectoryEntry> entries;
+    private volatile java.util.Map<String,ZipCentralDirectoryEntry> entryMap;
+    private final long offset;
+    private final long byteCount;
+    private final String comment;
+
+    private ZipCentralDirectory(List<ZipCentralDirectoryEntry> entries, long offset, long byteCount, String comment)
+    {
+        PreCondition.assertNotNull(entries, "entries");
+        PreCondition.assertGreaterThanOrEqualTo(offset, 0, "offset");
+        PreCondition.assertGreaterThanOrEqualTo(byteCount, 0, "byteCount");
+
+        this.entries = entries;
+        this.offset = offset;
+        this.byteCount = byteCount;
+        this.comment = comment;
+    }
+
+    /**
+     * Get whether the provided {@link ZipByteSource} ends with an end of central directory record.
+     * Empty sources and sources that were truncated before their central directory was written
+     * don't, so their entries can only be found by reading them sequentially.
+     * @param byteSource The source that may contain the bytes of a zip archive.
+     * @return Whether the provided source ends with an end of central directory record.
+     */
+    public static boolean hasEndOfCentralDirectory(ZipByteSource byteSource)
+    {
+        PreCondition.assertNotNull(byteSource, "byteSource");
+        PreCondition.assertNotDisposed(byteSource, "byteSource");
+
+        return ZipFormat.endOfCentralDirectoryByteCount <= byteSource.getByteCount() &&
+            ZipCentralDirectory.findEndOfCentralDirectory(ZipCentralDirectory.readTailBytes(byteSource)) != -1;
+    }
+
+    /**
+     * Read the bytes at the end of the provided source that could contain the end of central
+     * directory record and its comment.
+     */
+    private static byte[] readTailBytes(ZipByteSource byteSource)
+    {
+        final long sourceByteCount = byteSource.getByteCount();
+        final int tailByteCount = (int)Math.min(sourceByteCount, ZipFormat.endOfCentralDirectoryByteCount + ZipFormat.maximumCommentByteCount);
+        return byteSource.readAllBytes(sourceByteCount - tailByteCount, tailByteCount);
+    }
+
+    /**
+     * Find the index of the end of central directory record in the provided tail bytes, or -1 if
+     * the tail bytes don't contain one.
+     */
+    private static int findEndOfCentralDirectory(byte[] tailBytes)
+    {
+        // The end of central directory record is followed by a variable-length comment, so
+        // search backwards from the end of the source for its signature.
+        final int tailByteCount = tailBytes.length;
+        int result = -1;
+        for (int index = tailByteCount - ZipFormat.endOfCentralDirectoryByteCount; 0 <= index; --index)
+        {
+            if (ZipFormat.readUnsignedInt(tailBytes, index) == ZipFormat.endOfCentralDirectorySignature &&
+                index + ZipFormat.endOfCentralDirectoryByteCount + ZipFormat.readUnsignedShort(tailBytes, index + 20) == tailByteCount)
+            {
+                result = index;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parse the central directory of the zip archive in the provided {@link ZipByteSource}.
+     * @param byteSource The source that contains the bytes of the zip archive.
+     * @return The parsed central directory.
+     */
+    public static ZipCentralDirectory parse(ZipByteSource byteSource)
+    {
+        PreCondition.assertNotNull(byteSource, "byteSource");
+        PreCondition.assertNotDisposed(byteSource, "byteSource");
+
+        final long sourceByteCount = byteSource.getByteCount();
+        if (sourceByteCount < ZipFormat.endOfCentralDirectoryByteCount)
+        {
+            throw new ZipFormatException("The source is too small to be a zip archive.");
+        }
+
+        final byte[] tailBytes = ZipCentralDirectory.readTailBytes(byteSource);
+        final int tailByteCount = tailBytes.length;
+        final long tailOffset = sourceByteCount - tailByteCount;
+        final int endOfCentralDirectoryIndex = ZipCentralDirectory.findEndOfCentralDirectory(tailBytes);
+        if (endOfCentralDirectoryIndex == -1)
+        {
+            throw new ZipFormatException("Could not find the end of central directory record.");
+        }
+
+        long entryCount = ZipFormat.readUnsignedShort(tailBytes, endOfCentralDirectoryIndex + 10);
+        long centralDirectoryByteCount = ZipFormat.readUnsignedInt(tailBytes, endOfCentralDirectoryIndex + 12);
+        long centralDirectoryOffset = ZipFormat.readUnsignedInt(tailBytes, endOfCentralDirectoryIndex + 16);
+        final int commentByteCount = ZipFormat.readUnsignedShort(tailBytes, endOfCentralDirectoryIndex + 20);
+        final String comment = commentByteCount == 0
+            ? null
+            : new String(tailBytes, endOfCentralDirectoryIndex + ZipFormat.endOfCentralDirectoryByteCount, commentByteCount, java.nio.charset.StandardCharsets.UTF_8);
+
+        // A ZIP64 archive has a ZIP64 end of central directory locator immediately before the
+        // end of central directory record. The locator points at the ZIP64 end of central
+        // directory record, which holds the 64-bit versions of the entry count, size, and
+        // offset of the central directory.
+        long endOfCentralDirectoryRecordsOffset = tailOffset + endOfCentralDirectoryIndex;
+        final long locatorOffset = endOfCentralDirectoryRecordsOffset - ZipFormat.zip64EndOfCentralDirectoryLocatorByteCount;
+        if (0 <= locatorOffset)
+        {
+            final byte[] locatorBytes = byteSource.readAllBytes(locatorOffset, ZipFormat.zip64EndOfCentralDirectoryLocatorByteCount);
+            if (ZipFormat.readUnsignedInt(locatorBytes, 0) == ZipFormat.zip64EndOfCentralDirectoryLocatorSignature)
+            {
+                final long zip64EndOfCentralDirectoryOffset = ZipFormat.readLong(locatorBytes, 8);
+                if (zip64EndOfCentralDirectoryOffset < 0 || locatorOffset < zip64EndOfCentralDirectoryOffset + ZipFormat.zip64EndOfCentralDirectoryByteCount)
+                {
+                    throw new ZipFormatException("The ZIP64 end of central directory locator points outside of the archive.");
+                }
+
+                final byte[] zip64EndOfCentralDirectoryBytes = byteSource.readAllBytes(zip64EndOfCentralDirectoryOffset, ZipFormat.zip64EndOfCentralDirectoryByteCount);
+                if (ZipFormat.readUnsignedInt(zip64EndOfCentralDirectoryBytes, 0) != ZipFormat.zip64EndOfCentralDirectorySignature)
+                {
+                    throw new ZipFormatException("Could not find the ZIP64 end of central directory record.");
+                }
+
+                entryCount = ZipFormat.readLong(zip64EndOfCentralDirectoryBytes, 32);
+                centralDirectoryByteCount = ZipFormat.readLong(zip64EndOfCentralDirectoryBytes, 40);
+                centralDirectoryOffset = ZipFormat.readLong(zip64EndOfCentralDirectoryBytes, 48);
+                endOfCentralDirectoryRecordsOffset = zip64EndOfCentralDirectoryOffset;
+            }
+        }
+
+        if (centralDirectoryOffset < 0 || centralDirectoryByteCount < 0 ||
+            endOfCentralDirectoryRecordsOffset < centralDirectoryOffset + centralDirectoryByteCount)
+        {
+            throw new ZipFormatException("The central directory overlaps the end of central directory record.");
+        }
+        if (Integer.MAX_VALUE - 8 < centralDirectoryByteCount)
+        {
+            throw new ZipFormatException("The central directory is too large to read.");
+        }
+
+        final byte[] centralDirectoryBytes = byteSource.readAllBytes(centralDirectoryOffset, (int)centralDirectoryByteCount);
+        final List<ZipCentralDirectoryEntry> entries = List.create();
+        int entryStartIndex = 0;
+        for (long i = 0; i < entryCount; ++i)
+        {
+            if (centralDirectoryBytes.length <= entryStartIndex)
+            {
+                throw new ZipFormatException("The central directory contains fewer than the " + entryCount + " entries that the end of central directory record declares.");
+            }
+            entries.add(ZipCentralDirectoryEntry.parse(centralDirectoryBytes, entryStartIndex));
+            entryStartIndex += ZipCentralDirectoryEntry.getByteCount(centralDirectoryBytes, entryStartIndex);
+        }
+
+        return new ZipCentralDirectory(entries, centralDirectoryOffset, centralDirectoryByteCount, comment);
+    }
+
+    /**
+     * Get the entries in this central directory in the order that they appear in the archive.
+     */
+    public Iterable<ZipCentralDirectoryEntry> getEntries()
+    {
+        return this.entries;
+    }
+
+    /**
+     * Get the number of entries in this central directory.
+     */
+    public int getEntryCount()
+    {
+        return this.entries.getCount();
+    }
+
+    /**
+     * Get the entry with the provided path. If more than one entry has the path, then the last
+     * of them is returned, like most zip tools do.
+     * @param entryPath The path of the entry to get.
+     * @return The entry with the provided path.
+     */
+    public Result<ZipCentralDirectoryEntry> getEntry(String entryPath)
+    {
+        PreCondition.assertNotNullAndNotEmpty(entryPath, "entryPath");
+
+        // Listing the entries doesn't need the index, so it isn't built until the first lookup.
+        // The index is never modified after it is published, so lookups from many threads don't
+        // need to lock. If several threads do the first lookup at the same time, each of them
+        // builds an identical index and the last one to finish is kept.
+        java.util.Map<String,ZipCentralDirectoryEntry> entryMap = this.entryMap;
+        if (entryMap == null)
+        {
+            final java.util.Map<String,ZipCentralDirectoryEntry> newEntryMap = new java.util.HashMap<>();
+            for (final ZipCentralDirectoryEntry entry : this.entries)
+            {
+                newEntryMap.put(entry.getName(), entry);
+            }
+            entryMap = java.util.Collections.unmodifiableMap(newEntryMap);
+            this.entryMap = entryMap;
+        }
+
+        final ZipCentralDirectoryEntry entry = entryMap.get(entryPath);
+        return entry != null
+            ? Result.success(entry)
+            : Result.error(new NotFoundException("Could not find a zip entry with the path \"" + entryPath + "\"."));
+    }
+
+    /**
+     * Get the entry with the provided path.
+     * @param entryPath The path of the entry to get.
+     * @return The entry with the provided path.
+     */
+    public Result<ZipCentralDirectoryEntry> getEntry(Path entryPath)
+    {
+        PreCondition.assertNotNull(entryPath, "entryPath");
+
+        return this.getEntry(entryPath.toString());
+    }
+
+    /**
+     * Get the offset from the start of the zip archive to the first central directory file
+     * header.
+     */
+    public long getOffset()
+    {
+        return this.offset;
+    }
+
+    /**
+     * Get the number of bytes in the central directory file headers.
+     */
+    public long getByteCount()
+    {
+        return this.byteCount;
+    }
+
+    /**
+     * Get the comment of the zip archive, or null if the archive doesn't have a comment.
+     */
+    public String getComment()
+    {
+        return this.comment;
+    }
+
+    /**
+     * Read the raw bytes of the central directory file headers from the provided
+     * {@link ZipByteSource}. Only the decoded entries are kept after a central directory is
+     * parsed, so the raw bytes are read again when they are needed, such as when entries are
+     * appended to the archive.
+     * @param byteSource The source that this central directory was parsed from.
+     * @return The raw bytes of the central directory file headers.
+     */
+    byte[] readBytes(ZipByteSource byteSource)
+    {
+        PreCondition.assertNotNull(byteSource, "byteSource");
+        PreCondition.assertNotDisposed(byteSource, "byteSource");
+        PreCondition.assertTrue(this.offset + this.byteCount <= byteSource.getByteCount(), "this.getOffset() + this.getByteCount() <= byteSource.getByteCount()");
+
+        return byteSource.readAllBytes(this.offset, (int)this.byteCount);
+    }
+}
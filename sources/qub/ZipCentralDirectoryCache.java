@@ -0,0 +1,241 @@
+package qub;
+
+/**
+ * A bounded cache of parsed {@link ZipCentralDirectory}s that can be shared by many
+ * {@link ZipFile}s on many threads. Each central directory is cached under its archive's path
+ * along with the archive's size and last modified time when it was parsed. If either of those has
+ * changed when the archive is opened again, then the cached central directory is dropped and the
+ * archive's central directory is parsed again. When the cache holds more archives or more central
+ * directory bytes than its bounds allow, the least recently used central directories are
+ * evicted.
+ */
+public class ZipCentralDirectoryCache
+{
+    /**
+     * The default maximum number of archives whose central directories a cache will hold.
+     */
+    public static final int defaultMaximumArchiveCount = 512;
+
+    /**
+     * The default maximum number of central directory bytes that a cache will hold.
+     */
+    public static final long defaultMaximumByteCount = 64L * 1024 * 1024;
+
+    private static ZipCentralDirectoryCache defaultCache;
+
+    private final int maximumArchiveCount;
+    private final long maximumByteCount;
+    private final java.util.LinkedHashMap<String,CachedCentralDirectory> centralDirectories;
+    private long byteCount;
+    private long hitCount;
+    private long missCount;
+    private long invalidationCount;
+    private long evictionCount;
+
+    private ZipCentralDirectoryCache(int maximumArchiveCount, long maximumByteCount)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(maximumArchiveCount, 0, "maximumArchiveCount");
+        PreCondition.assertGreaterThanOrEqualTo(maximumByteCount, 0, "maximumByteCount");
+
+        this.maximumArchiveCount = maximumArchiveCount;
+        this.maximumByteCount = maximumByteCount;
+        this.centralDirectories = new java.util.LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Create a new {@link ZipCentralDirectoryCache} with the default bounds.
+     * @return The new {@link ZipCentralDirectoryCache}.
+     */
+    public static ZipCentralDirectoryCache create()
+    {
+        return ZipCentralDirectoryCache.create(ZipCentralDirectoryCache.defaultMaximumArchiveCount, ZipCentralDirectoryCache.defaultMaximumByteCount);
+    }
+
+    /**
+     * Create a new {@link ZipCentralDirectoryCache}.
+     * @param maximumArchiveCount The maximum number of archives whose central directories the
+     * cache will hold.
+     * @param maximumByteCount The maximum total number of central directory bytes that the cache
+     * will hold. A central directory that is larger than this on its own is never cached.
+     * @return The new {@link ZipCentralDirectoryCache}.
+     */
+    public static ZipCentralDirectoryCache create(int maximumArchiveCount, long maximumByteCount)
+    {
+        return new ZipCentralDirectoryCache(maximumArchiveCount, maximumByteCount);
+    }
+
+    /**
+     * Get a cache that can be shared by every {@link ZipFile} in the process. {@link ZipFile}s
+     * don't use this cache unless it is given to them with
+     * {@link ZipFile#setCentralDirectoryCache(ZipCentralDirectoryCache)}.
+     */
+    public static synchronized ZipCentralDirectoryCache getDefault()
+    {
+        if (ZipCentralDirectoryCache.defaultCache == null)
+        {
+            ZipCentralDirectoryCache.defaultCache = ZipCentralDirectoryCache.create();
+        }
+        return ZipCentralDirectoryCache.defaultCache;
+    }
+
+    /**
+     * Get the central directory of the archive at the provided path from this cache, or parse it
+     * from the provided {@link ZipByteSource} and add it to this cache if it isn't cached or if
+     * the archive has changed since it was cached.
+     * @param archivePath The path of the archive.
+     * @param lastModifiedMilliseconds The time that the archive was last modified, in
+     * milliseconds since the epoch.
+     * @param byteSource The source that contains the bytes of the archive.
+     * @return The archive's central directory.
+     */
+    ZipCentralDirectory getOrParse(String archivePath, long lastModifiedMilliseconds, ZipByteSource byteSource)
+    {
+        PreCondition.assertNotNullAndNotEmpty(archivePath, "archivePath");
+        PreCondition.assertNotNull(byteSource, "byteSource");
+        PreCondition.assertNotDisposed(byteSource, "byteSource");
+
+        final long archiveByteCount = byteSource.getByteCount();
+        synchronized (this)
+        {
+            final CachedCentralDirectory cached = this.centralDirectories.get(archivePath);
+            if (cached != null)
+            {
+                if (cached.archiveByteCount == archiveByteCount && cached.lastModifiedMilliseconds == lastModifiedMilliseconds)
+                {
+                    ++this.hitCount;
+                    return cached.centralDirectory;
+                }
+
+                this.remove(archivePath);
+                ++this.invalidationCount;
+            }
+            ++this.missCount;
+        }
+
+        // Parsing can take a long time for a large archive, so it is done without holding the
+        // lock. If several threads miss on the same archive at the same time, then each of them
+        // parses it and the last one to finish is kept.
+        final ZipCentralDirectory result = ZipCentralDirectory.parse(byteSource);
+        synchronized (this)
+        {
+            if (result.getByteCount() <= this.maximumByteCount && 0 < this.maximumArchiveCount)
+            {
+                this.remove(archivePath);
+                this.centralDirectories.put(archivePath, new CachedCentralDirectory(archiveByteCount, lastModifiedMilliseconds, result));
+                this.byteCount += result.getByteCount();
+
+                final java.util.Iterator<CachedCentralDirectory> iterator = this.centralDirectories.values().iterator();
+                while (this.maximumArchiveCount < this.centralDirectories.size() || this.maximumByteCount < this.byteCount)
+                {
+                    final CachedCentralDirectory leastRecentlyUsed = iterator.next();
+                    iterator.remove();
+                    this.byteCount -= leastRecentlyUsed.centralDirectory.getByteCount();
+                    ++this.evictionCount;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remove the cached central directory of the archive at the provided path, if it is cached.
+     * @param archivePath The path of the archive.
+     * @return Whether a central directory was removed.
+     */
+    public synchronized boolean invalidate(String archivePath)
+    {
+        PreCondition.assertNotNullAndNotEmpty(archivePath, "archivePath");
+
+        final boolean result = this.remove(archivePath);
+        if (result)
+        {
+            ++this.invalidationCount;
+        }
+        return result;
+    }
+
+    /**
+     * Remove every cached central directory. The hit, miss, invalidation, and eviction counts are
+     * not reset.
+     */
+    public synchronized void clear()
+    {
+        this.centralDirectories.clear();
+        this.byteCount = 0;
+    }
+
+    /**
+     * Get the number of archives whose central directories are in this cache.
+     */
+    public synchronized int getArchiveCount()
+    {
+        return this.centralDirectories.size();
+    }
+
+    /**
+     * Get the total number of central directory bytes that are in this cache.
+     */
+    public synchronized long getByteCount()
+    {
+        return this.byteCount;
+    }
+
+    /**
+     * Get the number of times that a central directory was found in this cache.
+     */
+    public synchronized long getHitCount()
+    {
+        return this.hitCount;
+    }
+
+    /**
+     * Get the number of times that a central directory wasn't found in this cache and had to be
+     * parsed.
+     */
+    public synchronized long getMissCount()
+    {
+        return this.missCount;
+    }
+
+    /**
+     * Get the number of cached central directories that were removed because their archives had
+     * changed or because they were invalidated.
+     */
+    public synchronized long getInvalidationCount()
+    {
+        return this.invalidationCount;
+    }
+
+    /**
+     * Get the number of cached central directories that were removed to keep this cache within
+     * its bounds.
+     */
+    public synchronized long getEvictionCount()
+    {
+        return this.evictionCount;
+    }
+
+    private boolean remove(String archivePath)
+    {
+        final CachedCentralDirectory removed = this.centralDirectories.remove(archivePath);
+        if (removed != null)
+        {
+            this.byteCount -= removed.centralDirectory.getByteCount();
+        }
+        return removed != null;
+    }
+
+    private static class CachedCentralDirectory
+    {
+        private final long archiveByteCount;
+        private final long lastModifiedMilliseconds;
+        private final ZipCentralDirectory centralDirectory;
+
+        private CachedCentralDirectory(long archiveByteCount, long lastModifiedMilliseconds, ZipCentralDirectory centralDirectory)
+        {
+            this.archiveByteCount = archiveByteCount;
+            this.lastModifiedMilliseconds = lastModifiedMilliseconds;
+            this.centralDirectory = centralDirectory;
+        }
+    }
+}
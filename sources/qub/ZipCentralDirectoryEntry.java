@@ -0,0 +1,330 @@
+package qub;
+
+/**
+ * The description of a single entry in the central directory of a zip archive.
+ */
+public class ZipCentralDirectoryEntry
+{
+    /**
+     * The value of lastModifiedMilliseconds before it has been decoded from the MS-DOS date and
+     * time. Neither an MS-DOS date and time nor an extended timestamp decodes to this value.
+     */
+    private static final long unknownLastModifiedMilliseconds = Long.MIN_VALUE;
+
+    private final String name;
+    private final String comment;
+    private final int flags;
+    private final int compressionMethod;
+    private final long dosDateTime;
+    private volatile long lastModifiedMilliseconds;
+    private final long crc32;
+    private final long compressedByteCount;
+    private final long uncompressedByteCount;
+    private final long localFileHeaderOffset;
+
+    private ZipCentralDirectoryEntry(String name, String comment, int flags, int compressionMethod, long dosDateTime, long lastModifiedMilliseconds, long crc32, long compressedByteCount, long uncompressedByteCount, long localFileHeaderOffset)
+    {
+        PreCondition.assertNotNullAndNotEmpty(name, "name");
+        PreCondition.assertGreaterThanOrEqualTo(compressedByteCount, 0, "compressedByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(uncompressedByteCount, 0, "uncompressedByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(localFileHeaderOffset, 0, "localFileHeaderOffset");
+
+        this.name = name;
+        this.comment = comment;
+        this.flags = flags;
+        this.compressionMethod = compressionMethod;
+        this.dosDateTime = dosDateTime;
+        this.lastModifiedMilliseconds = lastModifiedMilliseconds;
+        this.crc32 = crc32;
+        this.compressedByteCount = compressedByteCount;
+        this.uncompressedByteCount = uncompressedByteCount;
+        this.localFileHeaderOffset = localFileHeaderOffset;
+    }
+
+    /**
+     * Create a new {@link ZipCentralDirectoryEntry}.
+     * @param name The name of the entry as it will be stored in the zip archive.
+     * @param comment The comment of the entry, or null if the entry doesn't have a comment.
+     * @param flags The general purpose bit flags of the entry.
+     * @param compressionMethod The compression method that was used to store the entry's data.
+     * @param lastModifiedMilliseconds The number of milliseconds since the epoch when the entry
+     * was last modified.
+     * @param crc32 The CRC-32 checksum of the entry's uncompressed data.
+     * @param compressedByteCount The number of bytes in the entry's compressed data.
+     * @param uncompressedByteCount The number of bytes in the entry's uncompressed data.
+     * @param localFileHeaderOffset The offset from the start of the zip archive to the entry's
+     * local file header.
+     * @return The new {@link ZipCentralDirectoryEntry}.
+     */
+    public static ZipCentralDirectoryEntry create(String name, String comment, int flags, int compressionMethod, long lastModifiedMilliseconds, long crc32, long compressedByteCount, long uncompressedByteCount, long localFileHeaderOffset)
+    {
+        PreCondition.assertNotNullAndNotEmpty(name, "name");
+        PreCondition.assertGreaterThanOrEqualTo(compressedByteCount, 0, "compressedByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(uncompressedByteCount, 0, "uncompressedByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(localFileHeaderOffset, 0, "localFileHeaderOffset");
+
+        final long dosDateTime = ZipFormat.millisecondsToDosDateTime(lastModifiedMilliseconds);
+        return new ZipCentralDirectoryEntry(name, comment, flags, compressionMethod, dosDateTime, lastModifiedMilliseconds, crc32, compressedByteCount, uncompressedByteCount, localFileHeaderOffset);
+    }
+
+    /**
+     * Parse the central directory file header that starts at the provided index.
+     * @param bytes The bytes of the central directory.
+     * @param startIndex The index of the central directory file header's signature.
+     * @return The parsed entry.
+     */
+    public static ZipCentralDirectoryEntry parse(byte[] bytes, int startIndex)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertStartIndex(startIndex, bytes.length);
+
+        if (bytes.length - startIndex < ZipFormat.centralDirectoryFileHeaderByteCount ||
+            ZipFormat.readUnsignedInt(bytes, startIndex) != ZipFormat.centralDirectoryFileHeaderSignature)
+        {
+            throw new ZipFormatException("Expected a central directory file header at index " + startIndex + ".");
+        }
+
+        final int flags = ZipFormat.readUnsignedShort(bytes, startIndex + 8);
+        final int compressionMethod = ZipFormat.readUnsignedShort(bytes, startIndex + 10);
+        final long dosDateTime = ZipFormat.readUnsignedInt(bytes, startIndex + 12);
+        final long crc32 = ZipFormat.readUnsignedInt(bytes, startIndex + 16);
+        long compressedByteCount = ZipFormat.readUnsignedInt(bytes, startIndex + 20);
+        long uncompressedByteCount = ZipFormat.readUnsignedInt(bytes, startIndex + 24);
+        final int nameByteCount = ZipFormat.readUnsignedShort(bytes, startIndex + 28);
+        final int extraFieldByteCount = ZipFormat.readUnsignedShort(bytes, startIndex + 30);
+        final int commentByteCount = ZipFormat.readUnsignedShort(bytes, startIndex + 32);
+        long localFileHeaderOffset = ZipFormat.readUnsignedInt(bytes, startIndex + 42);
+
+        final int nameStartIndex = startIndex + ZipFormat.centralDirectoryFileHeaderByteCount;
+        final int extraFieldStartIndex = nameStartIndex + nameByteCount;
+        final int commentStartIndex = extraFieldStartIndex + extraFieldByteCount;
+        if (bytes.length < commentStartIndex + commentByteCount)
+        {
+            throw new ZipFormatException("The central directory file header at index " + startIndex + " extends past the end of the central directory.");
+        }
+
+        final String name = new String(bytes, nameStartIndex, nameByteCount, java.nio.charset.StandardCharsets.UTF_8);
+        final String comment = commentByteCount == 0
+            ? null
+            : new String(bytes, commentStartIndex, commentByteCount, java.nio.charset.StandardCharsets.UTF_8);
+
+        // Converting the MS-DOS date and time to milliseconds since the epoch is relatively
+        // expensive, so it is deferred until the entry's last modified time is requested.
+        long lastModifiedMilliseconds = ZipCentralDirectoryEntry.unknownLastModifiedMilliseconds;
+        int extraFieldIndex = extraFieldStartIndex;
+        while (extraFieldIndex + 4 <= commentStartIndex)
+        {
+            final int extraFieldId = ZipFormat.readUnsignedShort(bytes, extraFieldIndex);
+            final int extraFieldDataByteCount = ZipFormat.readUnsignedShort(bytes, extraFieldIndex + 2);
+            final int extraFieldDataStartIndex = extraFieldIndex + 4;
+            if (commentStartIndex < extraFieldDataStartIndex + extraFieldDataByteCount)
+            {
+                break;
+            }
+
+            // The central directory copy of the extended timestamp only ever contains the
+            // modification time.
+            if (extraFieldId == ZipFormat.extendedTimestampExtraFieldId &&
+                extraFieldDataByteCount >= 5 &&
+                (bytes[extraFieldDataStartIndex] & 0x1) != 0)
+            {
+                final long secondsSinceEpoch = (int)ZipFormat.readUnsignedInt(bytes, extraFieldDataStartIndex + 1);
+                lastModifiedMilliseconds = secondsSinceEpoch * 1000;
+            }
+
+            // The ZIP64 extra field only contains the values whose 32-bit fields hold the
+            // ZIP64 magic value, in this order.
+            if (extraFieldId == ZipFormat.zip64ExtraFieldId)
+            {
+                int zip64ValueIndex = extraFieldDataStartIndex;
+                final int zip64ValuesEndIndex = extraFieldDataStartIndex + extraFieldDataByteCount;
+                if (uncompressedByteCount == ZipFormat.zip64Magic32 && zip64ValueIndex + 8 <= zip64ValuesEndIndex)
+                {
+                    uncompressedByteCount = ZipFormat.readLong(bytes, zip64ValueIndex);
+                    zip64ValueIndex += 8;
+                }
+                if (compressedByteCount == ZipFormat.zip64Magic32 && zip64ValueIndex + 8 <= zip64ValuesEndIndex)
+                {
+                    compressedByteCount = ZipFormat.readLong(bytes, zip64ValueIndex);
+                    zip64ValueIndex += 8;
+                }
+                if (localFileHeaderOffset == ZipFormat.zip64Magic32 && zip64ValueIndex + 8 <= zip64ValuesEndIndex)
+                {
+                    localFileHeaderOffset = ZipFormat.readLong(bytes, zip64ValueIndex);
+                }
+            }
+
+            extraFieldIndex = extraFieldDataStartIndex + extraFieldDataByteCount;
+        }
+
+        return new ZipCentralDirectoryEntry(name, comment, flags, compressionMethod, dosDateTime, lastModifiedMilliseconds, crc32, compressedByteCount, uncompressedByteCount, localFileHeaderOffset);
+    }
+
+    /**
+     * Get the number of bytes that the central directory file header at the provided index
+     * takes up.
+     * @param bytes The bytes of the central directory.
+     * @param startIndex The index of the central directory file header's signature.
+     * @return The number of bytes in the central directory file header.
+     */
+    public static int getByteCount(byte[] bytes, int startIndex)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertBetween(0, startIndex, bytes.length - ZipFormat.centralDirectoryFileHeaderByteCount, "startIndex");
+
+        return ZipFormat.centralDirectoryFileHeaderByteCount +
+            ZipFormat.readUnsignedShort(bytes, startIndex + 28) +
+            ZipFormat.readUnsignedShort(bytes, startIndex + 30) +
+            ZipFormat.readUnsignedShort(bytes, startIndex + 32);
+    }
+
+    /**
+     * Get the name of this entry as it is stored in the zip archive.
+     */
+    public String getName()
+    {
+        return this.name;
+    }
+
+    /**
+     * Get the path to this entry.
+     */
+    public Path getPath()
+    {
+        return Path.parse(this.name);
+    }
+
+    /**
+     * Get the comment string for this entry, or null if this entry doesn't have a comment.
+     */
+    public String getComment()
+    {
+        return this.comment;
+    }
+
+    /**
+     * Get whether this entry references a directory within the zip.
+     */
+    public boolean isDirectory()
+    {
+        return this.name.endsWith("/");
+    }
+
+    /**
+     * Get the general purpose bit flags of this entry.
+     */
+    public int getFlags()
+    {
+        return this.flags;
+    }
+
+    /**
+     * Get the compression method that was used to store this entry's data.
+     */
+    public int getCompressionMethod()
+    {
+        return this.compressionMethod;
+    }
+
+    /**
+     * Get the CRC-32 checksum of this entry's uncompressed data.
+     */
+    public long getCrc32()
+    {
+        return this.crc32;
+    }
+
+    public long getCompressedByteCount()
+    {
+        return this.compressedByteCount;
+    }
+
+    public DataSize getCompressedSize()
+    {
+        return DataSize.bytes(this.compressedByteCount);
+    }
+
+    public long getUncompressedByteCount()
+    {
+        return this.uncompressedByteCount;
+    }
+
+    public DataSize getUncompressedSize()
+    {
+        return DataSize.bytes(this.uncompressedByteCount);
+    }
+
+    /**
+     * Get the offset from the start of the zip archive to this entry's local file header.
+     */
+    public long getLocalFileHeaderOffset()
+    {
+        return this.localFileHeaderOffset;
+    }
+
+    /**
+     * Get the MS-DOS date and time that is stored in this entry's header.
+     */
+    public long getDosDateTime()
+    {
+        return this.dosDateTime;
+    }
+
+    /**
+     * Get the number of milliseconds since the epoch when this entry was last modified.
+     */
+    public long getLastModifiedMilliseconds()
+    {
+        // Entries are shared between threads through a ZipReader, so the decoded value is
+        // published through a single volatile field. Threads that race to decode it will all
+        // store the same value.
+        long result = this.lastModifiedMilliseconds;
+        if (result == ZipCentralDirectoryEntry.unknownLastModifiedMilliseconds)
+        {
+            result = ZipFormat.dosDateTimeToMilliseconds(this.dosDateTime);
+            this.lastModifiedMilliseconds = result;
+        }
+        return result;
+    }
+
+    public DateTime getLastModified()
+    {
+        final Duration durationSinceEpoch = Duration.milliseconds(this.getLastModifiedMilliseconds());
+        final DateTime result = DateTime.createFromDurationSinceEpoch(durationSinceEpoch);
+
+        PostCondition.assertNotNull(result, "result");
+
+        return result;
+    }
+
+    /**
+     * Create a {@link java.util.zip.ZipEntry} that has the same values as this entry.
+     */
+    public java.util.zip.ZipEntry toJavaZipEntry()
+    {
+        final java.util.zip.ZipEntry result = new java.util.zip.ZipEntry(this.name);
+        if (this.compressionMethod == ZipFormat.storedCompressionMethod ||
+            this.compressionMethod == ZipFormat.deflatedCompressionMethod)
+        {
+            result.setMethod(this.compressionMethod);
+        }
+        result.setCrc(this.crc32);
+        result.setCompressedSize(this.compressedByteCount);
+        result.setSize(this.uncompressedByteCount);
+        result.setLastModifiedTime(java.nio.file.attribute.FileTime.fromMillis(this.getLastModifiedMilliseconds()));
+        if (this.comment != null)
+        {
+            result.setComment(this.comment);
+        }
+
+        PostCondition.assertNotNull(result, "result");
+
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.name;
+    }
+}
@@ -0,0 +1,294 @@
+package qub;
+
+/**
+ * A bounded pool of raw {@link java.util.zip.Inflater}s, {@link java.util.zip.Deflater}s, and
+ * I/O buffers that can be shared by many zip archives on many threads. Reusing codecs avoids
+ * allocating and finalizing their native memory for every entry. When more codecs are released
+ * than the pool can hold, the extra codecs are ended immediately instead of waiting for the
+ * garbage collector.
+ */
+public class ZipCodecPool implements Disposable
+{
+    /**
+     * The default number of each kind of codec that a pool will hold.
+     */
+    public static final int defaultMaximumCodecCount = 32;
+
+    /**
+     * The default number of buffers that a pool will hold.
+     */
+    public static final int defaultMaximumBufferCount = 64;
+
+    /**
+     * The number of bytes in each of a pool's buffers.
+     */
+    public static final int bufferByteCount = 8192;
+
+    private static ZipCodecPool defaultPool;
+
+    private final int maximumCodecCount;
+    private final int maximumBufferCount;
+    private final java.util.ArrayDeque<java.util.zip.Inflater> inflaters;
+    private final java.util.ArrayDeque<java.util.zip.Deflater> deflaters;
+    private final java.util.ArrayDeque<byte[]> buffers;
+    private boolean disposed;
+
+    private ZipCodecPool(int maximumCodecCount, int maximumBufferCount)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(maximumCodecCount, 0, "maximumCodecCount");
+        PreCondition.assertGreaterThanOrEqualTo(maximumBufferCount, 0, "maximumBufferCount");
+
+        this.maximumCodecCount = maximumCodecCount;
+        this.maximumBufferCount = maximumBufferCount;
+        this.inflaters = new java.util.ArrayDeque<>();
+        this.deflaters = new java.util.ArrayDeque<>();
+        this.buffers = new java.util.ArrayDeque<>();
+    }
+
+    /**
+     * Create a new {@link ZipCodecPool} with the default bounds.
+     * @return The new {@link ZipCodecPool}.
+     */
+    public static ZipCodecPool create()
+    {
+        return ZipCodecPool.create(ZipCodecPool.defaultMaximumCodecCount, ZipCodecPool.defaultMaximumBufferCount);
+    }
+
+    /**
+     * Create a new {@link ZipCodecPool}.
+     * @param maximumCodecCount The maximum number of {@link java.util.zip.Inflater}s and the
+     * maximum number of {@link java.util.zip.Deflater}s that the pool will hold. If this is 0,
+     * then every codec is ended as soon as it is released.
+     * @param maximumBufferCount The maximum number of buffers that the pool will hold.
+     * @return The new {@link ZipCodecPool}.
+     */
+    public static ZipCodecPool create(int maximumCodecCount, int maximumBufferCount)
+    {
+        return new ZipCodecPool(maximumCodecCount, maximumBufferCount);
+    }
+
+    /**
+     * Get the pool that is shared by every {@link ZipReader} and {@link ZipWriteStream} that
+     * hasn't been given its own pool.
+     */
+    public static synchronized ZipCodecPool getDefault()
+    {
+        if (ZipCodecPool.defaultPool == null)
+        {
+            ZipCodecPool.defaultPool = ZipCodecPool.create();
+        }
+        return ZipCodecPool.defaultPool;
+    }
+
+    /**
+     * Get a raw {@link java.util.zip.Inflater} from this pool, or create a new one if the pool is
+     * empty. The {@link java.util.zip.Inflater} should be given back with
+     * {@link #releaseInflater(java.util.zip.Inflater)} when it is no longer needed.
+     */
+    public java.util.zip.Inflater acquireInflater()
+    {
+        java.util.zip.Inflater result;
+        synchronized (this)
+        {
+            result = this.inflaters.pollLast();
+        }
+        if (result == null)
+        {
+            result = new java.util.zip.Inflater(true);
+        }
+        return result;
+    }
+
+    /**
+     * Give a raw {@link java.util.zip.Inflater} back to this pool. If the pool is full or
+     * disposed, then the {@link java.util.zip.Inflater} is ended.
+     * @param inflater The {@link java.util.zip.Inflater} to give back. It must not be used after
+     * it has been released.
+     */
+    public void releaseInflater(java.util.zip.Inflater inflater)
+    {
+        PreCondition.assertNotNull(inflater, "inflater");
+
+        inflater.reset();
+        boolean pooled;
+        synchronized (this)
+        {
+            pooled = !this.disposed && this.inflaters.size() < this.maximumCodecCount;
+            if (pooled)
+            {
+                this.inflaters.addLast(inflater);
+            }
+        }
+        if (!pooled)
+        {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Get a raw {@link java.util.zip.Deflater} from this pool with the provided compression level
+     * and strategy, or create a new one if the pool is empty. The
+     * {@link java.util.zip.Deflater} should be given back with
+     * {@link #releaseDeflater(java.util.zip.Deflater)} when it is no longer needed.
+     * @param compressionLevel The deflate compression level, or -1 for the default level.
+     * @param compressionStrategy The {@link java.util.zip.Deflater} strategy to compress with.
+     */
+    public java.util.zip.Deflater acquireDeflater(int compressionLevel, int compressionStrategy)
+    {
+        PreCondition.assertBetween(-1, compressionLevel, 9, "compressionLevel");
+        PreCondition.assertBetween(java.util.zip.Deflater.DEFAULT_STRATEGY, compressionStrategy, java.util.zip.Deflater.HUFFMAN_ONLY, "compressionStrategy");
+
+        java.util.zip.Deflater result;
+        synchronized (this)
+        {
+            result = this.deflaters.pollLast();
+        }
+        if (result == null)
+        {
+            result = new java.util.zip.Deflater(compressionLevel, true);
+        }
+        else
+        {
+            // A reset Deflater hasn't compressed anything yet, so its next deflate() call applies
+            // the new level and strategy before any input is compressed.
+            result.setLevel(compressionLevel);
+        }
+        result.setStrategy(compressionStrategy);
+        return result;
+    }
+
+    /**
+     * Give a raw {@link java.util.zip.Deflater} back to this pool. If the pool is full or
+     * disposed, then the {@link java.util.zip.Deflater} is ended.
+     * @param deflater The {@link java.util.zip.Deflater} to give back. It must not be used after
+     * it has been released.
+     */
+    public void releaseDeflater(java.util.zip.Deflater deflater)
+    {
+        PreCondition.assertNotNull(deflater, "deflater");
+
+        deflater.reset();
+        boolean pooled;
+        synchronized (this)
+        {
+            pooled = !this.disposed && this.deflaters.size() < this.maximumCodecCount;
+            if (pooled)
+            {
+                this.deflaters.addLast(deflater);
+            }
+        }
+        if (!pooled)
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Get a buffer of {@link #bufferByteCount} bytes from this pool, or create a new one if the
+     * pool is empty. The buffer's contents are undefined.
+     */
+    public byte[] acquireBuffer()
+    {
+        byte[] result;
+        synchronized (this)
+        {
+            result = this.buffers.pollLast();
+        }
+        if (result == null)
+        {
+            result = new byte[ZipCodecPool.bufferByteCount];
+        }
+        return result;
+    }
+
+    /**
+     * Give a buffer back to this pool. Buffers that weren't acquired from a pool are ignored.
+     * @param buffer The buffer to give back. It must not be used after it has been released.
+     */
+    public void releaseBuffer(byte[] buffer)
+    {
+        PreCondition.assertNotNull(buffer, "buffer");
+
+        if (buffer.length == ZipCodecPool.bufferByteCount)
+        {
+            synchronized (this)
+            {
+                if (!this.disposed && this.buffers.size() < this.maximumBufferCount)
+                {
+                    this.buffers.addLast(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of {@link java.util.zip.Inflater}s that are waiting in this pool.
+     */
+    public synchronized int getPooledInflaterCount()
+    {
+        return this.inflaters.size();
+    }
+
+    /**
+     * Get the number of {@link java.util.zip.Deflater}s that are waiting in this pool.
+     */
+    public synchronized int getPooledDeflaterCount()
+    {
+        return this.deflaters.size();
+    }
+
+    /**
+     * Get the number of buffers that are waiting in this pool.
+     */
+    public synchronized int getPooledBufferCount()
+    {
+        return this.buffers.size();
+    }
+
+    @Override
+    public synchronized boolean isDisposed()
+    {
+        return this.disposed;
+    }
+
+    /**
+     * End every codec that is waiting in this pool. Codecs that are released after this pool is
+     * disposed are ended immediately.
+     */
+    @Override
+    public Result<Boolean> dispose()
+    {
+        return Result.create(() ->
+        {
+            final boolean result;
+            synchronized (this)
+            {
+                result = !this.disposed;
+                this.disposed = true;
+            }
+
+            if (result)
+            {
+                final java.util.List<java.util.zip.Inflater> inflaters;
+                final java.util.List<java.util.zip.Deflater> deflaters;
+                synchronized (this)
+                {
+                    inflaters = new java.util.ArrayList<>(this.inflaters);
+                    deflaters = new java.util.ArrayList<>(this.deflaters);
+                    this.inflaters.clear();
+                    this.deflaters.clear();
+                    this.buffers.clear();
+                }
+                for (final java.util.zip.Inflater inflater : inflaters)
+                {
+                    inflater.end();
+                }
+                for (final java.util.zip.Deflater deflater : deflaters)
+                {
+                    deflater.end();
+                }
+            }
+            return result;
+        });
+    }
+}
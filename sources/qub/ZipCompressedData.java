@@ -0,0 +1,288 @@
+package qub;
+
+/**
+ * The data of a single zip entry that was compressed before the entry was written, such as on a
+ * different thread than the one that writes the archive. Compressed data can be added to an
+ * archive with {@link ZipWriteStream#createEntry(ZipEntryParameters, ZipCompressedData)}.
+ */
+public class ZipCompressedData
+{
+    private final int compressionMethod;
+    private final long crc32;
+    private final long uncompressedByteCount;
+    private final byte[] bytes;
+    private final int byteCount;
+    private final long codecNanoseconds;
+
+    private ZipCompressedData(int compressionMethod, long crc32, long uncompressedByteCount, byte[] bytes, int byteCount, long codecNanoseconds)
+    {
+        this.compressionMethod = compressionMethod;
+        this.crc32 = crc32;
+        this.uncompressedByteCount = uncompressedByteCount;
+        this.bytes = bytes;
+        this.byteCount = byteCount;
+        this.codecNanoseconds = codecNanoseconds;
+    }
+
+    /**
+     * Compress the provided uncompressed bytes with the compression method, level, and strategy
+     * of the provided {@link ZipEntryParameters}. The parameters' other values are ignored.
+     * @param parameters The parameters that describe how to compress the bytes.
+     * @param bytes The uncompressed bytes.
+     * @param startIndex The index of the first uncompressed byte.
+     * @param length The number of uncompressed bytes.
+     * @param codecPool The pool to get the {@link java.util.zip.Deflater} from.
+     * @return The compressed data.
+     */
+    public static ZipCompressedData create(ZipEntryParameters parameters, byte[] bytes, int startIndex, int length, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(parameters, "parameters");
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertStartIndex(startIndex, bytes.length);
+        PreCondition.assertLength(length, startIndex, bytes.length);
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        return ZipCompressedData.create(parameters, java.nio.ByteBuffer.wrap(bytes, startIndex, length), codecPool);
+    }
+
+    /**
+     * Compress the remaining bytes of the provided {@link java.nio.ByteBuffer} with the
+     * compression method, level, and strategy of the provided {@link ZipEntryParameters}. The
+     * parameters' other values are ignored. The buffer's position isn't changed, so the bytes
+     * can be read straight from a memory-mapped file.
+     * @param parameters The parameters that describe how to compress the bytes.
+     * @param bytes The uncompressed bytes.
+     * @param codecPool The pool to get the {@link java.util.zip.Deflater} from.
+     * @return The compressed data.
+     */
+    public static ZipCompressedData create(ZipEntryParameters parameters, java.nio.ByteBuffer bytes, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(parameters, "parameters");
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        final ZipCompressedData result;
+        if (parameters.getCompressionMethod() == ZipCompressionMethod.Stored)
+        {
+            result = ZipCompressedData.store(bytes);
+        }
+        else
+        {
+            final Integer compressionLevel = parameters.getCompressionLevel();
+            result = ZipCompressedData.deflate(
+                bytes,
+                compressionLevel != null ? compressionLevel : java.util.zip.Deflater.DEFAULT_COMPRESSION,
+                ZipWriteStream.getDeflaterStrategy(parameters.getCompressionStrategy()),
+                codecPool);
+        }
+        return result;
+    }
+
+    /**
+     * Create {@link ZipCompressedData} from bytes that were compressed earlier, such as bytes
+     * that were read from a {@link ZipCompressedEntryCache}.
+     * @param compressionMethod The zip compression method of the bytes.
+     * @param crc32 The CRC-32 checksum of the uncompressed data.
+     * @param uncompressedByteCount The number of bytes in the uncompressed data.
+     * @param bytes The compressed bytes.
+     * @return The compressed data.
+     */
+    static ZipCompressedData create(int compressionMethod, long crc32, long uncompressedByteCount, byte[] bytes)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(uncompressedByteCount, 0, "uncompressedByteCount");
+        PreCondition.assertNotNull(bytes, "bytes");
+
+        return new ZipCompressedData(compressionMethod, crc32, uncompressedByteCount, bytes, bytes.length, 0);
+    }
+
+    /**
+     * Copy the provided uncompressed bytes without compressing them.
+     * @param bytes The uncompressed bytes.
+     * @param startIndex The index of the first uncompressed byte.
+     * @param length The number of uncompressed bytes.
+     * @return The stored data.
+     */
+    public static ZipCompressedData store(byte[] bytes, int startIndex, int length)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertStartIndex(startIndex, bytes.length);
+        PreCondition.assertLength(length, startIndex, bytes.length);
+
+        return ZipCompressedData.store(java.nio.ByteBuffer.wrap(bytes, startIndex, length));
+    }
+
+    /**
+     * Copy the remaining bytes of the provided {@link java.nio.ByteBuffer} without compressing
+     * them. The buffer's position isn't changed.
+     * @param bytes The uncompressed bytes.
+     * @return The stored data.
+     */
+    public static ZipCompressedData store(java.nio.ByteBuffer bytes)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+
+        final int length = bytes.remaining();
+        final java.util.zip.CRC32 crc32 = new java.util.zip.CRC32();
+        crc32.update(bytes.duplicate());
+        final byte[] storedBytes = new byte[length];
+        bytes.duplicate().get(storedBytes);
+        return new ZipCompressedData(ZipFormat.storedCompressionMethod, crc32.getValue(), length, storedBytes, length, 0);
+    }
+
+    /**
+     * Deflate the provided uncompressed bytes. Like {@link ZipEntryDeflaterOutputStream}, the
+     * deflated data is flushed with {@link java.util.zip.Deflater#SYNC_FLUSH} every
+     * {@link ZipEntryCheckpointIndex#defaultCheckpointSpacing} uncompressed bytes.
+     * @param bytes The uncompressed bytes.
+     * @param startIndex The index of the first uncompressed byte.
+     * @param length The number of uncompressed bytes.
+     * @param compressionLevel The deflate compression level, or -1 for the default level.
+     * @param compressionStrategy The {@link java.util.zip.Deflater} strategy to compress with.
+     * @param codecPool The pool to get the {@link java.util.zip.Deflater} from.
+     * @return The deflated data.
+     */
+    public static ZipCompressedData deflate(byte[] bytes, int startIndex, int length, int compressionLevel, int compressionStrategy, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertStartIndex(startIndex, bytes.length);
+        PreCondition.assertLength(length, startIndex, bytes.length);
+        PreCondition.assertBetween(-1, compressionLevel, 9, "compressionLevel");
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        return ZipCompressedData.deflate(java.nio.ByteBuffer.wrap(bytes, startIndex, length), compressionLevel, compressionStrategy, codecPool);
+    }
+
+    /**
+     * Deflate the remaining bytes of the provided {@link java.nio.ByteBuffer}. The buffer's
+     * position isn't changed. See {@link #deflate(byte[], int, int, int, int, ZipCodecPool)}.
+     * @param bytes The uncompressed bytes.
+     * @param compressionLevel The deflate compression level, or -1 for the default level.
+     * @param compressionStrategy The {@link java.util.zip.Deflater} strategy to compress with.
+     * @param codecPool The pool to get the {@link java.util.zip.Deflater} from.
+     * @return The deflated data.
+     */
+    public static ZipCompressedData deflate(java.nio.ByteBuffer bytes, int compressionLevel, int compressionStrategy, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertBetween(-1, compressionLevel, 9, "compressionLevel");
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        final long startNanoseconds = System.nanoTime();
+
+        final int length = bytes.remaining();
+        final java.util.zip.CRC32 crc32 = new java.util.zip.CRC32();
+        crc32.update(bytes.duplicate());
+
+        byte[] deflatedBytes = new byte[Math.max(64, length / 2)];
+        int deflatedByteCount = 0;
+        final java.util.zip.Deflater deflater = codecPool.acquireDeflater(compressionLevel, compressionStrategy);
+        try
+        {
+            final java.nio.ByteBuffer input = bytes.duplicate();
+            do
+            {
+                // The Deflater holds on to its input, so it gets its own view of each chunk.
+                final int chunkLength = (int)Math.min(ZipEntryCheckpointIndex.defaultCheckpointSpacing, input.remaining());
+                final java.nio.ByteBuffer chunk = input.duplicate();
+                chunk.limit(chunk.position() + chunkLength);
+                input.position(input.position() + chunkLength);
+                deflater.setInput(chunk);
+
+                final boolean lastChunk = !input.hasRemaining();
+                if (lastChunk)
+                {
+                    deflater.finish();
+                }
+
+                // A sync flush is only complete once it doesn't fill the output buffer.
+                do
+                {
+                    if (deflatedByteCount == deflatedBytes.length)
+                    {
+                        deflatedBytes = java.util.Arrays.copyOf(deflatedBytes, deflatedBytes.length * 2);
+                    }
+                    deflatedByteCount += deflater.deflate(deflatedBytes, deflatedByteCount, deflatedBytes.length - deflatedByteCount,
+                        lastChunk ? java.util.zip.Deflater.NO_FLUSH : java.util.zip.Deflater.SYNC_FLUSH);
+                }
+                while (lastChunk ? !deflater.finished() : deflatedByteCount == deflatedBytes.length);
+            }
+            while (input.hasRemaining());
+        }
+        finally
+        {
+            codecPool.releaseDeflater(deflater);
+        }
+
+        return new ZipCompressedData(ZipFormat.deflatedCompressionMethod, crc32.getValue(), length, deflatedBytes, deflatedByteCount, System.nanoTime() - startNanoseconds);
+    }
+
+    /**
+     * Get the zip compression method of this data, such as
+     * {@link ZipFormat#deflatedCompressionMethod}.
+     */
+    public int getCompressionMethod()
+    {
+        return this.compressionMethod;
+    }
+
+    /**
+     * Get the CRC-32 checksum of the uncompressed data.
+     */
+    public long getCrc32()
+    {
+        return this.crc32;
+    }
+
+    /**
+     * Get the number of bytes in the uncompressed data.
+     */
+    public long getUncompressedByteCount()
+    {
+        return this.uncompressedByteCount;
+    }
+
+    /**
+     * Get the number of bytes in the compressed data.
+     */
+    public int getCompressedByteCount()
+    {
+        return this.byteCount;
+    }
+
+    /**
+     * Get the CRC-32 checksum of the compressed data.
+     */
+    long getCompressedCrc32()
+    {
+        final java.util.zip.CRC32 result = new java.util.zip.CRC32();
+        result.update(this.bytes, 0, this.byteCount);
+        return result.getValue();
+    }
+
+    /**
+     * Get the time that was spent compressing the data.
+     */
+    public long getCodecNanoseconds()
+    {
+        return this.codecNanoseconds;
+    }
+
+    /**
+     * Write the compressed bytes to the provided {@link java.io.OutputStream}.
+     * @param outputStream The stream to write to.
+     */
+    void writeBytesTo(java.io.OutputStream outputStream) throws java.io.IOException
+    {
+        PreCondition.assertNotNull(outputStream, "outputStream");
+
+        outputStream.write(this.bytes, 0, this.byteCount);
+    }
+
+    /**
+     * Write the compressed data to the provided {@link ZipArchiveOutputStream}.
+     */
+    void writeTo(ZipArchiveOutputStream archiveOutputStream)
+    {
+        archiveOutputStream.writeData(this.bytes, 0, this.byteCount);
+    }
+}
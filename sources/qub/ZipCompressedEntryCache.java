@@ -0,0 +1,497 @@
+package qub;
+
+/**
+ * A bounded, on-disk cache of compressed entry data. Each entry's compressed bytes, CRC-32, and
+ * uncompressed size are stored in their own file in the cache's folder, named by the SHA-256 hash
+ * of the uncompressed bytes and the compression method, level, and strategy that they were
+ * compressed with. When an archive is rebuilt from mostly unchanged files, the unchanged files
+ * only need to be hashed instead of compressed again. Each cached file also records a CRC-32 of
+ * its compressed bytes, so a cached file whose bytes were damaged on disk is deleted and treated
+ * as a miss instead of being copied into an archive.
+ * <p>
+ * A {@link ZipCompressedEntryCache} can be shared by many threads, and several processes can use
+ * the same folder at the same time because each cached file is written to a temporary file and
+ * then moved into place. Each {@link ZipCompressedEntryCache} only counts the files that were in
+ * its folder when it was created and the files that it has added since, so the folder can grow
+ * past the cache's bound while several processes add to it. When the cached files that a
+ * {@link ZipCompressedEntryCache} knows about take more than its maximum number of bytes, the
+ * least recently used files are deleted.
+ */
+public class ZipCompressedEntryCache
+{
+    /**
+     * The default maximum number of bytes that a cache's files will take.
+     */
+    public static final long defaultMaximumByteCount = 1024L * 1024 * 1024;
+
+    /**
+     * The largest uncompressed entry that will be cached. Larger entries are always compressed.
+     */
+    public static final int maximumEntryByteCount = 64 * 1024 * 1024;
+
+    private static final String cachedFileExtension = ".entry";
+    private static final String partialFileExtension = ".partial";
+    private static final int cachedFileSignature = 0x45435a52;
+    private static final int cachedFileHeaderByteCount = 36;
+    private static final long abandonedPartialFileMilliseconds = 60 * 60 * 1000;
+
+    private final java.nio.file.Path folderPath;
+    private final long maximumByteCount;
+    private final java.util.LinkedHashMap<String,Long> cachedFileByteCounts;
+    private long byteCount;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    private ZipCompressedEntryCache(java.nio.file.Path folderPath, long maximumByteCount)
+    {
+        PreCondition.assertNotNull(folderPath, "folderPath");
+        PreCondition.assertGreaterThanOrEqualTo(maximumByteCount, 0, "maximumByteCount");
+
+        this.folderPath = folderPath;
+        this.maximumByteCount = maximumByteCount;
+        this.cachedFileByteCounts = new java.util.LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Open the cache in the provided {@link Folder} with the default maximum number of bytes. See
+     * {@link #create(Folder, long)}.
+     * @param folder The folder that contains the cached files.
+     * @return The cache.
+     */
+    public static Result<ZipCompressedEntryCache> create(Folder folder)
+    {
+        PreCondition.assertNotNull(folder, "folder");
+
+        return ZipCompressedEntryCache.create(folder, ZipCompressedEntryCache.defaultMaximumByteCount);
+    }
+
+    /**
+     * Open the cache in the provided {@link Folder}, creating the folder if it doesn't exist. The
+     * files that are already in the folder are kept, and the least recently used of them are
+     * deleted if they take more than the provided maximum number of bytes.
+     * @param folder The folder that contains the cached files. It must be on the local disk.
+     * @param maximumByteCount The maximum number of bytes that the cached files will take.
+     * @return The cache.
+     */
+    public static Result<ZipCompressedEntryCache> create(Folder folder, long maximumByteCount)
+    {
+        PreCondition.assertNotNull(folder, "folder");
+        PreCondition.assertTrue(folder.getFileSystem() instanceof JavaFileSystem, "folder.getFileSystem() instanceof JavaFileSystem");
+        PreCondition.assertGreaterThanOrEqualTo(maximumByteCount, 0, "maximumByteCount");
+
+        return Result.create(() ->
+        {
+            final java.nio.file.Path folderPath = java.nio.file.Paths.get(folder.getPath().toString());
+            final ZipCompressedEntryCache result = new ZipCompressedEntryCache(folderPath, maximumByteCount);
+            try
+            {
+                java.nio.file.Files.createDirectories(folderPath);
+
+                // The files are added from least to most recently used so that the first files
+                // to be evicted are the ones that were used the longest time ago, even if they
+                // were used by a different process.
+                final java.util.List<java.nio.file.Path> cachedFilePaths = new java.util.ArrayList<>();
+                final java.util.Map<java.nio.file.Path,Long> lastModifiedMilliseconds = new java.util.HashMap<>();
+                final long now = System.currentTimeMillis();
+                try (final java.nio.file.DirectoryStream<java.nio.file.Path> folderEntries = java.nio.file.Files.newDirectoryStream(folderPath))
+                {
+                    for (final java.nio.file.Path folderEntry : folderEntries)
+                    {
+                        final String fileName = folderEntry.getFileName().toString();
+                        final long fileLastModifiedMilliseconds = java.nio.file.Files.getLastModifiedTime(folderEntry).toMillis();
+                        if (fileName.endsWith(ZipCompressedEntryCache.cachedFileExtension))
+                        {
+                            cachedFilePaths.add(folderEntry);
+                            lastModifiedMilliseconds.put(folderEntry, fileLastModifiedMilliseconds);
+                        }
+                        else if (fileName.endsWith(ZipCompressedEntryCache.partialFileExtension) &&
+                            ZipCompressedEntryCache.abandonedPartialFileMilliseconds < now - fileLastModifiedMilliseconds)
+                        {
+                            java.nio.file.Files.deleteIfExists(folderEntry);
+                        }
+                    }
+                }
+                cachedFilePaths.sort(java.util.Comparator.comparing(lastModifiedMilliseconds::get));
+
+                synchronized (result)
+                {
+                    for (final java.nio.file.Path cachedFilePath : cachedFilePaths)
+                    {
+                        final long cachedFileByteCount = java.nio.file.Files.size(cachedFilePath);
+                        result.cachedFileByteCounts.put(cachedFilePath.getFileName().toString(), cachedFileByteCount);
+                        result.byteCount += cachedFileByteCount;
+                    }
+                }
+                result.evict();
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Get the compressed data of the provided uncompressed bytes from this cache, or compress the
+     * bytes with the compression method, level, and strategy of the provided
+     * {@link ZipEntryParameters} and add the compressed data to this cache. The parameters' other
+     * values are ignored. Failing to read or write a cached file never fails this method; the
+     * bytes are just compressed instead.
+     * @param parameters The parameters that describe how to compress the bytes.
+     * @param bytes The uncompressed bytes.
+     * @param startIndex The index of the first uncompressed byte.
+     * @param length The number of uncompressed bytes.
+     * @param codecPool The pool to get the {@link java.util.zip.Deflater} from if the bytes need
+     * to be compressed.
+     * @return The compressed data.
+     */
+    public ZipCompressedData getOrCompress(ZipEntryParameters parameters, byte[] bytes, int startIndex, int length, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(parameters, "parameters");
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertStartIndex(startIndex, bytes.length);
+        PreCondition.assertLength(length, startIndex, bytes.length);
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        return this.getOrCompress(parameters, java.nio.ByteBuffer.wrap(bytes, startIndex, length), codecPool);
+    }
+
+    /**
+     * Get the compressed data of the remaining bytes of the provided {@link java.nio.ByteBuffer}
+     * from this cache, or compress them and add the compressed data to this cache. The buffer's
+     * position isn't changed, so the bytes can be read straight from a memory-mapped file. See
+     * {@link #getOrCompress(ZipEntryParameters, byte[], int, int, ZipCodecPool)}.
+     * @param parameters The parameters that describe how to compress the bytes.
+     * @param bytes The uncompressed bytes.
+     * @param codecPool The pool to get the {@link java.util.zip.Deflater} from if the bytes need
+     * to be compressed.
+     * @return The compressed data.
+     */
+    public ZipCompressedData getOrCompress(ZipEntryParameters parameters, java.nio.ByteBuffer bytes, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(parameters, "parameters");
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        final int length = bytes.remaining();
+        if (ZipCompressedEntryCache.maximumEntryByteCount < length)
+        {
+            return ZipCompressedData.create(parameters, bytes, codecPool);
+        }
+
+        final java.util.zip.CRC32 crc32 = new java.util.zip.CRC32();
+        final String cachedFileName = ZipCompressedEntryCache.getCachedFileName(parameters, bytes, crc32);
+        final java.nio.file.Path cachedFilePath = this.folderPath.resolve(cachedFileName);
+
+        ZipCompressedData result = this.readCachedFile(cachedFileName, length, crc32.getValue());
+        if (result != null)
+        {
+            synchronized (this)
+            {
+                ++this.hitCount;
+
+                // Getting the file's byte count also makes it the most recently used file.
+                if (this.cachedFileByteCounts.get(cachedFileName) == null)
+                {
+                    // Another process added this file after this cache was created.
+                    final long cachedFileByteCount = ZipCompressedEntryCache.cachedFileHeaderByteCount + result.getCompressedByteCount();
+                    this.cachedFileByteCounts.put(cachedFileName, cachedFileByteCount);
+                    this.byteCount += cachedFileByteCount;
+                }
+            }
+
+            // The file's last modified time records when it was last used, so that other
+            // processes that open this cache evict it after the files that haven't been used
+            // as recently.
+            try
+            {
+                java.nio.file.Files.setLastModifiedTime(cachedFilePath, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            catch (java.io.IOException ignored)
+            {
+            }
+        }
+        else
+        {
+            synchronized (this)
+            {
+                ++this.missCount;
+            }
+
+            result = ZipCompressedData.create(parameters, bytes, codecPool);
+            this.writeCachedFile(cachedFileName, result);
+            this.evict();
+        }
+
+        PostCondition.assertNotNull(result, "result");
+
+        return result;
+    }
+
+    /**
+     * Get the maximum number of bytes that this cache's files will take.
+     */
+    public long getMaximumByteCount()
+    {
+        return this.maximumByteCount;
+    }
+
+    /**
+     * Get the number of cached files that this cache knows about.
+     */
+    public synchronized int getEntryCount()
+    {
+        return this.cachedFileByteCounts.size();
+    }
+
+    /**
+     * Get the number of bytes that the cached files that this cache knows about take.
+     */
+    public synchronized long getByteCount()
+    {
+        return this.byteCount;
+    }
+
+    /**
+     * Get the number of times that compressed data was found in this cache.
+     */
+    public synchronized long getHitCount()
+    {
+        return this.hitCount;
+    }
+
+    /**
+     * Get the number of times that compressed data wasn't found in this cache and the bytes had
+     * to be compressed.
+     */
+    public synchronized long getMissCount()
+    {
+        return this.missCount;
+    }
+
+    /**
+     * Get the number of cached files that were deleted to keep this cache within its bound.
+     */
+    public synchronized long getEvictionCount()
+    {
+        return this.evictionCount;
+    }
+
+    /**
+     * Get the name of the file that caches the remaining bytes of the provided
+     * {@link java.nio.ByteBuffer} when they are compressed with the provided parameters. The
+     * bytes are also added to the provided {@link java.util.zip.CRC32} in the same pass.
+     */
+    private static String getCachedFileName(ZipEntryParameters parameters, java.nio.ByteBuffer bytes, java.util.zip.CRC32 crc32)
+    {
+        final java.security.MessageDigest digest;
+        try
+        {
+            digest = java.security.MessageDigest.getInstance("SHA-256");
+        }
+        catch (java.security.NoSuchAlgorithmException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+
+        // The bytes are hashed in chunks so that each chunk is still in the processor's cache
+        // when its CRC-32 is computed.
+        final java.nio.ByteBuffer input = bytes.duplicate();
+        while (input.hasRemaining())
+        {
+            final java.nio.ByteBuffer chunk = input.duplicate();
+            chunk.limit(chunk.position() + Math.min(chunk.remaining(), ZipCodecPool.bufferByteCount));
+            input.position(chunk.limit());
+
+            final int chunkPosition = chunk.position();
+            digest.update(chunk);
+            chunk.position(chunkPosition);
+            crc32.update(chunk);
+        }
+        final byte[] hash = digest.digest();
+
+        final StringBuilder builder = new StringBuilder(hash.length * 2 + 16);
+        for (final byte hashByte : hash)
+        {
+            builder.append(Character.forDigit((hashByte >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(hashByte & 0xF, 16));
+        }
+        if (parameters.getCompressionMethod() == ZipCompressionMethod.Stored)
+        {
+            builder.append("-stored");
+        }
+        else
+        {
+            final Integer compressionLevel = parameters.getCompressionLevel();
+            builder.append("-deflated-");
+            builder.append(compressionLevel != null ? compressionLevel : java.util.zip.Deflater.DEFAULT_COMPRESSION);
+            builder.append('-');
+            builder.append(ZipWriteStream.getDeflaterStrategy(parameters.getCompressionStrategy()));
+        }
+        builder.append(ZipCompressedEntryCache.cachedFileExtension);
+        return builder.toString();
+    }
+
+    /**
+     * Read the compressed data in the cached file with the provided name, or return null if the
+     * file doesn't exist or doesn't contain compressed data for uncompressed bytes with the
+     * provided size and CRC-32. A cached file that exists but doesn't contain the expected data,
+     * such as a file that was damaged on disk, is deleted so that it is written again.
+     */
+    private ZipCompressedData readCachedFile(String cachedFileName, int uncompressedByteCount, long uncompressedCrc32)
+    {
+        final java.nio.file.Path cachedFilePath = this.folderPath.resolve(cachedFileName);
+        ZipCompressedData result = null;
+        boolean damaged = false;
+        try
+        {
+            final byte[] cachedFileBytes = java.nio.file.Files.readAllBytes(cachedFilePath);
+            damaged = true;
+            if (ZipCompressedEntryCache.cachedFileHeaderByteCount <= cachedFileBytes.length)
+            {
+                final java.nio.ByteBuffer header = java.nio.ByteBuffer.wrap(cachedFileBytes, 0, ZipCompressedEntryCache.cachedFileHeaderByteCount);
+                final int signature = header.getInt();
+                final int compressionMethod = header.getInt();
+                final long crc32 = header.getLong();
+                final long cachedUncompressedByteCount = header.getLong();
+                final int compressedByteCount = header.getInt();
+                final long compressedCrc32 = header.getLong();
+                if (signature == ZipCompressedEntryCache.cachedFileSignature &&
+                    crc32 == uncompressedCrc32 &&
+                    cachedUncompressedByteCount == uncompressedByteCount &&
+                    compressedByteCount == cachedFileBytes.length - ZipCompressedEntryCache.cachedFileHeaderByteCount)
+                {
+                    final java.util.zip.CRC32 actualCompressedCrc32 = new java.util.zip.CRC32();
+                    actualCompressedCrc32.update(cachedFileBytes, ZipCompressedEntryCache.cachedFileHeaderByteCount, compressedByteCount);
+                    if (actualCompressedCrc32.getValue() == compressedCrc32)
+                    {
+                        damaged = false;
+                        result = ZipCompressedData.create(
+                            compressionMethod,
+                            crc32,
+                            cachedUncompressedByteCount,
+                            java.util.Arrays.copyOfRange(cachedFileBytes, ZipCompressedEntryCache.cachedFileHeaderByteCount, cachedFileBytes.length));
+                    }
+                }
+            }
+        }
+        catch (java.io.IOException ignored)
+        {
+        }
+
+        if (damaged)
+        {
+            synchronized (this)
+            {
+                final Long cachedFileByteCount = this.cachedFileByteCounts.remove(cachedFileName);
+                if (cachedFileByteCount != null)
+                {
+                    this.byteCount -= cachedFileByteCount;
+                }
+            }
+            try
+            {
+                java.nio.file.Files.deleteIfExists(cachedFilePath);
+            }
+            catch (java.io.IOException ignored)
+            {
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write the provided compressed data to the cached file with the provided name. The data is
+     * written to a temporary file first so that other threads and processes never read a
+     * partially written cached file.
+     */
+    private void writeCachedFile(String cachedFileName, ZipCompressedData compressedData)
+    {
+        final long cachedFileByteCount = ZipCompressedEntryCache.cachedFileHeaderByteCount + compressedData.getCompressedByteCount();
+        if (cachedFileByteCount <= this.maximumByteCount)
+        {
+            java.nio.file.Path partialFilePath = null;
+            try
+            {
+                partialFilePath = java.nio.file.Files.createTempFile(this.folderPath, "entry", ZipCompressedEntryCache.partialFileExtension);
+                try (final java.io.DataOutputStream outputStream = new java.io.DataOutputStream(new java.io.BufferedOutputStream(java.nio.file.Files.newOutputStream(partialFilePath))))
+                {
+                    outputStream.writeInt(ZipCompressedEntryCache.cachedFileSignature);
+                    outputStream.writeInt(compressedData.getCompressionMethod());
+                    outputStream.writeLong(compressedData.getCrc32());
+                    outputStream.writeLong(compressedData.getUncompressedByteCount());
+                    outputStream.writeInt(compressedData.getCompressedByteCount());
+                    outputStream.writeLong(compressedData.getCompressedCrc32());
+                    compressedData.writeBytesTo(outputStream);
+                }
+
+                final java.nio.file.Path cachedFilePath = this.folderPath.resolve(cachedFileName);
+                try
+                {
+                    java.nio.file.Files.move(partialFilePath, cachedFilePath, java.nio.file.StandardCopyOption.ATOMIC_MOVE, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                }
+                catch (java.nio.file.AtomicMoveNotSupportedException e)
+                {
+                    java.nio.file.Files.move(partialFilePath, cachedFilePath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                }
+                partialFilePath = null;
+
+                synchronized (this)
+                {
+                    final Long previousByteCount = this.cachedFileByteCounts.put(cachedFileName, cachedFileByteCount);
+                    this.byteCount += cachedFileByteCount - (previousByteCount == null ? 0 : previousByteCount);
+                }
+            }
+            catch (java.io.IOException ignored)
+            {
+            }
+            finally
+            {
+                if (partialFilePath != null)
+                {
+                    try
+                    {
+                        java.nio.file.Files.deleteIfExists(partialFilePath);
+                    }
+                    catch (java.io.IOException ignored)
+                    {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the least recently used cached files until the cached files take no more than this
+     * cache's maximum number of bytes.
+     */
+    private void evict()
+    {
+        final java.util.List<String> evictedFileNames = new java.util.ArrayList<>();
+        synchronized (this)
+        {
+            final java.util.Iterator<java.util.Map.Entry<String,Long>> iterator = this.cachedFileByteCounts.entrySet().iterator();
+            while (this.maximumByteCount < this.byteCount && iterator.hasNext())
+            {
+                final java.util.Map.Entry<String,Long> leastRecentlyUsed = iterator.next();
+                iterator.remove();
+                this.byteCount -= leastRecentlyUsed.getValue();
+                ++this.evictionCount;
+                evictedFileNames.add(leastRecentlyUsed.getKey());
+            }
+        }
+
+        for (final String evictedFileName : evictedFileNames)
+        {
+            try
+            {
+                java.nio.file.Files.deleteIfExists(this.folderPath.resolve(evictedFileName));
+            }
+            catch (java.io.IOException ignored)
+            {
+            }
+        }
+    }
+}
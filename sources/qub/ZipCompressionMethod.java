@@ -0,0 +1,18 @@
+package qub;
+
+/**
+ * The ways that a zip entry's data can be compressed.
+ */
+public enum ZipCompressionMethod
+{
+    /**
+     * Store the entry's data without compressing it. This is the best choice for data that is
+     * already compressed, such as PNG and JPEG images or nested archives.
+     */
+    Stored,
+
+    /**
+     * Compress the entry's data with the DEFLATE algorithm.
+     */
+    Deflated,
+}
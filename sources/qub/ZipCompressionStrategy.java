@@ -0,0 +1,23 @@
+package qub;
+
+/**
+ * The strategies that the DEFLATE algorithm can use to compress a zip entry's data.
+ */
+public enum ZipCompressionStrategy
+{
+    /**
+     * The default strategy that works well for most data.
+     */
+    Default,
+
+    /**
+     * A strategy for data that is mostly small values with a somewhat random distribution. This
+     * favors Huffman coding over string matching.
+     */
+    Filtered,
+
+    /**
+     * Only use Huffman coding and skip string matching entirely.
+     */
+    HuffmanOnly,
+}
@@ -0,0 +1,232 @@
+package qub;
+
+/**
+ * The parameters that control how {@link ZipFile#createFrom(Folder, ZipCreateParameters)} packs
+ * a folder into a zip archive.
+ */
+public class ZipCreateParameters
+{
+    /**
+     * The default largest file that is read and compressed ahead of time on a worker thread.
+     */
+    public static final int defaultMaximumBufferedFileByteCount = 4 * 1024 * 1024;
+
+    private int threadCount;
+    private Integer maximumPendingFileCount;
+    private int maximumBufferedFileByteCount;
+    private ZipCompressionMethod compressionMethod;
+    private Integer compressionLevel;
+    private ZipCompressionStrategy compressionStrategy;
+    private ZipCompressedEntryCache compressedEntryCache;
+
+    private ZipCreateParameters()
+    {
+        this.threadCount = Runtime.getRuntime().availableProcessors();
+        this.maximumBufferedFileByteCount = ZipCreateParameters.defaultMaximumBufferedFileByteCount;
+    }
+
+    public static ZipCreateParameters create()
+    {
+        return new ZipCreateParameters();
+    }
+
+    /**
+     * Get the number of threads that files will be read and compressed on. By default this is
+     * the number of available processors.
+     */
+    public int getThreadCount()
+    {
+        return this.threadCount;
+    }
+
+    /**
+     * Set the number of threads that files will be read and compressed on.
+     * @param threadCount The number of threads to read and compress files on, or 1 to read and
+     * compress every file on the thread that writes the archive.
+     * @return This object for method chaining.
+     */
+    public ZipCreateParameters setThreadCount(int threadCount)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(threadCount, 1, "threadCount");
+
+        this.threadCount = threadCount;
+
+        return this;
+    }
+
+    /**
+     * Get the largest number of files that can be read and compressed ahead of the file that is
+     * being written to the archive. By default this is twice the thread count.
+     */
+    public int getMaximumPendingFileCount()
+    {
+        return this.maximumPendingFileCount != null
+            ? this.maximumPendingFileCount
+            : this.threadCount * 2;
+    }
+
+    /**
+     * Set the largest number of files that can be read and compressed ahead of the file that is
+     * being written to the archive.
+     * @param maximumPendingFileCount The largest number of files that can be compressed ahead.
+     * @return This object for method chaining.
+     */
+    public ZipCreateParameters setMaximumPendingFileCount(int maximumPendingFileCount)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(maximumPendingFileCount, 1, "maximumPendingFileCount");
+
+        this.maximumPendingFileCount = maximumPendingFileCount;
+
+        return this;
+    }
+
+    /**
+     * Get the largest file that will be read and compressed ahead of time on a worker thread.
+     * Larger files are streamed into the archive on the thread that writes the archive when
+     * their turn comes, so that they are never held in memory.
+     */
+    public int getMaximumBufferedFileByteCount()
+    {
+        return this.maximumBufferedFileByteCount;
+    }
+
+    /**
+     * Set the largest file that will be read and compressed ahead of time on a worker thread.
+     * @param maximumBufferedFileByteCount The largest number of bytes in a file that will be
+     * compressed ahead of time.
+     * @return This object for method chaining.
+     */
+    public ZipCreateParameters setMaximumBufferedFileByteCount(int maximumBufferedFileByteCount)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(maximumBufferedFileByteCount, 0, "maximumBufferedFileByteCount");
+
+        this.maximumBufferedFileByteCount = maximumBufferedFileByteCount;
+
+        return this;
+    }
+
+    /**
+     * Get the method that every file will be compressed with, or null if the files will use the
+     * default method.
+     */
+    public ZipCompressionMethod getCompressionMethod()
+    {
+        return this.compressionMethod;
+    }
+
+    /**
+     * Set the method that every file will be compressed with.
+     * @param compressionMethod The method that every file will be compressed with.
+     * @return This object for method chaining.
+     */
+    public ZipCreateParameters setCompressionMethod(ZipCompressionMethod compressionMethod)
+    {
+        PreCondition.assertNotNull(compressionMethod, "compressionMethod");
+
+        this.compressionMethod = compressionMethod;
+
+        return this;
+    }
+
+    /**
+     * Get the DEFLATE compression level of every file, or null if the files will use the default
+     * level.
+     */
+    public Integer getCompressionLevel()
+    {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Set the DEFLATE compression level of every file, from 0 (no compression) through 1
+     * (fastest) to 9 (smallest).
+     * @param compressionLevel The DEFLATE compression level of every file.
+     * @return This object for method chaining.
+     */
+    public ZipCreateParameters setCompressionLevel(int compressionLevel)
+    {
+        PreCondition.assertBetween(0, compressionLevel, 9, "compressionLevel");
+
+        this.compressionLevel = compressionLevel;
+
+        return this;
+    }
+
+    /**
+     * Get the DEFLATE strategy that every file will be compressed with, or null if the files
+     * will use the default strategy.
+     */
+    public ZipCompressionStrategy getCompressionStrategy()
+    {
+        return this.compressionStrategy;
+    }
+
+    /**
+     * Set the DEFLATE strategy that every file will be compressed with.
+     * @param compressionStrategy The DEFLATE strategy that every file will be compressed with.
+     * @return This object for method chaining.
+     */
+    public ZipCreateParameters setCompressionStrategy(ZipCompressionStrategy compressionStrategy)
+    {
+        PreCondition.assertNotNull(compressionStrategy, "compressionStrategy");
+
+        this.compressionStrategy = compressionStrategy;
+
+        return this;
+    }
+
+    /**
+     * Get the {@link ZipCompressedEntryCache} that files will get their compressed data from, or
+     * null if every file will be compressed.
+     */
+    public ZipCompressedEntryCache getCompressedEntryCache()
+    {
+        return this.compressedEntryCache;
+    }
+
+    /**
+     * Set the {@link ZipCompressedEntryCache} that files will get their compressed data from.
+     * Files whose contents haven't changed since they were cached are copied into the archive
+     * without being compressed again.
+     * @param compressedEntryCache The cache to use, or null to compress every file.
+     * @return This object for method chaining.
+     */
+    public ZipCreateParameters setCompressedEntryCache(ZipCompressedEntryCache compressedEntryCache)
+    {
+        this.compressedEntryCache = compressedEntryCache;
+
+        return this;
+    }
+
+    /**
+     * Create the {@link ZipEntryParameters} for the entry with the provided path and last
+     * modified time, using these parameters' compression values.
+     */
+    ZipEntryParameters createEntryParameters(String entryPath, DateTime lastModified)
+    {
+        return this.createCompressionParameters()
+            .setEntryPath(entryPath)
+            .setLastModified(lastModified);
+    }
+
+    /**
+     * Create {@link ZipEntryParameters} that only contain these parameters' compression values.
+     */
+    ZipEntryParameters createCompressionParameters()
+    {
+        final ZipEntryParameters result = ZipEntryParameters.create();
+        if (this.compressionMethod != null)
+        {
+            result.setCompressionMethod(this.compressionMethod);
+        }
+        if (this.compressionLevel != null)
+        {
+            result.setCompressionLevel(this.compressionLevel);
+        }
+        if (this.compressionStrategy != null)
+        {
+            result.setCompressionStrategy(this.compressionStrategy);
+        }
+        return result;
+    }
+}
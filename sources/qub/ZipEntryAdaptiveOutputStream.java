@@ -0,0 +1,214 @@
+package qub;
+
+/**
+ * A {@link ZipEntryOutputStream} that compresses a sample of an entry's data to decide whether
+ * the entry is worth compressing. Entries that are entirely contained in the sample and don't
+ * compress well are stored. Larger entries that don't compress well are written with DEFLATE
+ * level 0, which only wraps the data in stored deflate blocks, so that they can still be
+ * streamed without knowing their CRC-32 and size up front.
+ */
+public class ZipEntryAdaptiveOutputStream extends ZipEntryOutputStream
+{
+    /**
+     * The default number of bytes that are sampled from the start of each entry.
+     */
+    public static final int defaultSampleByteCount = 64 * 1024;
+
+    /**
+     * A sample must compress to less than this fraction of its size for the entry to be
+     * compressed.
+     */
+    public static final double maximumCompressedRatio = 0.9;
+
+    private final Function0<ZipEntryOutputStream> storedOutputStreamCreator;
+    private final Function1<Integer,ZipEntryOutputStream> deflatedOutputStreamCreator;
+    private final int compressionLevel;
+    private final int compressionStrategy;
+    private final ZipAdaptiveCompressionStatistics statistics;
+    private byte[] sample;
+    private int sampleLength;
+    private long sampleNanoseconds;
+    private boolean compressed;
+    private int compressionMethod;
+    private ZipEntryOutputStream innerStream;
+    private long entryByteCount;
+    private boolean finished;
+
+    private ZipEntryAdaptiveOutputStream(int sampleByteCount, int compressionLevel, int compressionStrategy, Function0<ZipEntryOutputStream> storedOutputStreamCreator, Function1<Integer,ZipEntryOutputStream> deflatedOutputStreamCreator, ZipAdaptiveCompressionStatistics statistics, ZipCodecPool codecPool)
+    {
+        super(codecPool);
+
+        PreCondition.assertGreaterThanOrEqualTo(sampleByteCount, 1, "sampleByteCount");
+        PreCondition.assertBetween(-1, compressionLevel, 9, "compressionLevel");
+        PreCondition.assertBetween(java.util.zip.Deflater.DEFAULT_STRATEGY, compressionStrategy, java.util.zip.Deflater.HUFFMAN_ONLY, "compressionStrategy");
+        PreCondition.assertNotNull(storedOutputStreamCreator, "storedOutputStreamCreator");
+        PreCondition.assertNotNull(deflatedOutputStreamCreator, "deflatedOutputStreamCreator");
+        PreCondition.assertNotNull(statistics, "statistics");
+
+        this.sample = new byte[sampleByteCount];
+        this.compressionLevel = compressionLevel;
+        this.compressionStrategy = compressionStrategy;
+        this.storedOutputStreamCreator = storedOutputStreamCreator;
+        this.deflatedOutputStreamCreator = deflatedOutputStreamCreator;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Create a new {@link ZipEntryAdaptiveOutputStream}.
+     * @param sampleByteCount The number of bytes to sample from the start of the entry.
+     * @param compressionLevel The deflate compression level that the entry will be compressed
+     * with if it compresses well, or -1 for the default level.
+     * @param compressionStrategy The {@link java.util.zip.Deflater} strategy to compress with.
+     * @param storedOutputStreamCreator The function that creates the stream that stores the
+     * entry.
+     * @param deflatedOutputStreamCreator The function that creates the stream that deflates the
+     * entry with the provided compression level.
+     * @param statistics The statistics to record this entry's decision in.
+     * @return The new {@link ZipEntryAdaptiveOutputStream}.
+     */
+    public static ZipEntryAdaptiveOutputStream create(int sampleByteCount, int compressionLevel, int compressionStrategy, Function0<ZipEntryOutputStream> storedOutputStreamCreator, Function1<Integer,ZipEntryOutputStream> deflatedOutputStreamCreator, ZipAdaptiveCompressionStatistics statistics)
+    {
+        return ZipEntryAdaptiveOutputStream.create(sampleByteCount, compressionLevel, compressionStrategy, storedOutputStreamCreator, deflatedOutputStreamCreator, statistics, ZipCodecPool.getDefault());
+    }
+
+    /**
+     * Create a new {@link ZipEntryAdaptiveOutputStream} that compresses its sample with a
+     * {@link java.util.zip.Deflater} from the provided {@link ZipCodecPool}.
+     * @param sampleByteCount The number of bytes to sample from the start of the entry.
+     * @param compressionLevel The deflate compression level that the entry will be compressed
+     * with if it compresses well, or -1 for the default level.
+     * @param compressionStrategy The {@link java.util.zip.Deflater} strategy to compress with.
+     * @param storedOutputStreamCreator The function that creates the stream that stores the
+     * entry.
+     * @param deflatedOutputStreamCreator The function that creates the stream that deflates the
+     * entry with the provided compression level.
+     * @param statistics The statistics to record this entry's decision in.
+     * @param codecPool The pool to get the sample's {@link java.util.zip.Deflater} from.
+     * @return The new {@link ZipEntryAdaptiveOutputStream}.
+     */
+    public static ZipEntryAdaptiveOutputStream create(int sampleByteCount, int compressionLevel, int compressionStrategy, Function0<ZipEntryOutputStream> storedOutputStreamCreator, Function1<Integer,ZipEntryOutputStream> deflatedOutputStreamCreator, ZipAdaptiveCompressionStatistics statistics, ZipCodecPool codecPool)
+    {
+        return new ZipEntryAdaptiveOutputStream(sampleByteCount, compressionLevel, compressionStrategy, storedOutputStreamCreator, deflatedOutputStreamCreator, statistics, codecPool);
+    }
+
+    @Override
+    public void write(byte[] bytes, int startIndex, int length)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertStartIndex(startIndex, bytes.length);
+        PreCondition.assertLength(length, startIndex, bytes.length);
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        this.entryByteCount += length;
+
+        if (this.innerStream == null)
+        {
+            final int bytesToSample = Math.min(length, this.sample.length - this.sampleLength);
+            System.arraycopy(bytes, startIndex, this.sample, this.sampleLength, bytesToSample);
+            this.sampleLength += bytesToSample;
+            startIndex += bytesToSample;
+            length -= bytesToSample;
+
+            if (length > 0)
+            {
+                this.createInnerStream(false);
+            }
+        }
+
+        if (length > 0)
+        {
+            this.writeInner(bytes, startIndex, length);
+        }
+    }
+
+    private void writeInner(byte[] bytes, int startIndex, int length)
+    {
+        try
+        {
+            this.innerStream.write(bytes, startIndex, length);
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    private void createInnerStream(boolean entryIsComplete)
+    {
+        final long sampleStartNanoseconds = System.nanoTime();
+        final boolean compresses = this.sampleLength > 0 &&
+            ZipEntryAdaptiveOutputStream.getDeflatedByteCount(this.getCodecPool(), this.sample, this.sampleLength, this.compressionLevel, this.compressionStrategy) < this.sampleLength * ZipEntryAdaptiveOutputStream.maximumCompressedRatio;
+        this.sampleNanoseconds = System.nanoTime() - sampleStartNanoseconds;
+
+        this.compressed = compresses;
+        if (compresses)
+        {
+            this.compressionMethod = ZipFormat.deflatedCompressionMethod;
+            this.innerStream = this.deflatedOutputStreamCreator.run(this.compressionLevel);
+        }
+        else if (entryIsComplete)
+        {
+            this.compressionMethod = ZipFormat.storedCompressionMethod;
+            this.innerStream = this.storedOutputStreamCreator.run();
+        }
+        else
+        {
+            this.compressionMethod = ZipFormat.deflatedCompressionMethod;
+            this.innerStream = this.deflatedOutputStreamCreator.run(java.util.zip.Deflater.NO_COMPRESSION);
+        }
+        this.innerStream.addCodecNanoseconds(this.sampleNanoseconds);
+
+        if (this.sampleLength > 0)
+        {
+            this.writeInner(this.sample, 0, this.sampleLength);
+        }
+        this.sample = null;
+    }
+
+    private static long getDeflatedByteCount(ZipCodecPool codecPool, byte[] bytes, int length, int compressionLevel, int compressionStrategy)
+    {
+        final java.util.zip.Deflater deflater = codecPool.acquireDeflater(compressionLevel, compressionStrategy);
+        final byte[] outputBuffer = codecPool.acquireBuffer();
+        try
+        {
+            deflater.setInput(bytes, 0, length);
+            deflater.finish();
+
+            while (!deflater.finished())
+            {
+                deflater.deflate(outputBuffer);
+            }
+            return deflater.getBytesWritten();
+        }
+        finally
+        {
+            codecPool.releaseDeflater(deflater);
+            codecPool.releaseBuffer(outputBuffer);
+        }
+    }
+
+    @Override
+    public void finish()
+    {
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        this.finished = true;
+
+        if (this.innerStream == null)
+        {
+            this.createInnerStream(true);
+        }
+        this.innerStream.finish();
+
+        this.statistics.addEntry(this.compressed, this.compressionMethod, this.entryByteCount, this.sampleLength, this.sampleNanoseconds);
+    }
+
+    @Override
+    public void close() throws java.io.IOException
+    {
+        if (this.innerStream != null)
+        {
+            this.innerStream.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package qub;
+
+/**
+ * A {@link java.io.InputStream} that checks the uncompressed data of a zip entry against the
+ * CRC-32 and uncompressed size in the entry's central directory record. The check happens when
+ * the end of the entry's data is reached, and a mismatch throws a {@link ZipFormatException}
+ * instead of letting corrupted data be read as if it were good.
+ */
+public class ZipEntryCheckedInputStream extends java.io.InputStream
+{
+    private final java.io.InputStream entryInputStream;
+    private final String entryName;
+    private final long expectedCrc32;
+    private final long expectedByteCount;
+    private final java.util.zip.CRC32 crc32;
+    private final byte[] singleByte;
+    private long byteCount;
+    private boolean checked;
+
+    private ZipEntryCheckedInputStream(java.io.InputStream entryInputStream, String entryName, long expectedCrc32, long expectedByteCount)
+    {
+        PreCondition.assertNotNull(entryInputStream, "entryInputStream");
+        PreCondition.assertNotNull(entryName, "entryName");
+        PreCondition.assertGreaterThanOrEqualTo(expectedByteCount, 0, "expectedByteCount");
+
+        this.entryInputStream = entryInputStream;
+        this.entryName = entryName;
+        this.expectedCrc32 = expectedCrc32;
+        this.expectedByteCount = expectedByteCount;
+        this.crc32 = new java.util.zip.CRC32();
+        this.singleByte = new byte[1];
+    }
+
+    /**
+     * Create a new {@link ZipEntryCheckedInputStream} that checks the data that is read from the
+     * provided stream against the provided entry's CRC-32 and uncompressed size.
+     * @param entryInputStream The stream that reads the entry's uncompressed data from its start.
+     * It will be closed when the returned stream is closed.
+     * @param entry The entry whose data is read.
+     * @return The new {@link ZipEntryCheckedInputStream}.
+     */
+    public static ZipEntryCheckedInputStream create(java.io.InputStream entryInputStream, ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+
+        return new ZipEntryCheckedInputStream(entryInputStream, entry.getName(), entry.getCrc32(), entry.getUncompressedByteCount());
+    }
+
+    /**
+     * Get the stream that this stream checks the data of.
+     */
+    java.io.InputStream getEntryInputStream()
+    {
+        return this.entryInputStream;
+    }
+
+    @Override
+    public int read() throws java.io.IOException
+    {
+        final int readResult = this.read(this.singleByte, 0, 1);
+        return readResult <= 0 ? -1 : (this.singleByte[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] outputBytes, int startIndex, int length) throws java.io.IOException
+    {
+        final int result = this.entryInputStream.read(outputBytes, startIndex, length);
+        if (result > 0)
+        {
+            this.crc32.update(outputBytes, startIndex, result);
+            this.byteCount += result;
+            if (this.expectedByteCount < this.byteCount)
+            {
+                throw new ZipFormatException("The zip entry " + this.entryName + " contains more than the " + this.expectedByteCount + " bytes that its central directory record lists.");
+            }
+        }
+        else if (result < 0 && !this.checked)
+        {
+            this.checked = true;
+            if (this.byteCount != this.expectedByteCount)
+            {
+                throw new ZipFormatException("The zip entry " + this.entryName + " contains " + this.byteCount + " bytes, but its central directory record lists " + this.expectedByteCount + " bytes.");
+            }
+            if (this.crc32.getValue() != this.expectedCrc32)
+            {
+                throw new ZipFormatException("The zip entry " + this.entryName + " has a CRC-32 of " + Long.toHexString(this.crc32.getValue()) + ", but its central directory record lists " + Long.toHexString(this.expectedCrc32) + ".");
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int available() throws java.io.IOException
+    {
+        return this.entryInputStream.available();
+    }
+
+    @Override
+    public void close() throws java.io.IOException
+    {
+        this.entryInputStream.close();
+    }
+}
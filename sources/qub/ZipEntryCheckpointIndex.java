@@ -0,0 +1,490 @@
+package qub;
+
+/**
+ * An index of the points in a deflated zip entry where inflating can start without inflating
+ * the data that comes before them. Each checkpoint records an offset into the entry's deflated
+ * data, the matching offset into the entry's uncompressed data, and the 32 KiB of uncompressed
+ * data that come before it, which the blocks after the checkpoint may refer back to.
+ * <p>
+ * {@link java.util.zip.Inflater} can only start inflating on a byte boundary, so checkpoints are
+ * only placed where the deflated data was flushed with {@link java.util.zip.Deflater#SYNC_FLUSH}
+ * or {@link java.util.zip.Deflater#FULL_FLUSH}, which ends with the empty stored block
+ * 00 00 FF FF. Entries that are written with parallel compression are flushed this way after
+ * every block, and entries that this library deflates in one pass are flushed this way every
+ * {@link #defaultCheckpointSpacing} uncompressed bytes. Entries from other zip writers usually
+ * aren't flushed at all, so their indexes don't have any checkpoints and seeking in them still
+ * inflates the entry from its start. Building the index of such an entry only scans its deflated
+ * data for markers instead of inflating it, and the index without checkpoints is kept like any
+ * other index so that the scan isn't repeated.
+ */
+public class ZipEntryCheckpointIndex
+{
+    /**
+     * The default minimum number of uncompressed bytes between checkpoints.
+     */
+    public static final long defaultCheckpointSpacing = 8 * 1024 * 1024;
+
+    /**
+     * The number of uncompressed bytes that a deflate block can refer back to.
+     */
+    private static final int windowByteCount = 32 * 1024;
+
+    /**
+     * The number of uncompressed bytes that are inflated from a possible checkpoint and compared
+     * against the entry's data before the checkpoint is accepted.
+     */
+    private static final int verifiedByteCount = 4 * 1024;
+
+    private static final int signature = 0x5844495a;
+    private static final int version = 1;
+
+    private final long crc32;
+    private final long compressedByteCount;
+    private final long uncompressedByteCount;
+    private final long[] compressedOffsets;
+    private final long[] uncompressedOffsets;
+    private final byte[][] windows;
+
+    private ZipEntryCheckpointIndex(long crc32, long compressedByteCount, long uncompressedByteCount, long[] compressedOffsets, long[] uncompressedOffsets, byte[][] windows)
+    {
+        this.crc32 = crc32;
+        this.compressedByteCount = compressedByteCount;
+        this.uncompressedByteCount = uncompressedByteCount;
+        this.compressedOffsets = compressedOffsets;
+        this.uncompressedOffsets = uncompressedOffsets;
+        this.windows = windows;
+    }
+
+    /**
+     * Build the checkpoint index of the provided entry with the default checkpoint spacing. See
+     * {@link #build(ZipReader, ZipCentralDirectoryEntry, long)}.
+     * @param reader The {@link ZipReader} that contains the entry.
+     * @param entry The deflated entry to index.
+     * @return The entry's checkpoint index.
+     */
+    public static ZipEntryCheckpointIndex build(ZipReader reader, ZipCentralDirectoryEntry entry)
+    {
+        return ZipEntryCheckpointIndex.build(reader, entry, ZipEntryCheckpointIndex.defaultCheckpointSpacing);
+    }
+
+    /**
+     * Build the checkpoint index of the provided entry by inflating all of its data once. Every
+     * possible checkpoint is checked by inflating some of the data after it with a second
+     * {@link java.util.zip.Inflater}, because the bytes 00 00 FF FF can also appear inside of a
+     * deflate block by chance. If the entry's deflated data doesn't contain 00 00 FF FF at all,
+     * then it isn't inflated and the index doesn't have any checkpoints.
+     * @param reader The {@link ZipReader} that contains the entry.
+     * @param entry The deflated entry to index.
+     * @param checkpointSpacing The minimum number of uncompressed bytes between checkpoints.
+     * @return The entry's checkpoint index.
+     */
+    public static ZipEntryCheckpointIndex build(ZipReader reader, ZipCentralDirectoryEntry entry, long checkpointSpacing)
+    {
+        PreCondition.assertNotNull(reader, "reader");
+        PreCondition.assertNotDisposed(reader, "reader");
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertTrue(entry.getCompressionMethod() == ZipFormat.deflatedCompressionMethod, "entry.getCompressionMethod() == ZipFormat.deflatedCompressionMethod");
+        PreCondition.assertGreaterThanOrEqualTo(checkpointSpacing, 1, "checkpointSpacing");
+
+        final java.util.List<Long> compressedOffsets = new java.util.ArrayList<>();
+        final java.util.List<Long> uncompressedOffsets = new java.util.ArrayList<>();
+        final java.util.List<byte[]> windows = new java.util.ArrayList<>();
+        if (ZipEntryCheckpointIndex.containsMarker(reader, entry))
+        {
+            ZipEntryCheckpointIndex.findCheckpoints(reader, entry, checkpointSpacing, compressedOffsets, uncompressedOffsets, windows);
+        }
+
+        final int checkpointCount = compressedOffsets.size();
+        final long[] compressedOffsetArray = new long[checkpointCount];
+        final long[] uncompressedOffsetArray = new long[checkpointCount];
+        for (int i = 0; i < checkpointCount; ++i)
+        {
+            compressedOffsetArray[i] = compressedOffsets.get(i);
+            uncompressedOffsetArray[i] = uncompressedOffsets.get(i);
+        }
+        return new ZipEntryCheckpointIndex(
+            entry.getCrc32(),
+            entry.getCompressedByteCount(),
+            entry.getUncompressedByteCount(),
+            compressedOffsetArray,
+            uncompressedOffsetArray,
+            windows.toArray(new byte[checkpointCount][]));
+    }
+
+    /**
+     * Get whether the deflated data of the provided entry contains the sync flush marker
+     * 00 00 FF FF anywhere. This only reads the deflated data, which is much cheaper than
+     * inflating it.
+     */
+    private static boolean containsMarker(ZipReader reader, ZipCentralDirectoryEntry entry)
+    {
+        final ZipCodecPool codecPool = reader.getCodecPool();
+        final byte[] inputBuffer = codecPool.acquireBuffer();
+        try (final java.io.InputStream compressedInputStream = reader.getEntryCompressedInputStream(entry))
+        {
+            boolean result = false;
+            int markerByteCount = 0;
+            int inputCount = compressedInputStream.read(inputBuffer, 0, inputBuffer.length);
+            while (inputCount > 0 && !result)
+            {
+                for (int i = 0; i < inputCount && !result; ++i)
+                {
+                    markerByteCount = ZipEntryCheckpointIndex.getMarkerByteCount(markerByteCount, inputBuffer[i] & 0xFF);
+                    result = (markerByteCount == 4);
+                }
+                inputCount = compressedInputStream.read(inputBuffer, 0, inputBuffer.length);
+            }
+            return result;
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+        finally
+        {
+            codecPool.releaseBuffer(inputBuffer);
+        }
+    }
+
+    /**
+     * Inflate all of the provided entry's data and add the checkpoints that are found to the
+     * provided lists.
+     */
+    private static void findCheckpoints(ZipReader reader, ZipCentralDirectoryEntry entry, long checkpointSpacing, java.util.List<Long> compressedOffsets, java.util.List<Long> uncompressedOffsets, java.util.List<byte[]> windows)
+    {
+        final ZipCodecPool codecPool = reader.getCodecPool();
+        final java.util.zip.Inflater inflater = codecPool.acquireInflater();
+        final byte[] inputBuffer = codecPool.acquireBuffer();
+        final byte[] outputBuffer = codecPool.acquireBuffer();
+        final byte[] verifierOutputBuffer = codecPool.acquireBuffer();
+        final byte[] window = new byte[ZipEntryCheckpointIndex.windowByteCount];
+        java.util.zip.Inflater verifier = null;
+        long verifierCompressedOffset = 0;
+        long verifierUncompressedOffset = 0;
+        byte[] verifierWindow = null;
+        long verifiedCount = 0;
+        try (final java.io.InputStream compressedInputStream = reader.getEntryCompressedInputStream(entry))
+        {
+            long compressedOffset = 0;
+            long uncompressedOffset = 0;
+            long nextCheckpointOffset = checkpointSpacing;
+            int markerByteCount = 0;
+            int inputCount = compressedInputStream.read(inputBuffer, 0, inputBuffer.length);
+            while (inputCount > 0 && !inflater.finished())
+            {
+                int segmentStart = 0;
+                while (segmentStart < inputCount && !inflater.finished())
+                {
+                    // Each segment of the input ends either at the end of the buffer or right
+                    // after a possible sync flush marker, so that the inflater's state can be
+                    // captured at the marker.
+                    int segmentEnd = segmentStart;
+                    boolean endsWithMarker = false;
+                    while (segmentEnd < inputCount && !endsWithMarker)
+                    {
+                        final int inputByte = inputBuffer[segmentEnd++] & 0xFF;
+                        markerByteCount = ZipEntryCheckpointIndex.getMarkerByteCount(markerByteCount, inputByte);
+                        endsWithMarker = (markerByteCount == 4);
+                    }
+
+                    inflater.setInput(inputBuffer, segmentStart, segmentEnd - segmentStart);
+                    if (verifier != null)
+                    {
+                        verifier.setInput(inputBuffer, segmentStart, segmentEnd - segmentStart);
+                    }
+                    while (!inflater.finished() && !inflater.needsInput())
+                    {
+                        final int outputCount = inflater.inflate(outputBuffer, 0, outputBuffer.length);
+                        if (outputCount == 0 && inflater.needsDictionary())
+                        {
+                            throw new ZipFormatException("The deflated data of " + entry.getName() + " requires a preset dictionary.");
+                        }
+                        ZipEntryCheckpointIndex.updateWindow(window, uncompressedOffset, outputBuffer, outputCount);
+                        uncompressedOffset += outputCount;
+
+                        if (verifier != null && outputCount > 0)
+                        {
+                            boolean matches = true;
+                            try
+                            {
+                                int verifierCount = 0;
+                                while (matches && verifierCount < outputCount)
+                                {
+                                    final int count = verifier.inflate(verifierOutputBuffer, verifierCount, outputCount - verifierCount);
+                                    matches = count > 0 && java.util.Arrays.equals(
+                                        verifierOutputBuffer, verifierCount, verifierCount + count,
+                                        outputBuffer, verifierCount, verifierCount + count);
+                                    verifierCount += count;
+                                }
+                            }
+                            catch (java.util.zip.DataFormatException e)
+                            {
+                                matches = false;
+                            }
+                            verifiedCount += outputCount;
+
+                            if (!matches || ZipEntryCheckpointIndex.verifiedByteCount <= verifiedCount)
+                            {
+                                if (matches)
+                                {
+                                    compressedOffsets.add(verifierCompressedOffset);
+                                    uncompressedOffsets.add(verifierUncompressedOffset);
+                                    windows.add(verifierWindow);
+                                    nextCheckpointOffset = verifierUncompressedOffset + checkpointSpacing;
+                                }
+                                codecPool.releaseInflater(verifier);
+                                verifier = null;
+                            }
+                        }
+                    }
+
+                    compressedOffset += segmentEnd - segmentStart;
+                    segmentStart = segmentEnd;
+
+                    if (endsWithMarker && verifier == null && nextCheckpointOffset <= uncompressedOffset && !inflater.finished() &&
+                        compressedOffset < entry.getCompressedByteCount())
+                    {
+                        verifierCompressedOffset = compressedOffset;
+                        verifierUncompressedOffset = uncompressedOffset;
+                        verifierWindow = ZipEntryCheckpointIndex.getWindow(window, uncompressedOffset);
+                        verifiedCount = 0;
+                        verifier = codecPool.acquireInflater();
+                        verifier.setDictionary(verifierWindow);
+                    }
+                }
+                inputCount = compressedInputStream.read(inputBuffer, 0, inputBuffer.length);
+            }
+
+            if (!inflater.finished())
+            {
+                throw new ZipFormatException("The deflated data of " + entry.getName() + " ended unexpectedly.");
+            }
+        }
+        catch (java.io.IOException | java.util.zip.DataFormatException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+        finally
+        {
+            if (verifier != null)
+            {
+                codecPool.releaseInflater(verifier);
+            }
+            codecPool.releaseInflater(inflater);
+            codecPool.releaseBuffer(inputBuffer);
+            codecPool.releaseBuffer(outputBuffer);
+            codecPool.releaseBuffer(verifierOutputBuffer);
+        }
+
+    }
+
+    /**
+     * Get the number of bytes of the sync flush marker 00 00 FF FF that have been matched after
+     * the provided byte.
+     */
+    private static int getMarkerByteCount(int markerByteCount, int inputByte)
+    {
+        final int result;
+        switch (markerByteCount)
+        {
+            case 0:
+            case 4:
+                result = inputByte == 0x00 ? 1 : 0;
+                break;
+
+            case 1:
+                result = inputByte == 0x00 ? 2 : 0;
+                break;
+
+            case 2:
+                result = inputByte == 0xFF ? 3 : (inputByte == 0x00 ? 2 : 0);
+                break;
+
+            default:
+                result = inputByte == 0xFF ? 4 : (inputByte == 0x00 ? 1 : 0);
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Copy the provided output bytes into the circular window that holds the last 32 KiB of
+     * uncompressed data.
+     */
+    private static void updateWindow(byte[] window, long uncompressedOffset, byte[] outputBytes, int outputCount)
+    {
+        final int skippedCount = Math.max(0, outputCount - window.length);
+        long windowOffset = uncompressedOffset + skippedCount;
+        int outputIndex = skippedCount;
+        while (outputIndex < outputCount)
+        {
+            final int windowIndex = (int)(windowOffset % window.length);
+            final int count = Math.min(outputCount - outputIndex, window.length - windowIndex);
+            System.arraycopy(outputBytes, outputIndex, window, windowIndex, count);
+            outputIndex += count;
+            windowOffset += count;
+        }
+    }
+
+    /**
+     * Get the uncompressed bytes in the circular window in order, ending at the provided offset.
+     */
+    private static byte[] getWindow(byte[] window, long uncompressedOffset)
+    {
+        final int resultLength = (int)Math.min(window.length, uncompressedOffset);
+        final byte[] result = new byte[resultLength];
+        final int startIndex = (int)((uncompressedOffset - resultLength) % window.length);
+        final int firstCount = Math.min(resultLength, window.length - startIndex);
+        System.arraycopy(window, startIndex, result, 0, firstCount);
+        System.arraycopy(window, 0, result, firstCount, resultLength - firstCount);
+        return result;
+    }
+
+    /**
+     * Read a checkpoint index that was written with {@link #writeTo(java.io.OutputStream)}.
+     * @param inputStream The stream to read the index from.
+     * @return The checkpoint index.
+     */
+    public static ZipEntryCheckpointIndex read(java.io.InputStream inputStream)
+    {
+        PreCondition.assertNotNull(inputStream, "inputStream");
+
+        try
+        {
+            final java.io.DataInputStream dataInputStream = new java.io.DataInputStream(new java.io.BufferedInputStream(inputStream));
+            if (dataInputStream.readInt() != ZipEntryCheckpointIndex.signature || dataInputStream.readInt() != ZipEntryCheckpointIndex.version)
+            {
+                throw new ZipFormatException("The stream doesn't contain a zip entry checkpoint index.");
+            }
+
+            final long crc32 = dataInputStream.readLong();
+            final long compressedByteCount = dataInputStream.readLong();
+            final long uncompressedByteCount = dataInputStream.readLong();
+            final int checkpointCount = dataInputStream.readInt();
+            if (checkpointCount < 0)
+            {
+                throw new ZipFormatException("The checkpoint index has a negative checkpoint count.");
+            }
+
+            final long[] compressedOffsets = new long[checkpointCount];
+            final long[] uncompressedOffsets = new long[checkpointCount];
+            final byte[][] windows = new byte[checkpointCount][];
+            for (int i = 0; i < checkpointCount; ++i)
+            {
+                compressedOffsets[i] = dataInputStream.readLong();
+                uncompressedOffsets[i] = dataInputStream.readLong();
+                final int windowLength = dataInputStream.readInt();
+                if (windowLength < 0 || ZipEntryCheckpointIndex.windowByteCount < windowLength ||
+                    compressedOffsets[i] < 0 || compressedByteCount < compressedOffsets[i] ||
+                    uncompressedOffsets[i] < 0 || uncompressedByteCount < uncompressedOffsets[i])
+                {
+                    throw new ZipFormatException("The checkpoint index contains an invalid checkpoint.");
+                }
+                windows[i] = new byte[windowLength];
+                dataInputStream.readFully(windows[i]);
+            }
+            return new ZipEntryCheckpointIndex(crc32, compressedByteCount, uncompressedByteCount, compressedOffsets, uncompressedOffsets, windows);
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    /**
+     * Write this checkpoint index to the provided {@link java.io.OutputStream}.
+     * @param outputStream The stream to write to. It is not closed.
+     */
+    public void writeTo(java.io.OutputStream outputStream)
+    {
+        PreCondition.assertNotNull(outputStream, "outputStream");
+
+        try
+        {
+            final java.io.DataOutputStream dataOutputStream = new java.io.DataOutputStream(new java.io.BufferedOutputStream(outputStream));
+            dataOutputStream.writeInt(ZipEntryCheckpointIndex.signature);
+            dataOutputStream.writeInt(ZipEntryCheckpointIndex.version);
+            dataOutputStream.writeLong(this.crc32);
+            dataOutputStream.writeLong(this.compressedByteCount);
+            dataOutputStream.writeLong(this.uncompressedByteCount);
+            dataOutputStream.writeInt(this.windows.length);
+            for (int i = 0; i < this.windows.length; ++i)
+            {
+                dataOutputStream.writeLong(this.compressedOffsets[i]);
+                dataOutputStream.writeLong(this.uncompressedOffsets[i]);
+                dataOutputStream.writeInt(this.windows[i].length);
+                dataOutputStream.write(this.windows[i]);
+            }
+            dataOutputStream.flush();
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    /**
+     * Get whether this checkpoint index was built from the provided entry. Entries are compared
+     * by their CRC-32 and sizes.
+     * @param entry The entry to compare against.
+     */
+    public boolean isIndexOf(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+
+        return this.crc32 == entry.getCrc32() &&
+            this.compressedByteCount == entry.getCompressedByteCount() &&
+            this.uncompressedByteCount == entry.getUncompressedByteCount();
+    }
+
+    /**
+     * Get the number of checkpoints in this index.
+     */
+    public int getCheckpointCount()
+    {
+        return this.windows.length;
+    }
+
+    /**
+     * Get the offset into the entry's deflated data of the checkpoint at the provided index.
+     * @param checkpointIndex The index of the checkpoint.
+     */
+    public long getCompressedOffset(int checkpointIndex)
+    {
+        PreCondition.assertBetween(0, checkpointIndex, this.getCheckpointCount() - 1, "checkpointIndex");
+
+        return this.compressedOffsets[checkpointIndex];
+    }
+
+    /**
+     * Get the offset into the entry's uncompressed data of the checkpoint at the provided index.
+     * @param checkpointIndex The index of the checkpoint.
+     */
+    public long getUncompressedOffset(int checkpointIndex)
+    {
+        PreCondition.assertBetween(0, checkpointIndex, this.getCheckpointCount() - 1, "checkpointIndex");
+
+        return this.uncompressedOffsets[checkpointIndex];
+    }
+
+    /**
+     * Get the uncompressed bytes that come right before the checkpoint at the provided index.
+     */
+    byte[] getWindow(int checkpointIndex)
+    {
+        return this.windows[checkpointIndex];
+    }
+
+    /**
+     * Get the index of the last checkpoint that is at or before the provided offset into the
+     * entry's uncompressed data, or -1 if there is no such checkpoint.
+     * @param uncompressedOffset The offset into the entry's uncompressed data.
+     */
+    public int findCheckpoint(long uncompressedOffset)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(uncompressedOffset, 0, "uncompressedOffset");
+
+        final int searchResult = java.util.Arrays.binarySearch(this.uncompressedOffsets, uncompressedOffset);
+        return searchResult >= 0 ? searchResult : -searchResult - 2;
+    }
+}
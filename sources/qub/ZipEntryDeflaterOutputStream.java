@@ -0,0 +1,218 @@
+package qub;
+
+/**
+ * A {@link ZipEntryOutputStream} that deflates an entry's data on the calling thread as it is
+ * written. The deflated data is flushed with {@link java.util.zip.Deflater#SYNC_FLUSH} every
+ * {@link ZipEntryCheckpointIndex#defaultCheckpointSpacing} uncompressed bytes, so that a
+ * {@link ZipEntryCheckpointIndex} can place checkpoints in large entries.
+ */
+public class ZipEntryDeflaterOutputStream extends ZipEntryOutputStream
+{
+    private final ZipArchiveOutputStream archiveOutputStream;
+    private final ZipCentralDirectoryEntry localFileHeader;
+    private final long localFileHeaderOffset;
+    private final java.util.zip.Deflater deflater;
+    private final java.util.zip.CRC32 crc32;
+    private final byte[] outputBuffer;
+    private long uncompressedByteCount;
+    private long nextFlushByteCount;
+    private long compressedByteCount;
+    private boolean finished;
+
+    private ZipEntryDeflaterOutputStream(ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader, int compressionLevel, int compressionStrategy, ZipCodecPool codecPool)
+    {
+        super(codecPool);
+
+        PreCondition.assertNotNull(archiveOutputStream, "archiveOutputStream");
+        PreCondition.assertNotNull(localFileHeader, "localFileHeader");
+        PreCondition.assertBetween(-1, compressionLevel, 9, "compressionLevel");
+        PreCondition.assertBetween(java.util.zip.Deflater.DEFAULT_STRATEGY, compressionStrategy, java.util.zip.Deflater.HUFFMAN_ONLY, "compressionStrategy");
+
+        this.archiveOutputStream = archiveOutputStream;
+        this.localFileHeader = localFileHeader;
+        this.localFileHeaderOffset = archiveOutputStream.getPosition();
+        this.deflater = codecPool.acquireDeflater(compressionLevel, compressionStrategy);
+        this.crc32 = new java.util.zip.CRC32();
+        this.outputBuffer = codecPool.acquireBuffer();
+        this.nextFlushByteCount = ZipEntryCheckpointIndex.defaultCheckpointSpacing;
+
+        archiveOutputStream.writeLocalFileHeader(localFileHeader);
+    }
+
+    /**
+     * Write the local file header for the provided entry and create a
+     * {@link ZipEntryDeflaterOutputStream} that will deflate the entry's data into the provided
+     * {@link ZipArchiveOutputStream}.
+     * @param archiveOutputStream The stream to write the entry to.
+     * @param localFileHeader The entry's local file header. Its flags must include
+     * {@link ZipFormat#dataDescriptorFlag}.
+     * @param compressionLevel The deflate compression level, or -1 for the default level.
+     * @param compressionStrategy The {@link java.util.zip.Deflater} strategy to compress with.
+     * @return The new {@link ZipEntryDeflaterOutputStream}.
+     */
+    public static ZipEntryDeflaterOutputStream create(ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader, int compressionLevel, int compressionStrategy)
+    {
+        return ZipEntryDeflaterOutputStream.create(archiveOutputStream, localFileHeader, compressionLevel, compressionStrategy, ZipCodecPool.getDefault());
+    }
+
+    /**
+     * Write the local file header for the provided entry and create a
+     * {@link ZipEntryDeflaterOutputStream} that gets its {@link java.util.zip.Deflater} and output
+     * buffer from the provided {@link ZipCodecPool} and gives them back when it is finished.
+     * @param archiveOutputStream The stream to write the entry to.
+     * @param localFileHeader The entry's local file header. Its flags must include
+     * {@link ZipFormat#dataDescriptorFlag}.
+     * @param compressionLevel The deflate compression level, or -1 for the default level.
+     * @param compressionStrategy The {@link java.util.zip.Deflater} strategy to compress with.
+     * @param codecPool The pool to get the {@link java.util.zip.Deflater} and output buffer from.
+     * @return The new {@link ZipEntryDeflaterOutputStream}.
+     */
+    public static ZipEntryDeflaterOutputStream create(ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader, int compressionLevel, int compressionStrategy, ZipCodecPool codecPool)
+    {
+        return new ZipEntryDeflaterOutputStream(archiveOutputStream, localFileHeader, compressionLevel, compressionStrategy, codecPool);
+    }
+
+    @Override
+    public void write(byte[] bytes, int startIndex, int length)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertStartIndex(startIndex, bytes.length);
+        PreCondition.assertLength(length, startIndex, bytes.length);
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        while (length > 0)
+        {
+            final int chunkLength = this.getChunkLength(length);
+            this.crc32.update(bytes, startIndex, chunkLength);
+            this.uncompressedByteCount += chunkLength;
+
+            this.deflater.setInput(bytes, startIndex, chunkLength);
+            while (!this.deflater.needsInput())
+            {
+                this.deflate(java.util.zip.Deflater.NO_FLUSH);
+            }
+            this.flushIfNeeded();
+
+            startIndex += chunkLength;
+            length -= chunkLength;
+        }
+    }
+
+    /**
+     * Deflate the remaining bytes of the provided {@link java.nio.ByteBuffer} without copying
+     * them, which lets memory-mapped files be compressed straight from the mapping.
+     * @param bytes The bytes to write.
+     */
+    @Override
+    public void write(java.nio.ByteBuffer bytes)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        while (bytes.hasRemaining())
+        {
+            // The Deflater holds on to its input, so it gets its own view of each chunk.
+            final int chunkLength = this.getChunkLength(bytes.remaining());
+            final java.nio.ByteBuffer chunk = bytes.duplicate();
+            chunk.limit(chunk.position() + chunkLength);
+            bytes.position(bytes.position() + chunkLength);
+
+            final int chunkPosition = chunk.position();
+            this.crc32.update(chunk);
+            chunk.position(chunkPosition);
+            this.uncompressedByteCount += chunkLength;
+
+            this.deflater.setInput(chunk);
+            while (!this.deflater.needsInput())
+            {
+                this.deflate(java.util.zip.Deflater.NO_FLUSH);
+            }
+            this.flushIfNeeded();
+        }
+    }
+
+    /**
+     * Get how many of the provided number of bytes can be deflated before the next sync flush.
+     */
+    private int getChunkLength(int length)
+    {
+        return (int)Math.min(length, this.nextFlushByteCount - this.uncompressedByteCount);
+    }
+
+    /**
+     * Flush the deflated data with {@link java.util.zip.Deflater#SYNC_FLUSH} if enough bytes have
+     * been deflated since the last flush. The flush ends with the byte-aligned marker
+     * 00 00 FF FF, which is where {@link ZipEntryCheckpointIndex} places checkpoints.
+     */
+    private void flushIfNeeded()
+    {
+        if (this.uncompressedByteCount == this.nextFlushByteCount)
+        {
+            // A flush is only complete once it doesn't fill the output buffer.
+            int byteCount;
+            do
+            {
+                byteCount = this.deflate(java.util.zip.Deflater.SYNC_FLUSH);
+            }
+            while (byteCount == this.outputBuffer.length);
+            this.nextFlushByteCount += ZipEntryCheckpointIndex.defaultCheckpointSpacing;
+        }
+    }
+
+    private int deflate(int flushMode)
+    {
+        final int byteCount;
+        if (this.isMeasuringCodecDuration())
+        {
+            final long startNanoseconds = System.nanoTime();
+            byteCount = this.deflater.deflate(this.outputBuffer, 0, this.outputBuffer.length, flushMode);
+            this.addCodecNanoseconds(System.nanoTime() - startNanoseconds);
+        }
+        else
+        {
+            byteCount = this.deflater.deflate(this.outputBuffer, 0, this.outputBuffer.length, flushMode);
+        }
+        if (byteCount > 0)
+        {
+            this.archiveOutputStream.writeData(this.outputBuffer, 0, byteCount);
+            this.compressedByteCount += byteCount;
+        }
+        return byteCount;
+    }
+
+    @Override
+    public void finish()
+    {
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        this.finished = true;
+        try
+        {
+            this.deflater.finish();
+            while (!this.deflater.finished())
+            {
+                this.deflate(java.util.zip.Deflater.NO_FLUSH);
+            }
+        }
+        finally
+        {
+            this.getCodecPool().releaseDeflater(this.deflater);
+            this.getCodecPool().releaseBuffer(this.outputBuffer);
+        }
+
+        final long crc32 = this.crc32.getValue();
+        final int flags = this.archiveOutputStream.finishEntryData(this.localFileHeaderOffset, this.localFileHeader.getFlags(), crc32, this.compressedByteCount, this.uncompressedByteCount);
+        final ZipCentralDirectoryEntry entry = ZipCentralDirectoryEntry.create(
+            this.localFileHeader.getName(),
+            this.localFileHeader.getComment(),
+            flags,
+            this.localFileHeader.getCompressionMethod(),
+            this.localFileHeader.getLastModifiedMilliseconds(),
+            crc32,
+            this.compressedByteCount,
+            this.uncompressedByteCount,
+            this.localFileHeaderOffset);
+        this.archiveOutputStream.addCentralDirectoryEntry(entry);
+        this.entryWritten(entry);
+    }
+}
@@ -0,0 +1,241 @@
+package qub;
+
+/**
+ * A {@link java.io.InputStream} that inflates the raw deflated data of a zip entry directly from
+ * a {@link ZipByteSource}.
+ */
+public class ZipEntryInflaterInputStream extends java.io.InputStream
+{
+    private final ZipByteSource byteSource;
+    private final ZipCodecPool codecPool;
+    private final java.util.zip.Inflater inflater;
+    private final byte[] singleByte;
+    private byte[] inputBuffer;
+    private java.nio.ByteBuffer inputView;
+    private long position;
+    private long remainingByteCount;
+    private boolean measuringInflateDuration;
+    private long inflateNanoseconds;
+    private boolean closed;
+
+    private ZipEntryInflaterInputStream(ZipByteSource byteSource, long position, long compressedByteCount, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(byteSource, "byteSource");
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertGreaterThanOrEqualTo(compressedByteCount, 0, "compressedByteCount");
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        this.byteSource = byteSource;
+        this.codecPool = codecPool;
+        this.inflater = codecPool.acquireInflater();
+        this.singleByte = new byte[1];
+        this.position = position;
+        this.remainingByteCount = compressedByteCount;
+    }
+
+    /**
+     * Create a new {@link ZipEntryInflaterInputStream}.
+     * @param byteSource The source that contains the zip archive.
+     * @param position The position in the source where the entry's deflated data starts.
+     * @param compressedByteCount The number of deflated bytes in the entry.
+     * @return The new {@link ZipEntryInflaterInputStream}.
+     */
+    public static ZipEntryInflaterInputStream create(ZipByteSource byteSource, long position, long compressedByteCount)
+    {
+        return ZipEntryInflaterInputStream.create(byteSource, position, compressedByteCount, ZipCodecPool.getDefault());
+    }
+
+    /**
+     * Create a new {@link ZipEntryInflaterInputStream} that gets its
+     * {@link java.util.zip.Inflater} and input buffer from the provided {@link ZipCodecPool} and
+     * gives them back when it is closed.
+     * @param byteSource The source that contains the zip archive.
+     * @param position The position in the source where the entry's deflated data starts.
+     * @param compressedByteCount The number of deflated bytes in the entry.
+     * @param codecPool The pool to get the {@link java.util.zip.Inflater} and input buffer from.
+     * @return The new {@link ZipEntryInflaterInputStream}.
+     */
+    public static ZipEntryInflaterInputStream create(ZipByteSource byteSource, long position, long compressedByteCount, ZipCodecPool codecPool)
+    {
+        return new ZipEntryInflaterInputStream(byteSource, position, compressedByteCount, codecPool);
+    }
+
+    /**
+     * Create a new {@link ZipEntryInflaterInputStream} that starts inflating in the middle of an
+     * entry's deflated data, at a point where a new deflate block starts on a byte boundary, such
+     * as a {@link ZipEntryCheckpointIndex} checkpoint.
+     * @param byteSource The source that contains the zip archive.
+     * @param position The position in the source where inflating starts.
+     * @param compressedByteCount The number of deflated bytes from the position to the end of the
+     * entry.
+     * @param dictionary The uncompressed bytes that come right before the position, up to 32 KiB,
+     * which later blocks may refer back to.
+     * @param codecPool The pool to get the {@link java.util.zip.Inflater} and input buffer from.
+     * @return The new {@link ZipEntryInflaterInputStream}.
+     */
+    public static ZipEntryInflaterInputStream create(ZipByteSource byteSource, long position, long compressedByteCount, byte[] dictionary, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(dictionary, "dictionary");
+
+        final ZipEntryInflaterInputStream result = new ZipEntryInflaterInputStream(byteSource, position, compressedByteCount, codecPool);
+        if (dictionary.length > 0)
+        {
+            result.inflater.setDictionary(dictionary);
+        }
+        return result;
+    }
+
+    /**
+     * Set whether the time that is spent in the {@link java.util.zip.Inflater} will be measured.
+     * @param measuringInflateDuration Whether the inflate time will be measured.
+     * @return This object for method chaining.
+     */
+    public ZipEntryInflaterInputStream setMeasuringInflateDuration(boolean measuringInflateDuration)
+    {
+        this.measuringInflateDuration = measuringInflateDuration;
+
+        return this;
+    }
+
+    /**
+     * Get the number of nanoseconds that have been spent in the {@link java.util.zip.Inflater}
+     * while the inflate time was being measured.
+     */
+    public long getInflateNanoseconds()
+    {
+        return this.inflateNanoseconds;
+    }
+
+    @Override
+    public int read() throws java.io.IOException
+    {
+        final int readResult = this.read(this.singleByte, 0, 1);
+        return readResult <= 0 ? -1 : (this.singleByte[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] outputBytes, int startIndex, int length) throws java.io.IOException
+    {
+        if (this.closed)
+        {
+            throw new java.io.IOException("Stream closed");
+        }
+
+        int result = 0;
+        if (length > 0)
+        {
+            while (true)
+            {
+                try
+                {
+                    if (this.measuringInflateDuration)
+                    {
+                        final long startNanoseconds = System.nanoTime();
+                        result = this.inflater.inflate(outputBytes, startIndex, length);
+                        this.inflateNanoseconds += System.nanoTime() - startNanoseconds;
+                    }
+                    else
+                    {
+                        result = this.inflater.inflate(outputBytes, startIndex, length);
+                    }
+                }
+                catch (java.util.zip.DataFormatException e)
+                {
+                    throw new java.util.zip.ZipException(e.getMessage());
+                }
+
+                if (result > 0)
+                {
+                    break;
+                }
+                else if (this.inflater.finished() || this.inflater.needsDictionary())
+                {
+                    result = -1;
+                    break;
+                }
+                else if (this.inflater.needsInput())
+                {
+                    this.fillInput();
+                }
+            }
+        }
+        return result;
+    }
+
+    private void fillInput() throws java.io.IOException
+    {
+        if (this.remainingByteCount == 0)
+        {
+            throw new java.io.EOFException("Unexpected end of deflated zip entry data.");
+        }
+
+        // The Inflater holds on to its input until it needs more, so the previous view is only
+        // released now.
+        this.releaseInputView();
+
+        // Sources that can provide a view of their bytes (such as memory-mapped files) are
+        // handed to the Inflater directly so that the compressed bytes are never copied.
+        final java.nio.ByteBuffer inputView = this.byteSource.readByteBuffer(this.position, (int)Math.min(Integer.MAX_VALUE, this.remainingByteCount));
+        final int bytesRead;
+        if (inputView != null)
+        {
+            this.inputView = inputView;
+            bytesRead = inputView.remaining();
+            this.inflater.setInput(inputView);
+        }
+        else
+        {
+            final byte[] inputBuffer = this.getInputBuffer();
+            final int bytesToRead = (int)Math.min(inputBuffer.length, this.remainingByteCount);
+            bytesRead = this.byteSource.readBytes(this.position, inputBuffer, 0, bytesToRead);
+            if (bytesRead < 0)
+            {
+                throw new java.io.EOFException("Unexpected end of zip archive.");
+            }
+            this.inflater.setInput(inputBuffer, 0, bytesRead);
+        }
+        this.position += bytesRead;
+        this.remainingByteCount -= bytesRead;
+    }
+
+    private void releaseInputView()
+    {
+        if (this.inputView != null)
+        {
+            final java.nio.ByteBuffer inputView = this.inputView;
+            this.inputView = null;
+            this.byteSource.releaseByteBuffer(inputView);
+        }
+    }
+
+    private byte[] getInputBuffer()
+    {
+        if (this.inputBuffer == null)
+        {
+            this.inputBuffer = this.codecPool.acquireBuffer();
+        }
+        return this.inputBuffer;
+    }
+
+    @Override
+    public int available()
+    {
+        return this.closed || this.inflater.finished() ? 0 : 1;
+    }
+
+    @Override
+    public void close()
+    {
+        if (!this.closed)
+        {
+            this.closed = true;
+            this.codecPool.releaseInflater(this.inflater);
+            this.releaseInputView();
+            if (this.inputBuffer != null)
+            {
+                this.codecPool.releaseBuffer(this.inputBuffer);
+                this.inputBuffer = null;
+            }
+        }
+    }
+}
@@ -3,15 +3,25 @@ package qub;
 public class ZipEntryIterator implements Iterator<ZipEntryReadStream>, Disposable
 {
     private final Function0<java.util.zip.ZipInputStream> zipInputStreamCreator;
+    private final Function0<ZipReader> zipReaderCreator;
+    private final Function1<ZipCentralDirectoryEntry,Boolean> condition;
     private java.util.zip.ZipInputStream zipInputStream;
+    private ZipReader zipReader;
+    private Iterator<ZipCentralDirectoryEntry> zipReaderEntries;
     private ZipEntryReadStream current;
+    private ZipListener listener;
+    private java.util.zip.ZipEntry currentJavaZipEntry;
+    private long currentStartNanoseconds;
     private boolean isDisposed;
 
-    private ZipEntryIterator(Function0<java.util.zip.ZipInputStream> zipInputStreamCreator)
+    private ZipEntryIterator(Function0<java.util.zip.ZipInputStream> zipInputStreamCreator, Function0<ZipReader> zipReaderCreator, Function1<ZipCentralDirectoryEntry,Boolean> condition)
     {
-        PreCondition.assertNotNull(zipInputStreamCreator, "zipInputStreamCreator");
+        PreCondition.assertTrue(zipInputStreamCreator != null || zipReaderCreator != null, "zipInputStreamCreator != null || zipReaderCreator != null");
+        PreCondition.assertTrue(condition == null || zipReaderCreator != null, "condition == null || zipReaderCreator != null");
         
         this.zipInputStreamCreator = zipInputStreamCreator;
+        this.zipReaderCreator = zipReaderCreator;
+        this.condition = condition;
     }
 
     public static ZipEntryIterator create(File file)
@@ -32,18 +42,119 @@ public class ZipEntryIterator implements Iterator<ZipEntryReadStream>, Disposabl
     {
         PreCondition.assertNotNull(readStreamCreator, "readStreamCreator");
 
-        return new ZipEntryIterator(() ->
+        return new ZipEntryIterator(ZipEntryIterator.createZipInputStreamCreator(readStreamCreator), null, null);
+    }
+
+    /**
+     * Create a new {@link ZipEntryIterator} that iterates over the entries in the central
+     * directory of the {@link ZipReader} that is returned by the provided function. If the
+     * function returns null because the provided {@link File} doesn't have a central directory,
+     * such as when it is empty or was truncated, then the entries are read sequentially from
+     * the {@link File}'s contents instead. The function won't be run until the first time the
+     * iterator is advanced.
+     * @param file The file that contains the zip archive.
+     * @param zipReaderCreator The function that will open the {@link ZipReader}, or return null
+     * if the file doesn't have a central directory.
+     * @return The new {@link ZipEntryIterator}.
+     */
+    public static ZipEntryIterator create(File file, Function0<ZipReader> zipReaderCreator)
+    {
+        PreCondition.assertNotNull(file, "file");
+        PreCondition.assertNotNull(zipReaderCreator, "zipReaderCreator");
+
+        return new ZipEntryIterator(
+            ZipEntryIterator.createZipInputStreamCreator(() -> { return file.getContentsReadStream().await(); }),
+            zipReaderCreator,
+            null);
+    }
+
+    private static Function0<java.util.zip.ZipInputStream> createZipInputStreamCreator(Function0<? extends ByteReadStream> readStreamCreator)
+    {
+        return () ->
         {
             final ByteReadStream readStream = readStreamCreator.run();
             final java.io.InputStream contentsInputStream = ByteReadStreamToInputStream.create(readStream);
             return new java.util.zip.ZipInputStream(contentsInputStream);
-        });
+        };
+    }
+
+    /**
+     * Create a new {@link ZipEntryIterator} that iterates over the entries in the provided
+     * {@link ZipReader}'s central directory. The returned {@link ZipEntryIterator} takes
+     * ownership of the {@link ZipReader} and will dispose of it when the
+     * {@link ZipEntryIterator} is disposed.
+     * @param zipReader The {@link ZipReader} to iterate over.
+     * @return The new {@link ZipEntryIterator}.
+     */
+    public static ZipEntryIterator create(ZipReader zipReader)
+    {
+        PreCondition.assertNotNull(zipReader, "zipReader");
+
+        return ZipEntryIterator.createFromCentralDirectory(() -> { return zipReader; });
+    }
+
+    /**
+     * Create a new {@link ZipEntryIterator} that iterates over the entries in the central
+     * directory of the {@link ZipReader} that is returned by the provided function. The function
+     * won't be run until the first time the iterator is advanced.
+     * @param zipReaderCreator The function that will open the {@link ZipReader}.
+     * @return The new {@link ZipEntryIterator}.
+     */
+    public static ZipEntryIterator createFromCentralDirectory(Function0<ZipReader> zipReaderCreator)
+    {
+        PreCondition.assertNotNull(zipReaderCreator, "zipReaderCreator");
+
+        return new ZipEntryIterator(null, zipReaderCreator, null);
+    }
+
+    /**
+     * Create a new {@link ZipEntryIterator} that iterates over the entries in the central
+     * directory of the {@link ZipReader} that is returned by the provided function that match
+     * the provided condition. The condition is run against each entry's central directory record
+     * before any stream is opened for the entry, and entries that don't match are skipped
+     * without reading or inflating any of their data.
+     * @param zipReaderCreator The function that will open the {@link ZipReader}.
+     * @param condition The condition that an entry must match to be returned by the iterator.
+     * @return The new {@link ZipEntryIterator}.
+     */
+    public static ZipEntryIterator createFromCentralDirectory(Function0<ZipReader> zipReaderCreator, Function1<ZipCentralDirectoryEntry,Boolean> condition)
+    {
+        PreCondition.assertNotNull(zipReaderCreator, "zipReaderCreator");
+        PreCondition.assertNotNull(condition, "condition");
+
+        return new ZipEntryIterator(null, zipReaderCreator, condition);
+    }
+
+    /**
+     * Get the {@link ZipListener} that is notified as entries are read from this iterator, or
+     * null if this iterator doesn't have a listener.
+     */
+    public ZipListener getListener()
+    {
+        return this.listener;
+    }
+
+    /**
+     * Set the {@link ZipListener} that will be notified as entries are read from this iterator.
+     * This must be set before the iterator is started. Entries that are read through the zip
+     * archive's central directory report the time that was spent inflating them, but entries
+     * that are read sequentially through a {@link java.util.zip.ZipInputStream} don't.
+     * @param listener The listener to notify, or null to not notify a listener.
+     * @return This object for method chaining.
+     */
+    public ZipEntryIterator setListener(ZipListener listener)
+    {
+        PreCondition.assertFalse(this.hasStarted(), "this.hasStarted()");
+
+        this.listener = listener;
+
+        return this;
     }
 
     @Override
     public boolean hasStarted()
     {
-        return this.zipInputStream != null;
+        return this.zipInputStream != null || this.zipReader != null;
     }
 
     @Override
@@ -63,15 +174,46 @@ public class ZipEntryIterator implements Iterator<ZipEntryReadStream>, Disposabl
     @Override
     public boolean next()
     {
-        if (this.zipInputStream == null)
+        if (!this.hasStarted())
         {
-            this.zipInputStream = this.zipInputStreamCreator.run();
+            if (this.zipReaderCreator != null)
+            {
+                this.zipReader = this.zipReaderCreator.run();
+            }
+
+            if (this.zipReader != null)
+            {
+                if (this.listener != null)
+                {
+                    this.zipReader.setListener(this.listener);
+                }
+                this.zipReaderEntries = this.zipReader.getEntries().iterate();
+            }
+            else
+            {
+                this.zipInputStream = this.zipInputStreamCreator.run();
+            }
         }
         else if (this.current != null)
         {
             this.current.dispose().await();
+            this.current = null;
         }
 
+        if (this.zipInputStream != null)
+        {
+            this.nextFromZipInputStream();
+        }
+        else
+        {
+            this.nextFromZipReader();
+        }
+
+        return this.hasCurrent();
+    }
+
+    private void nextFromZipInputStream()
+    {
         final java.util.zip.ZipEntry javaZipEntry;
         try
         {
@@ -82,23 +224,77 @@ public class ZipEntryIterator implements Iterator<ZipEntryReadStream>, Disposabl
             throw Exceptions.asRuntime(e);
         }
 
+        // Getting the next entry reads the rest of the previous entry, so the previous entry's
+        // sizes are known now.
+        this.previousJavaZipEntryRead();
+        if (this.listener != null)
+        {
+            this.currentJavaZipEntry = javaZipEntry;
+            this.currentStartNanoseconds = System.nanoTime();
+        }
+
         if (javaZipEntry == null)
         {
             this.dispose().await();
         }
         else
         {
-            final InputStreamToByteReadStream zipByteReadStream = InputStreamToByteReadStream.create(this.zipInputStream);
-            final CharacterToByteReadStream characterToByteReadStream = CharacterToByteReadStream.create(zipByteReadStream);
-            // It's important that the CharacterToByteReadStream we pass to the
-            // ZipEntryCharacterToByteReadStream ignores requests to dispose since it is
-            // directly referring to this object's zipInputStream. This object's zipInputStream
-            // should only be disposed when this object is disposed.
-            final IgnoreDisposeCharacterToByteReadStream ignoreDisposeReadStream = IgnoreDisposeCharacterToByteReadStream.create(characterToByteReadStream);
-            this.current = ZipEntryReadStream.create(javaZipEntry, ignoreDisposeReadStream);
+            // It's important that the stream we pass to the ZipEntryReadStream ignores requests to
+            // close since it is directly referring to this object's zipInputStream. This object's
+            // zipInputStream should only be disposed when this object is disposed.
+            final java.io.InputStream entryInputStream = new java.io.FilterInputStream(this.zipInputStream)
+            {
+                @Override
+                public void close()
+                {
+                }
+            };
+            this.current = ZipEntryReadStream.create(javaZipEntry, entryInputStream);
         }
+    }
 
-        return this.hasCurrent();
+    private void previousJavaZipEntryRead()
+    {
+        final java.util.zip.ZipEntry previousJavaZipEntry = this.currentJavaZipEntry;
+        if (previousJavaZipEntry != null)
+        {
+            this.currentJavaZipEntry = null;
+
+            final long uncompressedByteCount = previousJavaZipEntry.getSize();
+            final long compressedByteCount = previousJavaZipEntry.getCompressedSize();
+            if (uncompressedByteCount >= 0 && compressedByteCount >= 0)
+            {
+                this.listener.entryRead(ZipEntryMetrics.create(
+                    previousJavaZipEntry.getName(),
+                    previousJavaZipEntry.getMethod(),
+                    uncompressedByteCount,
+                    compressedByteCount,
+                    System.nanoTime() - this.currentStartNanoseconds,
+                    0));
+            }
+        }
+    }
+
+    private void nextFromZipReader()
+    {
+        ZipCentralDirectoryEntry entry = null;
+        while (entry == null && this.zipReaderEntries.next())
+        {
+            final ZipCentralDirectoryEntry currentEntry = this.zipReaderEntries.getCurrent();
+            if (this.condition == null || this.condition.run(currentEntry))
+            {
+                entry = currentEntry;
+            }
+        }
+
+        if (entry == null)
+        {
+            this.dispose().await();
+        }
+        else
+        {
+            this.current = this.zipReader.getEntryReadStream(entry);
+        }
     }
 
     @Override
@@ -123,13 +319,21 @@ public class ZipEntryIterator implements Iterator<ZipEntryReadStream>, Disposabl
                     this.current = null;
                 }
 
-                try
+                if (this.zipInputStream != null)
                 {
-                    this.zipInputStream.close();
+                    try
+                    {
+                        this.zipInputStream.close();
+                    }
+                    catch (Exception e)
+                    {
+                        throw Exceptions.asRuntime(e);
+                    }
                 }
-                catch (Exception e)
+
+                if (this.zipReader != null)
                 {
-                    throw Exceptions.asRuntime(e);
+                    this.zipReader.dispose().await();
                 }
             }
             return result;
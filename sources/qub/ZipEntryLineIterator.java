@@ -0,0 +1,121 @@
+package qub;
+
+/**
+ * An {@link Iterator} that splits the decoded text of a zip entry into lines. Lines can end with
+ * "\n" or "\r\n", and the line endings are not included in the lines. A line ending at the very
+ * end of the entry doesn't start another, empty line.
+ */
+public class ZipEntryLineIterator implements Iterator<String>, Disposable
+{
+    private final ZipEntryTextIterator textIterator;
+    private final StringBuilder line;
+    private CharSequence chunk;
+    private int chunkIndex;
+    private String current;
+    private boolean hasStarted;
+
+    private ZipEntryLineIterator(ZipEntryTextIterator textIterator)
+    {
+        PreCondition.assertNotNull(textIterator, "textIterator");
+
+        this.textIterator = textIterator;
+        this.line = new StringBuilder();
+    }
+
+    /**
+     * Create a new {@link ZipEntryLineIterator} that splits the chunks of the provided
+     * {@link ZipEntryTextIterator} into lines.
+     * @param textIterator The iterator that decodes the entry's text.
+     * @return The new {@link ZipEntryLineIterator}.
+     */
+    public static ZipEntryLineIterator create(ZipEntryTextIterator textIterator)
+    {
+        return new ZipEntryLineIterator(textIterator);
+    }
+
+    @Override
+    public boolean hasStarted()
+    {
+        return this.hasStarted;
+    }
+
+    @Override
+    public boolean hasCurrent()
+    {
+        return this.current != null;
+    }
+
+    @Override
+    public String getCurrent()
+    {
+        PreCondition.assertTrue(this.hasCurrent(), "this.hasCurrent()");
+
+        return this.current;
+    }
+
+    @Override
+    public boolean next()
+    {
+        this.hasStarted = true;
+
+        this.line.setLength(0);
+        boolean foundText = false;
+        boolean foundLineEnding = false;
+        while (!foundLineEnding)
+        {
+            if (this.chunk == null || this.chunkIndex == this.chunk.length())
+            {
+                if (!this.textIterator.next())
+                {
+                    this.chunk = null;
+                    break;
+                }
+                this.chunk = this.textIterator.getCurrent();
+                this.chunkIndex = 0;
+            }
+
+            foundText = true;
+            final int chunkLength = this.chunk.length();
+            final int lineStartIndex = this.chunkIndex;
+            while (this.chunkIndex < chunkLength && this.chunk.charAt(this.chunkIndex) != '\n')
+            {
+                ++this.chunkIndex;
+            }
+            this.line.append(this.chunk, lineStartIndex, this.chunkIndex);
+
+            if (this.chunkIndex < chunkLength)
+            {
+                ++this.chunkIndex;
+                foundLineEnding = true;
+            }
+        }
+
+        if (!foundText)
+        {
+            this.current = null;
+        }
+        else
+        {
+            final int lineLength = this.line.length();
+            if (foundLineEnding && lineLength > 0 && this.line.charAt(lineLength - 1) == '\r')
+            {
+                this.line.setLength(lineLength - 1);
+            }
+            this.current = this.line.toString();
+        }
+
+        return this.hasCurrent();
+    }
+
+    @Override
+    public boolean isDisposed()
+    {
+        return this.textIterator.isDisposed();
+    }
+
+    @Override
+    public Result<Boolean> dispose()
+    {
+        return this.textIterator.dispose();
+    }
+}
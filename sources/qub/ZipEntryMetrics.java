@@ -0,0 +1,124 @@
+package qub;
+
+/**
+ * The metrics of a single zip entry that was written or read.
+ */
+public class ZipEntryMetrics
+{
+    private final String entryPath;
+    private final int compressionMethod;
+    private final long uncompressedByteCount;
+    private final long compressedByteCount;
+    private final long nanoseconds;
+    private final long codecNanoseconds;
+
+    private ZipEntryMetrics(String entryPath, int compressionMethod, long uncompressedByteCount, long compressedByteCount, long nanoseconds, long codecNanoseconds)
+    {
+        PreCondition.assertNotNull(entryPath, "entryPath");
+        PreCondition.assertGreaterThanOrEqualTo(uncompressedByteCount, 0, "uncompressedByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(compressedByteCount, 0, "compressedByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(nanoseconds, 0, "nanoseconds");
+        PreCondition.assertGreaterThanOrEqualTo(codecNanoseconds, 0, "codecNanoseconds");
+
+        this.entryPath = entryPath;
+        this.compressionMethod = compressionMethod;
+        this.uncompressedByteCount = uncompressedByteCount;
+        this.compressedByteCount = compressedByteCount;
+        this.nanoseconds = nanoseconds;
+        this.codecNanoseconds = codecNanoseconds;
+    }
+
+    /**
+     * Create a new {@link ZipEntryMetrics}.
+     * @param entryPath The path of the entry.
+     * @param compressionMethod The compression method of the entry.
+     * @param uncompressedByteCount The number of uncompressed bytes in the entry.
+     * @param compressedByteCount The number of compressed bytes in the entry.
+     * @param nanoseconds The number of nanoseconds between opening and closing the entry.
+     * @param codecNanoseconds The number of nanoseconds that were spent in the
+     * {@link java.util.zip.Deflater} or {@link java.util.zip.Inflater} for the entry.
+     * @return The new {@link ZipEntryMetrics}.
+     */
+    public static ZipEntryMetrics create(String entryPath, int compressionMethod, long uncompressedByteCount, long compressedByteCount, long nanoseconds, long codecNanoseconds)
+    {
+        return new ZipEntryMetrics(entryPath, compressionMethod, uncompressedByteCount, compressedByteCount, nanoseconds, codecNanoseconds);
+    }
+
+    /**
+     * Get the path of the entry.
+     */
+    public String getEntryPath()
+    {
+        return this.entryPath;
+    }
+
+    /**
+     * Get the compression method of the entry.
+     */
+    public int getCompressionMethod()
+    {
+        return this.compressionMethod;
+    }
+
+    /**
+     * Get the number of uncompressed bytes in the entry.
+     */
+    public long getUncompressedByteCount()
+    {
+        return this.uncompressedByteCount;
+    }
+
+    /**
+     * Get the number of compressed bytes in the entry.
+     */
+    public long getCompressedByteCount()
+    {
+        return this.compressedByteCount;
+    }
+
+    /**
+     * Get the entry's compressed size divided by its uncompressed size, or 1 if the entry is
+     * empty.
+     */
+    public double getCompressionRatio()
+    {
+        return this.uncompressedByteCount == 0
+            ? 1
+            : (double)this.compressedByteCount / this.uncompressedByteCount;
+    }
+
+    /**
+     * Get the time between opening and closing the entry.
+     */
+    public Duration getDuration()
+    {
+        return Duration.nanoseconds(this.nanoseconds);
+    }
+
+    /**
+     * Get the number of nanoseconds between opening and closing the entry.
+     */
+    public long getNanoseconds()
+    {
+        return this.nanoseconds;
+    }
+
+    /**
+     * Get the time that was spent in the {@link java.util.zip.Deflater} or
+     * {@link java.util.zip.Inflater} for the entry. For entries that were compressed in
+     * parallel, this is the total time across every compression thread.
+     */
+    public Duration getCodecDuration()
+    {
+        return Duration.nanoseconds(this.codecNanoseconds);
+    }
+
+    /**
+     * Get the number of nanoseconds that were spent in the {@link java.util.zip.Deflater} or
+     * {@link java.util.zip.Inflater} for the entry.
+     */
+    public long getCodecNanoseconds()
+    {
+        return this.codecNanoseconds;
+    }
+}
@@ -0,0 +1,131 @@
+package qub;
+
+/**
+ * A {@link java.io.OutputStream} that writes the uncompressed data of a single zip entry.
+ */
+public abstract class ZipEntryOutputStream extends java.io.OutputStream
+{
+    private final byte[] singleByte = new byte[1];
+    private final ZipCodecPool codecPool;
+    private ZipListener listener;
+    private long startNanoseconds;
+    private long codecNanoseconds;
+
+    /**
+     * Create a new {@link ZipEntryOutputStream}.
+     * @param codecPool The pool that this stream gets its codecs and buffers from.
+     */
+    protected ZipEntryOutputStream(ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        this.codecPool = codecPool;
+    }
+
+    /**
+     * Get the pool that this stream gets its codecs and buffers from.
+     */
+    protected ZipCodecPool getCodecPool()
+    {
+        return this.codecPool;
+    }
+
+    @Override
+    public void write(int value) throws java.io.IOException
+    {
+        this.singleByte[0] = (byte)value;
+        this.write(this.singleByte, 0, 1);
+    }
+
+    /**
+     * Write the remaining bytes of the provided {@link java.nio.ByteBuffer} and advance its
+     * position to its limit. Heap buffers are written from their backing array, and other
+     * buffers are copied through a buffer from this stream's {@link ZipCodecPool}.
+     * @param bytes The bytes to write.
+     */
+    public void write(java.nio.ByteBuffer bytes) throws java.io.IOException
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+
+        if (bytes.hasArray())
+        {
+            final int position = bytes.position();
+            final int length = bytes.remaining();
+            this.write(bytes.array(), bytes.arrayOffset() + position, length);
+            bytes.position(position + length);
+        }
+        else
+        {
+            final ZipCodecPool codecPool = this.getCodecPool();
+            final byte[] buffer = codecPool.acquireBuffer();
+            try
+            {
+                while (bytes.hasRemaining())
+                {
+                    final int length = Math.min(buffer.length, bytes.remaining());
+                    bytes.get(buffer, 0, length);
+                    this.write(buffer, 0, length);
+                }
+            }
+            finally
+            {
+                codecPool.releaseBuffer(buffer);
+            }
+        }
+    }
+
+    /**
+     * Finish writing the entry's data, followed by any trailing entry structure such as a data
+     * descriptor, and add the entry to the archive's central directory.
+     */
+    public abstract void finish();
+
+    /**
+     * Set the {@link ZipListener} that will be notified when this entry has been written.
+     * @param listener The listener to notify, or null to not collect metrics for this entry.
+     * @param startNanoseconds The {@link System#nanoTime()} when the entry was opened.
+     */
+    void setListener(ZipListener listener, long startNanoseconds)
+    {
+        this.listener = listener;
+        this.startNanoseconds = startNanoseconds;
+    }
+
+    /**
+     * Get whether the time that is spent compressing this entry should be measured.
+     */
+    protected boolean isMeasuringCodecDuration()
+    {
+        return this.listener != null;
+    }
+
+    /**
+     * Add to the time that was spent compressing this entry.
+     * @param codecNanoseconds The number of nanoseconds to add.
+     */
+    protected void addCodecNanoseconds(long codecNanoseconds)
+    {
+        this.codecNanoseconds += codecNanoseconds;
+    }
+
+    /**
+     * Notify this entry's {@link ZipListener}, if it has one, that the provided central directory
+     * entry has been added to the archive.
+     * @param entry The central directory entry that was added.
+     */
+    protected void entryWritten(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+
+        if (this.listener != null)
+        {
+            this.listener.entryWritten(ZipEntryMetrics.create(
+                entry.getName(),
+                entry.getCompressionMethod(),
+                entry.getUncompressedByteCount(),
+                entry.getCompressedByteCount(),
+                System.nanoTime() - this.startNanoseconds,
+                this.codecNanoseconds));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package qub;
+
+/**
+ * A {@link ZipEntryOutputStream} that splits an entry's data into blocks and deflates the blocks
+ * concurrently through a {@link ZipParallelDeflater}.
+ */
+public class ZipEntryParallelDeflaterOutputStream extends ZipEntryOutputStream
+{
+    private final ZipParallelDeflater parallelDeflater;
+    private final ZipArchiveOutputStream archiveOutputStream;
+    private final ZipCentralDirectoryEntry localFileHeader;
+    private final int compressionLevel;
+    private final int compressionStrategy;
+    private final java.util.zip.CRC32 crc32;
+    private byte[] block;
+    private int blockLength;
+    private byte[] previousBlock;
+    private int previousBlockLength;
+    private long uncompressedByteCount;
+    private long compressedByteCount;
+    private long localFileHeaderOffset;
+    private boolean finished;
+
+    private ZipEntryParallelDeflaterOutputStream(ZipParallelDeflater parallelDeflater, ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader, int compressionLevel, int compressionStrategy, ZipCodecPool codecPool)
+    {
+        super(codecPool);
+
+        PreCondition.assertNotNull(parallelDeflater, "parallelDeflater");
+        PreCondition.assertNotNull(archiveOutputStream, "archiveOutputStream");
+        PreCondition.assertNotNull(localFileHeader, "localFileHeader");
+        PreCondition.assertBetween(-1, compressionLevel, 9, "compressionLevel");
+        PreCondition.assertBetween(java.util.zip.Deflater.DEFAULT_STRATEGY, compressionStrategy, java.util.zip.Deflater.HUFFMAN_ONLY, "compressionStrategy");
+
+        this.parallelDeflater = parallelDeflater;
+        this.archiveOutputStream = archiveOutputStream;
+        this.localFileHeader = localFileHeader;
+        this.compressionLevel = compressionLevel;
+        this.compressionStrategy = compressionStrategy;
+        this.crc32 = new java.util.zip.CRC32();
+
+        parallelDeflater.enqueueWrite(() ->
+        {
+            this.localFileHeaderOffset = archiveOutputStream.getPosition();
+            archiveOutputStream.writeLocalFileHeader(localFileHeader);
+        });
+    }
+
+    /**
+     * Enqueue the local file header for the provided entry and create a
+     * {@link ZipEntryParallelDeflaterOutputStream} that will deflate the entry's data through the
+     * provided {@link ZipParallelDeflater}.
+     * @param parallelDeflater The pipeline that will deflate and write the entry's data.
+     * @param archiveOutputStream The stream to write the entry to.
+     * @param localFileHeader The entry's local file header. Its flags must include
+     * {@link ZipFormat#dataDescriptorFlag}.
+     * @param compressionLevel The deflate compression level, or -1 for the default level.
+     * @param compressionStrategy The {@link java.util.zip.Deflater} strategy to compress with.
+     * @return The new {@link ZipEntryParallelDeflaterOutputStream}.
+     */
+    public static ZipEntryParallelDeflaterOutputStream create(ZipParallelDeflater parallelDeflater, ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader, int compressionLevel, int compressionStrategy)
+    {
+        return ZipEntryParallelDeflaterOutputStream.create(parallelDeflater, archiveOutputStream, localFileHeader, compressionLevel, compressionStrategy, ZipCodecPool.getDefault());
+    }
+
+    /**
+     * Enqueue the local file header for the provided entry and create a
+     * {@link ZipEntryParallelDeflaterOutputStream} that copies data from direct
+     * {@link java.nio.ByteBuffer}s through buffers from the provided {@link ZipCodecPool}.
+     * @param parallelDeflater The pipeline that will deflate and write the entry's data.
+     * @param archiveOutputStream The stream to write the entry to.
+     * @param localFileHeader The entry's local file header. Its flags must include
+     * {@link ZipFormat#dataDescriptorFlag}.
+     * @param compressionLevel The deflate compression level, or -1 for the default level.
+     * @param compressionStrategy The {@link java.util.zip.Deflater} strategy to compress with.
+     * @param codecPool The pool to get buffers from.
+     * @return The new {@link ZipEntryParallelDeflaterOutputStream}.
+     */
+    public static ZipEntryParallelDeflaterOutputStream create(ZipParallelDeflater parallelDeflater, ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader, int compressionLevel, int compressionStrategy, ZipCodecPool codecPool)
+    {
+        return new ZipEntryParallelDeflaterOutputStream(parallelDeflater, archiveOutputStream, localFileHeader, compressionLevel, compressionStrategy, codecPool);
+    }
+
+    @Override
+    public void write(byte[] bytes, int startIndex, int length)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertStartIndex(startIndex, bytes.length);
+        PreCondition.assertLength(length, startIndex, bytes.length);
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        this.crc32.update(bytes, startIndex, length);
+        this.uncompressedByteCount += length;
+
+        while (length > 0)
+        {
+            if (this.block == null)
+            {
+                this.block = this.parallelDeflater.acquireBlock();
+            }
+
+            final int bytesToCopy = Math.min(length, this.block.length - this.blockLength);
+            System.arraycopy(bytes, startIndex, this.block, this.blockLength, bytesToCopy);
+            this.blockLength += bytesToCopy;
+            startIndex += bytesToCopy;
+            length -= bytesToCopy;
+
+            if (this.blockLength == this.block.length)
+            {
+                this.enqueueBlock(false);
+            }
+        }
+    }
+
+    private void enqueueBlock(boolean isFinalBlock)
+    {
+        final byte[] block = this.block;
+        final int blockLength = this.blockLength;
+        final byte[] previousBlock = this.previousBlock;
+        this.parallelDeflater.enqueueBlock(block, blockLength, previousBlock, this.previousBlockLength, this.compressionLevel, this.compressionStrategy, isFinalBlock, (byte[] compressedBlock, Integer compressedBlockLength, Long deflateNanoseconds) ->
+        {
+            this.archiveOutputStream.writeData(compressedBlock, 0, compressedBlockLength);
+            this.compressedByteCount += compressedBlockLength;
+            this.addCodecNanoseconds(deflateNanoseconds);
+
+            // Blocks are written in order, so by now the previous block's deflate task and this
+            // block's deflate task, which primed its dictionary with the previous block, have
+            // both finished.
+            if (previousBlock != null)
+            {
+                this.parallelDeflater.releaseBlock(previousBlock);
+            }
+            if (isFinalBlock && block != null)
+            {
+                this.parallelDeflater.releaseBlock(block);
+            }
+        });
+
+        // Blocks are handed off to the deflate tasks, so a different block is acquired for the
+        // next bytes instead of reusing this one.
+        this.previousBlock = block;
+        this.previousBlockLength = blockLength;
+        this.block = null;
+        this.blockLength = 0;
+    }
+
+    @Override
+    public void finish()
+    {
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        this.finished = true;
+        this.enqueueBlock(true);
+
+        final long crc32 = this.crc32.getValue();
+        final long uncompressedByteCount = this.uncompressedByteCount;
+        this.parallelDeflater.enqueueWrite(() ->
+        {
+            final int flags = this.archiveOutputStream.finishEntryData(this.localFileHeaderOffset, this.localFileHeader.getFlags(), crc32, this.compressedByteCount, uncompressedByteCount);
+            final ZipCentralDirectoryEntry entry = ZipCentralDirectoryEntry.create(
+                this.localFileHeader.getName(),
+                this.localFileHeader.getComment(),
+                flags,
+                this.localFileHeader.getCompressionMethod(),
+                this.localFileHeader.getLastModifiedMilliseconds(),
+                crc32,
+                this.compressedByteCount,
+                uncompressedByteCount,
+                this.localFileHeaderOffset);
+            this.archiveOutputStream.addCentralDirectoryEntry(entry);
+            this.entryWritten(entry);
+        });
+    }
+}
@@ -5,7 +5,10 @@ public class ZipEntryParameters
     private Path entryPath;
     private String comment;
     private DateTime lastModified;
-    
+    private ZipCompressionMethod compressionMethod;
+    private Integer compressionLevel;
+    private ZipCompressionStrategy compressionStrategy;
+
     private ZipEntryParameters()
     {
     }
@@ -64,6 +67,77 @@ public class ZipEntryParameters
         return this;
     }
 
+    /**
+     * Get the method that the entry's data will be compressed with, or null if the entry will
+     * use the default method.
+     */
+    public ZipCompressionMethod getCompressionMethod()
+    {
+        return this.compressionMethod;
+    }
+
+    /**
+     * Set the method that the entry's data will be compressed with.
+     * @param compressionMethod The method that the entry's data will be compressed with.
+     * @return This object for method chaining.
+     */
+    public ZipEntryParameters setCompressionMethod(ZipCompressionMethod compressionMethod)
+    {
+        PreCondition.assertNotNull(compressionMethod, "compressionMethod");
+
+        this.compressionMethod = compressionMethod;
+
+        return this;
+    }
+
+    /**
+     * Get the DEFLATE compression level of the entry's data, or null if the entry will use the
+     * default level.
+     */
+    public Integer getCompressionLevel()
+    {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Set the DEFLATE compression level of the entry's data, from 0 (no compression) through 1
+     * (fastest) to 9 (smallest).
+     * @param compressionLevel The DEFLATE compression level of the entry's data.
+     * @return This object for method chaining.
+     */
+    public ZipEntryParameters setCompressionLevel(int compressionLevel)
+    {
+        PreCondition.assertBetween(0, compressionLevel, 9, "compressionLevel");
+
+        this.compressionLevel = compressionLevel;
+
+        return this;
+    }
+
+    /**
+     * Get the DEFLATE strategy that the entry's data will be compressed with, or null if the
+     * entry will use the default strategy.
+     */
+    public ZipCompressionStrategy getCompressionStrategy()
+    {
+        return this.compressionStrategy;
+    }
+
+    /**
+     * Set the DEFLATE strategy that the entry's data will be compressed with.
+     * @param compressionStrategy The DEFLATE strategy that the entry's data will be compressed
+     * with.
+     * @return This object for method chaining.
+     */
+    public ZipEntryParameters setCompressionStrategy(ZipCompressionStrategy compressionStrategy)
+    {
+        PreCondition.assertNotNull(compressionStrategy, "compressionStrategy");
+
+        this.compressionStrategy = compressionStrategy;
+
+        return this;
+    }
+
     public JSONObject toJson()
     {
         final JSONObject result = JSONObject.create();
@@ -82,6 +156,21 @@ public class ZipEntryParameters
         {
             result.setString("lastModified", this.lastModified.toString());
         }
+
+        if (this.compressionMethod != null)
+        {
+            result.setString("compressionMethod", this.compressionMethod.toString());
+        }
+
+        if (this.compressionLevel != null)
+        {
+            result.setNumber("compressionLevel", this.compressionLevel);
+        }
+
+        if (this.compressionStrategy != null)
+        {
+            result.setString("compressionStrategy", this.compressionStrategy.toString());
+        }
         
         PostCondition.assertNotNull(result, "result");
 
@@ -106,6 +195,9 @@ public class ZipEntryParameters
         return rhs != null &&
             Comparer.equal(this.entryPath, rhs.entryPath) &&
             Comparer.equal(this.comment, rhs.comment) &&
-            Comparer.equal(this.lastModified, rhs.lastModified);
+            Comparer.equal(this.lastModified, rhs.lastModified) &&
+            this.compressionMethod == rhs.compressionMethod &&
+            Comparer.equal(this.compressionLevel, rhs.compressionLevel) &&
+            this.compressionStrategy == rhs.compressionStrategy;
     }
 }
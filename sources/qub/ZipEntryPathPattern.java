@@ -0,0 +1,112 @@
+package qub;
+
+/**
+ * A glob pattern that is matched against the paths of the entries in a zip archive. Patterns
+ * match the raw entry name from the central directory, so no {@link Path} objects are created.
+ * <ul>
+ *     <li>"?" matches any single character except "/".</li>
+ *     <li>"*" matches zero or more characters except "/".</li>
+ *     <li>"**" matches zero or more characters, including "/".</li>
+ *     <li>"**&#47;" matches zero or more whole folders, so "a/**&#47;b" matches "a/b" and
+ *     "a/x/y/b".</li>
+ * </ul>
+ */
+public class ZipEntryPathPattern
+{
+    private final String text;
+    private final java.util.regex.Pattern regex;
+
+    private ZipEntryPathPattern(String text, java.util.regex.Pattern regex)
+    {
+        PreCondition.assertNotNull(text, "text");
+        PreCondition.assertNotNull(regex, "regex");
+
+        this.text = text;
+        this.regex = regex;
+    }
+
+    /**
+     * Parse the provided glob pattern.
+     * @param text The text of the glob pattern.
+     * @return The parsed {@link ZipEntryPathPattern}.
+     */
+    public static ZipEntryPathPattern parse(String text)
+    {
+        PreCondition.assertNotNullAndNotEmpty(text, "text");
+
+        final StringBuilder regex = new StringBuilder();
+        final int length = text.length();
+        int index = 0;
+        while (index < length)
+        {
+            final char c = text.charAt(index);
+            if (c == '*')
+            {
+                if (index + 1 < length && text.charAt(index + 1) == '*')
+                {
+                    if (index + 2 < length && text.charAt(index + 2) == '/')
+                    {
+                        regex.append("(?:.*/)?");
+                        index += 3;
+                    }
+                    else
+                    {
+                        regex.append(".*");
+                        index += 2;
+                    }
+                }
+                else
+                {
+                    regex.append("[^/]*");
+                    ++index;
+                }
+            }
+            else if (c == '?')
+            {
+                regex.append("[^/]");
+                ++index;
+            }
+            else
+            {
+                if ("\\.[]{}()<>+-=!^$|".indexOf(c) != -1)
+                {
+                    regex.append('\\');
+                }
+                regex.append(c);
+                ++index;
+            }
+        }
+
+        return new ZipEntryPathPattern(text, java.util.regex.Pattern.compile(regex.toString(), java.util.regex.Pattern.DOTALL));
+    }
+
+    /**
+     * Get whether the provided entry path matches this pattern.
+     * @param entryPath The entry path to check.
+     * @return Whether the provided entry path matches this pattern.
+     */
+    public boolean isMatch(String entryPath)
+    {
+        PreCondition.assertNotNull(entryPath, "entryPath");
+
+        return this.regex.matcher(entryPath).matches();
+    }
+
+    /**
+     * Get whether the provided entry's path matches this pattern.
+     * @param entry The entry to check.
+     * @return Whether the provided entry's path matches this pattern.
+     */
+    public boolean isMatch(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+
+        return this.isMatch(entry.getName());
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.text;
+    }
+}
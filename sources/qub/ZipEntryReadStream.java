@@ -3,21 +3,240 @@ package qub;
 public class ZipEntryReadStream implements CharacterToByteReadStream
 {
     private final java.util.zip.ZipEntry zipEntry;
+    private final ZipCentralDirectoryEntry centralDirectoryEntry;
+    private final ZipReader zipReader;
     private final CharacterToByteReadStream readStream;
+    private final BufferedEntryInputStream entryInputStream;
+    private java.io.InputStream readStreamInputStream;
     private boolean disposed;
 
-    private ZipEntryReadStream(java.util.zip.ZipEntry zipEntry, CharacterToByteReadStream readStream)
+    private ZipEntryReadStream(java.util.zip.ZipEntry zipEntry, ZipCentralDirectoryEntry centralDirectoryEntry, ZipReader zipReader, CharacterToByteReadStream readStream)
     {
         PreCondition.assertNotNull(zipEntry, "zipEntry");
         PreCondition.assertNotNull(readStream, "readStream");
 
         this.zipEntry = zipEntry;
+        this.centralDirectoryEntry = centralDirectoryEntry;
+        this.zipReader = zipReader;
         this.readStream = readStream;
+        this.entryInputStream = null;
+    }
+
+    private ZipEntryReadStream(java.util.zip.ZipEntry zipEntry, ZipCentralDirectoryEntry centralDirectoryEntry, ZipReader zipReader, java.io.InputStream entryInputStream, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(zipEntry, "zipEntry");
+        PreCondition.assertNotNull(entryInputStream, "entryInputStream");
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        this.zipEntry = zipEntry;
+        this.centralDirectoryEntry = centralDirectoryEntry;
+        this.zipReader = zipReader;
+        this.entryInputStream = new BufferedEntryInputStream(entryInputStream, codecPool);
+        // Character reads still go through the qub stream chain, but that chain reads from the
+        // same buffered stream as the byte reads below.
+        this.readStream = CharacterToByteReadStream.create(InputStreamToByteReadStream.create(this.entryInputStream));
     }
 
     public static ZipEntryReadStream create(java.util.zip.ZipEntry zipEntry, CharacterToByteReadStream readStream)
     {
-        return new ZipEntryReadStream(zipEntry, readStream);
+        return new ZipEntryReadStream(zipEntry, null, null, readStream);
+    }
+
+    public static ZipEntryReadStream create(ZipCentralDirectoryEntry centralDirectoryEntry, CharacterToByteReadStream readStream)
+    {
+        PreCondition.assertNotNull(centralDirectoryEntry, "centralDirectoryEntry");
+        PreCondition.assertNotNull(readStream, "readStream");
+
+        return new ZipEntryReadStream(centralDirectoryEntry.toJavaZipEntry(), centralDirectoryEntry, null, readStream);
+    }
+
+    /**
+     * Create a new {@link ZipEntryReadStream} for an entry that was opened from the provided
+     * {@link ZipReader}. The {@link ZipReader} lets the entry's compressed data be copied into
+     * another archive without inflating it.
+     * @param centralDirectoryEntry The central directory entry of the entry.
+     * @param zipReader The {@link ZipReader} that the entry was opened from.
+     * @param readStream The stream that reads the entry's uncompressed data.
+     * @return The new {@link ZipEntryReadStream}.
+     */
+    public static ZipEntryReadStream create(ZipCentralDirectoryEntry centralDirectoryEntry, ZipReader zipReader, CharacterToByteReadStream readStream)
+    {
+        PreCondition.assertNotNull(centralDirectoryEntry, "centralDirectoryEntry");
+        PreCondition.assertNotNull(zipReader, "zipReader");
+        PreCondition.assertNotNull(readStream, "readStream");
+
+        return new ZipEntryReadStream(centralDirectoryEntry.toJavaZipEntry(), centralDirectoryEntry, zipReader, readStream);
+    }
+
+    /**
+     * Create a new {@link ZipEntryReadStream} that reads the uncompressed data of an entry that
+     * was opened from the provided {@link ZipReader}. Bulk reads go straight to the provided
+     * {@link java.io.InputStream}, and single byte reads are served from a buffer that is taken
+     * from the {@link ZipReader}'s {@link ZipCodecPool}.
+     * @param centralDirectoryEntry The central directory entry of the entry.
+     * @param zipReader The {@link ZipReader} that the entry was opened from.
+     * @param entryInputStream The stream that reads the entry's uncompressed data. It will be
+     * closed when the returned {@link ZipEntryReadStream} is disposed.
+     * @return The new {@link ZipEntryReadStream}.
+     */
+    public static ZipEntryReadStream create(ZipCentralDirectoryEntry centralDirectoryEntry, ZipReader zipReader, java.io.InputStream entryInputStream)
+    {
+        PreCondition.assertNotNull(centralDirectoryEntry, "centralDirectoryEntry");
+        PreCondition.assertNotNull(zipReader, "zipReader");
+        PreCondition.assertNotNull(entryInputStream, "entryInputStream");
+
+        return new ZipEntryReadStream(centralDirectoryEntry.toJavaZipEntry(), centralDirectoryEntry, zipReader, entryInputStream, zipReader.getCodecPool());
+    }
+
+    /**
+     * Create a new {@link ZipEntryReadStream} that reads the uncompressed data of an entry that
+     * was found without using the zip archive's central directory.
+     * @param zipEntry The entry.
+     * @param entryInputStream The stream that reads the entry's uncompressed data. It will be
+     * closed when the returned {@link ZipEntryReadStream} is disposed.
+     * @return The new {@link ZipEntryReadStream}.
+     */
+    public static ZipEntryReadStream create(java.util.zip.ZipEntry zipEntry, java.io.InputStream entryInputStream)
+    {
+        PreCondition.assertNotNull(zipEntry, "zipEntry");
+        PreCondition.assertNotNull(entryInputStream, "entryInputStream");
+
+        return new ZipEntryReadStream(zipEntry, null, null, entryInputStream, ZipCodecPool.getDefault());
+    }
+
+    /**
+     * Get the {@link java.util.zip.ZipEntry} that describes this entry.
+     */
+    java.util.zip.ZipEntry getJavaZipEntry()
+    {
+        return this.zipEntry;
+    }
+
+    /**
+     * Get the central directory entry of this entry, or null if this entry was read without
+     * using the zip archive's central directory.
+     */
+    public ZipCentralDirectoryEntry getCentralDirectoryEntry()
+    {
+        return this.centralDirectoryEntry;
+    }
+
+    /**
+     * Get the {@link ZipReader} that this entry was opened from, or null if this entry was read
+     * without using a {@link ZipReader}.
+     */
+    public ZipReader getZipReader()
+    {
+        return this.zipReader;
+    }
+
+    /**
+     * Get whether this entry's compressed data can be copied into another archive with
+     * {@link ZipWriteStream#copyEntry(ZipEntryReadStream)}.
+     */
+    public boolean canCopyCompressedData()
+    {
+        return this.centralDirectoryEntry != null && this.zipReader != null;
+    }
+
+    /**
+     * Get whether {@link #seek(long)} can move this entry's read position backwards or forwards.
+     * Only entries that were opened from a {@link ZipReader} can seek. Stored entries seek
+     * directly to the position, and deflated entries inflate from the nearest checkpoint in the
+     * entry's {@link ZipEntryCheckpointIndex}, or from the entry's start if it doesn't have one.
+     * Deflated entries from other zip writers usually don't have any checkpoints, so seeking
+     * backwards in them takes time that grows with the position that is sought to.
+     */
+    public boolean canSeek()
+    {
+        return this.entryInputStream != null && this.centralDirectoryEntry != null && this.zipReader != null;
+    }
+
+    /**
+     * Get the number of uncompressed bytes that have been read or skipped in this entry. This is
+     * only tracked for entries that can seek.
+     */
+    public long getPosition()
+    {
+        PreCondition.assertTrue(this.canSeek(), "this.canSeek()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return this.entryInputStream.getPosition();
+    }
+
+    /**
+     * Move this entry's read position to the provided offset into the entry's uncompressed data.
+     * Seeking to or past the end of the entry leaves the read position at the end of the entry.
+     * Deflated entries are inflated from the nearest checkpoint before the position, which for
+     * entries without checkpoints (see {@link #canSeek()}) is the entry's start.
+     * @param position The offset into the entry's uncompressed data to read from next.
+     * @return The result of seeking.
+     */
+    public Result<Void> seek(long position)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertTrue(this.canSeek(), "this.canSeek()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() ->
+        {
+            final long currentPosition = this.entryInputStream.getPosition();
+            if (position != currentPosition)
+            {
+                try
+                {
+                    // Moving forward within the current stream is cheaper than opening a new
+                    // one, unless a new stream can start closer to the position.
+                    final long restartPosition = this.zipReader.getEntryRestartPosition(this.centralDirectoryEntry, position);
+                    if (position < currentPosition || currentPosition < restartPosition)
+                    {
+                        this.entryInputStream.setDataInputStream(this.zipReader.getEntryInputStream(this.centralDirectoryEntry, restartPosition), restartPosition);
+                    }
+                    this.entryInputStream.skip(position - this.entryInputStream.getPosition());
+                }
+                catch (java.io.IOException e)
+                {
+                    throw Exceptions.asRuntime(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Skip over the provided number of uncompressed bytes in this entry. Entries that can seek
+     * skip with {@link #seek(long)}, and other entries read and drop the skipped bytes.
+     * @param byteCount The number of bytes to skip.
+     * @return The number of bytes that were skipped, which is only less than the provided number
+     * if the end of the entry was reached.
+     */
+    public Result<Long> skipBytes(long byteCount)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(byteCount, 0, "byteCount");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() ->
+        {
+            long result;
+            if (this.canSeek())
+            {
+                final long startPosition = this.entryInputStream.getPosition();
+                final long endPosition = Math.min(startPosition + byteCount, this.centralDirectoryEntry.getUncompressedByteCount());
+                this.seek(Math.max(startPosition, endPosition)).await();
+                result = this.entryInputStream.getPosition() - startPosition;
+            }
+            else
+            {
+                try
+                {
+                    result = this.getInputStream().skip(byteCount);
+                }
+                catch (java.io.IOException e)
+                {
+                    throw Exceptions.asRuntime(e);
+                }
+            }
+            return result;
+        });
     }
 
     @Override
@@ -54,8 +273,22 @@ public class ZipEntryReadStream implements CharacterToByteReadStream
     public Result<Byte> readByte()
     {
         PreCondition.assertNotDisposed(this, "this");
-        
-        return this.readStream.readByte();
+
+        Result<Byte> result = null;
+        if (this.entryInputStream != null)
+        {
+            final int value = this.entryInputStream.readBuffered();
+            if (value != -1)
+            {
+                result = Result.success((byte)value);
+            }
+        }
+        if (result == null)
+        {
+            // Let the qub stream chain report the end of the entry the way it always has.
+            result = this.readStream.readByte();
+        }
+        return result;
     }
 
     @Override
@@ -63,7 +296,227 @@ public class ZipEntryReadStream implements CharacterToByteReadStream
     {
         PreCondition.assertNotDisposed(this, "this");
 
-        return this.readStream.readBytes(outputBytes, startIndex, length);
+        Result<Integer> result = null;
+        if (this.entryInputStream != null)
+        {
+            final int bytesRead = this.readBytesInto(outputBytes, startIndex, length);
+            if (bytesRead > 0)
+            {
+                result = Result.success(bytesRead);
+            }
+        }
+        if (result == null)
+        {
+            result = this.readStream.readBytes(outputBytes, startIndex, length);
+        }
+        return result;
+    }
+
+    /**
+     * Read up to the provided number of uncompressed bytes directly into the provided array.
+     * Unlike {@link #readBytes(byte[], int, int)}, this doesn't allocate anything: the bytes are
+     * inflated straight into the provided array without passing through any intermediate
+     * buffers or {@link Result}s.
+     * @param outputBytes The array to read bytes into.
+     * @param startIndex The index in outputBytes to start writing bytes to.
+     * @param length The maximum number of bytes to read.
+     * @return The number of bytes that were read, or -1 if the end of the entry has been reached.
+     */
+    public int readBytesInto(byte[] outputBytes, int startIndex, int length)
+    {
+        PreCondition.assertNotNull(outputBytes, "outputBytes");
+        PreCondition.assertBetween(0, startIndex, outputBytes.length, "startIndex");
+        PreCondition.assertBetween(0, length, outputBytes.length - startIndex, "length");
+        PreCondition.assertNotDisposed(this, "this");
+
+        try
+        {
+            return this.getInputStream().read(outputBytes, startIndex, length);
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    /**
+     * Read uncompressed bytes into the remaining space of the provided
+     * {@link java.nio.ByteBuffer} and advance its position past the bytes that were read. Heap
+     * buffers are inflated into directly without allocating anything, and direct buffers are
+     * filled through a pooled buffer.
+     * @param outputBuffer The buffer to read bytes into.
+     * @return The number of bytes that were read, or -1 if the end of the entry has been reached.
+     */
+    public int readBytesInto(java.nio.ByteBuffer outputBuffer)
+    {
+        PreCondition.assertNotNull(outputBuffer, "outputBuffer");
+        PreCondition.assertFalse(outputBuffer.isReadOnly(), "outputBuffer.isReadOnly()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        int result;
+        if (!outputBuffer.hasRemaining())
+        {
+            result = 0;
+        }
+        else if (outputBuffer.hasArray())
+        {
+            final int position = outputBuffer.position();
+            result = this.readBytesInto(outputBuffer.array(), outputBuffer.arrayOffset() + position, outputBuffer.remaining());
+            if (result > 0)
+            {
+                outputBuffer.position(position + result);
+            }
+        }
+        else
+        {
+            final ZipCodecPool codecPool = this.getCodecPool();
+            final byte[] buffer = codecPool.acquireBuffer();
+            try
+            {
+                result = this.readBytesInto(buffer, 0, Math.min(buffer.length, outputBuffer.remaining()));
+                if (result > 0)
+                {
+                    outputBuffer.put(buffer, 0, result);
+                }
+            }
+            finally
+            {
+                codecPool.releaseBuffer(buffer);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write the rest of this entry's uncompressed bytes to the provided {@link ByteWriteStream}.
+     * The bytes are copied through a single pooled buffer.
+     * @param writeStream The stream to write the bytes to.
+     * @return The number of bytes that were written.
+     */
+    public Result<Long> transferTo(ByteWriteStream writeStream)
+    {
+        PreCondition.assertNotNull(writeStream, "writeStream");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() ->
+        {
+            long result = 0;
+            final ZipCodecPool codecPool = this.getCodecPool();
+            final byte[] buffer = codecPool.acquireBuffer();
+            try
+            {
+                int bytesRead = this.readBytesInto(buffer, 0, buffer.length);
+                while (bytesRead != -1)
+                {
+                    int bytesWritten = 0;
+                    while (bytesWritten < bytesRead)
+                    {
+                        bytesWritten += writeStream.write(buffer, bytesWritten, bytesRead - bytesWritten).await();
+                    }
+                    result += bytesRead;
+                    bytesRead = this.readBytesInto(buffer, 0, buffer.length);
+                }
+            }
+            finally
+            {
+                codecPool.releaseBuffer(buffer);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Read the rest of this entry's uncompressed bytes as a {@link String}. UTF-8 and US-ASCII
+     * entries are decoded a block at a time instead of a character at a time.
+     */
+    @Override
+    public Result<String> readEntireString()
+    {
+        PreCondition.assertNotDisposed(this, "this");
+
+        final java.nio.charset.Charset charset = this.getCharset();
+        return charset == null
+            ? this.readStream.readEntireString()
+            : Result.create(() ->
+            {
+                final long uncompressedByteCount = this.zipEntry.getSize();
+                final StringBuilder builder = new StringBuilder(0 <= uncompressedByteCount && uncompressedByteCount <= ZipCodecPool.bufferByteCount * 1024L
+                    ? (int)uncompressedByteCount
+                    : ZipCodecPool.bufferByteCount);
+                try (final ZipEntryTextIterator textIterator = ZipEntryTextIterator.create(this.getInputStream(), charset, this.getCodecPool()))
+                {
+                    while (textIterator.next())
+                    {
+                        builder.append(textIterator.getCurrent());
+                    }
+                }
+                return builder.toString();
+            });
+    }
+
+    /**
+     * Iterate over the rest of this entry's text in chunks. The chunks are decoded a block at a
+     * time into a single reused buffer, so each chunk is only valid until the next one is
+     * requested. This entry's character encoding must be UTF-8 or US-ASCII, and the returned
+     * {@link ZipEntryTextIterator} should be disposed if it isn't iterated to the end.
+     */
+    public ZipEntryTextIterator iterateTextChunks()
+    {
+        PreCondition.assertNotDisposed(this, "this");
+
+        final java.nio.charset.Charset charset = this.getCharset();
+        PreCondition.assertTrue(charset != null, "this.getCharacterEncoding() == CharacterEncoding.UTF_8 || this.getCharacterEncoding() == CharacterEncoding.US_ASCII");
+
+        return ZipEntryTextIterator.create(this.getInputStream(), charset, this.getCodecPool());
+    }
+
+    /**
+     * Iterate over the rest of this entry's text one line at a time. The lines are split out of
+     * the chunks from {@link #iterateTextChunks()}, so the same restrictions apply.
+     */
+    public ZipEntryLineIterator iterateLines()
+    {
+        PreCondition.assertNotDisposed(this, "this");
+
+        return ZipEntryLineIterator.create(this.iterateTextChunks());
+    }
+
+    /**
+     * Get the {@link java.nio.charset.Charset} that matches this entry's character encoding, or
+     * null if the character encoding can only be decoded one character at a time.
+     */
+    private java.nio.charset.Charset getCharset()
+    {
+        final CharacterEncoding characterEncoding = this.readStream.getCharacterEncoding();
+        java.nio.charset.Charset result = null;
+        if (characterEncoding == CharacterEncoding.UTF_8)
+        {
+            result = java.nio.charset.StandardCharsets.UTF_8;
+        }
+        else if (characterEncoding == CharacterEncoding.US_ASCII)
+        {
+            result = java.nio.charset.StandardCharsets.US_ASCII;
+        }
+        return result;
+    }
+
+    private ZipCodecPool getCodecPool()
+    {
+        return this.zipReader != null ? this.zipReader.getCodecPool() : ZipCodecPool.getDefault();
+    }
+
+    private java.io.InputStream getInputStream()
+    {
+        java.io.InputStream result = this.entryInputStream;
+        if (result == null)
+        {
+            if (this.readStreamInputStream == null)
+            {
+                this.readStreamInputStream = ByteReadStreamToInputStream.create(this.readStream);
+            }
+            result = this.readStreamInputStream;
+        }
+        return result;
     }
 
     @Override
@@ -129,4 +582,187 @@ public class ZipEntryReadStream implements CharacterToByteReadStream
 
         return result;
     }
+
+    /**
+     * The {@link java.io.InputStream} that every read of a {@link ZipEntryReadStream} goes
+     * through. Bulk reads go straight to the entry's stream once the buffer is empty, and the
+     * buffer is only taken from the pool the first time a single byte is read. Seeking can
+     * replace the stream that the entry's data is read from, but the entry's original stream is
+     * kept open until this stream is closed.
+     */
+    private static class BufferedEntryInputStream extends java.io.InputStream
+    {
+        private final java.io.InputStream entryInputStream;
+        private final ZipCodecPool codecPool;
+        private java.io.InputStream dataInputStream;
+        private long position;
+        private byte[] buffer;
+        private int bufferIndex;
+        private int bufferCount;
+        private boolean closed;
+
+        BufferedEntryInputStream(java.io.InputStream entryInputStream, ZipCodecPool codecPool)
+        {
+            this.entryInputStream = entryInputStream;
+            this.codecPool = codecPool;
+            this.dataInputStream = entryInputStream;
+        }
+
+        /**
+         * Get the number of uncompressed bytes that come before the next byte that will be read.
+         */
+        long getPosition()
+        {
+            return this.position;
+        }
+
+        /**
+         * Read the rest of the entry's data from the provided stream, which starts at the
+         * provided position. Any bytes that are left in the buffer are dropped.
+         */
+        void setDataInputStream(java.io.InputStream dataInputStream, long position) throws java.io.IOException
+        {
+            final java.io.InputStream previousDataInputStream = this.dataInputStream;
+            this.dataInputStream = dataInputStream;
+            this.position = position;
+            this.bufferIndex = 0;
+            this.bufferCount = 0;
+            if (previousDataInputStream != this.entryInputStream)
+            {
+                previousDataInputStream.close();
+            }
+        }
+
+        /**
+         * Read a single byte from the buffer, or -1 if the end of the entry has been reached.
+         */
+        int readBuffered()
+        {
+            try
+            {
+                return this.read();
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+        }
+
+        @Override
+        public int read() throws java.io.IOException
+        {
+            if (this.bufferIndex == this.bufferCount)
+            {
+                if (this.buffer == null)
+                {
+                    this.buffer = this.codecPool.acquireBuffer();
+                }
+                this.bufferIndex = 0;
+                this.bufferCount = Math.max(0, this.dataInputStream.read(this.buffer, 0, this.buffer.length));
+            }
+            int result = -1;
+            if (this.bufferIndex < this.bufferCount)
+            {
+                result = this.buffer[this.bufferIndex++] & 0xFF;
+                ++this.position;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] outputBytes, int startIndex, int length) throws java.io.IOException
+        {
+            int result;
+            if (length == 0)
+            {
+                result = 0;
+            }
+            else if (this.bufferIndex < this.bufferCount)
+            {
+                result = Math.min(length, this.bufferCount - this.bufferIndex);
+                System.arraycopy(this.buffer, this.bufferIndex, outputBytes, startIndex, result);
+                this.bufferIndex += result;
+            }
+            else
+            {
+                result = this.dataInputStream.read(outputBytes, startIndex, length);
+            }
+            if (result > 0)
+            {
+                this.position += result;
+            }
+            return result;
+        }
+
+        /**
+         * Read and drop up to the provided number of bytes.
+         * @return The number of bytes that were skipped, which is only less than the provided
+         * number if the end of the entry was reached.
+         */
+        @Override
+        public long skip(long byteCount) throws java.io.IOException
+        {
+            long result = 0;
+            if (byteCount > 0)
+            {
+                final byte[] skipBuffer = this.codecPool.acquireBuffer();
+                try
+                {
+                    int bytesRead = 0;
+                    while (result < byteCount && bytesRead != -1)
+                    {
+                        bytesRead = this.read(skipBuffer, 0, (int)Math.min(skipBuffer.length, byteCount - result));
+                        if (bytesRead > 0)
+                        {
+                            result += bytesRead;
+                        }
+                    }
+                }
+                finally
+                {
+                    this.codecPool.releaseBuffer(skipBuffer);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int available() throws java.io.IOException
+        {
+            return (this.bufferCount - this.bufferIndex) + this.dataInputStream.available();
+        }
+
+        @Override
+        public void close() throws java.io.IOException
+        {
+            if (!this.closed)
+            {
+                this.closed = true;
+                try
+                {
+                    if (this.dataInputStream != this.entryInputStream)
+                    {
+                        this.dataInputStream.close();
+                    }
+                }
+                finally
+                {
+                    try
+                    {
+                        this.entryInputStream.close();
+                    }
+                    finally
+                    {
+                        if (this.buffer != null)
+                        {
+                            this.codecPool.releaseBuffer(this.buffer);
+                            this.buffer = null;
+                            this.bufferIndex = 0;
+                            this.bufferCount = 0;
+                        }
+                    }
+                }
+            }
+        }
+    }
 }
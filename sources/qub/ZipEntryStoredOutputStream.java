@@ -0,0 +1,360 @@
+package qub;
+
+/**
+ * A {@link ZipEntryOutputStream} that writes an entry's data without compressing it. A stored
+ * entry's local file header must contain the entry's CRC-32 and size. If the entry is written
+ * directly to a seekable {@link ZipArchiveOutputStream}, then its data is written as it arrives
+ * and its local file header is patched when it is finished. Otherwise the entry's data is
+ * buffered in memory until it grows past {@link #maximumBufferedByteCount} bytes, after which it
+ * is spilled to a temporary file, and the entry is written when it is finished. If the stream is
+ * closed before it is finished, then the buffered data is discarded and the temporary file is
+ * deleted without writing the entry.
+ */
+public class ZipEntryStoredOutputStream extends ZipEntryOutputStream
+{
+    /**
+     * The largest number of bytes of an entry's data that will be buffered in memory before the
+     * data is spilled to a temporary file.
+     */
+    public static final int maximumBufferedByteCount = 16 * 1024 * 1024;
+
+    private final ZipParallelDeflater parallelDeflater;
+    private final ZipArchiveOutputStream archiveOutputStream;
+    private final ZipCentralDirectoryEntry localFileHeader;
+    private final long localFileHeaderOffset;
+    private final java.util.zip.CRC32 crc32;
+    private java.io.ByteArrayOutputStream buffer;
+    private java.nio.channels.FileChannel spillChannel;
+    private long byteCount;
+    private boolean finished;
+
+    private ZipEntryStoredOutputStream(ZipParallelDeflater parallelDeflater, ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader, ZipCodecPool codecPool)
+    {
+        super(codecPool);
+
+        PreCondition.assertNotNull(archiveOutputStream, "archiveOutputStream");
+        PreCondition.assertNotNull(localFileHeader, "localFileHeader");
+
+        this.parallelDeflater = parallelDeflater;
+        this.archiveOutputStream = archiveOutputStream;
+        this.localFileHeader = localFileHeader;
+        this.crc32 = new java.util.zip.CRC32();
+
+        if (parallelDeflater == null && archiveOutputStream.isSeekable())
+        {
+            this.localFileHeaderOffset = archiveOutputStream.getPosition();
+            archiveOutputStream.writeLocalFileHeader(ZipCentralDirectoryEntry.create(
+                localFileHeader.getName(),
+                localFileHeader.getComment(),
+                localFileHeader.getFlags() | ZipFormat.dataDescriptorFlag,
+                ZipFormat.storedCompressionMethod,
+                localFileHeader.getLastModifiedMilliseconds(),
+                0,
+                0,
+                0,
+                this.localFileHeaderOffset));
+        }
+        else
+        {
+            this.localFileHeaderOffset = -1;
+            this.buffer = new java.io.ByteArrayOutputStream();
+        }
+    }
+
+    /**
+     * Create a new {@link ZipEntryStoredOutputStream} that will write the entry directly to the
+     * provided {@link ZipArchiveOutputStream} when it is finished.
+     * @param archiveOutputStream The stream to write the entry to.
+     * @param localFileHeader The entry's local file header. Its CRC-32 and sizes are ignored.
+     * @return The new {@link ZipEntryStoredOutputStream}.
+     */
+    public static ZipEntryStoredOutputStream create(ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader)
+    {
+        return ZipEntryStoredOutputStream.create(archiveOutputStream, localFileHeader, ZipCodecPool.getDefault());
+    }
+
+    /**
+     * Create a new {@link ZipEntryStoredOutputStream} that will write the entry directly to the
+     * provided {@link ZipArchiveOutputStream} when it is finished, and that gets its buffers from
+     * the provided {@link ZipCodecPool}.
+     * @param archiveOutputStream The stream to write the entry to.
+     * @param localFileHeader The entry's local file header. Its CRC-32 and sizes are ignored.
+     * @param codecPool The pool to get buffers from.
+     * @return The new {@link ZipEntryStoredOutputStream}.
+     */
+    public static ZipEntryStoredOutputStream create(ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader, ZipCodecPool codecPool)
+    {
+        return new ZipEntryStoredOutputStream(null, archiveOutputStream, localFileHeader, codecPool);
+    }
+
+    /**
+     * Create a new {@link ZipEntryStoredOutputStream} that will enqueue the entry to be written
+     * after the pending writes of the provided {@link ZipParallelDeflater} when it is finished.
+     * @param parallelDeflater The pipeline that the entry will be written through.
+     * @param archiveOutputStream The stream to write the entry to.
+     * @param localFileHeader The entry's local file header. Its CRC-32 and sizes are ignored.
+     * @return The new {@link ZipEntryStoredOutputStream}.
+     */
+    public static ZipEntryStoredOutputStream create(ZipParallelDeflater parallelDeflater, ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader)
+    {
+        return ZipEntryStoredOutputStream.create(parallelDeflater, archiveOutputStream, localFileHeader, ZipCodecPool.getDefault());
+    }
+
+    /**
+     * Create a new {@link ZipEntryStoredOutputStream} that will enqueue the entry to be written
+     * after the pending writes of the provided {@link ZipParallelDeflater} when it is finished,
+     * and that gets its buffers from the provided {@link ZipCodecPool}.
+     * @param parallelDeflater The pipeline that the entry will be written through.
+     * @param archiveOutputStream The stream to write the entry to.
+     * @param localFileHeader The entry's local file header. Its CRC-32 and sizes are ignored.
+     * @param codecPool The pool to get buffers from.
+     * @return The new {@link ZipEntryStoredOutputStream}.
+     */
+    public static ZipEntryStoredOutputStream create(ZipParallelDeflater parallelDeflater, ZipArchiveOutputStream archiveOutputStream, ZipCentralDirectoryEntry localFileHeader, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(parallelDeflater, "parallelDeflater");
+
+        return new ZipEntryStoredOutputStream(parallelDeflater, archiveOutputStream, localFileHeader, codecPool);
+    }
+
+    /**
+     * Get whether this stream writes the entry's data as it arrives instead of when the entry is
+     * finished.
+     */
+    private boolean isWritingDirectly()
+    {
+        return this.localFileHeaderOffset != -1;
+    }
+
+    @Override
+    public void write(byte[] bytes, int startIndex, int length)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertStartIndex(startIndex, bytes.length);
+        PreCondition.assertLength(length, startIndex, bytes.length);
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        this.crc32.update(bytes, startIndex, length);
+        this.byteCount += length;
+        if (this.isWritingDirectly())
+        {
+            this.archiveOutputStream.writeData(bytes, startIndex, length);
+        }
+        else if (this.spillChannel != null)
+        {
+            this.writeToSpillChannel(bytes, startIndex, length);
+        }
+        else
+        {
+            this.buffer.write(bytes, startIndex, length);
+            if (ZipEntryStoredOutputStream.maximumBufferedByteCount < this.buffer.size())
+            {
+                this.spill();
+            }
+        }
+    }
+
+    /**
+     * Move the buffered data into a temporary file that is deleted when it is closed.
+     */
+    private void spill()
+    {
+        try
+        {
+            final java.nio.file.Path spillFilePath = java.nio.file.Files.createTempFile("qub-zip-", ".stored");
+            this.spillChannel = java.nio.channels.FileChannel.open(
+                spillFilePath,
+                java.nio.file.StandardOpenOption.READ,
+                java.nio.file.StandardOpenOption.WRITE,
+                java.nio.file.StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+
+        try
+        {
+            this.buffer.writeTo(java.nio.channels.Channels.newOutputStream(this.spillChannel));
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+        this.buffer = null;
+    }
+
+    private void writeToSpillChannel(byte[] bytes, int startIndex, int length)
+    {
+        try
+        {
+            final java.nio.ByteBuffer byteBuffer = java.nio.ByteBuffer.wrap(bytes, startIndex, length);
+            while (byteBuffer.hasRemaining())
+            {
+                this.spillChannel.write(byteBuffer);
+            }
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    /**
+     * Copy the spilled data into the archive.
+     */
+    private void writeSpilledData(java.nio.channels.FileChannel spillChannel)
+    {
+        final ZipCodecPool codecPool = this.getCodecPool();
+        final byte[] copyBuffer = codecPool.acquireBuffer();
+        try
+        {
+            long position = 0;
+            final long byteCount = spillChannel.size();
+            while (position < byteCount)
+            {
+                final int bytesRead = spillChannel.read(java.nio.ByteBuffer.wrap(copyBuffer), position);
+                if (bytesRead < 0)
+                {
+                    break;
+                }
+                this.archiveOutputStream.writeData(copyBuffer, 0, bytesRead);
+                position += bytesRead;
+            }
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+        finally
+        {
+            codecPool.releaseBuffer(copyBuffer);
+        }
+    }
+
+    @Override
+    public void finish()
+    {
+        PreCondition.assertFalse(this.finished, "this.finished");
+
+        this.finished = true;
+
+        final long crc32 = this.crc32.getValue();
+        final long byteCount = this.byteCount;
+        if (this.isWritingDirectly())
+        {
+            final int flags = this.archiveOutputStream.finishEntryData(this.localFileHeaderOffset, this.localFileHeader.getFlags() | ZipFormat.dataDescriptorFlag, crc32, byteCount, byteCount);
+            final ZipCentralDirectoryEntry entry = ZipCentralDirectoryEntry.create(
+                this.localFileHeader.getName(),
+                this.localFileHeader.getComment(),
+                flags,
+                ZipFormat.storedCompressionMethod,
+                this.localFileHeader.getLastModifiedMilliseconds(),
+                crc32,
+                byteCount,
+                byteCount,
+                this.localFileHeaderOffset);
+            this.archiveOutputStream.addCentralDirectoryEntry(entry);
+            this.entryWritten(entry);
+        }
+        else
+        {
+            final java.io.ByteArrayOutputStream buffer = this.buffer;
+            final java.nio.channels.FileChannel spillChannel = this.spillChannel;
+            this.buffer = null;
+            this.spillChannel = null;
+
+            final Action0 writeEntry = () ->
+            {
+                try
+                {
+                    this.writeEntry(crc32, byteCount, buffer, spillChannel);
+                }
+                finally
+                {
+                    ZipEntryStoredOutputStream.closeSpillChannel(spillChannel);
+                }
+            };
+
+            if (this.parallelDeflater == null)
+            {
+                writeEntry.run();
+            }
+            else
+            {
+                this.parallelDeflater.enqueueWrite(writeEntry);
+            }
+        }
+    }
+
+    /**
+     * Write the local file header and the buffered or spilled data of this entry to the archive
+     * and add the entry to the archive's central directory.
+     */
+    private void writeEntry(long crc32, long byteCount, java.io.ByteArrayOutputStream buffer, java.nio.channels.FileChannel spillChannel)
+    {
+        final ZipCentralDirectoryEntry entry = ZipCentralDirectoryEntry.create(
+            this.localFileHeader.getName(),
+            this.localFileHeader.getComment(),
+            this.localFileHeader.getFlags() & ~ZipFormat.dataDescriptorFlag,
+            ZipFormat.storedCompressionMethod,
+            this.localFileHeader.getLastModifiedMilliseconds(),
+            crc32,
+            byteCount,
+            byteCount,
+            this.archiveOutputStream.getPosition());
+        this.archiveOutputStream.writeLocalFileHeader(entry);
+        if (buffer != null)
+        {
+            try
+            {
+                buffer.writeTo(this.archiveOutputStream);
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+        }
+        else
+        {
+            this.writeSpilledData(spillChannel);
+        }
+        this.archiveOutputStream.addCentralDirectoryEntry(entry);
+        this.entryWritten(entry);
+    }
+
+    /**
+     * Close this stream. If the entry hasn't been finished, then it is abandoned: its buffered
+     * data is discarded and its temporary file is deleted without writing the entry.
+     */
+    @Override
+    public void close()
+    {
+        if (!this.finished)
+        {
+            this.finished = true;
+            this.buffer = null;
+
+            final java.nio.channels.FileChannel spillChannel = this.spillChannel;
+            this.spillChannel = null;
+            ZipEntryStoredOutputStream.closeSpillChannel(spillChannel);
+        }
+    }
+
+    /**
+     * Close the provided temporary file channel, which deletes its file.
+     */
+    private static void closeSpillChannel(java.nio.channels.FileChannel spillChannel)
+    {
+        if (spillChannel != null)
+        {
+            try
+            {
+                spillChannel.close();
+            }
+            catch (java.io.IOException ignored)
+            {
+            }
+        }
+    }
+}
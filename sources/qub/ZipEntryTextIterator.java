@@ -0,0 +1,180 @@
+package qub;
+
+/**
+ * An {@link Iterator} that decodes the uncompressed bytes of a zip entry into chunks of text.
+ * The bytes are decoded a block at a time with a single {@link java.nio.charset.CharsetDecoder}
+ * into a single character buffer, so no objects are allocated per character or per chunk.
+ * Malformed and unmappable bytes are replaced with the charset's replacement character.
+ */
+public class ZipEntryTextIterator implements Iterator<CharSequence>, Disposable
+{
+    private final java.io.InputStream inputStream;
+    private final ZipCodecPool codecPool;
+    private final java.nio.charset.CharsetDecoder decoder;
+    private byte[] inputBytes;
+    private final java.nio.ByteBuffer inputBuffer;
+    private final java.nio.CharBuffer characterBuffer;
+    private boolean needsInput;
+    private boolean endOfInput;
+    private boolean flushing;
+    private boolean decoded;
+    private boolean hasStarted;
+    private boolean disposed;
+
+    private ZipEntryTextIterator(java.io.InputStream inputStream, java.nio.charset.Charset charset, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(inputStream, "inputStream");
+        PreCondition.assertNotNull(charset, "charset");
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        this.inputStream = inputStream;
+        this.codecPool = codecPool;
+        this.decoder = charset.newDecoder()
+            .onMalformedInput(java.nio.charset.CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(java.nio.charset.CodingErrorAction.REPLACE);
+        this.inputBytes = codecPool.acquireBuffer();
+        this.inputBuffer = java.nio.ByteBuffer.wrap(this.inputBytes);
+        this.inputBuffer.limit(0);
+        this.characterBuffer = java.nio.CharBuffer.allocate(this.inputBytes.length);
+        this.characterBuffer.limit(0);
+        this.needsInput = true;
+    }
+
+    /**
+     * Create a new {@link ZipEntryTextIterator}.
+     * @param inputStream The stream that reads the entry's uncompressed bytes. It is not closed
+     * by the returned {@link ZipEntryTextIterator}.
+     * @param charset The charset to decode the entry's bytes with.
+     * @param codecPool The pool to get the input buffer from.
+     * @return The new {@link ZipEntryTextIterator}.
+     */
+    public static ZipEntryTextIterator create(java.io.InputStream inputStream, java.nio.charset.Charset charset, ZipCodecPool codecPool)
+    {
+        return new ZipEntryTextIterator(inputStream, charset, codecPool);
+    }
+
+    @Override
+    public boolean hasStarted()
+    {
+        return this.hasStarted;
+    }
+
+    @Override
+    public boolean hasCurrent()
+    {
+        return this.characterBuffer.hasRemaining();
+    }
+
+    /**
+     * Get the current chunk of text. The returned {@link CharSequence} is reused, so it is only
+     * valid until {@link #next()} is called again.
+     */
+    @Override
+    public CharSequence getCurrent()
+    {
+        PreCondition.assertTrue(this.hasCurrent(), "this.hasCurrent()");
+
+        return this.characterBuffer;
+    }
+
+    @Override
+    public boolean next()
+    {
+        this.hasStarted = true;
+
+        this.characterBuffer.clear();
+        if (!this.disposed)
+        {
+            try
+            {
+                while (!this.decoded && this.characterBuffer.position() == 0)
+                {
+                    if (this.needsInput && !this.endOfInput)
+                    {
+                        this.readInput();
+                    }
+
+                    final java.nio.charset.CoderResult coderResult = this.flushing
+                        ? this.decoder.flush(this.characterBuffer)
+                        : this.decoder.decode(this.inputBuffer, this.characterBuffer, this.endOfInput);
+                    if (coderResult.isOverflow())
+                    {
+                        this.needsInput = false;
+                    }
+                    else if (!coderResult.isUnderflow())
+                    {
+                        coderResult.throwException();
+                    }
+                    else if (this.flushing)
+                    {
+                        this.decoded = true;
+                    }
+                    else if (this.endOfInput)
+                    {
+                        this.flushing = true;
+                    }
+                    else
+                    {
+                        this.needsInput = true;
+                    }
+                }
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+        }
+        this.characterBuffer.flip();
+
+        if (this.decoded && !this.characterBuffer.hasRemaining())
+        {
+            this.dispose().await();
+        }
+
+        return this.hasCurrent();
+    }
+
+    private void readInput() throws java.io.IOException
+    {
+        this.inputBuffer.compact();
+        final int position = this.inputBuffer.position();
+        final int bytesRead = this.inputStream.read(this.inputBytes, position, this.inputBuffer.remaining());
+        if (bytesRead == -1)
+        {
+            this.endOfInput = true;
+        }
+        else
+        {
+            this.inputBuffer.position(position + bytesRead);
+        }
+        this.inputBuffer.flip();
+    }
+
+    @Override
+    public boolean isDisposed()
+    {
+        return this.disposed;
+    }
+
+    /**
+     * Give this iterator's input buffer back to its {@link ZipCodecPool}. The entry's stream is
+     * not closed.
+     */
+    @Override
+    public Result<Boolean> dispose()
+    {
+        return Result.create(() ->
+        {
+            final boolean result = !this.disposed;
+            if (result)
+            {
+                this.disposed = true;
+                this.decoded = true;
+
+                this.codecPool.releaseBuffer(this.inputBytes);
+                this.inputBytes = null;
+            }
+            return result;
+        });
+    }
+}
@@ -3,15 +3,20 @@ package qub;
 public class ZipEntryWriteStream implements CharacterToByteWriteStream
 {
     private final CharacterToByteWriteStream innerStream;
+    private final ZipEntryOutputStream entryOutputStream;
+    private final ZipCodecPool codecPool;
     private final Action0 closeEntryAction;
     private boolean disposed;
 
-    private ZipEntryWriteStream(CharacterToByteWriteStream innerStream, Action0 closeEntryAction)
+    private ZipEntryWriteStream(CharacterToByteWriteStream innerStream, ZipEntryOutputStream entryOutputStream, ZipCodecPool codecPool, Action0 closeEntryAction)
     {
         PreCondition.assertNotNull(innerStream, "innerStream");
+        PreCondition.assertNotNull(codecPool, "codecPool");
         PreCondition.assertNotNull(closeEntryAction, "closeEntryAction");
 
         this.innerStream = innerStream;
+        this.entryOutputStream = entryOutputStream;
+        this.codecPool = codecPool;
         this.closeEntryAction = closeEntryAction;
     }
 
@@ -21,7 +26,27 @@ public class ZipEntryWriteStream implements CharacterToByteWriteStream
         PreCondition.assertNotNull(closeEntryAction, "closeEntryAction");
 
         final CharacterToByteWriteStream innerStream = CharacterToByteWriteStream.create(byteWriteStream);
-        return new ZipEntryWriteStream(innerStream, closeEntryAction);
+        return new ZipEntryWriteStream(innerStream, null, ZipCodecPool.getDefault(), closeEntryAction);
+    }
+
+    /**
+     * Create a new {@link ZipEntryWriteStream} that writes bytes directly to the provided
+     * {@link ZipEntryOutputStream}. Characters are still encoded through a
+     * {@link CharacterToByteWriteStream}, but byte arrays and whole streams are handed straight
+     * to the entry's compressor.
+     * @param entryOutputStream The stream that compresses the entry's data.
+     * @param codecPool The pool to get transfer buffers from.
+     * @param closeEntryAction The action that finishes the entry when this stream is disposed.
+     * @return The new {@link ZipEntryWriteStream}.
+     */
+    public static ZipEntryWriteStream create(ZipEntryOutputStream entryOutputStream, ZipCodecPool codecPool, Action0 closeEntryAction)
+    {
+        PreCondition.assertNotNull(entryOutputStream, "entryOutputStream");
+        PreCondition.assertNotNull(codecPool, "codecPool");
+        PreCondition.assertNotNull(closeEntryAction, "closeEntryAction");
+
+        final CharacterToByteWriteStream innerStream = CharacterToByteWriteStream.create(OutputStreamToByteWriteStream.create(entryOutputStream));
+        return new ZipEntryWriteStream(innerStream, entryOutputStream, codecPool, closeEntryAction);
     }
 
     @Override
@@ -81,7 +106,150 @@ public class ZipEntryWriteStream implements CharacterToByteWriteStream
     {
         PreCondition.assertNotDisposed(this, "this");
 
-        return this.innerStream.write(toWrite, startIndex, length);
+        final Result<Integer> result;
+        if (this.entryOutputStream == null)
+        {
+            result = this.innerStream.write(toWrite, startIndex, length);
+        }
+        else
+        {
+            result = Result.create(() ->
+            {
+                this.writeToEntryOutputStream(toWrite, startIndex, length);
+                return length;
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Write the remaining bytes of the provided {@link java.nio.ByteBuffer} to this entry and
+     * advance the buffer's position to its limit. Direct buffers, such as memory-mapped files,
+     * are compressed without being copied onto the Java heap when this entry is deflated on the
+     * calling thread.
+     * @param toWrite The bytes to write.
+     * @return The number of bytes that were written.
+     */
+    public Result<Integer> write(java.nio.ByteBuffer toWrite)
+    {
+        PreCondition.assertNotNull(toWrite, "toWrite");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() ->
+        {
+            final int result = toWrite.remaining();
+            if (this.entryOutputStream != null)
+            {
+                try
+                {
+                    this.entryOutputStream.write(toWrite);
+                }
+                catch (java.io.IOException e)
+                {
+                    throw Exceptions.asRuntime(e);
+                }
+            }
+            else if (toWrite.hasArray())
+            {
+                final int position = toWrite.position();
+                this.writeAllBytes(toWrite.array(), toWrite.arrayOffset() + position, result);
+                toWrite.position(position + result);
+            }
+            else
+            {
+                final byte[] buffer = this.codecPool.acquireBuffer();
+                try
+                {
+                    while (toWrite.hasRemaining())
+                    {
+                        final int length = Math.min(buffer.length, toWrite.remaining());
+                        toWrite.get(buffer, 0, length);
+                        this.writeAllBytes(buffer, 0, length);
+                    }
+                }
+                finally
+                {
+                    this.codecPool.releaseBuffer(buffer);
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Write all of the remaining bytes of the provided {@link ByteReadStream} to this entry. The
+     * bytes are pulled through a single pooled buffer straight into the entry's compressor.
+     * @param readStream The stream to read bytes from. It is not disposed.
+     * @return The number of bytes that were written.
+     */
+    public Result<Long> writeAll(ByteReadStream readStream)
+    {
+        PreCondition.assertNotNull(readStream, "readStream");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() ->
+        {
+            long result = 0;
+            final ZipEntryReadStream entryReadStream = readStream instanceof ZipEntryReadStream
+                ? (ZipEntryReadStream)readStream
+                : null;
+            final java.io.InputStream inputStream = entryReadStream == null
+                ? ByteReadStreamToInputStream.create(readStream)
+                : null;
+            final byte[] buffer = this.codecPool.acquireBuffer();
+            try
+            {
+                while (true)
+                {
+                    final int bytesRead = entryReadStream != null
+                        ? entryReadStream.readBytesInto(buffer, 0, buffer.length)
+                        : inputStream.read(buffer, 0, buffer.length);
+                    if (bytesRead == -1)
+                    {
+                        break;
+                    }
+                    this.writeAllBytes(buffer, 0, bytesRead);
+                    result += bytesRead;
+                }
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+            finally
+            {
+                this.codecPool.releaseBuffer(buffer);
+            }
+            return result;
+        });
+    }
+
+    private void writeAllBytes(byte[] bytes, int startIndex, int length)
+    {
+        if (this.entryOutputStream != null)
+        {
+            this.writeToEntryOutputStream(bytes, startIndex, length);
+        }
+        else
+        {
+            int bytesWritten = 0;
+            while (bytesWritten < length)
+            {
+                bytesWritten += this.innerStream.write(bytes, startIndex + bytesWritten, length - bytesWritten).await();
+            }
+        }
+    }
+
+    private void writeToEntryOutputStream(byte[] bytes, int startIndex, int length)
+    {
+        try
+        {
+            this.entryOutputStream.write(bytes, startIndex, length);
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
     }
 
     @Override
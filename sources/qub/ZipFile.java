@@ -2,30 +2,960 @@ package qub;
 
 public class ZipFile extends File
 {
-    private ZipFile(File file)
+    private final ZipFileReadMode readMode;
+    private ZipFileWriteMode writeMode;
+    private ZipListener listener;
+    private ZipCodecPool codecPool;
+    private ZipCentralDirectoryCache centralDirectoryCache;
+    private boolean checkpointIndexing;
+
+    private ZipFile(File file, ZipFileReadMode readMode)
     {
         super(file.getFileSystem(), file.getPath());
+
+        PreCondition.assertNotNull(readMode, "readMode");
+
+        this.readMode = readMode;
+        this.writeMode = ZipFileWriteMode.Stream;
+        this.codecPool = ZipCodecPool.getDefault();
     }
 
     public static ZipFile get(File file)
     {
         PreCondition.assertNotNull(file, "file");
 
-        return new ZipFile(file);
+        return ZipFile.get(file, ZipFileReadMode.PositionalRead);
+    }
+
+    /**
+     * Get a {@link ZipFile} that reads its contents with the provided {@link ZipFileReadMode}.
+     * Files that aren't on the local disk always use {@link ZipFileReadMode#Stream}.
+     * @param file The file that contains the zip archive.
+     * @param readMode The way that the returned {@link ZipFile} will read its contents.
+     * @return The {@link ZipFile}.
+     */
+    public static ZipFile get(File file, ZipFileReadMode readMode)
+    {
+        PreCondition.assertNotNull(file, "file");
+        PreCondition.assertNotNull(readMode, "readMode");
+
+        return new ZipFile(file, readMode);
+    }
+
+    /**
+     * Get the way that this {@link ZipFile} will read its contents. This takes into account
+     * whether this {@link ZipFile} is on the local disk.
+     */
+    public ZipFileReadMode getReadMode()
+    {
+        return this.getFileSystem() instanceof JavaFileSystem
+            ? this.readMode
+            : ZipFileReadMode.Stream;
+    }
+
+    /**
+     * Get the way that this {@link ZipFile} will write its contents. This takes into account
+     * whether this {@link ZipFile} is on the local disk.
+     */
+    public ZipFileWriteMode getWriteMode()
+    {
+        return this.getFileSystem() instanceof JavaFileSystem
+            ? this.writeMode
+            : ZipFileWriteMode.Stream;
+    }
+
+    /**
+     * Set the way that the {@link ZipWriteStream}s that are opened from this {@link ZipFile} will
+     * write its contents. By default this is {@link ZipFileWriteMode#Stream}. Files that aren't
+     * on the local disk always use {@link ZipFileWriteMode#Stream}.
+     * @param writeMode The way that this {@link ZipFile} will write its contents.
+     * @return This object for method chaining.
+     */
+    public ZipFile setWriteMode(ZipFileWriteMode writeMode)
+    {
+        PreCondition.assertNotNull(writeMode, "writeMode");
+
+        this.writeMode = writeMode;
+
+        return this;
+    }
+
+    /**
+     * Get the {@link ZipListener} that is notified as entries are written to and read from this
+     * {@link ZipFile}, or null if this {@link ZipFile} doesn't have a listener.
+     */
+    public ZipListener getListener()
+    {
+        return this.listener;
+    }
+
+    /**
+     * Set the {@link ZipListener} that will be notified as entries are written to and read from
+     * this {@link ZipFile}. The listener is given to the {@link ZipReader}s,
+     * {@link ZipEntryIterator}s, and {@link ZipWriteStream}s that are opened from this
+     * {@link ZipFile} after it is set.
+     * @param listener The listener to notify, or null to stop notifying a listener.
+     * @return This object for method chaining.
+     */
+    public ZipFile setListener(ZipListener listener)
+    {
+        this.listener = listener;
+
+        return this;
+    }
+
+    /**
+     * Get the {@link ZipCodecPool} that the {@link ZipReader}s and {@link ZipWriteStream}s that
+     * are opened from this {@link ZipFile} get their codecs and buffers from.
+     */
+    public ZipCodecPool getCodecPool()
+    {
+        return this.codecPool;
     }
 
     /**
-     * Iterate over the entries in this {@link ZipFile}.
+     * Set the {@link ZipCodecPool} that the {@link ZipReader}s and {@link ZipWriteStream}s that
+     * are opened from this {@link ZipFile} will get their codecs and buffers from. By default
+     * this is {@link ZipCodecPool#getDefault()}, which is shared by every {@link ZipFile}.
+     * @param codecPool The pool to get codecs and buffers from.
+     * @return This object for method chaining.
+     */
+    public ZipFile setCodecPool(ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        this.codecPool = codecPool;
+
+        return this;
+    }
+
+    /**
+     * Get the {@link ZipCentralDirectoryCache} that the {@link ZipReader}s that are opened from
+     * this {@link ZipFile} get their central directories from, or null if this {@link ZipFile}
+     * parses its central directory every time that it is opened.
+     */
+    public ZipCentralDirectoryCache getCentralDirectoryCache()
+    {
+        return this.centralDirectoryCache;
+    }
+
+    /**
+     * Set the {@link ZipCentralDirectoryCache} that the {@link ZipReader}s that are opened from
+     * this {@link ZipFile} will get their central directories from. Only files on the local disk
+     * use the cache, because the cached central directories are checked against the file's size
+     * and last modified time. By default a {@link ZipFile} doesn't use a cache.
+     * @param centralDirectoryCache The cache to use, or null to stop using a cache.
+     * @return This object for method chaining.
+     */
+    public ZipFile setCentralDirectoryCache(ZipCentralDirectoryCache centralDirectoryCache)
+    {
+        this.centralDirectoryCache = centralDirectoryCache;
+
+        return this;
+    }
+
+    /**
+     * Get whether the {@link ZipReader}s that are opened from this {@link ZipFile} will build a
+     * {@link ZipEntryCheckpointIndex} for each deflated entry that is seeked in.
+     */
+    public boolean isCheckpointIndexing()
+    {
+        return this.checkpointIndexing;
+    }
+
+    /**
+     * Set whether the {@link ZipReader}s that are opened from this {@link ZipFile} will build a
+     * {@link ZipEntryCheckpointIndex} for each deflated entry that is seeked in. The indexes of
+     * files on the local disk are saved in a folder next to the file that has the file's name
+     * followed by ".checkpoints", and are loaded from there by later {@link ZipReader}s even if
+     * they aren't checkpoint indexing. By default this is false.
+     * @param checkpointIndexing Whether seeking will build checkpoint indexes.
+     * @return This object for method chaining.
+     */
+    public ZipFile setCheckpointIndexing(boolean checkpointIndexing)
+    {
+        this.checkpointIndexing = checkpointIndexing;
+
+        return this;
+    }
+
+    /**
+     * Iterate over the entries in this {@link ZipFile}. If this {@link ZipFile} reads its
+     * contents with {@link ZipFileReadMode#Stream}, then the entries will be read sequentially
+     * from the start of the file. Otherwise the entries will be found through the file's central
+     * directory, unless the file doesn't have one because it is empty or was truncated, in which
+     * case the entries will also be read sequentially.
      * @return A {@link ZipEntryIterator} that will iterate over the entries in this
      * {@link ZipFile}.
      */
     public ZipEntryIterator iterateEntries()
     {
-        return ZipEntryIterator.create(this);
+        final ZipEntryIterator result = this.getReadMode() == ZipFileReadMode.Stream
+            ? ZipEntryIterator.create(this)
+            : ZipEntryIterator.create(this, () -> { return this.getReader(false).await(); });
+        return result.setListener(this.listener);
+    }
+
+    /**
+     * Iterate over the entries in this {@link ZipFile} that match the provided condition. The
+     * entries are always found through the file's central directory, and the condition is run
+     * against each entry's {@link ZipCentralDirectoryEntry} before any stream, {@link Path}, or
+     * {@link DateTime} is created for it. Entries that don't match are skipped without reading
+     * any of their data.
+     * @param condition The condition that an entry must match to be iterated over.
+     * @return A {@link ZipEntryIterator} that will iterate over the matching entries in this
+     * {@link ZipFile}.
+     */
+    public ZipEntryIterator iterateEntries(Function1<ZipCentralDirectoryEntry,Boolean> condition)
+    {
+        PreCondition.assertNotNull(condition, "condition");
+
+        return ZipEntryIterator.createFromCentralDirectory(() -> { return this.getReader().await(); }, condition)
+            .setListener(this.listener);
+    }
+
+    /**
+     * Iterate over the entries in this {@link ZipFile} whose paths match the provided glob
+     * pattern, such as "META-INF/**&#47;*.xml". See {@link ZipEntryPathPattern} for the pattern
+     * syntax.
+     * @param entryPathPattern The glob pattern that an entry's path must match.
+     * @return A {@link ZipEntryIterator} that will iterate over the matching entries in this
+     * {@link ZipFile}.
+     */
+    public ZipEntryIterator iterateEntries(String entryPathPattern)
+    {
+        PreCondition.assertNotNullAndNotEmpty(entryPathPattern, "entryPathPattern");
+
+        final ZipEntryPathPattern pattern = ZipEntryPathPattern.parse(entryPathPattern);
+        return this.iterateEntries(pattern::isMatch);
+    }
+
+    /**
+     * Open a {@link ZipReader} that uses this {@link ZipFile}'s central directory to read
+     * individual entries. The returned {@link ZipReader} is safe to share between threads, so a
+     * long-lived server can open it once and serve every request's entries from it instead of
+     * opening this {@link ZipFile} again for each request.
+     * @return The {@link ZipReader} for this {@link ZipFile}.
+     */
+    public Result<ZipReader> getReader()
+    {
+        return this.getReader(true);
+    }
+
+    /**
+     * Open a {@link ZipReader} that uses this {@link ZipFile}'s central directory to read
+     * individual entries.
+     * @param requireCentralDirectory Whether to fail if this {@link ZipFile} doesn't have a
+     * central directory. If this is false, then the returned {@link Result} will contain null
+     * instead.
+     * @return The {@link ZipReader} for this {@link ZipFile}.
+     */
+    private Result<ZipReader> getReader(boolean requireCentralDirectory)
+    {
+        return Result.create(() ->
+        {
+            final ZipCentralDirectoryCache centralDirectoryCache = this.getReadMode() == ZipFileReadMode.Stream
+                ? null
+                : this.centralDirectoryCache;
+
+            // The last modified time is read before the file is opened so that a change that is
+            // made while the file is being opened is seen the next time that it is opened.
+            long lastModifiedMilliseconds = 0;
+            if (centralDirectoryCache != null && this.exists().await())
+            {
+                try
+                {
+                    lastModifiedMilliseconds = java.nio.file.Files.getLastModifiedTime(java.nio.file.Paths.get(this.getPath().toString())).toMillis();
+                }
+                catch (java.io.IOException e)
+                {
+                    throw Exceptions.asRuntime(e);
+                }
+            }
+
+            final ZipByteSource byteSource = this.getByteSource().await();
+            try
+            {
+                if (!requireCentralDirectory && !ZipCentralDirectory.hasEndOfCentralDirectory(byteSource))
+                {
+                    byteSource.dispose().await();
+                    return null;
+                }
+
+                final ZipReader reader = centralDirectoryCache == null
+                    ? ZipReader.create(byteSource)
+                    : ZipReader.create(byteSource, centralDirectoryCache.getOrParse(this.getPath().toString(), lastModifiedMilliseconds, byteSource));
+                if (this.getFileSystem() instanceof JavaFileSystem)
+                {
+                    reader.setCheckpointIndexFolderPath(java.nio.file.Paths.get(this.getPath().toString() + ".checkpoints"));
+                }
+                return reader
+                    .setListener(this.listener)
+                    .setCodecPool(this.codecPool)
+                    .setCheckpointIndexing(this.checkpointIndexing);
+            }
+            catch (RuntimeException e)
+            {
+                byteSource.dispose().await();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Open a read-only {@link ZipFileSystem} over this {@link ZipFile}'s entries, so that code
+     * that works with {@link Folder}s and {@link File}s can read them without extracting them
+     * first. The returned {@link ZipFileSystem} owns the {@link ZipReader} that it reads from,
+     * which is closed when the {@link ZipFileSystem} is disposed.
+     * @return The {@link ZipFileSystem} for this {@link ZipFile}.
+     */
+    public Result<ZipFileSystem> getContentsFileSystem()
+    {
+        return Result.create(() ->
+        {
+            final ZipReader reader = this.getReader().await();
+            try
+            {
+                return ZipFileSystem.createOwning(reader);
+            }
+            catch (RuntimeException e)
+            {
+                reader.dispose().await();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Get the entries that are listed in this {@link ZipFile}'s central directory. This only reads
+     * the central directory, so no entry data is read or inflated and no entry streams are opened.
+     * Each entry is a single {@link ZipCentralDirectoryEntry} record that contains the entry's
+     * path, sizes, CRC-32, compression method, last modified time, and local file header offset.
+     * @return The entries in this {@link ZipFile}.
+     */
+    public Result<Iterable<ZipCentralDirectoryEntry>> getEntries()
+    {
+        return Result.create(() ->
+        {
+            try (final ZipReader reader = this.getReader().await())
+            {
+                return reader.getEntries();
+            }
+        });
+    }
+
+    /**
+     * Open a {@link ZipEntryReadStream} for the entry with the provided path without reading any
+     * of the entries that come before it.
+     * @param entryPath The path of the entry to read.
+     * @return The {@link ZipEntryReadStream} for the entry.
+     */
+    public Result<ZipEntryReadStream> getEntry(String entryPath)
+    {
+        PreCondition.assertNotNullAndNotEmpty(entryPath, "entryPath");
+
+        return this.getEntry(Path.parse(entryPath));
+    }
+
+    /**
+     * Open a {@link ZipEntryReadStream} for the entry with the provided path without reading any
+     * of the entries that come before it.
+     * @param entryPath The path of the entry to read.
+     * @return The {@link ZipEntryReadStream} for the entry.
+     */
+    public Result<ZipEntryReadStream> getEntry(Path entryPath)
+    {
+        PreCondition.assertNotNull(entryPath, "entryPath");
+
+        return Result.create(() ->
+        {
+            final ZipReader reader = this.getReader().await();
+            try
+            {
+                return reader.getOwningEntryReadStream(entryPath).await();
+            }
+            catch (RuntimeException e)
+            {
+                reader.dispose().await();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Open a {@link ZipEntryReadStream} for an entry inside of archives that are nested in this
+     * {@link ZipFile}, such as "inner.jar!/META-INF/MANIFEST.MF" for the path
+     * "outer.zip!/inner.jar!/META-INF/MANIFEST.MF". Stored nested archives are read in place
+     * through this {@link ZipFile}'s positional reads, and deflated nested archives are read as a
+     * stream. See {@link ZipReader#getNestedEntryReadStream(String)}.
+     * @param nestedEntryPath The path of the entry, with the path of each nested archive before
+     * it followed by "!/".
+     * @return The {@link ZipEntryReadStream} for the entry.
+     */
+    public Result<ZipEntryReadStream> getNestedEntry(String nestedEntryPath)
+    {
+        PreCondition.assertNotNullAndNotEmpty(nestedEntryPath, "nestedEntryPath");
+
+        return Result.create(() ->
+        {
+            final ZipReader reader = this.getReader().await();
+            try
+            {
+                return reader.getOwningNestedEntryReadStream(nestedEntryPath).await();
+            }
+            catch (RuntimeException e)
+            {
+                reader.dispose().await();
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Extract the entries in this {@link ZipFile} into the provided {@link Folder}, using one
+     * thread per available processor. See {@link #extractTo(Folder, java.util.concurrent.Executor)}.
+     * @param folder The folder to extract the entries into.
+     * @return The result of extracting the entries.
+     */
+    public Result<Void> extractTo(Folder folder)
+    {
+        PreCondition.assertNotNull(folder, "folder");
+
+        return this.extractTo(folder, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Extract the entries in this {@link ZipFile} into the provided {@link Folder} on a new pool
+     * of the provided number of threads. The pool is shut down when the extraction finishes. See
+     * {@link #extractTo(Folder, java.util.concurrent.Executor)}.
+     * @param folder The folder to extract the entries into.
+     * @param threadCount The number of threads to extract with, or 1 to extract every entry on
+     * the calling thread.
+     * @return The result of extracting the entries.
+     */
+    public Result<Void> extractTo(Folder folder, int threadCount)
+    {
+        PreCondition.assertNotNull(folder, "folder");
+        PreCondition.assertGreaterThanOrEqualTo(threadCount, 1, "threadCount");
+
+        return Result.create(() ->
+        {
+            if (threadCount == 1)
+            {
+                this.extractTo(folder, (java.util.concurrent.Executor)null).await();
+            }
+            else
+            {
+                final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(threadCount, (Runnable runnable) ->
+                {
+                    final Thread thread = new Thread(runnable, "ZipFile extraction");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                try
+                {
+                    this.extractTo(folder, executor).await();
+                }
+                finally
+                {
+                    executor.shutdown();
+                }
+            }
+        });
+    }
+
+    /**
+     * Extract the entries in this {@link ZipFile} into the provided {@link Folder}. Every folder
+     * that is listed in this {@link ZipFile}'s central directory is created up front, and then
+     * the file entries are inflated and written concurrently on the provided
+     * {@link java.util.concurrent.Executor}. Each entry reads its own data with positional
+     * reads, so entries don't wait on each other. Extracted files on the local disk keep the
+     * last modified time of their entry. Entries whose paths would be extracted outside of the
+     * provided {@link Folder}, and file entries whose paths are also the folder of another entry,
+     * cause a {@link ZipFormatException} before anything is written.
+     * Folders that aren't on the local disk are always extracted into on the calling thread. When
+     * more than one entry has the same path, only the last of them in the central directory is
+     * extracted.
+     * @param folder The folder to extract the entries into.
+     * @param executor The executor to extract entries on, or null to extract every entry on the
+     * calling thread. The executor is not shut down.
+     * @return The result of extracting the entries.
+     */
+    public Result<Void> extractTo(Folder folder, java.util.concurrent.Executor executor)
+    {
+        PreCondition.assertNotNull(folder, "folder");
+
+        return Result.create(() ->
+        {
+            try (final ZipReader reader = this.getReader().await())
+            {
+                // Entries that share a path are extracted to the same file, so only the last of
+                // them in the central directory is kept. Otherwise they would be written to the
+                // same file concurrently.
+                // Each folder path is mapped to the path of the first entry that needs it.
+                final java.nio.file.Path javaFolderPath = folder.getFileSystem() instanceof JavaFileSystem
+                    ? java.nio.file.Paths.get(folder.getPath().toString())
+                    : null;
+                final java.util.Map<String,ZipCentralDirectoryEntry> fileEntryMap = new java.util.LinkedHashMap<>();
+                final java.util.Map<String,String> folderPaths = new java.util.LinkedHashMap<>();
+                for (final ZipCentralDirectoryEntry entry : reader.getEntries())
+                {
+                    final String entryPath = entry.getName();
+                    ZipFile.assertExtractableEntryPath(javaFolderPath, entryPath);
+
+                    if (entry.isDirectory())
+                    {
+                        folderPaths.putIfAbsent(entryPath.substring(0, entryPath.length() - 1), entryPath);
+                    }
+                    else
+                    {
+                        fileEntryMap.put(entryPath, entry);
+                        final int lastSlashIndex = entryPath.lastIndexOf('/');
+                        if (lastSlashIndex > 0)
+                        {
+                            folderPaths.putIfAbsent(entryPath.substring(0, lastSlashIndex), entryPath);
+                        }
+                    }
+                }
+                ZipFile.assertNoFileFolderConflicts(fileEntryMap.keySet(), folderPaths);
+                final java.util.List<ZipCentralDirectoryEntry> fileEntries = new java.util.ArrayList<>(fileEntryMap.values());
+
+                if (javaFolderPath != null)
+                {
+                    try
+                    {
+                        java.nio.file.Files.createDirectories(javaFolderPath);
+                        for (final String folderPath : folderPaths.keySet())
+                        {
+                            java.nio.file.Files.createDirectories(javaFolderPath.resolve(folderPath));
+                        }
+                    }
+                    catch (java.io.IOException e)
+                    {
+                        throw Exceptions.asRuntime(e);
+                    }
+
+                    ZipFile.runAll(executor, fileEntries, (ZipCentralDirectoryEntry entry) ->
+                    {
+                        ZipFile.extractEntry(reader, entry, javaFolderPath.resolve(entry.getName()));
+                    });
+                }
+                else
+                {
+                    if (!folder.exists().await())
+                    {
+                        folder.create().await();
+                    }
+                    for (final String folderPath : folderPaths.keySet())
+                    {
+                        final Folder entryFolder = folder.getFolder(folderPath).await();
+                        if (!entryFolder.exists().await())
+                        {
+                            entryFolder.create().await();
+                        }
+                    }
+
+                    for (final ZipCentralDirectoryEntry entry : fileEntries)
+                    {
+                        final File entryFile = folder.getFile(entry.getName()).await();
+                        try (final ZipEntryReadStream entryReadStream = reader.getEntryReadStream(entry);
+                             final ByteWriteStream fileWriteStream = entryFile.getContentsByteWriteStream().await())
+                        {
+                            entryReadStream.transferTo(fileWriteStream).await();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Replace the contents of this {@link ZipFile} with the files in the provided {@link Folder}
+     * and its subfolders, using the default {@link ZipCreateParameters}. See
+     * {@link #createFrom(Folder, ZipCreateParameters)}.
+     * @param folder The folder to pack into this {@link ZipFile}.
+     * @return The result of packing the folder.
+     */
+    public Result<Void> createFrom(Folder folder)
+    {
+        PreCondition.assertNotNull(folder, "folder");
+
+        return this.createFrom(folder, ZipCreateParameters.create());
+    }
+
+    /**
+     * Replace the contents of this {@link ZipFile} with the files in the provided {@link Folder}
+     * and its subfolders. Each file becomes an entry whose path is the file's path relative to
+     * the folder and whose last modified time is the file's last modified time. The entries are
+     * always written in order of their paths, so packing the same folder twice creates the same
+     * entries in the same order. Files on the local disk are read and compressed concurrently
+     * ahead of the entry that is being written, up to the provided parameters' limits. This
+     * {@link ZipFile} is skipped if it is inside of the folder, and empty folders are not
+     * added.
+     * @param folder The folder to pack into this {@link ZipFile}.
+     * @param parameters The parameters that control how the folder is packed.
+     * @return The result of packing the folder.
+     */
+    public Result<Void> createFrom(Folder folder, ZipCreateParameters parameters)
+    {
+        PreCondition.assertNotNull(folder, "folder");
+        PreCondition.assertNotNull(parameters, "parameters");
+
+        return Result.create(() ->
+        {
+            // The files are sorted by their entry paths so that the archive's entry order doesn't
+            // depend on the order that the file system lists the files in.
+            final java.util.TreeMap<String,File> files = new java.util.TreeMap<>();
+            final String zipFilePath = this.getPath().toString();
+            for (final File file : folder.getFilesRecursively().await())
+            {
+                if (!file.getPath().toString().equals(zipFilePath))
+                {
+                    files.put(file.relativeTo(folder).toString(), file);
+                }
+            }
+
+            final int threadCount = parameters.getThreadCount();
+            final ZipCompressedEntryCache compressedEntryCache = parameters.getCompressedEntryCache();
+            try (final ZipWriteStream writeStream = this.getContentsZipWriteStream().await()
+                .setCompressedEntryCache(compressedEntryCache))
+            {
+                if (threadCount == 1 || !(folder.getFileSystem() instanceof JavaFileSystem))
+                {
+                    for (final java.util.Map.Entry<String,File> file : files.entrySet())
+                    {
+                        final ZipEntryParameters entryParameters = parameters.createEntryParameters(file.getKey(), file.getValue().getLastModified().await());
+                        writeStream.createEntry(entryParameters, file.getValue());
+                    }
+                }
+                else
+                {
+                    final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(threadCount, (Runnable runnable) ->
+                    {
+                        final Thread thread = new Thread(runnable, "ZipFile compression");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    try
+                    {
+                        final ZipCodecPool codecPool = this.codecPool;
+                        final ZipEntryParameters compressionParameters = parameters.createCompressionParameters();
+                        final int maximumBufferedFileByteCount = parameters.getMaximumBufferedFileByteCount();
+                        final int maximumPendingFileCount = parameters.getMaximumPendingFileCount();
+                        final java.util.ArrayDeque<java.util.concurrent.Future<ZipCompressedData>> pendingFiles = new java.util.ArrayDeque<>();
+                        final java.util.Iterator<File> filesToRead = files.values().iterator();
+                        for (final java.util.Map.Entry<String,File> file : files.entrySet())
+                        {
+                            while (filesToRead.hasNext() && pendingFiles.size() < maximumPendingFileCount)
+                            {
+                                final java.nio.file.Path javaFilePath = java.nio.file.Paths.get(filesToRead.next().getPath().toString());
+                                pendingFiles.add(executor.submit(() -> ZipFile.readAndCompress(javaFilePath, maximumBufferedFileByteCount, compressionParameters, compressedEntryCache, codecPool)));
+                            }
+
+                            final ZipCompressedData compressedData;
+                            try
+                            {
+                                compressedData = pendingFiles.remove().get();
+                            }
+                            catch (java.util.concurrent.ExecutionException e)
+                            {
+                                throw Exceptions.asRuntime(e.getCause());
+                            }
+                            catch (InterruptedException e)
+                            {
+                                Thread.currentThread().interrupt();
+                                throw Exceptions.asRuntime(e);
+                            }
+
+                            final ZipEntryParameters entryParameters = parameters.createEntryParameters(file.getKey(), file.getValue().getLastModified().await());
+                            if (compressedData != null)
+                            {
+                                writeStream.createEntry(entryParameters, compressedData);
+                            }
+                            else
+                            {
+                                writeStream.createEntry(entryParameters, file.getValue());
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        executor.shutdownNow();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Read and compress the file at the provided path, or return null if the file is too large
+     * to be held in memory and should be streamed into the archive instead. If a
+     * {@link ZipCompressedEntryCache} is provided, then the compressed data is taken from it when
+     * the file's contents are already cached.
+     */
+    private static ZipCompressedData readAndCompress(java.nio.file.Path javaFilePath, int maximumBufferedFileByteCount, ZipEntryParameters compressionParameters, ZipCompressedEntryCache compressedEntryCache, ZipCodecPool codecPool) throws java.io.IOException
+    {
+        ZipCompressedData result = null;
+        if (java.nio.file.Files.size(javaFilePath) <= maximumBufferedFileByteCount)
+        {
+            final byte[] fileBytes = java.nio.file.Files.readAllBytes(javaFilePath);
+            result = compressedEntryCache != null
+                ? compressedEntryCache.getOrCompress(compressionParameters, fileBytes, 0, fileBytes.length, codecPool)
+                : ZipCompressedData.create(compressionParameters, fileBytes, 0, fileBytes.length, codecPool);
+        }
+        return result;
+    }
+
+    /**
+     * Make sure that the provided entry path can't be extracted outside of the folder that it is
+     * extracted into. When the folder is on the local disk, the entry path is resolved against
+     * the folder with the platform's own path rules, so a name such as "logs/12:00.txt" is only
+     * rejected where ':' would make it a drive or stream name. Otherwise the entry path must not
+     * be rooted or contain ".." segments.
+     * @param javaFolderPath The local folder that the entry is extracted into, or null if the
+     * folder isn't on the local disk.
+     * @param entryPath The path of the entry.
+     */
+    private static void assertExtractableEntryPath(java.nio.file.Path javaFolderPath, String entryPath)
+    {
+        boolean extractable;
+        if (javaFolderPath != null)
+        {
+            try
+            {
+                final java.nio.file.Path normalizedFolderPath = javaFolderPath.toAbsolutePath().normalize();
+                extractable = normalizedFolderPath.resolve(entryPath).normalize().startsWith(normalizedFolderPath);
+            }
+            catch (java.nio.file.InvalidPathException e)
+            {
+                extractable = false;
+            }
+        }
+        else
+        {
+            extractable = !entryPath.startsWith("/") &&
+                !entryPath.startsWith("\\") &&
+                !(entryPath.length() >= 2 && Character.isLetter(entryPath.charAt(0)) && entryPath.charAt(1) == ':');
+            if (extractable)
+            {
+                for (final String segment : entryPath.split("[/\\\\]"))
+                {
+                    if (segment.equals(".."))
+                    {
+                        extractable = false;
+                        break;
+                    }
+                }
+            }
+        }
+        if (!extractable)
+        {
+            throw new ZipFormatException("The entry path \"" + entryPath + "\" would be extracted outside of the destination folder.");
+        }
+    }
+
+    /**
+     * Make sure that none of the provided file entry paths is also one of the provided folder
+     * paths or one of their parent folders. Otherwise extracting the file would fail after some
+     * of the archive had already been extracted.
+     * @param fileEntryPaths The paths of the file entries that will be extracted.
+     * @param folderPaths The folder paths that will be created, each mapped to the path of an
+     * entry that needs it.
+     */
+    private static void assertNoFileFolderConflicts(java.util.Set<String> fileEntryPaths, java.util.Map<String,String> folderPaths)
+    {
+        for (final java.util.Map.Entry<String,String> folderPath : folderPaths.entrySet())
+        {
+            final String path = folderPath.getKey();
+            int endIndex = path.indexOf('/');
+            while (true)
+            {
+                final String parentPath = endIndex == -1 ? path : path.substring(0, endIndex);
+                if (fileEntryPaths.contains(parentPath))
+                {
+                    throw new ZipFormatException("The file entry \"" + parentPath + "\" can't be extracted because the entry \"" + folderPath.getValue() + "\" needs it to be a folder.");
+                }
+                if (endIndex == -1)
+                {
+                    break;
+                }
+                endIndex = path.indexOf('/', endIndex + 1);
+            }
+        }
+    }
+
+    /**
+     * Inflate the provided entry into the file at the provided path and give the file the
+     * entry's last modified time.
+     */
+    private static void extractEntry(ZipReader reader, ZipCentralDirectoryEntry entry, java.nio.file.Path javaFilePath)
+    {
+        final ZipCodecPool codecPool = reader.getCodecPool();
+        final byte[] buffer = codecPool.acquireBuffer();
+        try (final ZipEntryReadStream entryReadStream = reader.getEntryReadStream(entry);
+             final java.io.OutputStream fileOutputStream = java.nio.file.Files.newOutputStream(javaFilePath))
+        {
+            int bytesRead = entryReadStream.readBytesInto(buffer, 0, buffer.length);
+            while (bytesRead != -1)
+            {
+                fileOutputStream.write(buffer, 0, bytesRead);
+                bytesRead = entryReadStream.readBytesInto(buffer, 0, buffer.length);
+            }
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+        finally
+        {
+            codecPool.releaseBuffer(buffer);
+        }
+
+        try
+        {
+            java.nio.file.Files.setLastModifiedTime(javaFilePath, java.nio.file.attribute.FileTime.fromMillis(entry.getLastModifiedMilliseconds()));
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    /**
+     * Run the provided action for each of the provided values on the provided executor and wait
+     * for all of them to finish. Once an action fails, the actions that haven't started yet are
+     * skipped, and the first failure is thrown after the running actions finish.
+     */
+    private static <T> void runAll(java.util.concurrent.Executor executor, java.util.List<T> values, Action1<T> action)
+    {
+        if (executor == null)
+        {
+            for (final T value : values)
+            {
+                action.run(value);
+            }
+        }
+        else
+        {
+            final java.util.concurrent.atomic.AtomicBoolean failed = new java.util.concurrent.atomic.AtomicBoolean();
+            final java.util.List<java.util.concurrent.FutureTask<Void>> tasks = new java.util.ArrayList<>(values.size());
+            for (final T value : values)
+            {
+                final java.util.concurrent.FutureTask<Void> task = new java.util.concurrent.FutureTask<>(() ->
+                {
+                    if (!failed.get())
+                    {
+                        try
+                        {
+                            action.run(value);
+                        }
+                        catch (RuntimeException e)
+                        {
+                            failed.set(true);
+                            throw e;
+                        }
+                    }
+                    return null;
+                });
+                tasks.add(task);
+                executor.execute(task);
+            }
+
+            Throwable failure = null;
+            for (final java.util.concurrent.FutureTask<Void> task : tasks)
+            {
+                try
+                {
+                    task.get();
+                }
+                catch (java.util.concurrent.ExecutionException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e.getCause();
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw Exceptions.asRuntime(e);
+                }
+            }
+            if (failure != null)
+            {
+                throw Exceptions.asRuntime(failure);
+            }
+        }
+    }
+
+    private Result<ZipByteSource> getByteSource()
+    {
+        return Result.create(() ->
+        {
+            if (!this.exists().await())
+            {
+                throw new FileNotFoundException(this);
+            }
+
+            final ZipByteSource result;
+            final ZipFileReadMode readMode = this.getReadMode();
+            if (readMode == ZipFileReadMode.Stream)
+            {
+                try (final ByteReadStream readStream = this.getContentsReadStream().await())
+                {
+                    result = InMemoryZipByteSource.create(readStream);
+                }
+            }
+            else
+            {
+                final java.nio.file.Path javaFilePath = java.nio.file.Paths.get(this.getPath().toString());
+                result = readMode == ZipFileReadMode.MemoryMapped
+                    ? MemoryMappedZipByteSource.create(javaFilePath).await()
+                    : FileChannelZipByteSource.create(javaFilePath).await();
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Remove this {@link ZipFile}'s central directory from its {@link ZipCentralDirectoryCache}
+     * before the file is written to. The file's last modified time would also cause the cached
+     * central directory to be dropped, but only if the file system's timestamps are fine enough
+     * to tell the old and new contents apart.
+     */
+    private void invalidateCentralDirectory()
+    {
+        final ZipCentralDirectoryCache centralDirectoryCache = this.centralDirectoryCache;
+        if (centralDirectoryCache != null)
+        {
+            centralDirectoryCache.invalidate(this.getPath().toString());
+        }
     }
 
     public Result<ZipWriteStream> getContentsZipWriteStream()
     {
-        return ZipWriteStream.create(this);
+        return Result.create(() ->
+        {
+            this.invalidateCentralDirectory();
+            return ZipWriteStream.create(this, this.getWriteMode()).await()
+                .setListener(this.listener)
+                .setCodecPool(this.codecPool);
+        });
+    }
+
+    /**
+     * Open a {@link ZipWriteStream} that appends entries to this {@link ZipFile} without
+     * rewriting the entries that are already in it.
+     * @return The {@link ZipWriteStream} that appends entries to this {@link ZipFile}.
+     */
+    public Result<ZipWriteStream> getContentsZipAppendStream()
+    {
+        return Result.create(() ->
+        {
+            this.invalidateCentralDirectory();
+            return ZipWriteStream.createAppend(this, this.getWriteMode()).await()
+                .setListener(this.listener)
+                .setCodecPool(this.codecPool);
+        });
     }
 }
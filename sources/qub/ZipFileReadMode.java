@@ -0,0 +1,25 @@
+package qub;
+
+/**
+ * The ways that a {@link ZipFile} can read its contents.
+ */
+public enum ZipFileReadMode
+{
+    /**
+     * Read the file's contents through the {@link FileSystem}'s {@link ByteReadStream}. This
+     * works for every {@link FileSystem}.
+     */
+    Stream,
+
+    /**
+     * Read the file's contents with positional reads against a {@link java.nio.channels.FileChannel}.
+     * This only applies to files on the local disk.
+     */
+    PositionalRead,
+
+    /**
+     * Memory-map the file's contents and inflate entries straight from the mapping. This only
+     * applies to files on the local disk.
+     */
+    MemoryMapped,
+}
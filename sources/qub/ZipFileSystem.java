@@ -0,0 +1,426 @@
+package qub;
+
+/**
+ * A read-only {@link FileSystem} that exposes the entries of a zip archive as {@link File}s and
+ * {@link Folder}s under a single root, "/". The archive's central directory is turned into an
+ * in-memory trie of path segments when the {@link ZipFileSystem} is created, so listing a folder
+ * or checking whether a path exists never reads the archive. Reading a file opens a positional
+ * {@link ZipEntryReadStream} from the {@link ZipReader}, so files can be read on many threads at
+ * the same time.
+ * <p>
+ * Folders come from the paths of the archive's entries as well as from its directory entries,
+ * so an archive that doesn't list its directories can still be browsed. If an archive contains
+ * both a file entry and other entries under the same path, then that path is a folder. Entries
+ * whose paths contain ".." segments can't be reached through a {@link ZipFileSystem}. Operations
+ * that would change the archive fail with an {@link UnsupportedOperationException}.
+ */
+public class ZipFileSystem implements FileSystem, Disposable
+{
+    private static final String rootPathString = "/";
+
+    private final ZipReader reader;
+    private final boolean ownsReader;
+    private final PathTrieNode rootNode;
+    private boolean disposed;
+
+    private ZipFileSystem(ZipReader reader, boolean ownsReader)
+    {
+        PreCondition.assertNotNull(reader, "reader");
+        PreCondition.assertNotDisposed(reader, "reader");
+
+        this.reader = reader;
+        this.ownsReader = ownsReader;
+        this.rootNode = new PathTrieNode();
+        for (final ZipCentralDirectoryEntry entry : reader.getEntries())
+        {
+            this.rootNode.add(entry);
+        }
+    }
+
+    /**
+     * Create a new {@link ZipFileSystem} that exposes the entries of the provided
+     * {@link ZipReader}. Disposing of the returned {@link ZipFileSystem} doesn't dispose of the
+     * {@link ZipReader}.
+     * @param reader The {@link ZipReader} to read the archive's entries from.
+     * @return The new {@link ZipFileSystem}.
+     */
+    public static ZipFileSystem create(ZipReader reader)
+    {
+        return new ZipFileSystem(reader, false);
+    }
+
+    /**
+     * Create a new {@link ZipFileSystem} that exposes the entries of the provided
+     * {@link ZipReader} and disposes of the {@link ZipReader} when it is disposed.
+     */
+    static ZipFileSystem createOwning(ZipReader reader)
+    {
+        return new ZipFileSystem(reader, true);
+    }
+
+    /**
+     * Get the {@link ZipReader} that this {@link ZipFileSystem} reads the archive's entries from.
+     */
+    public ZipReader getReader()
+    {
+        return this.reader;
+    }
+
+    /**
+     * Get the entry of the file at the provided path.
+     * @param rootedFilePath The rooted path of the file.
+     * @return The entry of the file at the provided path.
+     */
+    public Result<ZipCentralDirectoryEntry> getEntry(Path rootedFilePath)
+    {
+        PreCondition.assertNotNull(rootedFilePath, "rootedFilePath");
+        PreCondition.assertTrue(rootedFilePath.isRooted(), "rootedFilePath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        final PathTrieNode node = this.getNode(rootedFilePath);
+        return node != null && node.isFile()
+            ? Result.success(node.fileEntry)
+            : Result.error(new FileNotFoundException(rootedFilePath));
+    }
+
+    @Override
+    public Result<Iterable<Root>> getRoots()
+    {
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.success(Iterable.create(new Root(this, Path.parse(ZipFileSystem.rootPathString))));
+    }
+
+    /**
+     * Get the total uncompressed size of the files in the archive.
+     */
+    @Override
+    public Result<DataSize> getRootTotalDataSize(Path rootPath)
+    {
+        PreCondition.assertNotNull(rootPath, "rootPath");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() ->
+        {
+            final PathTrieNode rootNode = this.getRootNode(rootPath);
+            if (rootNode == null)
+            {
+                throw new FolderNotFoundException(rootPath);
+            }
+
+            long uncompressedByteCount = 0;
+            for (final ZipCentralDirectoryEntry entry : this.reader.getEntries())
+            {
+                if (!entry.isDirectory())
+                {
+                    uncompressedByteCount += entry.getUncompressedByteCount();
+                }
+            }
+            return DataSize.bytes(uncompressedByteCount);
+        });
+    }
+
+    /**
+     * Get the unused size of the archive, which is always zero because a {@link ZipFileSystem}
+     * can't be written to.
+     */
+    @Override
+    public Result<DataSize> getRootUnusedDataSize(Path rootPath)
+    {
+        PreCondition.assertNotNull(rootPath, "rootPath");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return this.getRootNode(rootPath) == null
+            ? Result.error(new FolderNotFoundException(rootPath))
+            : Result.success(DataSize.zero);
+    }
+
+    @Override
+    public Result<Iterable<FileSystemEntry>> getFilesAndFolders(Path rootedFolderPath)
+    {
+        PreCondition.assertNotNull(rootedFolderPath, "rootedFolderPath");
+        PreCondition.assertTrue(rootedFolderPath.isRooted(), "rootedFolderPath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() ->
+        {
+            final PathTrieNode folderNode = this.getNode(rootedFolderPath);
+            if (folderNode == null || !folderNode.isFolder())
+            {
+                throw new FolderNotFoundException(rootedFolderPath);
+            }
+
+            final List<FileSystemEntry> result = List.create();
+            if (folderNode.children != null)
+            {
+                for (final java.util.Map.Entry<String,PathTrieNode> child : folderNode.children.entrySet())
+                {
+                    final Path childPath = rootedFolderPath.concatenateSegment(child.getKey());
+                    result.add(child.getValue().isFolder()
+                        ? new Folder(this, childPath)
+                        : new File(this, childPath));
+                }
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public Result<Boolean> folderExists(Path rootedFolderPath)
+    {
+        PreCondition.assertNotNull(rootedFolderPath, "rootedFolderPath");
+        PreCondition.assertTrue(rootedFolderPath.isRooted(), "rootedFolderPath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        final PathTrieNode node = this.getNode(rootedFolderPath);
+        return Result.success(node != null && node.isFolder());
+    }
+
+    @Override
+    public Result<Folder> createFolder(Path rootedFolderPath)
+    {
+        PreCondition.assertNotNull(rootedFolderPath, "rootedFolderPath");
+        PreCondition.assertTrue(rootedFolderPath.isRooted(), "rootedFolderPath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.error(ZipFileSystem.createReadOnlyException(rootedFolderPath));
+    }
+
+    @Override
+    public Result<Void> deleteFolder(Path rootedFolderPath)
+    {
+        PreCondition.assertNotNull(rootedFolderPath, "rootedFolderPath");
+        PreCondition.assertTrue(rootedFolderPath.isRooted(), "rootedFolderPath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.error(ZipFileSystem.createReadOnlyException(rootedFolderPath));
+    }
+
+    @Override
+    public Result<Boolean> fileExists(Path rootedFilePath)
+    {
+        PreCondition.assertNotNull(rootedFilePath, "rootedFilePath");
+        PreCondition.assertTrue(rootedFilePath.isRooted(), "rootedFilePath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        final PathTrieNode node = this.getNode(rootedFilePath);
+        return Result.success(node != null && node.isFile());
+    }
+
+    @Override
+    public Result<File> createFile(Path rootedFilePath)
+    {
+        PreCondition.assertNotNull(rootedFilePath, "rootedFilePath");
+        PreCondition.assertTrue(rootedFilePath.isRooted(), "rootedFilePath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.error(ZipFileSystem.createReadOnlyException(rootedFilePath));
+    }
+
+    @Override
+    public Result<Void> deleteFile(Path rootedFilePath)
+    {
+        PreCondition.assertNotNull(rootedFilePath, "rootedFilePath");
+        PreCondition.assertTrue(rootedFilePath.isRooted(), "rootedFilePath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.error(ZipFileSystem.createReadOnlyException(rootedFilePath));
+    }
+
+    @Override
+    public Result<DateTime> getFileLastModified(Path rootedFilePath)
+    {
+        PreCondition.assertNotNull(rootedFilePath, "rootedFilePath");
+        PreCondition.assertTrue(rootedFilePath.isRooted(), "rootedFilePath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() -> this.getEntry(rootedFilePath).await().getLastModified());
+    }
+
+    @Override
+    public Result<Void> setFileLastModified(Path rootedFilePath, DateTime lastModified)
+    {
+        PreCondition.assertNotNull(rootedFilePath, "rootedFilePath");
+        PreCondition.assertTrue(rootedFilePath.isRooted(), "rootedFilePath.isRooted()");
+        PreCondition.assertNotNull(lastModified, "lastModified");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.error(ZipFileSystem.createReadOnlyException(rootedFilePath));
+    }
+
+    /**
+     * Get the uncompressed size of the file at the provided path.
+     */
+    @Override
+    public Result<DataSize> getFileContentDataSize(Path rootedFilePath)
+    {
+        PreCondition.assertNotNull(rootedFilePath, "rootedFilePath");
+        PreCondition.assertTrue(rootedFilePath.isRooted(), "rootedFilePath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() -> this.getEntry(rootedFilePath).await().getUncompressedSize());
+    }
+
+    /**
+     * Open a {@link ZipEntryReadStream} that reads the uncompressed contents of the file at the
+     * provided path. The stream should be disposed before this {@link ZipFileSystem} is.
+     */
+    @Override
+    public Result<ByteReadStream> getFileContentReadStream(Path rootedFilePath)
+    {
+        PreCondition.assertNotNull(rootedFilePath, "rootedFilePath");
+        PreCondition.assertTrue(rootedFilePath.isRooted(), "rootedFilePath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() -> this.reader.getEntryReadStream(this.getEntry(rootedFilePath).await()));
+    }
+
+    @Override
+    public Result<ByteWriteStream> getFileContentWriteStream(Path rootedFilePath)
+    {
+        PreCondition.assertNotNull(rootedFilePath, "rootedFilePath");
+        PreCondition.assertTrue(rootedFilePath.isRooted(), "rootedFilePath.isRooted()");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.error(ZipFileSystem.createReadOnlyException(rootedFilePath));
+    }
+
+    @Override
+    public boolean isDisposed()
+    {
+        return this.disposed;
+    }
+
+    @Override
+    public Result<Boolean> dispose()
+    {
+        return Result.create(() ->
+        {
+            final boolean result = !this.disposed;
+            if (result)
+            {
+                this.disposed = true;
+
+                if (this.ownsReader)
+                {
+                    this.reader.dispose().await();
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Get the node of the root at the provided path, or null if this {@link ZipFileSystem}
+     * doesn't have a root at the provided path.
+     */
+    private PathTrieNode getRootNode(Path rootPath)
+    {
+        final String rootPathString = rootPath.toString().replace('\\', '/');
+        return rootPathString.equals(ZipFileSystem.rootPathString)
+            ? this.rootNode
+            : null;
+    }
+
+    /**
+     * Get the node at the provided rooted path, or null if there isn't a file or folder at the
+     * provided path.
+     */
+    private PathTrieNode getNode(Path rootedPath)
+    {
+        final String pathString = rootedPath.toString().replace('\\', '/');
+        PathTrieNode result = null;
+        if (pathString.startsWith(ZipFileSystem.rootPathString))
+        {
+            result = this.rootNode;
+            for (final String segment : pathString.split("/"))
+            {
+                if (result == null)
+                {
+                    break;
+                }
+                else if (!segment.isEmpty() && !segment.equals("."))
+                {
+                    result = result.getChild(segment);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static UnsupportedOperationException createReadOnlyException(Path rootedPath)
+    {
+        return new UnsupportedOperationException("Can't change " + rootedPath + " because a zip file system is read-only.");
+    }
+
+    /**
+     * A node in the trie of an archive's paths. Every node is a folder except for the nodes of
+     * file entries that don't have anything under them.
+     */
+    private static class PathTrieNode
+    {
+        private ZipCentralDirectoryEntry fileEntry;
+        private boolean isDirectoryEntry;
+        private java.util.TreeMap<String,PathTrieNode> children;
+
+        /**
+         * Add the provided entry below this node.
+         */
+        void add(ZipCentralDirectoryEntry entry)
+        {
+            final String[] segments = entry.getName().replace('\\', '/').split("/");
+            boolean reachable = true;
+            for (final String segment : segments)
+            {
+                if (segment.equals(".."))
+                {
+                    reachable = false;
+                    break;
+                }
+            }
+
+            if (reachable)
+            {
+                PathTrieNode node = this;
+                for (final String segment : segments)
+                {
+                    if (!segment.isEmpty() && !segment.equals("."))
+                    {
+                        if (node.children == null)
+                        {
+                            node.children = new java.util.TreeMap<>();
+                        }
+                        node = node.children.computeIfAbsent(segment, (String name) -> new PathTrieNode());
+                    }
+                }
+
+                if (node != this)
+                {
+                    if (entry.isDirectory())
+                    {
+                        node.isDirectoryEntry = true;
+                    }
+                    else
+                    {
+                        node.fileEntry = entry;
+                    }
+                }
+            }
+        }
+
+        PathTrieNode getChild(String name)
+        {
+            return this.children == null ? null : this.children.get(name);
+        }
+
+        boolean isFolder()
+        {
+            return this.fileEntry == null || this.isDirectoryEntry || this.children != null;
+        }
+
+        boolean isFile()
+        {
+            return !this.isFolder();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package qub;
+
+/**
+ * The ways that a {@link ZipFile} can write its contents.
+ */
+public enum ZipFileWriteMode
+{
+    /**
+     * Write the file's contents through the {@link FileSystem}'s {@link ByteWriteStream}. The
+     * CRC-32 and sizes of each compressed entry aren't known when its local file header is
+     * written, so they follow the entry's data in a data descriptor. This works for every
+     * {@link FileSystem}.
+     */
+    Stream,
+
+    /**
+     * Write the file's contents to a {@link java.nio.channels.FileChannel} and write the CRC-32
+     * and sizes of each compressed entry back into its local file header when the entry is
+     * finished, so that the entry doesn't need a data descriptor. Readers that read the file
+     * from start to end can then skip over entries without inflating them. This only applies to
+     * files on the local disk.
+     */
+    Seekable,
+}
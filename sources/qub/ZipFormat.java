@@ -0,0 +1,202 @@
+package qub;
+
+/**
+ * Constants and helper functions that describe the binary layout of a zip archive.
+ */
+public interface ZipFormat
+{
+    int localFileHeaderSignature = 0x04034b50;
+    int localFileHeaderByteCount = 30;
+
+    int centralDirectoryFileHeaderSignature = 0x02014b50;
+    int centralDirectoryFileHeaderByteCount = 46;
+
+    int endOfCentralDirectorySignature = 0x06054b50;
+    int endOfCentralDirectoryByteCount = 22;
+
+    int zip64EndOfCentralDirectorySignature = 0x06064b50;
+    int zip64EndOfCentralDirectoryByteCount = 56;
+
+    int zip64EndOfCentralDirectoryLocatorSignature = 0x07064b50;
+    int zip64EndOfCentralDirectoryLocatorByteCount = 20;
+
+    int dataDescriptorSignature = 0x08074b50;
+
+    int maximumCommentByteCount = 0xFFFF;
+
+    int zip64ExtraFieldId = 0x0001;
+    int extendedTimestampExtraFieldId = 0x5455;
+
+    /**
+     * The value that is stored in a 32-bit size or offset field when the actual value is stored
+     * in the ZIP64 extra field.
+     */
+    long zip64Magic32 = 0xFFFFFFFFL;
+
+    /**
+     * The value that is stored in a 16-bit entry count field when the actual value is stored in
+     * the ZIP64 end of central directory record.
+     */
+    int zip64Magic16 = 0xFFFF;
+
+    int encryptedFlag = 0x1;
+    int dataDescriptorFlag = 0x8;
+    int strongEncryptionFlag = 0x40;
+    int utf8Flag = 0x800;
+
+    int defaultVersion = 20;
+    int zip64Version = 45;
+
+    int storedCompressionMethod = 0;
+    int deflatedCompressionMethod = 8;
+
+    /**
+     * Read the unsigned little-endian 16-bit value that starts at the provided index.
+     * @param bytes The bytes to read from.
+     * @param startIndex The index of the first byte of the value.
+     * @return The unsigned value.
+     */
+    static int readUnsignedShort(byte[] bytes, int startIndex)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertBetween(0, startIndex, bytes.length - 2, "startIndex");
+
+        return (bytes[startIndex] & 0xFF) |
+            ((bytes[startIndex + 1] & 0xFF) << 8);
+    }
+
+    /**
+     * Read the unsigned little-endian 32-bit value that starts at the provided index.
+     * @param bytes The bytes to read from.
+     * @param startIndex The index of the first byte of the value.
+     * @return The unsigned value.
+     */
+    static long readUnsignedInt(byte[] bytes, int startIndex)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertBetween(0, startIndex, bytes.length - 4, "startIndex");
+
+        return ((long)readUnsignedShort(bytes, startIndex)) |
+            (((long)readUnsignedShort(bytes, startIndex + 2)) << 16);
+    }
+
+    /**
+     * Read the little-endian 64-bit value that starts at the provided index.
+     * @param bytes The bytes to read from.
+     * @param startIndex The index of the first byte of the value.
+     * @return The value.
+     */
+    static long readLong(byte[] bytes, int startIndex)
+    {
+        PreCondition.assertNotNull(bytes, "bytes");
+        PreCondition.assertBetween(0, startIndex, bytes.length - 8, "startIndex");
+
+        return ZipFormat.readUnsignedInt(bytes, startIndex) |
+            (ZipFormat.readUnsignedInt(bytes, startIndex + 4) << 32);
+    }
+
+    /**
+     * Write the provided value as an unsigned little-endian 16-bit value to the provided
+     * {@link java.io.OutputStream}.
+     * @param outputStream The stream to write to.
+     * @param value The value to write.
+     */
+    static void writeUnsignedShort(java.io.OutputStream outputStream, int value) throws java.io.IOException
+    {
+        PreCondition.assertNotNull(outputStream, "outputStream");
+
+        outputStream.write(value & 0xFF);
+        outputStream.write((value >>> 8) & 0xFF);
+    }
+
+    /**
+     * Write the provided value as an unsigned little-endian 32-bit value to the provided
+     * {@link java.io.OutputStream}.
+     * @param outputStream The stream to write to.
+     * @param value The value to write.
+     */
+    static void writeUnsignedInt(java.io.OutputStream outputStream, long value) throws java.io.IOException
+    {
+        PreCondition.assertNotNull(outputStream, "outputStream");
+
+        ZipFormat.writeUnsignedShort(outputStream, (int)(value & 0xFFFF));
+        ZipFormat.writeUnsignedShort(outputStream, (int)((value >>> 16) & 0xFFFF));
+    }
+
+    /**
+     * Write the provided value as a little-endian 64-bit value to the provided
+     * {@link java.io.OutputStream}.
+     * @param outputStream The stream to write to.
+     * @param value The value to write.
+     */
+    static void writeLong(java.io.OutputStream outputStream, long value) throws java.io.IOException
+    {
+        PreCondition.assertNotNull(outputStream, "outputStream");
+
+        ZipFormat.writeUnsignedInt(outputStream, value & 0xFFFFFFFFL);
+        ZipFormat.writeUnsignedInt(outputStream, value >>> 32);
+    }
+
+    /**
+     * Convert the provided MS-DOS date and time (date in the upper 16 bits, time in the lower 16
+     * bits) to the number of milliseconds since the epoch, using the local time zone.
+     * @param dosDateTime The MS-DOS date and time.
+     * @return The number of milliseconds since the epoch.
+     */
+    static long dosDateTimeToMilliseconds(long dosDateTime)
+    {
+        final java.time.LocalDateTime localDateTime = java.time.LocalDateTime.of((int)(((dosDateTime >> 25) & 0x7F) + 1980), 1, 1, 0, 0)
+            .plusMonths(((dosDateTime >> 21) & 0x0F) - 1)
+            .plusDays(((dosDateTime >> 16) & 0x1F) - 1)
+            .plusHours((dosDateTime >> 11) & 0x1F)
+            .plusMinutes((dosDateTime >> 5) & 0x3F)
+            .plusSeconds((dosDateTime << 1) & 0x3E);
+        return localDateTime.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Get whether the provided number of milliseconds since the epoch can be stored as an MS-DOS
+     * date and time. MS-DOS dates can only represent the years 1980 through 2107.
+     * @param milliseconds The number of milliseconds since the epoch.
+     * @return Whether the provided time can be stored as an MS-DOS date and time.
+     */
+    static boolean isDosDateTimeRange(long milliseconds)
+    {
+        final int year = java.time.LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(milliseconds), java.time.ZoneId.systemDefault()).getYear();
+        return 1980 <= year && year <= 2107;
+    }
+
+    /**
+     * Convert the provided number of milliseconds since the epoch to an MS-DOS date and time
+     * (date in the upper 16 bits, time in the lower 16 bits), using the local time zone. Times
+     * before 1980 are stored as the start of 1980, and times after 2107 are stored as the end of
+     * 2107.
+     * @param milliseconds The number of milliseconds since the epoch.
+     * @return The MS-DOS date and time.
+     */
+    static long millisecondsToDosDateTime(long milliseconds)
+    {
+        final java.time.LocalDateTime localDateTime = java.time.LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(milliseconds), java.time.ZoneId.systemDefault());
+        final int year = localDateTime.getYear();
+
+        final long result;
+        if (year < 1980)
+        {
+            result = (1 << 21) | (1 << 16);
+        }
+        else if (year > 2107)
+        {
+            result = (127L << 25) | (12 << 21) | (31 << 16) | (23 << 11) | (59 << 5) | (59 >> 1);
+        }
+        else
+        {
+            result = ((long)(year - 1980) << 25) |
+                (localDateTime.getMonthValue() << 21) |
+                (localDateTime.getDayOfMonth() << 16) |
+                (localDateTime.getHour() << 11) |
+                (localDateTime.getMinute() << 5) |
+                (localDateTime.getSecond() >> 1);
+        }
+        return result;
+    }
+}
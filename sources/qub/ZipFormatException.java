@@ -0,0 +1,14 @@
+package qub;
+
+/**
+ * An exception that is thrown when the bytes of a zip archive don't match the zip format.
+ */
+public class ZipFormatException extends RuntimeException
+{
+    public ZipFormatException(String message)
+    {
+        super(message);
+
+        PreCondition.assertNotNullAndNotEmpty(message, "message");
+    }
+}
@@ -0,0 +1,28 @@
+package qub;
+
+/**
+ * A listener that is notified as zip entries are written and read. A listener is only called
+ * when it has been set on a {@link ZipFile}, {@link ZipWriteStream}, {@link ZipReader}, or
+ * {@link ZipEntryIterator}. Without a listener, no timing or metrics are collected. Listeners
+ * are called on the thread that is writing or reading the archive, so they should return
+ * quickly.
+ */
+public interface ZipListener
+{
+    /**
+     * Called after an entry has been written to an archive and added to the archive's central
+     * directory.
+     * @param metrics The metrics of the entry that was written.
+     */
+    default void entryWritten(ZipEntryMetrics metrics)
+    {
+    }
+
+    /**
+     * Called after an entry's read stream has been disposed.
+     * @param metrics The metrics of the entry that was read.
+     */
+    default void entryRead(ZipEntryMetrics metrics)
+    {
+    }
+}
@@ -0,0 +1,193 @@
+package qub;
+
+/**
+ * A {@link ZipListener} that adds up the metrics of every entry that is written and read. A
+ * single {@link ZipMetrics} can be shared by archives that are written and read on different
+ * threads.
+ */
+public class ZipMetrics implements ZipListener
+{
+    private final java.util.concurrent.atomic.LongAdder writtenEntryCount;
+    private final java.util.concurrent.atomic.LongAdder writtenUncompressedByteCount;
+    private final java.util.concurrent.atomic.LongAdder writtenCompressedByteCount;
+    private final java.util.concurrent.atomic.LongAdder writeNanoseconds;
+    private final java.util.concurrent.atomic.LongAdder deflateNanoseconds;
+    private final java.util.concurrent.atomic.LongAdder readEntryCount;
+    private final java.util.concurrent.atomic.LongAdder readUncompressedByteCount;
+    private final java.util.concurrent.atomic.LongAdder readCompressedByteCount;
+    private final java.util.concurrent.atomic.LongAdder readNanoseconds;
+    private final java.util.concurrent.atomic.LongAdder inflateNanoseconds;
+
+    private ZipMetrics()
+    {
+        this.writtenEntryCount = new java.util.concurrent.atomic.LongAdder();
+        this.writtenUncompressedByteCount = new java.util.concurrent.atomic.LongAdder();
+        this.writtenCompressedByteCount = new java.util.concurrent.atomic.LongAdder();
+        this.writeNanoseconds = new java.util.concurrent.atomic.LongAdder();
+        this.deflateNanoseconds = new java.util.concurrent.atomic.LongAdder();
+        this.readEntryCount = new java.util.concurrent.atomic.LongAdder();
+        this.readUncompressedByteCount = new java.util.concurrent.atomic.LongAdder();
+        this.readCompressedByteCount = new java.util.concurrent.atomic.LongAdder();
+        this.readNanoseconds = new java.util.concurrent.atomic.LongAdder();
+        this.inflateNanoseconds = new java.util.concurrent.atomic.LongAdder();
+    }
+
+    public static ZipMetrics create()
+    {
+        return new ZipMetrics();
+    }
+
+    @Override
+    public void entryWritten(ZipEntryMetrics metrics)
+    {
+        PreCondition.assertNotNull(metrics, "metrics");
+
+        this.writtenEntryCount.increment();
+        this.writtenUncompressedByteCount.add(metrics.getUncompressedByteCount());
+        this.writtenCompressedByteCount.add(metrics.getCompressedByteCount());
+        this.writeNanoseconds.add(metrics.getNanoseconds());
+        this.deflateNanoseconds.add(metrics.getCodecNanoseconds());
+    }
+
+    @Override
+    public void entryRead(ZipEntryMetrics metrics)
+    {
+        PreCondition.assertNotNull(metrics, "metrics");
+
+        this.readEntryCount.increment();
+        this.readUncompressedByteCount.add(metrics.getUncompressedByteCount());
+        this.readCompressedByteCount.add(metrics.getCompressedByteCount());
+        this.readNanoseconds.add(metrics.getNanoseconds());
+        this.inflateNanoseconds.add(metrics.getCodecNanoseconds());
+    }
+
+    /**
+     * Get the number of entries that have been written.
+     */
+    public long getWrittenEntryCount()
+    {
+        return this.writtenEntryCount.sum();
+    }
+
+    /**
+     * Get the number of uncompressed bytes that have been written into entries.
+     */
+    public DataSize getWrittenUncompressedSize()
+    {
+        return DataSize.bytes(this.writtenUncompressedByteCount.sum());
+    }
+
+    /**
+     * Get the number of compressed entry bytes that have been written to archives.
+     */
+    public DataSize getWrittenCompressedSize()
+    {
+        return DataSize.bytes(this.writtenCompressedByteCount.sum());
+    }
+
+    /**
+     * Get the compressed size of the written entries divided by their uncompressed size, or 1
+     * if no entry bytes have been written.
+     */
+    public double getWriteCompressionRatio()
+    {
+        return ZipMetrics.getCompressionRatio(this.writtenCompressedByteCount.sum(), this.writtenUncompressedByteCount.sum());
+    }
+
+    /**
+     * Get the total time between opening and closing the entries that have been written.
+     */
+    public Duration getWriteDuration()
+    {
+        return Duration.nanoseconds(this.writeNanoseconds.sum());
+    }
+
+    /**
+     * Get the total time that was spent in the {@link java.util.zip.Deflater} for the entries
+     * that have been written.
+     */
+    public Duration getDeflateDuration()
+    {
+        return Duration.nanoseconds(this.deflateNanoseconds.sum());
+    }
+
+    /**
+     * Get the number of entries that were written per second of write duration.
+     */
+    public double getWrittenEntriesPerSecond()
+    {
+        return ZipMetrics.getEntriesPerSecond(this.writtenEntryCount.sum(), this.writeNanoseconds.sum());
+    }
+
+    /**
+     * Get the number of entries that have been read.
+     */
+    public long getReadEntryCount()
+    {
+        return this.readEntryCount.sum();
+    }
+
+    /**
+     * Get the uncompressed size of the entries that have been read.
+     */
+    public DataSize getReadUncompressedSize()
+    {
+        return DataSize.bytes(this.readUncompressedByteCount.sum());
+    }
+
+    /**
+     * Get the compressed size of the entries that have been read.
+     */
+    public DataSize getReadCompressedSize()
+    {
+        return DataSize.bytes(this.readCompressedByteCount.sum());
+    }
+
+    /**
+     * Get the compressed size of the read entries divided by their uncompressed size, or 1 if
+     * no entry bytes have been read.
+     */
+    public double getReadCompressionRatio()
+    {
+        return ZipMetrics.getCompressionRatio(this.readCompressedByteCount.sum(), this.readUncompressedByteCount.sum());
+    }
+
+    /**
+     * Get the total time between opening and disposing the entries that have been read.
+     */
+    public Duration getReadDuration()
+    {
+        return Duration.nanoseconds(this.readNanoseconds.sum());
+    }
+
+    /**
+     * Get the total time that was spent in the {@link java.util.zip.Inflater} for the entries
+     * that have been read.
+     */
+    public Duration getInflateDuration()
+    {
+        return Duration.nanoseconds(this.inflateNanoseconds.sum());
+    }
+
+    /**
+     * Get the number of entries that were read per second of read duration.
+     */
+    public double getReadEntriesPerSecond()
+    {
+        return ZipMetrics.getEntriesPerSecond(this.readEntryCount.sum(), this.readNanoseconds.sum());
+    }
+
+    private static double getCompressionRatio(long compressedByteCount, long uncompressedByteCount)
+    {
+        return uncompressedByteCount == 0
+            ? 1
+            : (double)compressedByteCount / uncompressedByteCount;
+    }
+
+    private static double getEntriesPerSecond(long entryCount, long nanoseconds)
+    {
+        return nanoseconds == 0
+            ? 0
+            : entryCount / (nanoseconds / 1_000_000_000.0);
+    }
+}
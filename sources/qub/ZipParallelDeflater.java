@@ -0,0 +1,323 @@
+package qub;
+
+/**
+ * A pipeline that deflates blocks of zip entry data on an {@link java.util.concurrent.Executor}
+ * and writes the results, along with the archive structure around them, in the order that they
+ * were enqueued.
+ */
+public class ZipParallelDeflater
+{
+    /**
+     * The number of bytes of the previous block that are used to prime the deflate dictionary of
+     * the next block. This is the size of the deflate sliding window.
+     */
+    private static final int dictionaryByteCount = 32 * 1024;
+
+    private static final byte[] emptyBlock = new byte[0];
+
+    private final java.util.concurrent.Executor executor;
+    private final int blockByteCount;
+    private final int compressedBlockByteCount;
+    private final int maximumPendingBlockCount;
+    private final int maximumFreeBufferCount;
+    private final ZipCodecPool codecPool;
+    private final java.util.ArrayDeque<PendingWrite> pendingWrites;
+    private final java.util.ArrayDeque<byte[]> freeBlocks;
+    private final java.util.ArrayDeque<byte[]> freeCompressedBlocks;
+    private int pendingBlockCount;
+
+    private ZipParallelDeflater(java.util.concurrent.Executor executor, int blockByteCount, int maximumPendingBlockCount, ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(executor, "executor");
+        PreCondition.assertGreaterThanOrEqualTo(blockByteCount, ZipParallelDeflater.dictionaryByteCount, "blockByteCount");
+        PreCondition.assertGreaterThanOrEqualTo(maximumPendingBlockCount, 1, "maximumPendingBlockCount");
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        this.executor = executor;
+        this.blockByteCount = blockByteCount;
+        // Deflating a block and sync flushing it can produce slightly more bytes than the block
+        // contains when the block doesn't compress.
+        this.compressedBlockByteCount = blockByteCount + (blockByteCount >> 10) + 64;
+        this.maximumPendingBlockCount = maximumPendingBlockCount;
+        // An entry holds on to the block that it is filling and the block before it, and every
+        // pending block holds on to a compressed block.
+        this.maximumFreeBufferCount = maximumPendingBlockCount + 2;
+        this.codecPool = codecPool;
+        this.pendingWrites = new java.util.ArrayDeque<>();
+        this.freeBlocks = new java.util.ArrayDeque<>();
+        this.freeCompressedBlocks = new java.util.ArrayDeque<>();
+    }
+
+    /**
+     * Create a new {@link ZipParallelDeflater}.
+     * @param executor The {@link java.util.concurrent.Executor} that blocks will be deflated on.
+     * @param blockByteCount The number of uncompressed bytes in each block.
+     * @param maximumPendingBlockCount The maximum number of blocks that can be waiting to be
+     * written before enqueuing another block waits for the oldest block to be written.
+     * @return The new {@link ZipParallelDeflater}.
+     */
+    public static ZipParallelDeflater create(java.util.concurrent.Executor executor, int blockByteCount, int maximumPendingBlockCount)
+    {
+        return ZipParallelDeflater.create(executor, blockByteCount, maximumPendingBlockCount, ZipCodecPool.getDefault());
+    }
+
+    /**
+     * Create a new {@link ZipParallelDeflater} that deflates its blocks with
+     * {@link java.util.zip.Deflater}s from the provided {@link ZipCodecPool}.
+     * @param executor The {@link java.util.concurrent.Executor} that blocks will be deflated on.
+     * @param blockByteCount The number of uncompressed bytes in each block.
+     * @param maximumPendingBlockCount The maximum number of blocks that can be waiting to be
+     * written before enqueuing another block waits for the oldest block to be written.
+     * @param codecPool The pool to get the {@link java.util.zip.Deflater}s from.
+     * @return The new {@link ZipParallelDeflater}.
+     */
+    public static ZipParallelDeflater create(java.util.concurrent.Executor executor, int blockByteCount, int maximumPendingBlockCount, ZipCodecPool codecPool)
+    {
+        return new ZipParallelDeflater(executor, blockByteCount, maximumPendingBlockCount, codecPool);
+    }
+
+    /**
+     * Get the number of uncompressed bytes in each block.
+     */
+    public int getBlockByteCount()
+    {
+        return this.blockByteCount;
+    }
+
+    /**
+     * Get a block of {@link #getBlockByteCount()} bytes to fill with uncompressed entry data,
+     * reusing a block that was released if there is one.
+     */
+    public synchronized byte[] acquireBlock()
+    {
+        final byte[] result = this.freeBlocks.poll();
+        return result != null ? result : new byte[this.blockByteCount];
+    }
+
+    /**
+     * Give back a block that was returned from {@link #acquireBlock()}. The block must not be
+     * used by any pending deflate task, either as the block that it deflates or as the previous
+     * block that primes its dictionary.
+     * @param block The block to give back.
+     */
+    public void releaseBlock(byte[] block)
+    {
+        PreCondition.assertNotNull(block, "block");
+
+        this.releaseBuffer(this.freeBlocks, block, this.blockByteCount);
+    }
+
+    private synchronized byte[] acquireCompressedBlock()
+    {
+        final byte[] result = this.freeCompressedBlocks.poll();
+        return result != null ? result : new byte[this.compressedBlockByteCount];
+    }
+
+    private synchronized void releaseBuffer(java.util.ArrayDeque<byte[]> freeBuffers, byte[] buffer, int bufferByteCount)
+    {
+        // Buffers that were grown past their normal size aren't kept, and the free list is
+        // bounded so that a burst of blocks doesn't pin their memory afterwards.
+        if (buffer.length == bufferByteCount && freeBuffers.size() < this.maximumFreeBufferCount)
+        {
+            freeBuffers.push(buffer);
+        }
+    }
+
+    /**
+     * Enqueue an action that writes to the archive after all of the previously enqueued writes.
+     * @param write The action that writes to the archive.
+     */
+    public void enqueueWrite(Action0 write)
+    {
+        PreCondition.assertNotNull(write, "write");
+
+        this.pendingWrites.add(new PendingWrite(java.util.concurrent.CompletableFuture.completedFuture(null), (byte[] compressedBlock, Integer compressedBlockLength, Long deflateNanoseconds) -> write.run()));
+        this.writeCompleted();
+    }
+
+    /**
+     * Enqueue a block of uncompressed entry data to be deflated. The block and the previous
+     * block must not be modified after they have been enqueued.
+     * @param block The uncompressed bytes to deflate, or null if the block is empty.
+     * @param blockLength The number of bytes in the block.
+     * @param previousBlock The previous block of the same entry, or null if this is the entry's
+     * first block. The end of the previous block primes the deflate dictionary so that splitting
+     * an entry into blocks costs almost no compression ratio.
+     * @param previousBlockLength The number of bytes in the previous block.
+     * @param compressionLevel The deflate compression level, or -1 for the default level.
+     * @param compressionStrategy The {@link java.util.zip.Deflater} strategy to compress with.
+     * @param isFinalBlock Whether this is the last block of the entry.
+     * @param writeCompressedBlock The action that writes the deflated block to the archive. It
+     * is given the deflated bytes, the number of deflated bytes, and the number of nanoseconds
+     * that it took to deflate the block. The deflated bytes are reused after the action returns.
+     */
+    public void enqueueBlock(byte[] block, int blockLength, byte[] previousBlock, int previousBlockLength, int compressionLevel, int compressionStrategy, boolean isFinalBlock, Action3<byte[],Integer,Long> writeCompressedBlock)
+    {
+        PreCondition.assertBetween(0, blockLength, block == null ? 0 : block.length, "blockLength");
+        PreCondition.assertBetween(-1, compressionLevel, 9, "compressionLevel");
+        PreCondition.assertBetween(java.util.zip.Deflater.DEFAULT_STRATEGY, compressionStrategy, java.util.zip.Deflater.HUFFMAN_ONLY, "compressionStrategy");
+        PreCondition.assertNotNull(writeCompressedBlock, "writeCompressedBlock");
+
+        final ZipCodecPool codecPool = this.codecPool;
+        final byte[] uncompressedBlock = block == null ? ZipParallelDeflater.emptyBlock : block;
+        final byte[] outputBlock = this.acquireCompressedBlock();
+        final java.util.concurrent.CompletableFuture<DeflatedBlock> compressedBlock = java.util.concurrent.CompletableFuture.supplyAsync(
+            () ->
+            {
+                final long startNanoseconds = System.nanoTime();
+                final DeflatedBlock result = ZipParallelDeflater.deflateBlock(codecPool, uncompressedBlock, blockLength, previousBlock, previousBlockLength, compressionLevel, compressionStrategy, isFinalBlock, outputBlock);
+                result.nanoseconds = System.nanoTime() - startNanoseconds;
+                return result;
+            },
+            this.executor);
+        this.pendingWrites.add(new PendingWrite(compressedBlock, writeCompressedBlock));
+        ++this.pendingBlockCount;
+
+        while (this.pendingBlockCount > this.maximumPendingBlockCount)
+        {
+            this.writeNext();
+        }
+        this.writeCompleted();
+    }
+
+    /**
+     * Wait for every enqueued block to be deflated and write everything that is pending.
+     */
+    public void flush()
+    {
+        while (!this.pendingWrites.isEmpty())
+        {
+            this.writeNext();
+        }
+    }
+
+    /**
+     * Write the pending writes that are ready without waiting for any blocks to be deflated.
+     */
+    private void writeCompleted()
+    {
+        while (!this.pendingWrites.isEmpty() && this.pendingWrites.peek().compressedBlock.isDone())
+        {
+            this.writeNext();
+        }
+    }
+
+    private void writeNext()
+    {
+        final PendingWrite pendingWrite = this.pendingWrites.remove();
+
+        final DeflatedBlock compressedBlock;
+        try
+        {
+            compressedBlock = pendingWrite.compressedBlock.get();
+        }
+        catch (java.util.concurrent.ExecutionException e)
+        {
+            throw Exceptions.asRuntime(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw Exceptions.asRuntime(e);
+        }
+
+        if (compressedBlock == null)
+        {
+            pendingWrite.write.run(null, 0, 0L);
+        }
+        else
+        {
+            --this.pendingBlockCount;
+            try
+            {
+                pendingWrite.write.run(compressedBlock.bytes, compressedBlock.length, compressedBlock.nanoseconds);
+            }
+            finally
+            {
+                this.releaseBuffer(this.freeCompressedBlocks, compressedBlock.bytes, this.compressedBlockByteCount);
+            }
+        }
+    }
+
+    /**
+     * Deflate a single block. Every block except the final block ends with a sync flush so that
+     * it finishes on a byte boundary and the deflated blocks can be concatenated into a single
+     * deflate stream.
+     */
+    private static DeflatedBlock deflateBlock(ZipCodecPool codecPool, byte[] block, int blockLength, byte[] previousBlock, int previousBlockLength, int compressionLevel, int compressionStrategy, boolean isFinalBlock, byte[] outputBlock)
+    {
+        final java.util.zip.Deflater deflater = codecPool.acquireDeflater(compressionLevel, compressionStrategy);
+        try
+        {
+            if (previousBlock != null && previousBlockLength > 0)
+            {
+                final int dictionaryLength = Math.min(ZipParallelDeflater.dictionaryByteCount, previousBlockLength);
+                deflater.setDictionary(previousBlock, previousBlockLength - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(block, 0, blockLength);
+
+            final DeflatedBlock result = new DeflatedBlock(outputBlock);
+            if (isFinalBlock)
+            {
+                deflater.finish();
+                while (!deflater.finished())
+                {
+                    result.ensureCapacity();
+                    result.length += deflater.deflate(result.bytes, result.length, result.bytes.length - result.length);
+                }
+            }
+            else
+            {
+                // A deflate() call that applies a new level or strategy doesn't consume any
+                // input, so keep going until all of the input has been consumed and flushed.
+                do
+                {
+                    result.ensureCapacity();
+                    result.length += deflater.deflate(result.bytes, result.length, result.bytes.length - result.length, java.util.zip.Deflater.SYNC_FLUSH);
+                }
+                while (result.length == result.bytes.length || !deflater.needsInput());
+            }
+            return result;
+        }
+        finally
+        {
+            codecPool.releaseDeflater(deflater);
+        }
+    }
+
+    private static class DeflatedBlock
+    {
+        private byte[] bytes;
+        private int length;
+        private long nanoseconds;
+
+        private DeflatedBlock(byte[] bytes)
+        {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Grow the bytes if they are full. This only happens for blocks that don't compress
+         * at all.
+         */
+        private void ensureCapacity()
+        {
+            if (this.length == this.bytes.length)
+            {
+                this.bytes = java.util.Arrays.copyOf(this.bytes, this.bytes.length * 2);
+            }
+        }
+    }
+
+    private static class PendingWrite
+    {
+        private final java.util.concurrent.Future<DeflatedBlock> compressedBlock;
+        private final Action3<byte[],Integer,Long> write;
+
+        private PendingWrite(java.util.concurrent.Future<DeflatedBlock> compressedBlock, Action3<byte[],Integer,Long> write)
+        {
+            this.compressedBlock = compressedBlock;
+            this.write = write;
+        }
+    }
+}
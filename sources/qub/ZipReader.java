@@ -0,0 +1,863 @@
+package qub;
+
+/**
+ * An open zip archive that uses the archive's central directory to read individual entries
+ * without reading the entries that come before them.
+ * <p>
+ * A {@link ZipReader} can be shared by many threads. Each thread can open its own
+ * {@link ZipEntryReadStream}s at the same time as the others, and every entry stream reads from
+ * the one shared {@link ZipByteSource} with positional reads and looks entries up in the one
+ * shared, immutable {@link ZipCentralDirectory}, so no locks are taken while entries are read.
+ * The entry streams themselves are not thread-safe and should each be used by one thread at a
+ * time. Disposing of a {@link ZipReader} while entry streams are still being read from it causes
+ * those reads to fail.
+ */
+public class ZipReader implements Disposable
+{
+    private final ZipByteSource byteSource;
+    private final ZipCentralDirectory centralDirectory;
+    private volatile ZipListener listener;
+    private volatile ZipCodecPool codecPool;
+    private volatile boolean checkpointIndexing;
+    private volatile java.nio.file.Path checkpointIndexFolderPath;
+    private final java.util.concurrent.ConcurrentHashMap<Long,ZipEntryCheckpointIndex> checkpointIndexes;
+    private final java.util.concurrent.atomic.AtomicBoolean disposed;
+
+    private ZipReader(ZipByteSource byteSource, ZipCentralDirectory centralDirectory)
+    {
+        PreCondition.assertNotNull(byteSource, "byteSource");
+        PreCondition.assertNotNull(centralDirectory, "centralDirectory");
+
+        this.byteSource = byteSource;
+        this.centralDirectory = centralDirectory;
+        this.codecPool = ZipCodecPool.getDefault();
+        this.checkpointIndexes = new java.util.concurrent.ConcurrentHashMap<>();
+        this.disposed = new java.util.concurrent.atomic.AtomicBoolean();
+    }
+
+    /**
+     * Create a new {@link ZipReader} that reads from the provided {@link ZipByteSource}. The
+     * returned {@link ZipReader} takes ownership of the {@link ZipByteSource} and will dispose
+     * of it when the {@link ZipReader} is disposed.
+     * @param byteSource The source that contains the bytes of the zip archive.
+     * @return The new {@link ZipReader}.
+     */
+    public static ZipReader create(ZipByteSource byteSource)
+    {
+        PreCondition.assertNotNull(byteSource, "byteSource");
+        PreCondition.assertNotDisposed(byteSource, "byteSource");
+
+        final ZipCentralDirectory centralDirectory = ZipCentralDirectory.parse(byteSource);
+        return new ZipReader(byteSource, centralDirectory);
+    }
+
+    /**
+     * Create a new {@link ZipReader} that reads from the provided {@link ZipByteSource} with a
+     * central directory that has already been parsed from the same archive. The returned
+     * {@link ZipReader} takes ownership of the {@link ZipByteSource} and will dispose of it when
+     * the {@link ZipReader} is disposed.
+     * @param byteSource The source that contains the bytes of the zip archive.
+     * @param centralDirectory The parsed central directory of the zip archive.
+     * @return The new {@link ZipReader}.
+     */
+    public static ZipReader create(ZipByteSource byteSource, ZipCentralDirectory centralDirectory)
+    {
+        PreCondition.assertNotNull(byteSource, "byteSource");
+        PreCondition.assertNotDisposed(byteSource, "byteSource");
+        PreCondition.assertNotNull(centralDirectory, "centralDirectory");
+
+        return new ZipReader(byteSource, centralDirectory);
+    }
+
+    /**
+     * Get the {@link ZipListener} that is notified as entries are read from this
+     * {@link ZipReader}, or null if this {@link ZipReader} doesn't have a listener.
+     */
+    public ZipListener getListener()
+    {
+        return this.listener;
+    }
+
+    /**
+     * Set the {@link ZipListener} that will be notified when the {@link ZipEntryReadStream}s
+     * that are opened from this {@link ZipReader} are disposed. Entries are only timed if they
+     * are opened while this {@link ZipReader} has a listener.
+     * @param listener The listener to notify, or null to stop notifying a listener.
+     * @return This object for method chaining.
+     */
+    public ZipReader setListener(ZipListener listener)
+    {
+        this.listener = listener;
+
+        return this;
+    }
+
+    /**
+     * Get the {@link ZipCodecPool} that the entries that are opened from this {@link ZipReader}
+     * get their {@link java.util.zip.Inflater}s and buffers from.
+     */
+    public ZipCodecPool getCodecPool()
+    {
+        return this.codecPool;
+    }
+
+    /**
+     * Set the {@link ZipCodecPool} that the entries that are opened from this {@link ZipReader}
+     * will get their {@link java.util.zip.Inflater}s and buffers from. By default this is
+     * {@link ZipCodecPool#getDefault()}.
+     * @param codecPool The pool to get codecs and buffers from.
+     * @return This object for method chaining.
+     */
+    public ZipReader setCodecPool(ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(codecPool, "codecPool");
+
+        this.codecPool = codecPool;
+
+        return this;
+    }
+
+    /**
+     * Get whether seeking in a deflated entry will build a {@link ZipEntryCheckpointIndex} for the
+     * entry if it doesn't already have one.
+     */
+    public boolean isCheckpointIndexing()
+    {
+        return this.checkpointIndexing;
+    }
+
+    /**
+     * Set whether seeking in a deflated entry will build a {@link ZipEntryCheckpointIndex} for the
+     * entry if it doesn't already have one. Building an index inflates the entry once, after
+     * which seeking only inflates from the nearest checkpoint. By default this is false, and
+     * seeking in a deflated entry that doesn't have an index inflates the entry from its start.
+     * @param checkpointIndexing Whether seeking will build checkpoint indexes.
+     * @return This object for method chaining.
+     */
+    public ZipReader setCheckpointIndexing(boolean checkpointIndexing)
+    {
+        this.checkpointIndexing = checkpointIndexing;
+
+        return this;
+    }
+
+    /**
+     * Get the folder that the {@link ZipEntryCheckpointIndex}es of this {@link ZipReader}'s
+     * entries are saved to and loaded from, or null if they are only kept in memory.
+     */
+    public java.nio.file.Path getCheckpointIndexFolderPath()
+    {
+        return this.checkpointIndexFolderPath;
+    }
+
+    /**
+     * Set the folder that the {@link ZipEntryCheckpointIndex}es of this {@link ZipReader}'s
+     * entries will be saved to and loaded from, so that they only have to be built once for each
+     * archive. Each index is saved in a file that is named after its entry's local file header
+     * offset, so the folder should only be used for one archive.
+     * @param checkpointIndexFolderPath The folder to save indexes to, or null to only keep them
+     * in memory.
+     * @return This object for method chaining.
+     */
+    public ZipReader setCheckpointIndexFolderPath(java.nio.file.Path checkpointIndexFolderPath)
+    {
+        this.checkpointIndexFolderPath = checkpointIndexFolderPath;
+
+        return this;
+    }
+
+    /**
+     * Get the {@link ZipEntryCheckpointIndex} of the provided deflated entry. If the entry's
+     * index isn't in memory, then it is loaded from the checkpoint index folder. If it isn't
+     * there either and this {@link ZipReader} is checkpoint indexing, then it is built and saved
+     * to the checkpoint index folder.
+     * @param entry The deflated entry to get the index of.
+     * @return The entry's index, or null if the entry doesn't have an index and this
+     * {@link ZipReader} isn't checkpoint indexing.
+     */
+    public ZipEntryCheckpointIndex getCheckpointIndex(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertTrue(entry.getCompressionMethod() == ZipFormat.deflatedCompressionMethod, "entry.getCompressionMethod() == ZipFormat.deflatedCompressionMethod");
+        PreCondition.assertNotDisposed(this, "this");
+
+        final Long key = entry.getLocalFileHeaderOffset();
+        ZipEntryCheckpointIndex result = this.checkpointIndexes.get(key);
+        if (result == null)
+        {
+            final java.nio.file.Path checkpointIndexFilePath = this.getCheckpointIndexFilePath(entry);
+            if (checkpointIndexFilePath != null)
+            {
+                try (final java.io.InputStream inputStream = java.nio.file.Files.newInputStream(checkpointIndexFilePath))
+                {
+                    result = ZipEntryCheckpointIndex.read(inputStream);
+                    if (!result.isIndexOf(entry))
+                    {
+                        result = null;
+                    }
+                }
+                catch (java.io.IOException | RuntimeException ignored)
+                {
+                    // A missing, unreadable, or corrupt index is built again below.
+                    result = null;
+                }
+            }
+
+            if (result == null && this.checkpointIndexing)
+            {
+                result = ZipEntryCheckpointIndex.build(this, entry);
+                if (checkpointIndexFilePath != null)
+                {
+                    ZipReader.writeCheckpointIndexFile(checkpointIndexFilePath, result);
+                }
+            }
+
+            if (result != null)
+            {
+                final ZipEntryCheckpointIndex existing = this.checkpointIndexes.putIfAbsent(key, result);
+                if (existing != null)
+                {
+                    result = existing;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Set the {@link ZipEntryCheckpointIndex} of the provided deflated entry, such as an index
+     * that was built ahead of time with {@link ZipEntryCheckpointIndex#build(ZipReader,
+     * ZipCentralDirectoryEntry, long)}. The index is also saved to the checkpoint index folder,
+     * if this {@link ZipReader} has one.
+     * @param entry The deflated entry that the index belongs to.
+     * @param checkpointIndex The entry's index.
+     * @return This object for method chaining.
+     */
+    public ZipReader setCheckpointIndex(ZipCentralDirectoryEntry entry, ZipEntryCheckpointIndex checkpointIndex)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertTrue(entry.getCompressionMethod() == ZipFormat.deflatedCompressionMethod, "entry.getCompressionMethod() == ZipFormat.deflatedCompressionMethod");
+        PreCondition.assertNotNull(checkpointIndex, "checkpointIndex");
+        PreCondition.assertTrue(checkpointIndex.isIndexOf(entry), "checkpointIndex.isIndexOf(entry)");
+
+        this.checkpointIndexes.put(entry.getLocalFileHeaderOffset(), checkpointIndex);
+
+        final java.nio.file.Path checkpointIndexFilePath = this.getCheckpointIndexFilePath(entry);
+        if (checkpointIndexFilePath != null)
+        {
+            ZipReader.writeCheckpointIndexFile(checkpointIndexFilePath, checkpointIndex);
+        }
+
+        return this;
+    }
+
+    private java.nio.file.Path getCheckpointIndexFilePath(ZipCentralDirectoryEntry entry)
+    {
+        final java.nio.file.Path checkpointIndexFolderPath = this.checkpointIndexFolderPath;
+        return checkpointIndexFolderPath == null
+            ? null
+            : checkpointIndexFolderPath.resolve(entry.getLocalFileHeaderOffset() + ".zidx");
+    }
+
+    /**
+     * Save the provided checkpoint index to a temporary file and then move it into place, so that
+     * other readers never see a partially written index. An index that can't be saved is still
+     * used from memory.
+     */
+    private static void writeCheckpointIndexFile(java.nio.file.Path checkpointIndexFilePath, ZipEntryCheckpointIndex checkpointIndex)
+    {
+        java.nio.file.Path partialFilePath = null;
+        try
+        {
+            final java.nio.file.Path checkpointIndexFolderPath = checkpointIndexFilePath.getParent();
+            java.nio.file.Files.createDirectories(checkpointIndexFolderPath);
+            partialFilePath = java.nio.file.Files.createTempFile(checkpointIndexFolderPath, "index", ".partial");
+            try (final java.io.OutputStream outputStream = java.nio.file.Files.newOutputStream(partialFilePath))
+            {
+                checkpointIndex.writeTo(outputStream);
+            }
+            try
+            {
+                java.nio.file.Files.move(partialFilePath, checkpointIndexFilePath, java.nio.file.StandardCopyOption.ATOMIC_MOVE, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (java.nio.file.AtomicMoveNotSupportedException e)
+            {
+                java.nio.file.Files.move(partialFilePath, checkpointIndexFilePath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            }
+            partialFilePath = null;
+        }
+        catch (java.io.IOException ignored)
+        {
+        }
+        finally
+        {
+            if (partialFilePath != null)
+            {
+                try
+                {
+                    java.nio.file.Files.deleteIfExists(partialFilePath);
+                }
+                catch (java.io.IOException ignored)
+                {
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the central directory of the zip archive.
+     */
+    public ZipCentralDirectory getCentralDirectory()
+    {
+        return this.centralDirectory;
+    }
+
+    /**
+     * Get the entries in the zip archive.
+     */
+    public Iterable<ZipCentralDirectoryEntry> getEntries()
+    {
+        return this.centralDirectory.getEntries();
+    }
+
+    /**
+     * Get the entry with the provided path.
+     * @param entryPath The path of the entry to get.
+     * @return The entry with the provided path.
+     */
+    public Result<ZipCentralDirectoryEntry> getEntry(String entryPath)
+    {
+        PreCondition.assertNotNullAndNotEmpty(entryPath, "entryPath");
+
+        return this.centralDirectory.getEntry(entryPath);
+    }
+
+    /**
+     * Get the entry with the provided path.
+     * @param entryPath The path of the entry to get.
+     * @return The entry with the provided path.
+     */
+    public Result<ZipCentralDirectoryEntry> getEntry(Path entryPath)
+    {
+        PreCondition.assertNotNull(entryPath, "entryPath");
+
+        return this.centralDirectory.getEntry(entryPath);
+    }
+
+    /**
+     * Get the position in the zip archive where the provided entry's data starts.
+     * @param entry The entry to get the data position of.
+     * @return The position in the zip archive where the provided entry's data starts.
+     */
+    public long getEntryDataPosition(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertNotDisposed(this, "this");
+
+        final long localFileHeaderOffset = entry.getLocalFileHeaderOffset();
+        final byte[] localFileHeaderBytes = this.byteSource.readAllBytes(localFileHeaderOffset, ZipFormat.localFileHeaderByteCount);
+        if (ZipFormat.readUnsignedInt(localFileHeaderBytes, 0) != ZipFormat.localFileHeaderSignature)
+        {
+            throw new ZipFormatException("Expected a local file header for " + entry.getName() + " at position " + localFileHeaderOffset + ".");
+        }
+
+        final int nameByteCount = ZipFormat.readUnsignedShort(localFileHeaderBytes, 26);
+        final int extraFieldByteCount = ZipFormat.readUnsignedShort(localFileHeaderBytes, 28);
+        return localFileHeaderOffset + ZipFormat.localFileHeaderByteCount + nameByteCount + extraFieldByteCount;
+    }
+
+    /**
+     * Open a {@link java.io.InputStream} that reads the compressed data of the provided entry
+     * exactly as it is stored in the zip archive.
+     * @param entry The entry to read.
+     * @return The {@link java.io.InputStream} that reads the provided entry's compressed data.
+     */
+    public java.io.InputStream getEntryCompressedInputStream(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertNotDisposed(this, "this");
+
+        final long dataPosition = this.getEntryDataPosition(entry);
+        return ZipByteSourceInputStream.create(this.byteSource, dataPosition, entry.getCompressedByteCount());
+    }
+
+    /**
+     * Open a {@link java.io.InputStream} that reads the uncompressed data of the provided entry.
+     * When the end of the entry's data is reached, the data is checked against the entry's CRC-32
+     * and uncompressed size, and a {@link ZipFormatException} is thrown if they don't match.
+     * @param entry The entry to read.
+     * @return The {@link java.io.InputStream} that reads the provided entry's uncompressed data.
+     */
+    public java.io.InputStream getEntryInputStream(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertNotDisposed(this, "this");
+
+        final long dataPosition = this.getEntryDataPosition(entry);
+        final long compressedByteCount = entry.getCompressedByteCount();
+
+        final java.io.InputStream result;
+        switch (entry.getCompressionMethod())
+        {
+            case ZipFormat.storedCompressionMethod:
+                result = ZipByteSourceInputStream.create(this.byteSource, dataPosition, compressedByteCount);
+                break;
+
+            case ZipFormat.deflatedCompressionMethod:
+                result = ZipEntryInflaterInputStream.create(this.byteSource, dataPosition, compressedByteCount, this.codecPool);
+                break;
+
+            default:
+                throw new ZipFormatException("Unsupported compression method " + entry.getCompressionMethod() + " for " + entry.getName() + ".");
+        }
+
+        PostCondition.assertNotNull(result, "result");
+
+        return ZipEntryCheckedInputStream.create(result, entry);
+    }
+
+    /**
+     * Get the position in the provided entry's uncompressed data that a new stream would have to
+     * start reading from in order to reach the provided position. Stored entries can start
+     * anywhere, and deflated entries can only start at their start or at a checkpoint.
+     */
+    long getEntryRestartPosition(ZipCentralDirectoryEntry entry, long position)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertGreaterThanOrEqualTo(position, 0, "position");
+        PreCondition.assertNotDisposed(this, "this");
+
+        long result = 0;
+        switch (entry.getCompressionMethod())
+        {
+            case ZipFormat.storedCompressionMethod:
+                result = Math.min(position, entry.getUncompressedByteCount());
+                break;
+
+            case ZipFormat.deflatedCompressionMethod:
+                final ZipEntryCheckpointIndex checkpointIndex = this.getCheckpointIndex(entry);
+                if (checkpointIndex != null)
+                {
+                    final int checkpoint = checkpointIndex.findCheckpoint(position);
+                    if (checkpoint != -1)
+                    {
+                        result = checkpointIndex.getUncompressedOffset(checkpoint);
+                    }
+                }
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Open a {@link java.io.InputStream} that reads the uncompressed data of the provided entry
+     * from the provided restart position, which must have come from
+     * {@link #getEntryRestartPosition(ZipCentralDirectoryEntry, long)}. Only streams that start
+     * at the entry's start are checked against the entry's CRC-32.
+     */
+    java.io.InputStream getEntryInputStream(ZipCentralDirectoryEntry entry, long restartPosition)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertGreaterThanOrEqualTo(restartPosition, 0, "restartPosition");
+        PreCondition.assertNotDisposed(this, "this");
+
+        final java.io.InputStream result;
+        if (restartPosition == 0)
+        {
+            result = this.getEntryInputStream(entry);
+        }
+        else
+        {
+            final long dataPosition = this.getEntryDataPosition(entry);
+            if (entry.getCompressionMethod() == ZipFormat.storedCompressionMethod)
+            {
+                result = ZipByteSourceInputStream.create(this.byteSource, dataPosition + restartPosition, entry.getCompressedByteCount() - restartPosition);
+            }
+            else
+            {
+                final ZipEntryCheckpointIndex checkpointIndex = this.getCheckpointIndex(entry);
+                final int checkpoint = checkpointIndex.findCheckpoint(restartPosition);
+                PreCondition.assertTrue(checkpoint != -1 && checkpointIndex.getUncompressedOffset(checkpoint) == restartPosition, "checkpointIndex.getUncompressedOffset(checkpoint) == restartPosition");
+
+                final long compressedOffset = checkpointIndex.getCompressedOffset(checkpoint);
+                result = ZipEntryInflaterInputStream.create(
+                    this.byteSource,
+                    dataPosition + compressedOffset,
+                    entry.getCompressedByteCount() - compressedOffset,
+                    checkpointIndex.getWindow(checkpoint),
+                    this.codecPool);
+            }
+        }
+
+        PostCondition.assertNotNull(result, "result");
+
+        return result;
+    }
+
+    /**
+     * Open a {@link ZipEntryReadStream} that reads the uncompressed data of the provided entry.
+     * Disposing of the returned {@link ZipEntryReadStream} doesn't dispose of this
+     * {@link ZipReader}.
+     * @param entry The entry to read.
+     * @return The {@link ZipEntryReadStream} that reads the provided entry.
+     */
+    public ZipEntryReadStream getEntryReadStream(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return ZipReader.createEntryReadStream(this, entry, this.getListeningEntryInputStream(entry));
+    }
+
+    /**
+     * Open a {@link ZipEntryReadStream} that reads the uncompressed data of the entry with the
+     * provided path.
+     * @param entryPath The path of the entry to read.
+     * @return The {@link ZipEntryReadStream} that reads the entry.
+     */
+    public Result<ZipEntryReadStream> getEntryReadStream(String entryPath)
+    {
+        PreCondition.assertNotNullAndNotEmpty(entryPath, "entryPath");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return this.getEntryReadStream(Path.parse(entryPath));
+    }
+
+    /**
+     * Open a {@link ZipEntryReadStream} that reads the uncompressed data of the entry with the
+     * provided path.
+     * @param entryPath The path of the entry to read.
+     * @return The {@link ZipEntryReadStream} that reads the entry.
+     */
+    public Result<ZipEntryReadStream> getEntryReadStream(Path entryPath)
+    {
+        PreCondition.assertNotNull(entryPath, "entryPath");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() ->
+        {
+            final ZipCentralDirectoryEntry entry = this.getEntry(entryPath).await();
+            return this.getEntryReadStream(entry);
+        });
+    }
+
+    /**
+     * Open a {@link ZipEntryReadStream} that reads the uncompressed data of the entry with the
+     * provided path. Disposing of the returned {@link ZipEntryReadStream} will also dispose of
+     * this {@link ZipReader}.
+     * @param entryPath The path of the entry to read.
+     * @return The {@link ZipEntryReadStream} that reads the entry.
+     */
+    Result<ZipEntryReadStream> getOwningEntryReadStream(Path entryPath)
+    {
+        PreCondition.assertNotNull(entryPath, "entryPath");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() ->
+        {
+            final ZipCentralDirectoryEntry entry = this.getEntry(entryPath).await();
+            final java.io.InputStream entryInputStream = this.getListeningEntryInputStream(entry);
+            final java.io.InputStream owningInputStream = new java.io.FilterInputStream(entryInputStream)
+            {
+                @Override
+                public void close() throws java.io.IOException
+                {
+                    try
+                    {
+                        super.close();
+                    }
+                    finally
+                    {
+                        ZipReader.this.dispose().await();
+                    }
+                }
+            };
+            return ZipReader.createEntryReadStream(this, entry, owningInputStream);
+        });
+    }
+
+    /**
+     * The separator between the paths of nested archives and the entries inside them.
+     */
+    public static final String nestedEntryPathSeparator = "!/";
+
+    /**
+     * Open a {@link ZipReader} over the provided stored entry, which must itself be a zip archive
+     * such as a jar. The returned {@link ZipReader} reads the entry's bytes with this
+     * {@link ZipReader}'s positional reads, so nothing is inflated, copied, or extracted.
+     * Disposing of the returned {@link ZipReader} doesn't dispose of this {@link ZipReader}, but
+     * this {@link ZipReader} must not be disposed while the returned {@link ZipReader} is used.
+     * Deflated entries can only be read as a stream, with {@link ZipEntryIterator#create(ByteReadStream)}.
+     * @param entry The stored entry that contains the nested archive.
+     * @return The {@link ZipReader} for the nested archive.
+     */
+    public Result<ZipReader> getNestedReader(ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertTrue(entry.getCompressionMethod() == ZipFormat.storedCompressionMethod, "entry.getCompressionMethod() == ZipFormat.storedCompressionMethod");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return Result.create(() ->
+        {
+            final long dataPosition = this.getEntryDataPosition(entry);
+            final ZipByteSource nestedByteSource = SliceZipByteSource.create(this.byteSource, dataPosition, entry.getCompressedByteCount());
+            return ZipReader.create(nestedByteSource)
+                .setListener(this.listener)
+                .setCodecPool(this.codecPool);
+        });
+    }
+
+    /**
+     * Open a {@link ZipEntryReadStream} for an entry inside of nested archives, such as
+     * "inner.jar!/META-INF/MANIFEST.MF". Each path before a "!/" separator is an entry that is
+     * itself a zip archive. Nested archives that are stored are opened with
+     * {@link #getNestedReader(ZipCentralDirectoryEntry)} and their entries are found through
+     * their central directories. Once a nested archive is deflated, it and every archive inside
+     * of it are read as a stream until the next path is found. Disposing of the returned
+     * {@link ZipEntryReadStream} disposes of every nested archive that was opened to reach it,
+     * but doesn't dispose of this {@link ZipReader}.
+     * @param nestedEntryPath The path of the entry, with the path of each nested archive before
+     * it.
+     * @return The {@link ZipEntryReadStream} that reads the entry.
+     */
+    public Result<ZipEntryReadStream> getNestedEntryReadStream(String nestedEntryPath)
+    {
+        PreCondition.assertNotNullAndNotEmpty(nestedEntryPath, "nestedEntryPath");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return this.getNestedEntryReadStream(nestedEntryPath, false);
+    }
+
+    /**
+     * Open a {@link ZipEntryReadStream} for an entry inside of nested archives. Disposing of the
+     * returned {@link ZipEntryReadStream} will also dispose of this {@link ZipReader}.
+     */
+    Result<ZipEntryReadStream> getOwningNestedEntryReadStream(String nestedEntryPath)
+    {
+        PreCondition.assertNotNullAndNotEmpty(nestedEntryPath, "nestedEntryPath");
+        PreCondition.assertNotDisposed(this, "this");
+
+        return this.getNestedEntryReadStream(nestedEntryPath, true);
+    }
+
+    private Result<ZipEntryReadStream> getNestedEntryReadStream(String nestedEntryPath, boolean owning)
+    {
+        final String[] entryPaths = nestedEntryPath.split(java.util.regex.Pattern.quote(ZipReader.nestedEntryPathSeparator), -1);
+        for (final String entryPath : entryPaths)
+        {
+            PreCondition.assertNotNullAndNotEmpty(entryPath, "nestedEntryPath segment");
+        }
+
+        return Result.create(() ->
+        {
+            // Everything that is opened to reach the entry is disposed, innermost first, when
+            // the entry's stream is disposed or when the entry can't be found.
+            final java.util.List<Disposable> opened = new java.util.ArrayList<>();
+            if (owning)
+            {
+                opened.add(this);
+            }
+            try
+            {
+                ZipReader reader = this;
+                int entryPathIndex = 0;
+                ZipCentralDirectoryEntry entry = reader.getEntry(entryPaths[entryPathIndex]).await();
+                while (entryPathIndex < entryPaths.length - 1 && entry.getCompressionMethod() == ZipFormat.storedCompressionMethod)
+                {
+                    reader = reader.getNestedReader(entry).await();
+                    opened.add(reader);
+                    ++entryPathIndex;
+                    entry = reader.getEntry(entryPaths[entryPathIndex]).await();
+                }
+
+                final ZipEntryReadStream result;
+                if (entryPathIndex == entryPaths.length - 1)
+                {
+                    final java.io.InputStream entryInputStream = reader.getListeningEntryInputStream(entry);
+                    result = ZipReader.createEntryReadStream(reader, entry, opened.isEmpty()
+                        ? entryInputStream
+                        : ZipReader.createDisposingInputStream(entryInputStream, opened));
+                }
+                else
+                {
+                    ZipEntryReadStream entryReadStream = reader.getEntryReadStream(entry);
+                    opened.add(entryReadStream);
+                    while (entryPathIndex < entryPaths.length - 1)
+                    {
+                        ++entryPathIndex;
+                        final ZipEntryIterator nestedEntries = ZipEntryIterator.create(entryReadStream);
+                        opened.add(nestedEntries);
+
+                        entryReadStream = null;
+                        while (entryReadStream == null && nestedEntries.next())
+                        {
+                            if (nestedEntries.getCurrent().getJavaZipEntry().getName().equals(entryPaths[entryPathIndex]))
+                            {
+                                entryReadStream = nestedEntries.getCurrent();
+                            }
+                        }
+                        if (entryReadStream == null)
+                        {
+                            throw new NotFoundException("Could not find a zip entry with the path \"" + entryPaths[entryPathIndex] + "\".");
+                        }
+                    }
+
+                    final ZipEntryReadStream nestedEntryReadStream = entryReadStream;
+                    final java.io.InputStream nestedEntryInputStream = new java.io.InputStream()
+                    {
+                        private final byte[] singleByte = new byte[1];
+
+                        @Override
+                        public int read()
+                        {
+                            return nestedEntryReadStream.readBytesInto(this.singleByte, 0, 1) == 1 ? this.singleByte[0] & 0xFF : -1;
+                        }
+
+                        @Override
+                        public int read(byte[] outputBytes, int startIndex, int length)
+                        {
+                            return nestedEntryReadStream.readBytesInto(outputBytes, startIndex, length);
+                        }
+                    };
+                    result = ZipEntryReadStream.create(nestedEntryReadStream.getJavaZipEntry(), ZipReader.createDisposingInputStream(nestedEntryInputStream, opened));
+                }
+                return result;
+            }
+            catch (RuntimeException e)
+            {
+                ZipReader.disposeAll(opened);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Wrap the provided {@link java.io.InputStream} so that closing it also disposes of the
+     * provided {@link Disposable}s, in the reverse of the order that they were opened in.
+     */
+    private static java.io.InputStream createDisposingInputStream(java.io.InputStream inputStream, java.util.List<Disposable> opened)
+    {
+        return new java.io.FilterInputStream(inputStream)
+        {
+            private boolean closed;
+
+            @Override
+            public void close() throws java.io.IOException
+            {
+                if (!this.closed)
+                {
+                    this.closed = true;
+                    try
+                    {
+                        super.close();
+                    }
+                    finally
+                    {
+                        ZipReader.disposeAll(opened);
+                    }
+                }
+            }
+        };
+    }
+
+    private static void disposeAll(java.util.List<Disposable> opened)
+    {
+        RuntimeException error = null;
+        for (int i = opened.size() - 1; i >= 0; --i)
+        {
+            try
+            {
+                opened.get(i).dispose().await();
+            }
+            catch (RuntimeException e)
+            {
+                if (error == null)
+                {
+                    error = e;
+                }
+            }
+        }
+        if (error != null)
+        {
+            throw error;
+        }
+    }
+
+    /**
+     * Open a {@link java.io.InputStream} that reads the uncompressed data of the provided entry
+     * and notifies this {@link ZipReader}'s listener when it is closed.
+     */
+    private java.io.InputStream getListeningEntryInputStream(ZipCentralDirectoryEntry entry)
+    {
+        final java.io.InputStream entryInputStream = this.getEntryInputStream(entry);
+
+        final ZipListener listener = this.listener;
+        final java.io.InputStream result;
+        if (listener == null)
+        {
+            result = entryInputStream;
+        }
+        else
+        {
+            final long startNanoseconds = System.nanoTime();
+            final java.io.InputStream uncheckedInputStream = entryInputStream instanceof ZipEntryCheckedInputStream
+                ? ((ZipEntryCheckedInputStream)entryInputStream).getEntryInputStream()
+                : entryInputStream;
+            final ZipEntryInflaterInputStream inflaterInputStream = uncheckedInputStream instanceof ZipEntryInflaterInputStream
+                ? ((ZipEntryInflaterInputStream)uncheckedInputStream).setMeasuringInflateDuration(true)
+                : null;
+            result = new java.io.FilterInputStream(entryInputStream)
+            {
+                private boolean closed;
+
+                @Override
+                public void close() throws java.io.IOException
+                {
+                    super.close();
+
+                    if (!this.closed)
+                    {
+                        this.closed = true;
+                        listener.entryRead(ZipEntryMetrics.create(
+                            entry.getName(),
+                            entry.getCompressionMethod(),
+                            entry.getUncompressedByteCount(),
+                            entry.getCompressedByteCount(),
+                            System.nanoTime() - startNanoseconds,
+                            inflaterInputStream == null ? 0 : inflaterInputStream.getInflateNanoseconds()));
+                    }
+                }
+            };
+        }
+        return result;
+    }
+
+    private static ZipEntryReadStream createEntryReadStream(ZipReader reader, ZipCentralDirectoryEntry entry, java.io.InputStream entryInputStream)
+    {
+        PreCondition.assertNotNull(reader, "reader");
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertNotNull(entryInputStream, "entryInputStream");
+
+        return ZipEntryReadStream.create(entry, reader, entryInputStream);
+    }
+
+    @Override
+    public boolean isDisposed()
+    {
+        return this.disposed.get();
+    }
+
+    @Override
+    public Result<Boolean> dispose()
+    {
+        return Result.create(() ->
+        {
+            final boolean result = this.disposed.compareAndSet(false, true);
+            if (result)
+            {
+                this.byteSource.dispose().await();
+            }
+            return result;
+        });
+    }
+}
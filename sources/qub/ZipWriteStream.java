@@ -2,26 +2,210 @@ package qub;
 
 public class ZipWriteStream implements Disposable
 {
-    private final java.util.zip.ZipOutputStream zipOutputStream;
+    /**
+     * The default number of uncompressed bytes in each block when entries are compressed in
+     * parallel.
+     */
+    public static final int defaultParallelCompressionBlockByteCount = 128 * 1024;
+
+    /**
+     * The largest part of a file that is memory-mapped at one time when an entry is created from
+     * a {@link File}.
+     */
+    private static final long mappedRegionByteCount = 64 * 1024 * 1024;
+
+    /**
+     * The most bytes of a {@link ByteReadStream} that are held in memory while they are hashed
+     * for the {@link ZipCompressedEntryCache}. Larger contents are spilled to a temporary file.
+     */
+    private static final int maximumBufferedCachedEntryByteCount = 1024 * 1024;
+
+    private final ZipArchiveOutputStream archiveOutputStream;
     private ZipEntryWriteStream currentEntryWriteStream;
+    private ZipEntryOutputStream currentEntryOutputStream;
+    private int parallelCompressionBlockByteCount;
+    private java.util.concurrent.ExecutorService ownedExecutor;
+    private ZipParallelDeflater parallelDeflater;
+    private ZipAdaptiveCompressionStatistics adaptiveCompressionStatistics;
+    private ZipListener listener;
+    private ZipCodecPool codecPool;
+    private ZipCompressedEntryCache compressedEntryCache;
     private boolean disposed;
 
-    private ZipWriteStream(java.util.zip.ZipOutputStream zipOutputStream)
+    private ZipWriteStream(ZipArchiveOutputStream archiveOutputStream)
     {
-        PreCondition.assertNotNull(zipOutputStream, "zipOutputStream");
+        PreCondition.assertNotNull(archiveOutputStream, "archiveOutputStream");
 
-        this.zipOutputStream = zipOutputStream;
+        this.archiveOutputStream = archiveOutputStream;
+        this.parallelCompressionBlockByteCount = ZipWriteStream.defaultParallelCompressionBlockByteCount;
+        this.codecPool = ZipCodecPool.getDefault();
     }
 
     public static Result<ZipWriteStream> create(File file)
     {
         PreCondition.assertNotNull(file, "file");
 
+        return ZipWriteStream.create(file, ZipFileWriteMode.Stream);
+    }
+
+    /**
+     * Open a {@link ZipWriteStream} that replaces the contents of the provided {@link File} with
+     * a new zip archive. Files that aren't on the local disk always use
+     * {@link ZipFileWriteMode#Stream}.
+     * @param file The file to write the zip archive to.
+     * @param writeMode The way that the returned {@link ZipWriteStream} will write the file.
+     * @return The {@link ZipWriteStream} that writes to the file.
+     */
+    public static Result<ZipWriteStream> create(File file, ZipFileWriteMode writeMode)
+    {
+        PreCondition.assertNotNull(file, "file");
+        PreCondition.assertNotNull(writeMode, "writeMode");
+
         return Result.create(() ->
         {
-            final ByteWriteStream byteWriteStream = file.getContentsByteWriteStream().await();
-            final BufferedByteWriteStream bufferedByteWriteStream = BufferedByteWriteStream.create(byteWriteStream);
-            return ZipWriteStream.create(bufferedByteWriteStream);
+            final ZipWriteStream result;
+            if (writeMode == ZipFileWriteMode.Seekable && file.getFileSystem() instanceof JavaFileSystem)
+            {
+                final java.nio.file.Path javaFilePath = java.nio.file.Paths.get(file.getPath().toString());
+                try
+                {
+                    final java.nio.file.Path javaFolderPath = javaFilePath.getParent();
+                    if (javaFolderPath != null)
+                    {
+                        java.nio.file.Files.createDirectories(javaFolderPath);
+                    }
+                    final java.nio.channels.FileChannel fileChannel = java.nio.channels.FileChannel.open(javaFilePath,
+                        java.nio.file.StandardOpenOption.CREATE,
+                        java.nio.file.StandardOpenOption.WRITE,
+                        java.nio.file.StandardOpenOption.TRUNCATE_EXISTING);
+                    result = new ZipWriteStream(ZipArchiveOutputStream.createSeekable(java.nio.channels.Channels.newOutputStream(fileChannel), fileChannel, null, null));
+                }
+                catch (java.io.IOException e)
+                {
+                    throw Exceptions.asRuntime(e);
+                }
+            }
+            else
+            {
+                final ByteWriteStream byteWriteStream = file.getContentsByteWriteStream().await();
+                final BufferedByteWriteStream bufferedByteWriteStream = BufferedByteWriteStream.create(byteWriteStream);
+                result = ZipWriteStream.create(bufferedByteWriteStream);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Open a {@link ZipWriteStream} that appends entries to the zip archive in the provided
+     * {@link File}. New entries are written where the archive's central directory starts, and
+     * when the returned {@link ZipWriteStream} is disposed a central directory that lists both
+     * the existing entries and the new entries is written after them. For files on the local
+     * disk none of the existing entries are read or rewritten, so the cost of appending only
+     * depends on the size of the new entries. Files on other {@link FileSystem}s are read into
+     * memory and rewritten. If the file doesn't exist, then a new archive is created.
+     * @param file The file to append entries to.
+     * @return The {@link ZipWriteStream} that appends entries to the file.
+     */
+    public static Result<ZipWriteStream> createAppend(File file)
+    {
+        PreCondition.assertNotNull(file, "file");
+
+        return ZipWriteStream.createAppend(file, ZipFileWriteMode.Stream);
+    }
+
+    /**
+     * Open a {@link ZipWriteStream} that appends entries to the zip archive in the provided
+     * {@link File}. See {@link #createAppend(File)}. Files that aren't on the local disk always
+     * use {@link ZipFileWriteMode#Stream}.
+     * @param file The file to append entries to.
+     * @param writeMode The way that the returned {@link ZipWriteStream} will write the file.
+     * @return The {@link ZipWriteStream} that appends entries to the file.
+     */
+    public static Result<ZipWriteStream> createAppend(File file, ZipFileWriteMode writeMode)
+    {
+        PreCondition.assertNotNull(file, "file");
+        PreCondition.assertNotNull(writeMode, "writeMode");
+
+        return Result.create(() ->
+        {
+            if (!file.exists().await())
+            {
+                return ZipWriteStream.create(file, writeMode).await();
+            }
+
+            final ZipCentralDirectory centralDirectory;
+            final byte[] centralDirectoryBytes;
+            final java.io.OutputStream outputStream;
+            java.nio.channels.FileChannel seekableChannel = null;
+            try
+            {
+                if (file.getFileSystem() instanceof JavaFileSystem)
+                {
+                    final java.nio.file.Path javaFilePath = java.nio.file.Paths.get(file.getPath().toString());
+                    try (final ZipByteSource byteSource = FileChannelZipByteSource.create(javaFilePath).await())
+                    {
+                        centralDirectory = ZipCentralDirectory.parse(byteSource);
+                        centralDirectoryBytes = centralDirectory.readBytes(byteSource);
+                    }
+
+                    final java.nio.channels.FileChannel fileChannel = java.nio.channels.FileChannel.open(javaFilePath, java.nio.file.StandardOpenOption.WRITE);
+                    fileChannel.position(centralDirectory.getOffset());
+                    if (writeMode == ZipFileWriteMode.Seekable)
+                    {
+                        seekableChannel = fileChannel;
+                    }
+                    outputStream = new java.io.FilterOutputStream(java.nio.channels.Channels.newOutputStream(fileChannel))
+                    {
+                        @Override
+                        public void write(byte[] bytes, int startIndex, int length) throws java.io.IOException
+                        {
+                            this.out.write(bytes, startIndex, length);
+                        }
+
+                        @Override
+                        public void close() throws java.io.IOException
+                        {
+                            try
+                            {
+                                this.flush();
+
+                                // The new central directory can be shorter than the old central
+                                // directory that it was written over.
+                                fileChannel.truncate(fileChannel.position());
+                            }
+                            finally
+                            {
+                                super.close();
+                            }
+                        }
+                    };
+                }
+                else
+                {
+                    final byte[] existingEntryBytes;
+                    try (final ByteReadStream readStream = file.getContentsReadStream().await();
+                         final ZipByteSource byteSource = InMemoryZipByteSource.create(readStream))
+                    {
+                        centralDirectory = ZipCentralDirectory.parse(byteSource);
+                        centralDirectoryBytes = centralDirectory.readBytes(byteSource);
+                        existingEntryBytes = byteSource.readAllBytes(0, (int)centralDirectory.getOffset());
+                    }
+
+                    final ByteWriteStream byteWriteStream = file.getContentsByteWriteStream().await();
+                    final BufferedByteWriteStream bufferedByteWriteStream = BufferedByteWriteStream.create(byteWriteStream);
+                    outputStream = ByteWriteStreamToOutputStream.create(bufferedByteWriteStream);
+                    outputStream.write(existingEntryBytes);
+                }
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+
+            final ZipArchiveOutputStream archiveOutputStream = seekableChannel != null
+                ? ZipArchiveOutputStream.createSeekable(outputStream, seekableChannel, centralDirectory, centralDirectoryBytes)
+                : ZipArchiveOutputStream.create(outputStream, centralDirectory, centralDirectoryBytes);
+            return new ZipWriteStream(archiveOutputStream);
         });
     }
 
@@ -30,8 +214,250 @@ public class ZipWriteStream implements Disposable
         PreCondition.assertNotNull(writeStream, "writeStream");
 
         final ByteWriteStreamToOutputStream outputStream = ByteWriteStreamToOutputStream.create(writeStream);
-        final java.util.zip.ZipOutputStream zipOutputStream = new java.util.zip.ZipOutputStream(outputStream);
-        return new ZipWriteStream(zipOutputStream);
+        final ZipArchiveOutputStream archiveOutputStream = ZipArchiveOutputStream.create(outputStream);
+        return new ZipWriteStream(archiveOutputStream);
+    }
+
+    /**
+     * Get whether the entries that are written to this stream will be compressed in parallel.
+     */
+    public boolean isParallelCompression()
+    {
+        return this.parallelDeflater != null;
+    }
+
+    /**
+     * Compress the entries that are written to this stream in parallel on a new pool of the
+     * provided number of threads. Each entry is split into blocks that are deflated concurrently
+     * and then written in order as a single deflate stream, so the resulting archive can be read
+     * by any zip reader. The pool is shut down when this stream is disposed.
+     * @param threadCount The number of threads to compress with, or 1 to compress entries on the
+     * thread that writes them.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream setParallelCompression(int threadCount)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(threadCount, 1, "threadCount");
+        PreCondition.assertNull(this.currentEntryWriteStream, "this.currentEntryWriteStream");
+        PreCondition.assertNotDisposed(this, "this");
+
+        final java.util.concurrent.ExecutorService executor;
+        if (threadCount == 1)
+        {
+            executor = null;
+        }
+        else
+        {
+            executor = java.util.concurrent.Executors.newFixedThreadPool(threadCount, (Runnable runnable) ->
+            {
+                final Thread thread = new Thread(runnable, "ZipWriteStream compression");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.setParallelCompression(executor, threadCount * 2);
+        this.ownedExecutor = executor;
+
+        return this;
+    }
+
+    /**
+     * Compress the entries that are written to this stream in parallel on the provided
+     * {@link java.util.concurrent.Executor}. The executor is not shut down when this stream is
+     * disposed.
+     * @param executor The executor to compress with, or null to compress entries on the thread
+     * that writes them.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream setParallelCompression(java.util.concurrent.Executor executor)
+    {
+        PreCondition.assertNull(this.currentEntryWriteStream, "this.currentEntryWriteStream");
+        PreCondition.assertNotDisposed(this, "this");
+
+        this.setParallelCompression(executor, Runtime.getRuntime().availableProcessors() * 2);
+
+        return this;
+    }
+
+    private void setParallelCompression(java.util.concurrent.Executor executor, int maximumPendingBlockCount)
+    {
+        this.flushParallelDeflater();
+        this.shutdownOwnedExecutor();
+
+        this.parallelDeflater = executor == null
+            ? null
+            : ZipParallelDeflater.create(executor, this.parallelCompressionBlockByteCount, maximumPendingBlockCount, this.codecPool);
+    }
+
+    /**
+     * Get the number of uncompressed bytes in each block when entries are compressed in parallel.
+     */
+    public int getParallelCompressionBlockByteCount()
+    {
+        return this.parallelCompressionBlockByteCount;
+    }
+
+    /**
+     * Set the number of uncompressed bytes in each block when entries are compressed in parallel.
+     * Smaller blocks spread small entries across more threads, but each block boundary costs a few
+     * bytes of compressed output. This must be set before parallel compression is enabled.
+     * @param parallelCompressionBlockByteCount The number of uncompressed bytes in each block.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream setParallelCompressionBlockByteCount(int parallelCompressionBlockByteCount)
+    {
+        PreCondition.assertGreaterThanOrEqualTo(parallelCompressionBlockByteCount, 32 * 1024, "parallelCompressionBlockByteCount");
+        PreCondition.assertFalse(this.isParallelCompression(), "this.isParallelCompression()");
+
+        this.parallelCompressionBlockByteCount = parallelCompressionBlockByteCount;
+
+        return this;
+    }
+
+    /**
+     * Get whether entries that don't specify a compression method will be sampled to decide
+     * whether they are worth compressing.
+     */
+    public boolean isAdaptiveCompression()
+    {
+        return this.adaptiveCompressionStatistics != null;
+    }
+
+    /**
+     * Set whether entries that don't specify a compression method will be sampled to decide
+     * whether they are worth compressing. The first
+     * {@link ZipEntryAdaptiveOutputStream#defaultSampleByteCount} bytes of each entry are
+     * compressed as a trial, and entries that don't compress well skip DEFLATE's work. Entries
+     * that fit entirely in the sample are stored, and larger entries are written with DEFLATE
+     * level 0 so that they can still be streamed.
+     * @param adaptiveCompression Whether entries will be sampled.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream setAdaptiveCompression(boolean adaptiveCompression)
+    {
+        PreCondition.assertNotDisposed(this, "this");
+
+        if (!adaptiveCompression)
+        {
+            this.adaptiveCompressionStatistics = null;
+        }
+        else if (this.adaptiveCompressionStatistics == null)
+        {
+            this.adaptiveCompressionStatistics = ZipAdaptiveCompressionStatistics.create();
+        }
+
+        return this;
+    }
+
+    /**
+     * Get the statistics about the decisions that adaptive compression has made, or null if
+     * adaptive compression is not enabled.
+     */
+    public ZipAdaptiveCompressionStatistics getAdaptiveCompressionStatistics()
+    {
+        return this.adaptiveCompressionStatistics;
+    }
+
+    private void flushParallelDeflater()
+    {
+        if (this.parallelDeflater != null)
+        {
+            this.parallelDeflater.flush();
+        }
+    }
+
+    private void shutdownOwnedExecutor()
+    {
+        if (this.ownedExecutor != null)
+        {
+            this.ownedExecutor.shutdown();
+            this.ownedExecutor = null;
+        }
+    }
+
+    /**
+     * Get the {@link ZipCodecPool} that this stream gets its {@link java.util.zip.Deflater}s and
+     * buffers from.
+     */
+    public ZipCodecPool getCodecPool()
+    {
+        return this.codecPool;
+    }
+
+    /**
+     * Set the {@link ZipCodecPool} that this stream will get its {@link java.util.zip.Deflater}s
+     * and buffers from. By default this is {@link ZipCodecPool#getDefault()}. This must be set
+     * before parallel compression is enabled.
+     * @param codecPool The pool to get codecs and buffers from.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream setCodecPool(ZipCodecPool codecPool)
+    {
+        PreCondition.assertNotNull(codecPool, "codecPool");
+        PreCondition.assertFalse(this.isParallelCompression(), "this.isParallelCompression()");
+
+        this.codecPool = codecPool;
+
+        return this;
+    }
+
+    /**
+     * Get the {@link ZipCompressedEntryCache} that entries that are created from a
+     * {@link ByteReadStream} or a {@link File} get their compressed data from, or null if those
+     * entries are always compressed.
+     */
+    public ZipCompressedEntryCache getCompressedEntryCache()
+    {
+        return this.compressedEntryCache;
+    }
+
+    /**
+     * Set the {@link ZipCompressedEntryCache} that entries that are created with
+     * {@link #createEntry(ZipEntryParameters, ByteReadStream)} or
+     * {@link #createEntry(ZipEntryParameters, File)} will get their compressed data from. Entries
+     * whose contents are in the cache are copied into the archive without being compressed again.
+     * Entries that are larger than {@link ZipCompressedEntryCache#maximumEntryByteCount}, and
+     * entries that would be sampled by adaptive compression, don't use the cache.
+     * @param compressedEntryCache The cache to use, or null to stop using a cache.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream setCompressedEntryCache(ZipCompressedEntryCache compressedEntryCache)
+    {
+        this.compressedEntryCache = compressedEntryCache;
+
+        return this;
+    }
+
+    /**
+     * Get whether the entry with the provided parameters should get its compressed data from this
+     * stream's {@link ZipCompressedEntryCache}.
+     */
+    private boolean isCachedEntry(ZipEntryParameters parameters)
+    {
+        return this.compressedEntryCache != null &&
+            !(parameters.getCompressionMethod() == null && this.adaptiveCompressionStatistics != null);
+    }
+
+    /**
+     * Get the {@link ZipListener} that is notified as entries are written to this stream, or
+     * null if this stream doesn't have a listener.
+     */
+    public ZipListener getListener()
+    {
+        return this.listener;
+    }
+
+    /**
+     * Set the {@link ZipListener} that will be notified as entries are written to this stream.
+     * Entries are only timed while this stream has a listener.
+     * @param listener The listener to notify, or null to stop notifying a listener.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream setListener(ZipListener listener)
+    {
+        this.listener = listener;
+
+        return this;
     }
 
     @Override
@@ -57,12 +483,18 @@ public class ZipWriteStream implements Disposable
 
                 try
                 {
-                    this.zipOutputStream.close();
+                    this.flushParallelDeflater();
+                    this.archiveOutputStream.finish();
+                    this.archiveOutputStream.close();
                 }
                 catch (Exception e)
                 {
                     throw Exceptions.asRuntime(e);
                 }
+                finally
+                {
+                    this.shutdownOwnedExecutor();
+                }
             }
             return result;
         });
@@ -74,13 +506,24 @@ public class ZipWriteStream implements Disposable
 
         this.currentEntryWriteStream = null;
 
+        final ZipEntryOutputStream entryOutputStream = this.currentEntryOutputStream;
+        this.currentEntryOutputStream = null;
         try
         {
-            this.zipOutputStream.closeEntry();
+            entryOutputStream.finish();
         }
-        catch (Exception e)
+        finally
         {
-            throw Exceptions.asRuntime(e);
+            // Closing the entry's stream releases whatever it still holds, such as a stored
+            // entry's temporary file, if finishing the entry failed.
+            try
+            {
+                entryOutputStream.close();
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
         }
 
         PostCondition.assertNull(this.currentEntryWriteStream, "this.currentEntryWriteStream");
@@ -110,40 +553,220 @@ public class ZipWriteStream implements Disposable
             this.currentEntryWriteStream.dispose().await();
         }
 
-        final java.util.zip.ZipEntry zipEntry = new java.util.zip.ZipEntry(parameters.getEntryPath().toString());
-        
+        final long startNanoseconds = this.listener == null ? 0 : System.nanoTime();
         final String comment = parameters.getComment();
-        if (comment != null)
+
+        final long lastModifiedMilliseconds = ZipWriteStream.getLastModifiedMilliseconds(parameters);
+
+        final ZipCentralDirectoryEntry localFileHeader = ZipCentralDirectoryEntry.create(
+            parameters.getEntryPath().toString(),
+            comment,
+            ZipFormat.utf8Flag | ZipFormat.dataDescriptorFlag,
+            ZipFormat.deflatedCompressionMethod,
+            lastModifiedMilliseconds,
+            0,
+            0,
+            0,
+            0);
+        final ZipCompressionMethod compressionMethod = parameters.getCompressionMethod();
+        final Integer parametersCompressionLevel = parameters.getCompressionLevel();
+        final int compressionLevel = parametersCompressionLevel != null
+            ? parametersCompressionLevel
+            : java.util.zip.Deflater.DEFAULT_COMPRESSION;
+        final int compressionStrategy = ZipWriteStream.getDeflaterStrategy(parameters.getCompressionStrategy());
+        if (compressionMethod == ZipCompressionMethod.Stored)
         {
-            zipEntry.setComment(parameters.getComment());
+            this.currentEntryOutputStream = this.createStoredOutputStream(localFileHeader, startNanoseconds);
         }
+        else if (compressionMethod == null && this.adaptiveCompressionStatistics != null)
+        {
+            this.currentEntryOutputStream = ZipEntryAdaptiveOutputStream.create(
+                ZipEntryAdaptiveOutputStream.defaultSampleByteCount,
+                compressionLevel,
+                compressionStrategy,
+                () -> this.createStoredOutputStream(localFileHeader, startNanoseconds),
+                (Integer adaptiveCompressionLevel) -> this.createDeflatedOutputStream(localFileHeader, adaptiveCompressionLevel, compressionStrategy, startNanoseconds),
+                this.adaptiveCompressionStatistics,
+                this.codecPool);
+        }
+        else
+        {
+            this.currentEntryOutputStream = this.createDeflatedOutputStream(localFileHeader, compressionLevel, compressionStrategy, startNanoseconds);
+        }
+
+        this.currentEntryWriteStream = ZipEntryWriteStream.create(this.currentEntryOutputStream, this.codecPool, this::closeCurrentEntry);
+        final ZipEntryWriteStream result = this.currentEntryWriteStream;
+        
+        PostCondition.assertNotNull(result, "result");
+        PostCondition.assertSame(result, this.currentEntryWriteStream, "this.currentEntryWriteStream");
         
+        return result;
+    }
+
+    private static long getLastModifiedMilliseconds(ZipEntryParameters parameters)
+    {
+        final long result;
         final DateTime lastModified = parameters.getLastModified();
         if (lastModified != null)
         {
             final Duration durationSinceEpoch = lastModified.getDurationSinceEpoch();
-            final double millisecondsSinceEpoch = durationSinceEpoch.toMilliseconds().getValue();
-            final java.nio.file.attribute.FileTime fileTime = java.nio.file.attribute.FileTime.fromMillis((long)millisecondsSinceEpoch);
-            zipEntry.setLastModifiedTime(fileTime);
+            result = (long)durationSinceEpoch.toMilliseconds().getValue();
+        }
+        else
+        {
+            result = System.currentTimeMillis();
         }
+        return result;
+    }
 
-        try
+    private ZipEntryOutputStream createStoredOutputStream(ZipCentralDirectoryEntry localFileHeader, long startNanoseconds)
+    {
+        final ZipEntryOutputStream result = this.parallelDeflater != null
+            ? ZipEntryStoredOutputStream.create(this.parallelDeflater, this.archiveOutputStream, localFileHeader, this.codecPool)
+            : ZipEntryStoredOutputStream.create(this.archiveOutputStream, localFileHeader, this.codecPool);
+        result.setListener(this.listener, startNanoseconds);
+        return result;
+    }
+
+    private ZipEntryOutputStream createDeflatedOutputStream(ZipCentralDirectoryEntry localFileHeader, int compressionLevel, int compressionStrategy, long startNanoseconds)
+    {
+        final ZipEntryOutputStream result = this.parallelDeflater != null
+            ? ZipEntryParallelDeflaterOutputStream.create(this.parallelDeflater, this.archiveOutputStream, localFileHeader, compressionLevel, compressionStrategy, this.codecPool)
+            : ZipEntryDeflaterOutputStream.create(this.archiveOutputStream, localFileHeader, compressionLevel, compressionStrategy, this.codecPool);
+        result.setListener(this.listener, startNanoseconds);
+        return result;
+    }
+
+    static int getDeflaterStrategy(ZipCompressionStrategy compressionStrategy)
+    {
+        int result = java.util.zip.Deflater.DEFAULT_STRATEGY;
+        if (compressionStrategy != null)
         {
-            this.zipOutputStream.putNextEntry(zipEntry);
+            switch (compressionStrategy)
+            {
+                case Filtered:
+                    result = java.util.zip.Deflater.FILTERED;
+                    break;
+
+                case HuffmanOnly:
+                    result = java.util.zip.Deflater.HUFFMAN_ONLY;
+                    break;
+            }
         }
-        catch (Exception e)
+        return result;
+    }
+
+    /**
+     * Copy the provided entry into this archive without decompressing and recompressing it. The
+     * entry's compressed data, CRC-32, and sizes are written unchanged.
+     * @param entryReadStream The entry to copy. It must have been opened from a {@link ZipReader}.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream copyEntry(ZipEntryReadStream entryReadStream)
+    {
+        PreCondition.assertNotNull(entryReadStream, "entryReadStream");
+        PreCondition.assertTrue(entryReadStream.canCopyCompressedData(), "entryReadStream.canCopyCompressedData()");
+
+        return this.copyEntry(entryReadStream.getZipReader(), entryReadStream.getCentralDirectoryEntry());
+    }
+
+    /**
+     * Copy the provided entry into this archive without decompressing and recompressing it. The
+     * entry's compressed data, CRC-32, and sizes are written unchanged.
+     * @param zipReader The {@link ZipReader} to read the entry's compressed data from.
+     * @param entry The entry to copy.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream copyEntry(ZipReader zipReader, ZipCentralDirectoryEntry entry)
+    {
+        PreCondition.assertNotNull(zipReader, "zipReader");
+        PreCondition.assertNotNull(entry, "entry");
+
+        return this.copyEntry(zipReader, entry, ZipEntryParameters.create());
+    }
+
+    /**
+     * Copy the provided entry into this archive without decompressing and recompressing it. The
+     * entry's compressed data, CRC-32, and sizes are written unchanged, but the entry path,
+     * comment, and last modified time in the provided parameters replace the entry's values.
+     * Encrypted entries can't be copied because their encryption headers aren't written.
+     * @param zipReader The {@link ZipReader} to read the entry's compressed data from.
+     * @param entry The entry to copy.
+     * @param parameters The values that will replace the entry's values. Any values that are not
+     * set keep the entry's values.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream copyEntry(ZipReader zipReader, ZipCentralDirectoryEntry entry, ZipEntryParameters parameters)
+    {
+        PreCondition.assertNotNull(zipReader, "zipReader");
+        PreCondition.assertNotDisposed(zipReader, "zipReader");
+        PreCondition.assertNotNull(entry, "entry");
+        PreCondition.assertNotNull(parameters, "parameters");
+        PreCondition.assertNotDisposed(this, "this");
+
+        if ((entry.getFlags() & (ZipFormat.encryptedFlag | ZipFormat.strongEncryptionFlag)) != 0)
+        {
+            throw new ZipFormatException("The zip entry " + entry.getName() + " can't be copied because it is encrypted.");
+        }
+
+        if (this.currentEntryWriteStream != null)
+        {
+            this.currentEntryWriteStream.dispose().await();
+        }
+        this.flushParallelDeflater();
+
+        final long startNanoseconds = this.listener == null ? 0 : System.nanoTime();
+        final Path entryPath = parameters.getEntryPath();
+        final String comment = parameters.getComment();
+        final DateTime lastModified = parameters.getLastModified();
+
+        // The copy's CRC-32 and sizes are in its local file header and its name is always UTF-8,
+        // so none of the source entry's other flags apply to it.
+        final ZipCentralDirectoryEntry localFileHeader = ZipCentralDirectoryEntry.create(
+            entryPath != null ? entryPath.toString() : entry.getName(),
+            comment != null ? comment : entry.getComment(),
+            ZipFormat.utf8Flag,
+            entry.getCompressionMethod(),
+            lastModified != null ? (long)lastModified.getDurationSinceEpoch().toMilliseconds().getValue() : entry.getLastModifiedMilliseconds(),
+            entry.getCrc32(),
+            entry.getCompressedByteCount(),
+            entry.getUncompressedByteCount(),
+            this.archiveOutputStream.getPosition());
+        this.archiveOutputStream.writeLocalFileHeader(localFileHeader);
+
+        final byte[] buffer = this.codecPool.acquireBuffer();
+        try (final java.io.InputStream compressedInputStream = zipReader.getEntryCompressedInputStream(entry))
+        {
+            int bytesRead = compressedInputStream.read(buffer);
+            while (bytesRead >= 0)
+            {
+                this.archiveOutputStream.writeData(buffer, 0, bytesRead);
+                bytesRead = compressedInputStream.read(buffer);
+            }
+        }
+        catch (java.io.IOException e)
         {
             throw Exceptions.asRuntime(e);
         }
+        finally
+        {
+            this.codecPool.releaseBuffer(buffer);
+        }
 
-        final ByteWriteStream byteWriteStream = OutputStreamToByteWriteStream.create(this.zipOutputStream);
-        this.currentEntryWriteStream = ZipEntryWriteStream.create(byteWriteStream, this::closeCurrentEntry);
-        final ZipEntryWriteStream result = this.currentEntryWriteStream;
-        
-        PostCondition.assertNotNull(result, "result");
-        PostCondition.assertSame(result, this.currentEntryWriteStream, "this.currentEntryWriteStream");
-        
-        return result;
+        this.archiveOutputStream.addCentralDirectoryEntry(localFileHeader);
+
+        if (this.listener != null)
+        {
+            this.listener.entryWritten(ZipEntryMetrics.create(
+                localFileHeader.getName(),
+                localFileHeader.getCompressionMethod(),
+                localFileHeader.getUncompressedByteCount(),
+                localFileHeader.getCompressedByteCount(),
+                System.nanoTime() - startNanoseconds,
+                0));
+        }
+
+        return this;
     }
 
     public ZipWriteStream createEntry(String entryPath, Action1<ZipEntryWriteStream> writeStreamAction)
@@ -174,4 +797,289 @@ public class ZipWriteStream implements Disposable
 
         return this;
     }
+
+    /**
+     * Create an entry that contains all of the remaining bytes of the provided
+     * {@link ByteReadStream}.
+     * @param parameters The parameters of the entry to create.
+     * @param readStream The stream that contains the entry's data. It is not disposed.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream createEntry(ZipEntryParameters parameters, ByteReadStream readStream)
+    {
+        PreCondition.assertNotNull(parameters, "parameters");
+        PreCondition.assertNotNull(readStream, "readStream");
+        PreCondition.assertNotDisposed(this, "this");
+
+        if (!this.isCachedEntry(parameters))
+        {
+            try (final ZipEntryWriteStream writeStream = this.createEntryWriteStream(parameters))
+            {
+                writeStream.writeAll(readStream).await();
+            }
+        }
+        else
+        {
+            // The contents have to be hashed before the cache can be checked. Small contents are
+            // read into memory, and larger contents are spilled to a temporary file that is
+            // memory-mapped once all of them have been read. Contents that are too large for the
+            // cache are streamed into the entry after the bytes that have already been read.
+            final java.io.InputStream inputStream = ByteReadStreamToInputStream.create(readStream);
+            final byte[] buffer = this.codecPool.acquireBuffer();
+            java.io.ByteArrayOutputStream bufferedBytes = new java.io.ByteArrayOutputStream(buffer.length);
+            java.nio.channels.FileChannel spillChannel = null;
+            long byteCount = 0;
+            boolean endOfStream = false;
+            try
+            {
+                while (!endOfStream && byteCount <= ZipCompressedEntryCache.maximumEntryByteCount)
+                {
+                    final int bytesRead = inputStream.read(buffer, 0, buffer.length);
+                    if (bytesRead == -1)
+                    {
+                        endOfStream = true;
+                    }
+                    else if (0 < bytesRead)
+                    {
+                        byteCount += bytesRead;
+                        if (spillChannel == null && byteCount <= ZipWriteStream.maximumBufferedCachedEntryByteCount)
+                        {
+                            bufferedBytes.write(buffer, 0, bytesRead);
+                        }
+                        else
+                        {
+                            if (spillChannel == null)
+                            {
+                                final java.nio.file.Path spillFilePath = java.nio.file.Files.createTempFile("qub-zip-", ".spill");
+                                spillChannel = java.nio.channels.FileChannel.open(
+                                    spillFilePath,
+                                    java.nio.file.StandardOpenOption.READ,
+                                    java.nio.file.StandardOpenOption.WRITE,
+                                    java.nio.file.StandardOpenOption.DELETE_ON_CLOSE);
+                                bufferedBytes.writeTo(java.nio.channels.Channels.newOutputStream(spillChannel));
+                                bufferedBytes = null;
+                            }
+                            final java.nio.ByteBuffer spillBytes = java.nio.ByteBuffer.wrap(buffer, 0, bytesRead);
+                            while (spillBytes.hasRemaining())
+                            {
+                                spillChannel.write(spillBytes);
+                            }
+                        }
+                    }
+                }
+
+                if (endOfStream && spillChannel == null)
+                {
+                    this.createEntry(parameters, this.compressedEntryCache.getOrCompress(parameters, bufferedBytes.toByteArray(), 0, (int)byteCount, this.codecPool));
+                }
+                else if (endOfStream)
+                {
+                    final java.nio.MappedByteBuffer spilledBytes = spillChannel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, byteCount);
+                    try
+                    {
+                        this.createEntry(parameters, this.compressedEntryCache.getOrCompress(parameters, spilledBytes, this.codecPool));
+                    }
+                    finally
+                    {
+                        MemoryMappedZipByteSource.unmap(spilledBytes);
+                    }
+                }
+                else
+                {
+                    try (final ZipEntryWriteStream writeStream = this.createEntryWriteStream(parameters))
+                    {
+                        if (spillChannel == null)
+                        {
+                            writeStream.write(bufferedBytes.toByteArray()).await();
+                        }
+                        else
+                        {
+                            spillChannel.position(0);
+                            int bytesRead = spillChannel.read(java.nio.ByteBuffer.wrap(buffer));
+                            while (bytesRead != -1)
+                            {
+                                if (0 < bytesRead)
+                                {
+                                    writeStream.write(buffer, 0, bytesRead).await();
+                                }
+                                bytesRead = spillChannel.read(java.nio.ByteBuffer.wrap(buffer));
+                            }
+                        }
+
+                        int bytesRead = inputStream.read(buffer, 0, buffer.length);
+                        while (bytesRead != -1)
+                        {
+                            if (0 < bytesRead)
+                            {
+                                writeStream.write(buffer, 0, bytesRead).await();
+                            }
+                            bytesRead = inputStream.read(buffer, 0, buffer.length);
+                        }
+                    }
+                }
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+            finally
+            {
+                this.codecPool.releaseBuffer(buffer);
+                if (spillChannel != null)
+                {
+                    try
+                    {
+                        spillChannel.close();
+                    }
+                    catch (java.io.IOException ignored)
+                    {
+                    }
+                }
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Create an entry that contains the contents of the provided {@link File}. Files on the
+     * local disk are memory-mapped one region at a time and compressed straight from the
+     * mapping, and each region is unmapped as soon as it has been written.
+     * @param parameters The parameters of the entry to create.
+     * @param file The file that contains the entry's data.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream createEntry(ZipEntryParameters parameters, File file)
+    {
+        PreCondition.assertNotNull(parameters, "parameters");
+        PreCondition.assertNotNull(file, "file");
+        PreCondition.assertNotDisposed(this, "this");
+
+        if (!file.exists().await())
+        {
+            throw new FileNotFoundException(file);
+        }
+
+        if (file.getFileSystem() instanceof JavaFileSystem && this.isCachedEntry(parameters) && ZipWriteStream.getFileByteCount(file) <= ZipCompressedEntryCache.maximumEntryByteCount)
+        {
+            try (final java.nio.channels.FileChannel fileChannel = java.nio.channels.FileChannel.open(java.nio.file.Paths.get(file.getPath().toString()), java.nio.file.StandardOpenOption.READ))
+            {
+                final java.nio.MappedByteBuffer fileBytes = fileChannel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+                try
+                {
+                    this.createEntry(parameters, this.compressedEntryCache.getOrCompress(parameters, fileBytes, this.codecPool));
+                }
+                finally
+                {
+                    MemoryMappedZipByteSource.unmap(fileBytes);
+                }
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+        }
+        else if (file.getFileSystem() instanceof JavaFileSystem)
+        {
+            final java.nio.file.Path javaFilePath = java.nio.file.Paths.get(file.getPath().toString());
+            try (final java.nio.channels.FileChannel fileChannel = java.nio.channels.FileChannel.open(javaFilePath, java.nio.file.StandardOpenOption.READ);
+                 final ZipEntryWriteStream writeStream = this.createEntryWriteStream(parameters))
+            {
+                final long fileByteCount = fileChannel.size();
+                long position = 0;
+                while (position < fileByteCount)
+                {
+                    final long regionByteCount = Math.min(ZipWriteStream.mappedRegionByteCount, fileByteCount - position);
+                    final java.nio.MappedByteBuffer region = fileChannel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, position, regionByteCount);
+                    try
+                    {
+                        writeStream.write(region).await();
+                    }
+                    finally
+                    {
+                        // The region has been fully consumed, so unmap it now instead of letting
+                        // every region of a large file stay mapped until it is garbage collected.
+                        MemoryMappedZipByteSource.unmap(region);
+                    }
+                    position += regionByteCount;
+                }
+            }
+            catch (java.io.IOException e)
+            {
+                throw Exceptions.asRuntime(e);
+            }
+        }
+        else
+        {
+            try (final ByteReadStream readStream = file.getContentsReadStream().await())
+            {
+                this.createEntry(parameters, readStream);
+            }
+        }
+
+        return this;
+    }
+
+    private static long getFileByteCount(File file)
+    {
+        try
+        {
+            return java.nio.file.Files.size(java.nio.file.Paths.get(file.getPath().toString()));
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+    }
+
+    /**
+     * Create an entry from data that has already been compressed, such as on another thread. The
+     * entry's CRC-32 and sizes are written in its local file header, so the entry doesn't need a
+     * data descriptor. The compression values of the provided parameters are ignored because the
+     * data is already compressed.
+     * @param parameters The parameters of the entry to create.
+     * @param compressedData The entry's compressed data.
+     * @return This object for method chaining.
+     */
+    public ZipWriteStream createEntry(ZipEntryParameters parameters, ZipCompressedData compressedData)
+    {
+        PreCondition.assertNotNull(parameters, "parameters");
+        PreCondition.assertNotNull(parameters.getEntryPath(), "parameters.getEntryPath()");
+        PreCondition.assertNotNull(compressedData, "compressedData");
+        PreCondition.assertNotDisposed(this, "this");
+
+        if (this.currentEntryWriteStream != null)
+        {
+            this.currentEntryWriteStream.dispose().await();
+        }
+        this.flushParallelDeflater();
+
+        final long startNanoseconds = this.listener == null ? 0 : System.nanoTime();
+        final ZipCentralDirectoryEntry localFileHeader = ZipCentralDirectoryEntry.create(
+            parameters.getEntryPath().toString(),
+            parameters.getComment(),
+            ZipFormat.utf8Flag,
+            compressedData.getCompressionMethod(),
+            ZipWriteStream.getLastModifiedMilliseconds(parameters),
+            compressedData.getCrc32(),
+            compressedData.getCompressedByteCount(),
+            compressedData.getUncompressedByteCount(),
+            this.archiveOutputStream.getPosition());
+        this.archiveOutputStream.writeLocalFileHeader(localFileHeader);
+        compressedData.writeTo(this.archiveOutputStream);
+        this.archiveOutputStream.addCentralDirectoryEntry(localFileHeader);
+
+        if (this.listener != null)
+        {
+            this.listener.entryWritten(ZipEntryMetrics.create(
+                localFileHeader.getName(),
+                localFileHeader.getCompressionMethod(),
+                localFileHeader.getUncompressedByteCount(),
+                localFileHeader.getCompressedByteCount(),
+                System.nanoTime() - startNanoseconds + compressedData.getCodecNanoseconds(),
+                compressedData.getCodecNanoseconds()));
+        }
+
+        return this;
+    }
 }
@@ -0,0 +1,252 @@
+package qub;
+
+/**
+ * Throughput and allocation benchmarks for the zip read and write paths. These aren't run as
+ * part of the tests. Run them with:
+ * <pre>
+ * java -cp &lt;classpath&gt; qub.ZipBenchmarks [benchmark-name-filter]
+ * </pre>
+ * Every benchmark runs against each combination of entry count, entry size, and compressibility
+ * profile. Each combination is warmed up and then measured several times, and the median run is
+ * reported as MB/s of uncompressed entry data and bytes allocated per uncompressed byte. Record
+ * the output before and after changing this project or upgrading its lib-java dependency in
+ * project.json to find regressions.
+ */
+public class ZipBenchmarks
+{
+    private static final int[] entryCounts = { 1, 100, 1000 };
+    private static final int[] entryByteCounts = { 1024, 64 * 1024, 1024 * 1024 };
+    private static final long maximumTotalByteCount = 64L * 1024 * 1024;
+    private static final int warmupIterationCount = 3;
+    private static final int measuredIterationCount = 5;
+
+    /**
+     * How compressible the generated entry data is.
+     */
+    public enum Compressibility
+    {
+        /**
+         * Every byte is zero.
+         */
+        Zeros,
+
+        /**
+         * Repetitive ASCII text that compresses about as well as source code does.
+         */
+        Text,
+
+        /**
+         * Random bytes that don't compress at all.
+         */
+        Random
+    }
+
+    private static final String[] words = { "zip", "entry", "central", "directory", "public", "static", "final", "return", "qub", "stream", "\n" };
+
+    public static void main(String[] args)
+    {
+        final String benchmarkFilter = args.length == 0 ? null : args[0];
+
+        System.out.println(String.format("%-28s %7s %10s %-8s %12s %14s", "benchmark", "entries", "entryBytes", "data", "MB/s", "allocB/byte"));
+        for (final Compressibility compressibility : Compressibility.values())
+        {
+            for (final int entryByteCount : ZipBenchmarks.entryByteCounts)
+            {
+                final byte[] entryBytes = ZipBenchmarks.createEntryBytes(compressibility, entryByteCount);
+                final char[] entryCharacters = ZipBenchmarks.toCharacters(entryBytes);
+                for (final int entryCount : ZipBenchmarks.entryCounts)
+                {
+                    if (ZipBenchmarks.maximumTotalByteCount < (long)entryCount * entryByteCount)
+                    {
+                        continue;
+                    }
+
+                    final byte[] zipBytes = ZipBenchmarks.writeBytes(entryBytes, entryCount);
+
+                    ZipBenchmarks.run(benchmarkFilter, "createEntry+write(byte[])", entryCount, entryByteCount, compressibility,
+                        () -> ZipBenchmarks.writeBytes(entryBytes, entryCount));
+                    if (compressibility != Compressibility.Random)
+                    {
+                        ZipBenchmarks.run(benchmarkFilter, "createEntry+write(char)", entryCount, entryByteCount, compressibility,
+                            () -> ZipBenchmarks.writeCharacters(entryCharacters, entryCount));
+                    }
+                    ZipBenchmarks.run(benchmarkFilter, "ZipEntryIterator.next()", entryCount, entryByteCount, compressibility,
+                        () -> ZipBenchmarks.iterate(zipBytes));
+                    ZipBenchmarks.run(benchmarkFilter, "readBytes(byte[],int,int)", entryCount, entryByteCount, compressibility,
+                        () -> ZipBenchmarks.readBytes(zipBytes));
+                    if (compressibility != Compressibility.Random)
+                    {
+                        ZipBenchmarks.run(benchmarkFilter, "readCharacter()", entryCount, entryByteCount, compressibility,
+                            () -> ZipBenchmarks.readCharacters(zipBytes));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void run(String benchmarkFilter, String benchmarkName, int entryCount, int entryByteCount, Compressibility compressibility, Action0 benchmark)
+    {
+        if (benchmarkFilter != null && !benchmarkName.contains(benchmarkFilter))
+        {
+            return;
+        }
+
+        for (int i = 0; i < ZipBenchmarks.warmupIterationCount; ++i)
+        {
+            benchmark.run();
+        }
+
+        final long[] nanoseconds = new long[ZipBenchmarks.measuredIterationCount];
+        final long[] allocatedByteCounts = new long[ZipBenchmarks.measuredIterationCount];
+        for (int i = 0; i < ZipBenchmarks.measuredIterationCount; ++i)
+        {
+            final long allocatedBytesBefore = ZipBenchmarks.getAllocatedByteCount();
+            final long start = System.nanoTime();
+            benchmark.run();
+            nanoseconds[i] = System.nanoTime() - start;
+            allocatedByteCounts[i] = ZipBenchmarks.getAllocatedByteCount() - allocatedBytesBefore;
+        }
+        java.util.Arrays.sort(nanoseconds);
+        java.util.Arrays.sort(allocatedByteCounts);
+
+        final long medianNanoseconds = Math.max(1, nanoseconds[nanoseconds.length / 2]);
+        final long medianAllocatedByteCount = allocatedByteCounts[allocatedByteCounts.length / 2];
+        final double totalByteCount = (double)entryCount * entryByteCount;
+        final double megabytesPerSecond = (totalByteCount / (1024 * 1024)) / (medianNanoseconds / 1_000_000_000.0);
+        final String allocatedBytesPerByte = medianAllocatedByteCount < 0
+            ? "n/a"
+            : String.format("%.2f", medianAllocatedByteCount / totalByteCount);
+
+        System.out.println(String.format("%-28s %7d %10d %-8s %12.1f %14s", benchmarkName, entryCount, entryByteCount, compressibility, megabytesPerSecond, allocatedBytesPerByte));
+    }
+
+    /**
+     * Get the number of bytes that the current thread has allocated, or -1 if the JVM can't
+     * measure it.
+     */
+    private static long getAllocatedByteCount()
+    {
+        final java.lang.management.ThreadMXBean threadBean = java.lang.management.ManagementFactory.getThreadMXBean();
+        return threadBean instanceof com.sun.management.ThreadMXBean
+            ? ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId())
+            : -1;
+    }
+
+    private static byte[] createEntryBytes(Compressibility compressibility, int entryByteCount)
+    {
+        final byte[] result = new byte[entryByteCount];
+        final java.util.Random random = new java.util.Random(entryByteCount);
+        switch (compressibility)
+        {
+            case Text:
+                int index = 0;
+                while (index < entryByteCount)
+                {
+                    final String word = ZipBenchmarks.words[random.nextInt(ZipBenchmarks.words.length)];
+                    for (int i = 0; i < word.length() && index < entryByteCount; ++i)
+                    {
+                        result[index++] = (byte)word.charAt(i);
+                    }
+                    if (index < entryByteCount)
+                    {
+                        result[index++] = ' ';
+                    }
+                }
+                break;
+
+            case Random:
+                random.nextBytes(result);
+                break;
+
+            default:
+                break;
+        }
+        return result;
+    }
+
+    private static char[] toCharacters(byte[] bytes)
+    {
+        final char[] result = new char[bytes.length];
+        for (int i = 0; i < bytes.length; ++i)
+        {
+            result[i] = (char)(bytes[i] & 0x7F);
+        }
+        return result;
+    }
+
+    private static byte[] writeBytes(byte[] entryBytes, int entryCount)
+    {
+        final InMemoryByteStream byteStream = InMemoryByteStream.create();
+        try (final ZipWriteStream writeStream = ZipWriteStream.create(byteStream))
+        {
+            for (int i = 0; i < entryCount; ++i)
+            {
+                writeStream.createEntry("entries/" + i, (ZipEntryWriteStream entryWriteStream) ->
+                {
+                    entryWriteStream.write(entryBytes, 0, entryBytes.length).await();
+                });
+            }
+        }
+        return byteStream.getBytes();
+    }
+
+    private static void writeCharacters(char[] entryCharacters, int entryCount)
+    {
+        try (final ZipWriteStream writeStream = ZipWriteStream.create(InMemoryByteStream.create()))
+        {
+            for (int i = 0; i < entryCount; ++i)
+            {
+                writeStream.createEntry("entries/" + i, (ZipEntryWriteStream entryWriteStream) ->
+                {
+                    for (final char character : entryCharacters)
+                    {
+                        entryWriteStream.write(character).await();
+                    }
+                });
+            }
+        }
+    }
+
+    private static void iterate(byte[] zipBytes)
+    {
+        try (final ZipEntryIterator iterator = ZipEntryIterator.create(ZipReader.create(InMemoryZipByteSource.create(zipBytes))))
+        {
+            while (iterator.next())
+            {
+            }
+        }
+    }
+
+    private static void readBytes(byte[] zipBytes)
+    {
+        final byte[] buffer = new byte[8192];
+        try (final ZipEntryIterator iterator = ZipEntryIterator.create(ZipReader.create(InMemoryZipByteSource.create(zipBytes))))
+        {
+            while (iterator.next())
+            {
+                final ZipEntryReadStream entryReadStream = iterator.getCurrent();
+                long bytesRemaining = entryReadStream.getCentralDirectoryEntry().getUncompressedByteCount();
+                while (bytesRemaining > 0)
+                {
+                    bytesRemaining -= entryReadStream.readBytes(buffer, 0, (int)Math.min(buffer.length, bytesRemaining)).await();
+                }
+            }
+        }
+    }
+
+    private static void readCharacters(byte[] zipBytes)
+    {
+        try (final ZipEntryIterator iterator = ZipEntryIterator.create(ZipReader.create(InMemoryZipByteSource.create(zipBytes))))
+        {
+            while (iterator.next())
+            {
+                final ZipEntryReadStream entryReadStream = iterator.getCurrent();
+                final long characterCount = entryReadStream.getCentralDirectoryEntry().getUncompressedByteCount();
+                for (long i = 0; i < characterCount; ++i)
+                {
+                    entryReadStream.readCharacter().await();
+                }
+            }
+        }
+    }
+}
@@ -28,6 +28,80 @@ public interface ZipFileTests
                 });
             });
 
+            runner.testGroup("get(File,ZipFileReadMode)", () ->
+            {
+                runner.test("with null file", (Test test) ->
+                {
+                    test.assertThrows(() -> ZipFile.get(null, ZipFileReadMode.MemoryMapped),
+                        new PreConditionFailure("file cannot be null."));
+                });
+
+                runner.test("with null readMode",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final File file = process.getCurrentFolder().getFile("test.zip").await();
+                    test.assertThrows(() -> ZipFile.get(file, null),
+                        new PreConditionFailure("readMode cannot be null."));
+                });
+
+                runner.test("with file that isn't on the local disk",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final File file = process.getCurrentFolder().getFile("test.zip").await();
+
+                    final ZipFile zipFile = ZipFile.get(file, ZipFileReadMode.MemoryMapped);
+                    test.assertEqual(file, zipFile);
+                    test.assertEqual(ZipFileReadMode.Stream, zipFile.getReadMode());
+                });
+
+                for (final ZipFileReadMode readMode : ZipFileReadMode.values())
+                {
+                    runner.test("with " + readMode + " file on the local disk",
+                        (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                        (Test test, Folder temporaryFolder) ->
+                    {
+                        final File file = temporaryFolder.getFile("test.zip").await();
+
+                        final ZipFile zipFile = ZipFile.get(file, readMode);
+                        test.assertEqual(readMode, zipFile.getReadMode());
+
+                        try (final ZipWriteStream writeStream = zipFile.getContentsZipWriteStream().await())
+                        {
+                            writeStream
+                                .createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    entryWriteStream.write("Hello world!").await();
+                                })
+                                .createEntry("hello/there", (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    entryWriteStream.write("Hello there!").await();
+                                });
+                        }
+
+                        try (final ZipEntryReadStream entryReadStream = zipFile.getEntry("hello/there").await())
+                        {
+                            test.assertEqual("Hello there!", entryReadStream.readEntireString().await());
+                        }
+
+                        try (final ZipEntryIterator iterator = zipFile.iterateEntries())
+                        {
+                            test.assertTrue(iterator.next());
+                            test.assertEqual(Path.parse("hello/world"), iterator.getCurrent().getPath());
+                            test.assertEqual("Hello world!", iterator.getCurrent().readEntireString().await());
+
+                            test.assertTrue(iterator.next());
+                            test.assertEqual(Path.parse("hello/there"), iterator.getCurrent().getPath());
+                            test.assertEqual("Hello there!", iterator.getCurrent().readEntireString().await());
+
+                            test.assertFalse(iterator.next());
+                            test.assertTrue(iterator.isDisposed());
+                        }
+                    });
+                }
+            });
+
             runner.testGroup("iterateEntries()", () ->
             {
                 runner.test("with file that doesn't exist",
@@ -84,6 +158,73 @@ public interface ZipFileTests
                     test.assertTrue(iterator.isDisposed());
                 });
 
+                for (final ZipFileReadMode readMode : ZipFileReadMode.values())
+                {
+                    runner.test("with empty " + readMode + " file on the local disk",
+                        (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                        (Test test, Folder temporaryFolder) ->
+                    {
+                        final ZipFile file = ZipFile.get(temporaryFolder.getFile("test.zip").await(), readMode);
+                        file.create().await();
+
+                        try (final ZipEntryIterator iterator = file.iterateEntries())
+                        {
+                            test.assertFalse(iterator.next());
+                            test.assertTrue(iterator.isDisposed());
+                        }
+                    });
+
+                    runner.test("with non-empty non-zip " + readMode + " file on the local disk",
+                        (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                        (Test test, Folder temporaryFolder) ->
+                    {
+                        final ZipFile file = ZipFile.get(temporaryFolder.getFile("test.zip").await(), readMode);
+                        file.setContentsAsString("I'm not a zip file!").await();
+
+                        try (final ZipEntryIterator iterator = file.iterateEntries())
+                        {
+                            test.assertFalse(iterator.next());
+                            test.assertTrue(iterator.isDisposed());
+                        }
+                    });
+
+                    runner.test("with truncated " + readMode + " zip file on the local disk",
+                        (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                        (Test test, Folder temporaryFolder) ->
+                    {
+                        final ZipFile file = ZipFile.get(temporaryFolder.getFile("test.zip").await(), readMode);
+                        try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                        {
+                            writeStream.createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello world!").await();
+                            });
+                        }
+
+                        // Drop the end of central directory record.
+                        final java.nio.file.Path javaFilePath = java.nio.file.Paths.get(file.getPath().toString());
+                        try
+                        {
+                            final byte[] fileBytes = java.nio.file.Files.readAllBytes(javaFilePath);
+                            java.nio.file.Files.write(javaFilePath, java.util.Arrays.copyOf(fileBytes, fileBytes.length - 22));
+                        }
+                        catch (java.io.IOException e)
+                        {
+                            throw Exceptions.asRuntime(e);
+                        }
+
+                        try (final ZipEntryIterator iterator = file.iterateEntries())
+                        {
+                            test.assertTrue(iterator.next());
+                            test.assertEqual(Path.parse("hello/world"), iterator.getCurrent().getPath());
+                            test.assertEqual("Hello world!", iterator.getCurrent().readEntireString().await());
+
+                            test.assertFalse(iterator.next());
+                            test.assertTrue(iterator.isDisposed());
+                        }
+                    });
+                }
+
                 runner.test("with actual zip file",
                     (TestResources resources) -> Tuple.create(resources.getFileSystem()),
                     (Test test, FileSystem fileSystem) ->
@@ -106,108 +247,2400 @@ public interface ZipFileTests
                 });
             });
 
-            runner.testGroup("getZipContentsWriteStream()", () ->
+            runner.testGroup("iterateEntries(Function1<ZipCentralDirectoryEntry,Boolean>)", () ->
             {
+                runner.test("with null condition",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    test.assertThrows(() -> file.iterateEntries((Function1<ZipCentralDirectoryEntry,Boolean>)null),
+                        new PreConditionFailure("condition cannot be null."));
+                });
+
                 runner.test("with file that doesn't exist",
                     (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
                     (Test test, FakeDesktopProcess process) ->
                 {
-                    final Folder folder = process.getCurrentFolder();
-                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
-                    
-                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    final ZipEntryIterator iterator = file.iterateEntries((ZipCentralDirectoryEntry entry) -> true);
+                    IteratorTests.assertIterator(test, iterator, false, null);
+
+                    test.assertThrows(() -> iterator.next(),
+                        new FileNotFoundException(file));
+                });
+
+                runner.test("with condition that skips entries whose data can't be inflated",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final InMemoryByteStream byteStream = InMemoryByteStream.create();
+                    try (final ZipWriteStream writeStream = ZipWriteStream.create(byteStream))
                     {
-                        test.assertTrue(file.exists().await());
+                        writeStream
+                            .createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello world!").await();
+                            })
+                            .createEntry("hello/there", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello there!").await();
+                            })
+                            .createEntry("goodbye", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Goodbye!").await();
+                            });
+                    }
+                    final byte[] zipBytes = byteStream.getBytes();
 
-                        try (final ZipEntryWriteStream entryWriteStream = writeStream.createEntryWriteStream("hello/world"))
+                    // Overwrite the first entry's deflated data with an invalid block type.
+                    try (final ZipReader reader = ZipReader.create(InMemoryZipByteSource.create(zipBytes)))
+                    {
+                        final ZipCentralDirectoryEntry entry = reader.getEntry("hello/world").await();
+                        final long dataPosition = reader.getEntryDataPosition(entry);
+                        java.util.Arrays.fill(zipBytes, (int)dataPosition, (int)(dataPosition + entry.getCompressedByteCount()), (byte)0xFF);
+                    }
+
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+                    try (final ByteWriteStream fileWriteStream = file.getContentsByteWriteStream().await())
+                    {
+                        fileWriteStream.write(zipBytes, 0, zipBytes.length).await();
+                    }
+
+                    final List<String> checkedEntryNames = List.create();
+                    try (final ZipEntryIterator iterator = file.iterateEntries((ZipCentralDirectoryEntry entry) ->
+                    {
+                        checkedEntryNames.add(entry.getName());
+                        return !entry.getName().equals("hello/world");
+                    }))
+                    {
+                        test.assertTrue(iterator.next());
+                        test.assertEqual(Path.parse("hello/there"), iterator.getCurrent().getPath());
+                        test.assertEqual("Hello there!", iterator.getCurrent().readEntireString().await());
+
+                        test.assertTrue(iterator.next());
+                        test.assertEqual(Path.parse("goodbye"), iterator.getCurrent().getPath());
+                        test.assertEqual("Goodbye!", iterator.getCurrent().readEntireString().await());
+
+                        test.assertFalse(iterator.next());
+                        test.assertTrue(iterator.isDisposed());
+                    }
+                    test.assertEqual(List.create("hello/world", "hello/there", "goodbye"), checkedEntryNames);
+                });
+
+                runner.test("with condition that doesn't match any entries",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
                         {
                             entryWriteStream.write("Hello world!").await();
+                        });
+                    }
+
+                    try (final ZipEntryIterator iterator = file.iterateEntries(ZipCentralDirectoryEntry::isDirectory))
+                    {
+                        test.assertFalse(iterator.next());
+                        IteratorTests.assertIterator(test, iterator, true, null);
+                        test.assertTrue(iterator.isDisposed());
+                    }
+                });
+            });
+
+            runner.testGroup("iterateEntries(String)", () ->
+            {
+                runner.test("with null pattern",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    test.assertThrows(() -> file.iterateEntries((String)null),
+                        new PreConditionFailure("entryPathPattern cannot be null."));
+                });
+
+                runner.test("with empty pattern",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    test.assertThrows(() -> file.iterateEntries(""),
+                        new PreConditionFailure("entryPathPattern cannot be empty."));
+                });
+
+                final Action2<String,List<String>> iterateEntriesTest = (String entryPathPattern, List<String> expectedEntryPaths) ->
+                {
+                    runner.test("with \"" + entryPathPattern + "\"",
+                        (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                        (Test test, FakeDesktopProcess process) ->
+                    {
+                        final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+                        try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                        {
+                            for (final String entryPath : Iterable.create("META-INF/MANIFEST.MF", "META-INF/maven/pom.xml", "META-INF/a/b/c.xml", "pom.xml", "qub/Zip.class", "qub/Zip.java"))
+                            {
+                                writeStream.createEntry(entryPath, (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    entryWriteStream.write(entryPath).await();
+                                });
+                            }
                         }
 
-                        try (final ZipEntryWriteStream entryWriteStream = writeStream.createEntryWriteStream("hello/there"))
+                        final List<String> entryPaths = List.create();
+                        try (final ZipEntryIterator iterator = file.iterateEntries(entryPathPattern))
                         {
-                            entryWriteStream.write("Hello there!").await();
+                            for (final ZipEntryReadStream entry : iterator)
+                            {
+                                final String entryPath = entry.getPath().toString();
+                                test.assertEqual(entryPath, entry.readEntireString().await());
+                                entryPaths.add(entryPath);
+                            }
                         }
+                        test.assertEqual(expectedEntryPaths, entryPaths);
+                    });
+                };
 
-                        writeStream
-                            .createEntry("my/folder/", (ZipEntryWriteStream entryWriteStream) -> {})
-                            .createEntry(ZipEntryParameters.create()
-                                .setEntryPath("my/folder/stuff")
-                                .setComment("My special comment")
-                                .setLastModified(DateTime.create(1950, 1, 2)),
-                                (ZipEntryWriteStream entryWriteStream) ->
+                iterateEntriesTest.run("META-INF/**/*.xml", List.create("META-INF/maven/pom.xml", "META-INF/a/b/c.xml"));
+                iterateEntriesTest.run("META-INF/*", List.create("META-INF/MANIFEST.MF"));
+                iterateEntriesTest.run("**/*.xml", List.create("META-INF/maven/pom.xml", "META-INF/a/b/c.xml", "pom.xml"));
+                iterateEntriesTest.run("qub/Zip.?????", List.create("qub/Zip.class"));
+                iterateEntriesTest.run("pom.xml", List.create("pom.xml"));
+                iterateEntriesTest.run("**", List.create("META-INF/MANIFEST.MF", "META-INF/maven/pom.xml", "META-INF/a/b/c.xml", "pom.xml", "qub/Zip.class", "qub/Zip.java"));
+                iterateEntriesTest.run("*.class", List.create());
+            });
+
+            runner.testGroup("getReader()", () ->
+            {
+                final Action2<String,ZipFileReadMode> concurrentReadTest = (String testName, ZipFileReadMode readMode) ->
+                {
+                    runner.test(testName,
+                        (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                        (Test test, Folder folder) ->
+                    {
+                        final ZipFile file = ZipFile.get(folder.getFile("test.zip").await(), readMode);
+                        final int entryCount = 20;
+                        try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                        {
+                            for (int i = 0; i < entryCount; ++i)
+                            {
+                                final String entryText = "Entry " + i + " ";
+                                writeStream.createEntry("entries/" + i, (ZipEntryWriteStream entryWriteStream) ->
                                 {
-                                    entryWriteStream.writeLine("Look! My stuff!").await();
+                                    for (int j = 0; j < 1000; ++j)
+                                    {
+                                        entryWriteStream.write(entryText).await();
+                                    }
                                 });
+                            }
+                        }
+
+                        // Many threads share one reader and open their own entry streams from it.
+                        final int threadCount = 8;
+                        final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(threadCount);
+                        try (final ZipReader reader = file.getReader().await())
+                        {
+                            final java.util.List<java.util.concurrent.Future<Integer>> futures = new java.util.ArrayList<>();
+                            for (int i = 0; i < threadCount; ++i)
+                            {
+                                final int threadIndex = i;
+                                futures.add(executor.submit(() ->
+                                {
+                                    int matchingEntryCount = 0;
+                                    for (int j = 0; j < entryCount * 5; ++j)
+                                    {
+                                        final int entryIndex = (threadIndex + j) % entryCount;
+                                        try (final ZipEntryReadStream entryReadStream = reader.getEntryReadStream("entries/" + entryIndex).await())
+                                        {
+                                            final String entryText = entryReadStream.readEntireString().await();
+                                            if (entryText.length() == 1000 * ("Entry " + entryIndex + " ").length() &&
+                                                entryText.startsWith("Entry " + entryIndex + " "))
+                                            {
+                                                ++matchingEntryCount;
+                                            }
+                                        }
+                                    }
+                                    return matchingEntryCount;
+                                }));
+                            }
+
+                            for (final java.util.concurrent.Future<Integer> future : futures)
+                            {
+                                try
+                                {
+                                    test.assertEqual(entryCount * 5, future.get().intValue());
+                                }
+                                catch (Exception e)
+                                {
+                                    throw Exceptions.asRuntime(e);
+                                }
+                            }
+                        }
+                        finally
+                        {
+                            executor.shutdown();
+                        }
+                    });
+                };
+
+                concurrentReadTest.run("with concurrent positional reads", ZipFileReadMode.PositionalRead);
+                concurrentReadTest.run("with concurrent memory-mapped reads", ZipFileReadMode.MemoryMapped);
+
+                runner.test("with memory-mapped file that is deleted after its reader is disposed",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder temporaryFolder) ->
+                {
+                    final ZipFile file = ZipFile.get(temporaryFolder.getFile("test.zip").await(), ZipFileReadMode.MemoryMapped);
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("Hello world!").await();
+                        });
                     }
-                    test.assertTrue(file.exists().await());
 
-                    try (final ZipEntryIterator entries = file.iterateEntries())
+                    try (final ZipReader reader = file.getReader().await())
                     {
-                        test.assertTrue(entries.next());
-                        try (final ZipEntryReadStream entryReadStream1 = entries.getCurrent())
+                        try (final ZipEntryReadStream entryReadStream = reader.getEntryReadStream("hello/world").await())
                         {
-                            test.assertNotNull(entryReadStream1);
-                            test.assertFalse(entryReadStream1.isDisposed());
-                            test.assertEqual(Path.parse("hello/world"), entryReadStream1.getPath());
-                            test.assertFalse(entryReadStream1.isDirectory());
-                            test.assertNull(entryReadStream1.getComment());
-                            test.assertEqual(CharacterEncoding.UTF_8, entryReadStream1.getCharacterEncoding());
-                            test.assertEqual(DataSize.bytes(-1), entryReadStream1.getCompressedSize());
-                            test.assertEqual(DataSize.bytes(-1), entryReadStream1.getUncompressedSize());
-                            test.assertNotNull(entryReadStream1.getLastModified());
-                            test.assertEqual("Hello world!", entryReadStream1.readEntireString().await());
+                            test.assertEqual("Hello world!", entryReadStream.readEntireString().await());
                         }
+                    }
 
-                        test.assertTrue(entries.next());
-                        try (final ZipEntryReadStream entryReadStream2 = entries.getCurrent())
+                    // A file can't be deleted on some platforms while any part of it is still mapped.
+                    file.delete().await();
+                    test.assertFalse(file.exists().await());
+                });
+
+                runner.test("with memory-mapped entry read stream that is still open when its reader is disposed",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder temporaryFolder) ->
+                {
+                    final ZipFile file = ZipFile.get(temporaryFolder.getFile("test.zip").await(), ZipFileReadMode.MemoryMapped);
+                    final StringBuilder expectedText = new StringBuilder();
+                    for (int i = 0; i < 20000; ++i)
+                    {
+                        expectedText.append("Line ").append(i).append('\n');
+                    }
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("lines.txt", (ZipEntryWriteStream entryWriteStream) ->
                         {
-                            test.assertNotNull(entryReadStream2);
-                            test.assertFalse(entryReadStream2.isDisposed());
-                            test.assertEqual(Path.parse("hello/there"), entryReadStream2.getPath());
-                            test.assertFalse(entryReadStream2.isDirectory());
-                            test.assertNull(entryReadStream2.getComment());
-                            test.assertEqual(CharacterEncoding.UTF_8, entryReadStream2.getCharacterEncoding());
-                            test.assertEqual(DataSize.bytes(-1), entryReadStream2.getCompressedSize());
-                            test.assertEqual(DataSize.bytes(-1), entryReadStream2.getUncompressedSize());
-                            test.assertNotNull(entryReadStream2.getLastModified());
-                            test.assertEqual("Hello there!", entryReadStream2.readEntireString().await());
-                        }
+                            entryWriteStream.write(expectedText.toString()).await();
+                        });
+                    }
 
-                        test.assertTrue(entries.next());
-                        try (final ZipEntryReadStream entryReadStream3 = entries.getCurrent())
+                    final ZipReader reader = file.getReader().await();
+                    try (final ZipEntryReadStream entryReadStream = reader.getEntryReadStream("lines.txt").await())
+                    {
+                        test.assertEqual(Byte.valueOf((byte)'L'), entryReadStream.readByte().await());
+
+                        // The region that the entry stream is inflating from stays mapped until
+                        // the entry stream is done with it.
+                        reader.dispose().await();
+                        test.assertEqual(expectedText.substring(1), entryReadStream.readEntireString().await());
+                    }
+                });
+            });
+
+            runner.testGroup("getContentsFileSystem()", () ->
+            {
+                ZipFileTests.testInMemoryAndOnDisk(runner, "with file", (Test test, Folder folder) ->
+                {
+                    final ZipFile file = ZipFile.get(folder.getFile("assets.zip").await());
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        for (final String entryPath : Iterable.create("index.html", "css/site.css", "images/icons/logo.svg"))
                         {
-                            test.assertNotNull(entryReadStream3);
-                            test.assertFalse(entryReadStream3.isDisposed());
-                            test.assertEqual(Path.parse("my/folder/"), entryReadStream3.getPath());
-                            test.assertTrue(entryReadStream3.isDirectory());
-                            test.assertNull(entryReadStream3.getComment());
-                            test.assertEqual(CharacterEncoding.UTF_8, entryReadStream3.getCharacterEncoding());
-                            test.assertEqual(DataSize.bytes(-1), entryReadStream3.getCompressedSize());
-                            test.assertEqual(DataSize.bytes(-1), entryReadStream3.getUncompressedSize());
-                            test.assertNotNull(entryReadStream3.getLastModified());
-                            test.assertEqual("", entryReadStream3.readEntireString().await());
+                            writeStream.createEntry(entryPath, (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("contents of " + entryPath).await();
+                            });
                         }
+                    }
 
-                        test.assertTrue(entries.next());
-                        try (final ZipEntryReadStream entryReadStream4 = entries.getCurrent())
+                    final ZipReader reader;
+                    try (final ZipFileSystem fileSystem = file.getContentsFileSystem().await())
+                    {
+                        reader = fileSystem.getReader();
+
+                        test.assertEqual(
+                            Iterable.create("/css", "/images", "/index.html"),
+                            fileSystem.getFilesAndFolders(Path.parse("/")).await().map((FileSystemEntry entry) -> entry.getPath().toString()));
+                        test.assertEqual(
+                            Iterable.create("/images/icons/logo.svg"),
+                            fileSystem.getFilesAndFolders(Path.parse("/images/icons")).await().map((FileSystemEntry entry) -> entry.getPath().toString()));
+
+                        test.assertTrue(fileSystem.folderExists(Path.parse("/images")).await());
+                        test.assertFalse(fileSystem.fileExists(Path.parse("/images")).await());
+                        test.assertTrue(fileSystem.fileExists(Path.parse("/css/site.css")).await());
+                        test.assertFalse(fileSystem.folderExists(Path.parse("/css/site.css")).await());
+                        test.assertFalse(fileSystem.fileExists(Path.parse("/css/missing.css")).await());
+                        test.assertEqual(DataSize.bytes("contents of css/site.css".length()), fileSystem.getFileContentDataSize(Path.parse("/css/site.css")).await());
+
+                        try (final ByteReadStream readStream = fileSystem.getFileContentReadStream(Path.parse("/css/site.css")).await())
                         {
-                            test.assertNotNull(entryReadStream4);
-                            test.assertFalse(entryReadStream4.isDisposed());
-                            test.assertEqual(Path.parse("my/folder/stuff"), entryReadStream4.getPath());
-                            test.assertFalse(entryReadStream4.isDirectory());
-                            test.assertNull(entryReadStream4.getComment());
-                            test.assertEqual(CharacterEncoding.UTF_8, entryReadStream4.getCharacterEncoding());
-                            test.assertEqual(DataSize.bytes(-1), entryReadStream4.getCompressedSize());
-                            test.assertEqual(DataSize.bytes(-1), entryReadStream4.getUncompressedSize());
-                            test.assertEqual(DateTime.create(1950, 1, 2), entryReadStream4.getLastModified());
-                            test.assertEqual("Look! My stuff!\n", entryReadStream4.readEntireString().await());
+                            test.assertTrue(readStream instanceof ZipEntryReadStream);
+                            test.assertEqual("contents of css/site.css", ((ZipEntryReadStream)readStream).readEntireString().await());
                         }
 
-                        test.assertFalse(entries.next());
+                        test.assertThrows(() -> fileSystem.getFileContentReadStream(Path.parse("/css")).await(),
+                            new FileNotFoundException(Path.parse("/css")));
+                        test.assertThrows(() -> fileSystem.getFilesAndFolders(Path.parse("/index.html")).await(),
+                            new FolderNotFoundException(Path.parse("/index.html")));
+                        test.assertThrows(() -> fileSystem.createFile(Path.parse("/new.txt")).await(),
+                            new UnsupportedOperationException("Can't change /new.txt because a zip file system is read-only."));
+                        test.assertThrows(() -> fileSystem.deleteFile(Path.parse("/index.html")).await(),
+                            new UnsupportedOperationException("Can't change /index.html because a zip file system is read-only."));
                     }
+                    test.assertTrue(reader.isDisposed());
                 });
-            });
-        });
+
+                runner.test("with duplicate entry paths",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        for (final String contents : Iterable.create("first", "second", "third"))
+                        {
+                            writeStream.createEntry("folder/duplicate.txt", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write(contents).await();
+                            });
+                        }
+                    }
+
+                    // Every way of reading a duplicated path reads the last entry with the path.
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("folder/duplicate.txt").await())
+                    {
+                        test.assertEqual("third", entryReadStream.readEntireString().await());
+                    }
+
+                    try (final ZipFileSystem fileSystem = file.getContentsFileSystem().await())
+                    {
+                        test.assertEqual(
+                            Iterable.create("/folder/duplicate.txt"),
+                            fileSystem.getFilesAndFolders(Path.parse("/folder")).await().map((FileSystemEntry entry) -> entry.getPath().toString()));
+                        try (final ByteReadStream readStream = fileSystem.getFileContentReadStream(Path.parse("/folder/duplicate.txt")).await())
+                        {
+                            test.assertEqual("third", ((ZipEntryReadStream)readStream).readEntireString().await());
+                        }
+                    }
+
+                    final Folder outputFolder = folder.getFolder("output").await();
+                    file.extractTo(outputFolder).await();
+                    try (final ByteReadStream extractedReadStream = outputFolder.getFile("folder/duplicate.txt").await().getContentsReadStream().await())
+                    {
+                        test.assertEqual("third".getBytes(java.nio.charset.StandardCharsets.UTF_8), extractedReadStream.readAllBytes().await());
+                    }
+                });
+            });
+
+            runner.testGroup("getEntries()", () ->
+            {
+                runner.test("with file that doesn't exist",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+
+                    test.assertThrows(() -> file.getEntries().await(),
+                        new FileNotFoundException(file));
+                });
+
+                runner.test("with empty file",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    file.create().await();
+
+                    test.assertThrows(() -> file.getEntries().await(),
+                        new ZipFormatException("The source is too small to be a zip archive."));
+                });
+
+                runner.test("with non-empty non-zip file",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    file.setContentsAsString("I'm not a zip file!").await();
+
+                    test.assertThrows(() -> file.getEntries().await(),
+                        new ZipFormatException("Could not find the end of central directory record."));
+                });
+
+                runner.test("with zip file",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream
+                            .createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello world!").await();
+                            })
+                            .createEntry("my/folder/", (ZipEntryWriteStream entryWriteStream) -> {})
+                            .createEntry(ZipEntryParameters.create()
+                                .setEntryPath("my/folder/stuff")
+                                .setComment("My special comment")
+                                .setLastModified(DateTime.create(1950, 1, 2)),
+                                (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    entryWriteStream.write("Look! My stuff!").await();
+                                });
+                    }
+
+                    final Iterable<ZipCentralDirectoryEntry> entries = file.getEntries().await();
+                    test.assertNotNull(entries);
+                    test.assertEqual(3, entries.getCount());
+
+                    int index = 0;
+                    for (final ZipCentralDirectoryEntry entry : entries)
+                    {
+                        switch (index)
+                        {
+                            case 0:
+                                test.assertEqual("hello/world", entry.getName());
+                                test.assertFalse(entry.isDirectory());
+                                test.assertNull(entry.getComment());
+                                test.assertEqual(DataSize.bytes(12), entry.getUncompressedSize());
+                                break;
+
+                            case 1:
+                                test.assertEqual("my/folder/", entry.getName());
+                                test.assertTrue(entry.isDirectory());
+                                test.assertEqual(DataSize.zero, entry.getUncompressedSize());
+                                break;
+
+                            case 2:
+                                test.assertEqual("my/folder/stuff", entry.getName());
+                                test.assertFalse(entry.isDirectory());
+                                test.assertEqual("My special comment", entry.getComment());
+                                test.assertEqual(DateTime.create(1950, 1, 2), entry.getLastModified());
+                                test.assertEqual(DataSize.bytes(15), entry.getUncompressedSize());
+                                break;
+                        }
+                        ++index;
+                    }
+                });
+
+                runner.test("with entry data that can't be inflated",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final InMemoryByteStream byteStream = InMemoryByteStream.create();
+                    try (final ZipWriteStream writeStream = ZipWriteStream.create(byteStream))
+                    {
+                        writeStream
+                            .createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello world!").await();
+                            })
+                            .createEntry("hello/there", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello there!").await();
+                            });
+                    }
+                    final byte[] zipBytes = byteStream.getBytes();
+
+                    // Overwrite the first entry's deflated data with an invalid block type.
+                    try (final ZipReader reader = ZipReader.create(InMemoryZipByteSource.create(zipBytes)))
+                    {
+                        final ZipCentralDirectoryEntry entry = reader.getEntry("hello/world").await();
+                        final long dataPosition = reader.getEntryDataPosition(entry);
+                        java.util.Arrays.fill(zipBytes, (int)dataPosition, (int)(dataPosition + entry.getCompressedByteCount()), (byte)0xFF);
+                    }
+
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+                    try (final ByteWriteStream fileWriteStream = file.getContentsByteWriteStream().await())
+                    {
+                        fileWriteStream.write(zipBytes, 0, zipBytes.length).await();
+                    }
+
+                    final Iterable<ZipCentralDirectoryEntry> entries = file.getEntries().await();
+                    test.assertEqual(2, entries.getCount());
+
+                    final ZipCentralDirectoryEntry helloWorld = entries.first();
+                    test.assertEqual("hello/world", helloWorld.getName());
+                    test.assertEqual(ZipFormat.deflatedCompressionMethod, helloWorld.getCompressionMethod());
+                    test.assertEqual(12L, helloWorld.getUncompressedByteCount());
+                    test.assertEqual(0L, helloWorld.getLocalFileHeaderOffset());
+                    test.assertNotNull(helloWorld.getLastModified());
+
+                    boolean inflateFailed = false;
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("hello/world").await())
+                    {
+                        entryReadStream.readEntireString().await();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        inflateFailed = true;
+                    }
+                    test.assertTrue(inflateFailed);
+                });
+            });
+
+            runner.testGroup("getEntry(String)", () ->
+            {
+                runner.test("with null",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+
+                    test.assertThrows(() -> file.getEntry((String)null),
+                        new PreConditionFailure("entryPath cannot be null."));
+                });
+
+                runner.test("with file that doesn't exist",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+
+                    test.assertThrows(() -> file.getEntry("hello/world").await(),
+                        new FileNotFoundException(file));
+                });
+
+                runner.test("with entry that doesn't exist",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("Hello world!").await();
+                        });
+                    }
+
+                    test.assertThrows(() -> file.getEntry("hello/there").await(),
+                        new NotFoundException("Could not find a zip entry with the path \"hello/there\"."));
+                });
+
+                runner.test("with corrupted entry data on disk",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    final String entryText = "Hello world!";
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry(ZipEntryParameters.create().setEntryPath("hello/world").setCompressionMethod(ZipCompressionMethod.Stored), (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write(entryText).await();
+                        });
+                    }
+
+                    // Flip one bit of the entry's stored data.
+                    final java.nio.file.Path javaFilePath = java.nio.file.Paths.get(file.getPath().toString());
+                    final byte[] fileBytes;
+                    final int dataIndex;
+                    try
+                    {
+                        fileBytes = java.nio.file.Files.readAllBytes(javaFilePath);
+                        dataIndex = new String(fileBytes, java.nio.charset.StandardCharsets.ISO_8859_1).indexOf(entryText);
+                        test.assertTrue(dataIndex > 0);
+                        fileBytes[dataIndex] ^= 1;
+                        java.nio.file.Files.write(javaFilePath, fileBytes);
+                    }
+                    catch (java.io.IOException e)
+                    {
+                        throw Exceptions.asRuntime(e);
+                    }
+
+                    final java.util.zip.CRC32 expectedCrc32 = new java.util.zip.CRC32();
+                    expectedCrc32.update(entryText.getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+                    final java.util.zip.CRC32 actualCrc32 = new java.util.zip.CRC32();
+                    actualCrc32.update(fileBytes, dataIndex, entryText.length());
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("hello/world").await())
+                    {
+                        test.assertThrows(() -> entryReadStream.readEntireString().await(),
+                            new ZipFormatException("The zip entry hello/world has a CRC-32 of " + Long.toHexString(actualCrc32.getValue()) + ", but its central directory record lists " + Long.toHexString(expectedCrc32.getValue()) + "."));
+                    }
+                });
+
+                runner.test("with entry that exists",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream
+                            .createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello world!").await();
+                            })
+                            .createEntry("hello/there", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello there!").await();
+                            });
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("hello/there").await())
+                    {
+                        test.assertNotNull(entryReadStream);
+                        test.assertFalse(entryReadStream.isDisposed());
+                        test.assertEqual(Path.parse("hello/there"), entryReadStream.getPath());
+                        test.assertFalse(entryReadStream.isDirectory());
+                        test.assertNull(entryReadStream.getComment());
+                        test.assertEqual(DataSize.bytes(12), entryReadStream.getUncompressedSize());
+                        test.assertEqual("Hello there!", entryReadStream.readEntireString().await());
+                    }
+                });
+
+                runner.test("with mixed single byte and bulk reads",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("Hello world! How are you?").await();
+                        });
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("hello/world").await())
+                    {
+                        test.assertEqual(Byte.valueOf((byte)'H'), entryReadStream.readByte().await());
+                        test.assertEqual(Byte.valueOf((byte)'e'), entryReadStream.readByte().await());
+
+                        final byte[] bytes = new byte[4];
+                        test.assertEqual(4, entryReadStream.readBytesInto(bytes, 0, bytes.length));
+                        test.assertEqual(new byte[] { 'l', 'l', 'o', ' ' }, bytes);
+
+                        final java.nio.ByteBuffer byteBuffer = java.nio.ByteBuffer.allocate(7);
+                        test.assertEqual(7, entryReadStream.readBytesInto(byteBuffer));
+                        test.assertEqual(7, byteBuffer.position());
+                        test.assertEqual("world! ", new String(byteBuffer.array(), java.nio.charset.StandardCharsets.UTF_8));
+
+                        final InMemoryByteStream byteStream = InMemoryByteStream.create();
+                        test.assertEqual(12, (long)entryReadStream.transferTo(byteStream).await());
+                        test.assertEqual("How are you?".getBytes(java.nio.charset.StandardCharsets.UTF_8), byteStream.getBytes());
+
+                        test.assertEqual(-1, entryReadStream.readBytesInto(bytes, 0, bytes.length));
+                        byteBuffer.clear();
+                        test.assertEqual(-1, entryReadStream.readBytesInto(byteBuffer));
+                    }
+                });
+
+                runner.test("with text read as lines and chunks",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    final StringBuilder expectedText = new StringBuilder();
+                    for (int i = 0; i < 10000; ++i)
+                    {
+                        expectedText.append("line ").append(i).append(i % 2 == 0 ? "\n" : "\r\n");
+                    }
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("lines.txt", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write(expectedText.toString()).await();
+                        });
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("lines.txt").await())
+                    {
+                        test.assertEqual(expectedText.toString(), entryReadStream.readEntireString().await());
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("lines.txt").await())
+                    {
+                        final StringBuilder text = new StringBuilder();
+                        try (final ZipEntryTextIterator chunks = entryReadStream.iterateTextChunks())
+                        {
+                            while (chunks.next())
+                            {
+                                text.append(chunks.getCurrent());
+                            }
+                        }
+                        test.assertEqual(expectedText.toString(), text.toString());
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("lines.txt").await())
+                    {
+                        int lineCount = 0;
+                        try (final ZipEntryLineIterator lines = entryReadStream.iterateLines())
+                        {
+                            while (lines.next())
+                            {
+                                test.assertEqual("line " + lineCount, lines.getCurrent());
+                                ++lineCount;
+                            }
+                        }
+                        test.assertEqual(10000, lineCount);
+                    }
+                });
+            });
+
+            runner.testGroup("getNestedEntry(String)", () ->
+            {
+                runner.test("with null",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    test.assertThrows(() -> file.getNestedEntry(null),
+                        new PreConditionFailure("nestedEntryPath cannot be null."));
+                });
+
+                runner.test("with empty",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    test.assertThrows(() -> file.getNestedEntry(""),
+                        new PreConditionFailure("nestedEntryPath cannot be empty."));
+                });
+
+                ZipFileTests.testInMemoryAndOnDisk(runner, "with file", (Test test, Folder folder) ->
+                {
+                    final ZipFile innerFile = ZipFile.get(folder.getFile("inner.jar").await());
+                    try (final ZipWriteStream writeStream = innerFile.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("META-INF/MANIFEST.MF", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("Main-Class: qub.Main").await();
+                        });
+                    }
+
+                    final ZipFile outerFile = ZipFile.get(folder.getFile("outer.zip").await());
+                    try (final ZipWriteStream writeStream = outerFile.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry(ZipEntryParameters.create().setEntryPath("stored.jar").setCompressionMethod(ZipCompressionMethod.Stored), innerFile);
+                        writeStream.createEntry(ZipEntryParameters.create().setEntryPath("deflated.jar").setCompressionMethod(ZipCompressionMethod.Deflated), innerFile);
+                    }
+
+                    // Stored nested archives are read in place, so their entries can seek.
+                    try (final ZipEntryReadStream entryReadStream = outerFile.getNestedEntry("stored.jar!/META-INF/MANIFEST.MF").await())
+                    {
+                        test.assertEqual("META-INF/MANIFEST.MF", entryReadStream.getPath().toString());
+                        test.assertTrue(entryReadStream.canSeek());
+                        test.assertEqual("Main-Class: qub.Main", entryReadStream.readEntireString().await());
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = outerFile.getNestedEntry("deflated.jar!/META-INF/MANIFEST.MF").await())
+                    {
+                        test.assertEqual("META-INF/MANIFEST.MF", entryReadStream.getPath().toString());
+                        test.assertFalse(entryReadStream.canSeek());
+                        test.assertEqual("Main-Class: qub.Main", entryReadStream.readEntireString().await());
+                    }
+
+                    test.assertThrows(() -> outerFile.getNestedEntry("stored.jar!/missing.txt").await(),
+                        new NotFoundException("Could not find a zip entry with the path \"missing.txt\"."));
+                    test.assertThrows(() -> outerFile.getNestedEntry("deflated.jar!/missing.txt").await(),
+                        new NotFoundException("Could not find a zip entry with the path \"missing.txt\"."));
+                });
+            });
+
+            runner.testGroup("extractTo(Folder,int)", () ->
+            {
+                ZipFileTests.testInMemoryAndOnDisk(runner, "with file", (Test test, Folder folder) ->
+                {
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    final int entryCount = 50;
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("empty/", (ZipEntryWriteStream entryWriteStream) -> {});
+                        for (int i = 0; i < entryCount; ++i)
+                        {
+                            final int entryNumber = i;
+                            writeStream.createEntry(ZipEntryParameters.create()
+                                .setEntryPath("folder" + (i % 5) + "/entry" + i + ".txt")
+                                .setLastModified(DateTime.create(2020, 1, 1 + (i % 28))),
+                                (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    entryWriteStream.write("Entry " + entryNumber).await();
+                                });
+                        }
+                    }
+
+                    final Folder outputFolder = folder.getFolder("output").await();
+                    file.extractTo(outputFolder, 4).await();
+
+                    test.assertTrue(outputFolder.getFolder("empty").await().exists().await());
+                    for (final ZipCentralDirectoryEntry entry : file.getEntries().await())
+                    {
+                        if (!entry.isDirectory())
+                        {
+                            final File extractedFile = outputFolder.getFile(entry.getName()).await();
+                            try (final ByteReadStream extractedReadStream = extractedFile.getContentsReadStream().await();
+                                 final ZipEntryReadStream entryReadStream = file.getEntry(entry.getName()).await())
+                            {
+                                test.assertEqual(entryReadStream.readAllBytes().await(), extractedReadStream.readAllBytes().await());
+                            }
+                            if (folder.getFileSystem() instanceof JavaFileSystem)
+                            {
+                                test.assertEqual(entry.getLastModified(), extractedFile.getLastModified().await());
+                            }
+                        }
+                    }
+                });
+
+                runner.test("with duplicate entry paths",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    final int duplicateCount = 20;
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        for (int i = 0; i < duplicateCount; ++i)
+                        {
+                            final int entryNumber = i;
+                            writeStream.createEntry("duplicate.txt", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                final byte[] bytes = new byte[10000 + entryNumber];
+                                java.util.Arrays.fill(bytes, (byte)entryNumber);
+                                entryWriteStream.write(java.nio.ByteBuffer.wrap(bytes)).await();
+                            });
+                        }
+                    }
+
+                    final Folder outputFolder = folder.getFolder("output").await();
+                    file.extractTo(outputFolder, 4).await();
+
+                    final byte[] expectedBytes = new byte[10000 + duplicateCount - 1];
+                    java.util.Arrays.fill(expectedBytes, (byte)(duplicateCount - 1));
+                    try (final ByteReadStream extractedReadStream = outputFolder.getFile("duplicate.txt").await().getContentsReadStream().await())
+                    {
+                        test.assertEqual(expectedBytes, extractedReadStream.readAllBytes().await());
+                    }
+                });
+
+                runner.test("with entry path outside of the folder",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("safe.txt", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("safe").await();
+                        });
+                        writeStream.createEntry("../escaped.txt", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("escaped").await();
+                        });
+                    }
+
+                    final Folder outputFolder = folder.getFolder("output").await();
+                    test.assertThrows(() -> file.extractTo(outputFolder, 2).await(),
+                        new ZipFormatException("The entry path \"../escaped.txt\" would be extracted outside of the destination folder."));
+                    test.assertFalse(outputFolder.getFile("safe.txt").await().exists().await());
+                    test.assertFalse(folder.getFile("escaped.txt").await().exists().await());
+                });
+
+                runner.test("with entry path that contains a colon",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final File zipFile = folder.getFile("test.zip").await();
+                    try (final java.util.zip.ZipOutputStream zipOutputStream = new java.util.zip.ZipOutputStream(java.nio.file.Files.newOutputStream(java.nio.file.Paths.get(zipFile.getPath().toString()))))
+                    {
+                        zipOutputStream.putNextEntry(new java.util.zip.ZipEntry("logs/12:00.txt"));
+                        zipOutputStream.write("noon".getBytes(java.nio.charset.StandardCharsets.UTF_8));
+                        zipOutputStream.closeEntry();
+                    }
+                    catch (java.io.IOException e)
+                    {
+                        throw Exceptions.asRuntime(e);
+                    }
+
+                    // A colon is an ordinary file name character everywhere except Windows, where
+                    // it names a drive or an alternate data stream.
+                    final Folder outputFolder = folder.getFolder("output").await();
+                    final ZipFile file = ZipFile.get(zipFile);
+                    if (java.io.File.separatorChar == '/')
+                    {
+                        file.extractTo(outputFolder, 2).await();
+                        final java.nio.file.Path extractedFilePath = java.nio.file.Paths.get(outputFolder.getPath().toString(), "logs", "12:00.txt");
+                        try
+                        {
+                            test.assertEqual("noon", new String(java.nio.file.Files.readAllBytes(extractedFilePath), java.nio.charset.StandardCharsets.UTF_8));
+                        }
+                        catch (java.io.IOException e)
+                        {
+                            throw Exceptions.asRuntime(e);
+                        }
+                    }
+                    else
+                    {
+                        test.assertThrows(() -> file.extractTo(outputFolder, 2).await(),
+                            new ZipFormatException("The entry path \"logs/12:00.txt\" would be extracted outside of the destination folder."));
+                    }
+                });
+
+                runner.test("with file entry that is also a folder",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("first.txt", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("first").await();
+                        });
+                        writeStream.createEntry("a", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("file").await();
+                        });
+                        writeStream.createEntry("a/b/c.txt", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("nested").await();
+                        });
+                    }
+
+                    final Folder outputFolder = folder.getFolder("output").await();
+                    test.assertThrows(() -> file.extractTo(outputFolder, 2).await(),
+                        new ZipFormatException("The file entry \"a\" can't be extracted because the entry \"a/b/c.txt\" needs it to be a folder."));
+                    test.assertFalse(outputFolder.getFile("first.txt").await().exists().await());
+                });
+            });
+
+            runner.testGroup("createFrom(Folder,ZipCreateParameters)", () ->
+            {
+                ZipFileTests.testInMemoryAndOnDisk(runner, "with folder", (Test test, Folder folder) ->
+                {
+                    final Folder sourceFolder = folder.getFolder("source").await();
+                    final java.util.List<String> expectedEntryPaths = new java.util.ArrayList<>();
+                    for (int i = 0; i < 30; ++i)
+                    {
+                        final String filePath = "folder" + (i % 3) + "/file" + (char)('a' + i % 26) + i + ".txt";
+                        final StringBuilder fileContents = new StringBuilder();
+                        for (int j = 0; j < i * 100; ++j)
+                        {
+                            fileContents.append(filePath);
+                        }
+                        sourceFolder.getFile(filePath).await().setContentsAsString(fileContents.toString()).await();
+                        expectedEntryPaths.add(filePath);
+                    }
+                    java.util.Collections.sort(expectedEntryPaths);
+
+                    // The zip file is inside of the folder that is packed, so it must skip itself.
+                    final ZipFile file = ZipFile.get(sourceFolder.getFile("test.zip").await());
+                    file.createFrom(sourceFolder, ZipCreateParameters.create()
+                        .setThreadCount(4)
+                        .setMaximumPendingFileCount(3)
+                        .setMaximumBufferedFileByteCount(10000)).await();
+
+                    final java.util.List<String> entryPaths = new java.util.ArrayList<>();
+                    for (final ZipCentralDirectoryEntry entry : file.getEntries().await())
+                    {
+                        entryPaths.add(entry.getName());
+
+                        final File sourceFile = sourceFolder.getFile(entry.getName()).await();
+                        try (final ByteReadStream sourceReadStream = sourceFile.getContentsReadStream().await();
+                             final ZipEntryReadStream entryReadStream = file.getEntry(entry.getName()).await())
+                        {
+                            test.assertEqual(sourceReadStream.readAllBytes().await(), entryReadStream.readAllBytes().await());
+                        }
+
+                        final long fileLastModifiedSeconds = (long)sourceFile.getLastModified().await().getDurationSinceEpoch().toMilliseconds().getValue() / 1000;
+                        test.assertEqual(fileLastModifiedSeconds, entry.getLastModifiedMilliseconds() / 1000);
+                    }
+                    test.assertEqual(expectedEntryPaths, entryPaths);
+                });
+
+                final Action2<String,Integer> compressedEntryCacheTest = (String testName, Integer threadCount) ->
+                {
+                    runner.test(testName,
+                        (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                        (Test test, Folder folder) ->
+                    {
+                        final Folder sourceFolder = folder.getFolder("source").await();
+                        for (int i = 0; i < 10; ++i)
+                        {
+                            final StringBuilder fileContents = new StringBuilder();
+                            for (int j = 0; j < 200; ++j)
+                            {
+                                fileContents.append("file").append(i).append(" line ").append(j).append('\n');
+                            }
+                            sourceFolder.getFile("file" + i + ".txt").await().setContentsAsString(fileContents.toString()).await();
+                        }
+
+                        final ZipCompressedEntryCache cache = ZipCompressedEntryCache.create(folder.getFolder("cache").await()).await();
+                        final ZipCreateParameters parameters = ZipCreateParameters.create()
+                            .setThreadCount(threadCount)
+                            .setCompressedEntryCache(cache);
+                        test.assertSame(cache, parameters.getCompressedEntryCache());
+
+                        final ZipFile file1 = ZipFile.get(folder.getFile("1.zip").await());
+                        file1.createFrom(sourceFolder, parameters).await();
+                        test.assertEqual(0, cache.getHitCount());
+                        test.assertEqual(10, cache.getMissCount());
+                        test.assertEqual(10, cache.getEntryCount());
+
+                        sourceFolder.getFile("file3.txt").await().setContentsAsString("changed").await();
+                        final ZipFile file2 = ZipFile.get(folder.getFile("2.zip").await());
+                        file2.createFrom(sourceFolder, parameters).await();
+                        test.assertEqual(9, cache.getHitCount());
+                        test.assertEqual(11, cache.getMissCount());
+
+                        for (final ZipCentralDirectoryEntry entry : file2.getEntries().await())
+                        {
+                            try (final ByteReadStream sourceReadStream = sourceFolder.getFile(entry.getName()).await().getContentsReadStream().await();
+                                 final ZipEntryReadStream entryReadStream = file2.getEntry(entry.getName()).await())
+                            {
+                                test.assertEqual(sourceReadStream.readAllBytes().await(), entryReadStream.readAllBytes().await());
+                            }
+                        }
+                    });
+                };
+
+                compressedEntryCacheTest.run("with compressed entry cache on one thread", 1);
+                compressedEntryCacheTest.run("with compressed entry cache on many threads", 4);
+
+                runner.test("with compressed entry cache that evicts its least recently used entry",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    // Each stored entry's cached file is a 36 byte header followed by its 100 bytes,
+                    // so the cache can hold two of them.
+                    final ZipCompressedEntryCache cache = ZipCompressedEntryCache.create(folder.getFolder("cache").await(), 300).await();
+                    final ZipEntryParameters parameters = ZipEntryParameters.create().setCompressionMethod(ZipCompressionMethod.Stored);
+                    final byte[] a = new byte[100];
+                    final byte[] b = new byte[100];
+                    final byte[] c = new byte[100];
+                    java.util.Arrays.fill(a, (byte)'a');
+                    java.util.Arrays.fill(b, (byte)'b');
+                    java.util.Arrays.fill(c, (byte)'c');
+
+                    cache.getOrCompress(parameters, a, 0, a.length, ZipCodecPool.getDefault());
+                    cache.getOrCompress(parameters, b, 0, b.length, ZipCodecPool.getDefault());
+                    cache.getOrCompress(parameters, a, 0, a.length, ZipCodecPool.getDefault());
+                    test.assertEqual(Long.valueOf(1), Long.valueOf(cache.getHitCount()));
+
+                    // Using a made it more recently used than b, so adding c evicts b.
+                    cache.getOrCompress(parameters, c, 0, c.length, ZipCodecPool.getDefault());
+                    test.assertEqual(Long.valueOf(1), Long.valueOf(cache.getEvictionCount()));
+                    test.assertEqual(2, cache.getEntryCount());
+
+                    cache.getOrCompress(parameters, a, 0, a.length, ZipCodecPool.getDefault());
+                    test.assertEqual(Long.valueOf(2), Long.valueOf(cache.getHitCount()));
+                    test.assertEqual(Long.valueOf(3), Long.valueOf(cache.getMissCount()));
+
+                    cache.getOrCompress(parameters, b, 0, b.length, ZipCodecPool.getDefault());
+                    test.assertEqual(Long.valueOf(2), Long.valueOf(cache.getHitCount()));
+                    test.assertEqual(Long.valueOf(4), Long.valueOf(cache.getMissCount()));
+                });
+
+                runner.test("with compressed entry cache file that is damaged on disk",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final Folder cacheFolder = folder.getFolder("cache").await();
+                    final ZipCompressedEntryCache cache = ZipCompressedEntryCache.create(cacheFolder).await();
+                    final ZipEntryParameters parameters = ZipEntryParameters.create().setCompressionMethod(ZipCompressionMethod.Stored);
+                    final byte[] bytes = new byte[100];
+                    java.util.Arrays.fill(bytes, (byte)'a');
+
+                    cache.getOrCompress(parameters, bytes, 0, bytes.length, ZipCodecPool.getDefault());
+                    test.assertEqual(1, cache.getEntryCount());
+
+                    // Change the last of the cached file's compressed bytes without changing its size.
+                    try (final java.util.stream.Stream<java.nio.file.Path> cachedFilePaths = java.nio.file.Files.list(java.nio.file.Paths.get(cacheFolder.getPath().toString())))
+                    {
+                        final java.nio.file.Path cachedFilePath = cachedFilePaths
+                            .filter((java.nio.file.Path path) -> path.toString().endsWith(".entry"))
+                            .findFirst()
+                            .get();
+                        final byte[] cachedFileBytes = java.nio.file.Files.readAllBytes(cachedFilePath);
+                        cachedFileBytes[cachedFileBytes.length - 1] = (byte)'b';
+                        java.nio.file.Files.write(cachedFilePath, cachedFileBytes);
+                    }
+                    catch (java.io.IOException e)
+                    {
+                        throw Exceptions.asRuntime(e);
+                    }
+
+                    final ZipCompressedData compressedData = cache.getOrCompress(parameters, bytes, 0, bytes.length, ZipCodecPool.getDefault());
+                    test.assertEqual(Long.valueOf(0), Long.valueOf(cache.getHitCount()));
+                    test.assertEqual(Long.valueOf(2), Long.valueOf(cache.getMissCount()));
+                    test.assertEqual(1, cache.getEntryCount());
+
+                    final java.io.ByteArrayOutputStream compressedBytes = new java.io.ByteArrayOutputStream();
+                    try
+                    {
+                        compressedData.writeBytesTo(compressedBytes);
+                    }
+                    catch (java.io.IOException e)
+                    {
+                        throw Exceptions.asRuntime(e);
+                    }
+                    test.assertEqual(bytes, compressedBytes.toByteArray());
+
+                    // The damaged file was replaced, so the bytes are a hit again.
+                    cache.getOrCompress(parameters, bytes, 0, bytes.length, ZipCodecPool.getDefault());
+                    test.assertEqual(Long.valueOf(1), Long.valueOf(cache.getHitCount()));
+                });
+
+                runner.test("with compressed entry cache and a read stream that is larger than what is held in memory",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final ZipCompressedEntryCache cache = ZipCompressedEntryCache.create(folder.getFolder("cache").await()).await();
+                    final byte[] bytes = new byte[3 * 1024 * 1024];
+                    for (int i = 0; i < bytes.length; ++i)
+                    {
+                        bytes[i] = (byte)(i % 251);
+                    }
+
+                    for (final String fileName : Iterable.create("1.zip", "2.zip"))
+                    {
+                        final ZipFile file = ZipFile.get(folder.getFile(fileName).await());
+                        try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                        {
+                            writeStream.setCompressedEntryCache(cache);
+                            writeStream.createEntry(ZipEntryParameters.create().setEntryPath("a.bin"), InMemoryByteStream.create(bytes).endOfStream());
+                        }
+
+                        try (final ZipEntryReadStream entryReadStream = file.getEntry("a.bin").await())
+                        {
+                            test.assertEqual(bytes, entryReadStream.readAllBytes().await());
+                        }
+                    }
+                    test.assertEqual(Long.valueOf(1), Long.valueOf(cache.getHitCount()));
+                    test.assertEqual(Long.valueOf(1), Long.valueOf(cache.getMissCount()));
+                });
+            });
+
+            runner.testGroup("getZipContentsWriteStream()", () ->
+            {
+                runner.test("with file that doesn't exist",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        test.assertTrue(file.exists().await());
+
+                        try (final ZipEntryWriteStream entryWriteStream = writeStream.createEntryWriteStream("hello/world"))
+                        {
+                            entryWriteStream.write("Hello world!").await();
+                        }
+
+                        try (final ZipEntryWriteStream entryWriteStream = writeStream.createEntryWriteStream("hello/there"))
+                        {
+                            entryWriteStream.write("Hello there!").await();
+                        }
+
+                        writeStream
+                            .createEntry("my/folder/", (ZipEntryWriteStream entryWriteStream) -> {})
+                            .createEntry(ZipEntryParameters.create()
+                                .setEntryPath("my/folder/stuff")
+                                .setComment("My special comment")
+                                .setLastModified(DateTime.create(1950, 1, 2)),
+                                (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    entryWriteStream.writeLine("Look! My stuff!").await();
+                                });
+                    }
+                    test.assertTrue(file.exists().await());
+
+                    try (final ZipEntryIterator entries = file.iterateEntries())
+                    {
+                        test.assertTrue(entries.next());
+                        try (final ZipEntryReadStream entryReadStream1 = entries.getCurrent())
+                        {
+                            test.assertNotNull(entryReadStream1);
+                            test.assertFalse(entryReadStream1.isDisposed());
+                            test.assertEqual(Path.parse("hello/world"), entryReadStream1.getPath());
+                            test.assertFalse(entryReadStream1.isDirectory());
+                            test.assertNull(entryReadStream1.getComment());
+                            test.assertEqual(CharacterEncoding.UTF_8, entryReadStream1.getCharacterEncoding());
+                            test.assertEqual(DataSize.bytes(-1), entryReadStream1.getCompressedSize());
+                            test.assertEqual(DataSize.bytes(-1), entryReadStream1.getUncompressedSize());
+                            test.assertNotNull(entryReadStream1.getLastModified());
+                            test.assertEqual("Hello world!", entryReadStream1.readEntireString().await());
+                        }
+
+                        test.assertTrue(entries.next());
+                        try (final ZipEntryReadStream entryReadStream2 = entries.getCurrent())
+                        {
+                            test.assertNotNull(entryReadStream2);
+                            test.assertFalse(entryReadStream2.isDisposed());
+                            test.assertEqual(Path.parse("hello/there"), entryReadStream2.getPath());
+                            test.assertFalse(entryReadStream2.isDirectory());
+                            test.assertNull(entryReadStream2.getComment());
+                            test.assertEqual(CharacterEncoding.UTF_8, entryReadStream2.getCharacterEncoding());
+                            test.assertEqual(DataSize.bytes(-1), entryReadStream2.getCompressedSize());
+                            test.assertEqual(DataSize.bytes(-1), entryReadStream2.getUncompressedSize());
+                            test.assertNotNull(entryReadStream2.getLastModified());
+                            test.assertEqual("Hello there!", entryReadStream2.readEntireString().await());
+                        }
+
+                        test.assertTrue(entries.next());
+                        try (final ZipEntryReadStream entryReadStream3 = entries.getCurrent())
+                        {
+                            test.assertNotNull(entryReadStream3);
+                            test.assertFalse(entryReadStream3.isDisposed());
+                            test.assertEqual(Path.parse("my/folder/"), entryReadStream3.getPath());
+                            test.assertTrue(entryReadStream3.isDirectory());
+                            test.assertNull(entryReadStream3.getComment());
+                            test.assertEqual(CharacterEncoding.UTF_8, entryReadStream3.getCharacterEncoding());
+                            test.assertEqual(DataSize.bytes(-1), entryReadStream3.getCompressedSize());
+                            test.assertEqual(DataSize.bytes(-1), entryReadStream3.getUncompressedSize());
+                            test.assertNotNull(entryReadStream3.getLastModified());
+                            test.assertEqual("", entryReadStream3.readEntireString().await());
+                        }
+
+                        test.assertTrue(entries.next());
+                        try (final ZipEntryReadStream entryReadStream4 = entries.getCurrent())
+                        {
+                            test.assertNotNull(entryReadStream4);
+                            test.assertFalse(entryReadStream4.isDisposed());
+                            test.assertEqual(Path.parse("my/folder/stuff"), entryReadStream4.getPath());
+                            test.assertFalse(entryReadStream4.isDirectory());
+                            test.assertNull(entryReadStream4.getComment());
+                            test.assertEqual(CharacterEncoding.UTF_8, entryReadStream4.getCharacterEncoding());
+                            test.assertEqual(DataSize.bytes(-1), entryReadStream4.getCompressedSize());
+                            test.assertEqual(DataSize.bytes(-1), entryReadStream4.getUncompressedSize());
+                            test.assertEqual(DateTime.create(1950, 1, 2), entryReadStream4.getLastModified());
+                            test.assertEqual("Look! My stuff!\n", entryReadStream4.readEntireString().await());
+                        }
+
+                        test.assertFalse(entries.next());
+                    }
+                });
+
+                runner.test("with parallel compression",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+
+                    final java.util.Random random = new java.util.Random(5);
+                    final StringBuilder expectedText = new StringBuilder();
+                    while (expectedText.length() < 300 * 1024)
+                    {
+                        expectedText.append("Line " + random.nextInt(1000) + ": " + Integer.toHexString(random.nextInt()) + "\n");
+                    }
+
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        test.assertFalse(writeStream.isParallelCompression());
+
+                        final ZipWriteStream setParallelCompressionResult = writeStream
+                            .setParallelCompressionBlockByteCount(32 * 1024)
+                            .setParallelCompression(4);
+                        test.assertSame(writeStream, setParallelCompressionResult);
+                        test.assertTrue(writeStream.isParallelCompression());
+
+                        writeStream
+                            .createEntry("empty", (ZipEntryWriteStream entryWriteStream) -> {})
+                            .createEntry("large", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write(expectedText.toString()).await();
+                            })
+                            .createEntry("small", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello there!").await();
+                            });
+                    }
+
+                    final Iterable<ZipCentralDirectoryEntry> entries = file.getEntries().await();
+                    test.assertEqual(3, entries.getCount());
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("empty").await())
+                    {
+                        test.assertEqual(DataSize.bytes(0), entryReadStream.getUncompressedSize());
+                        test.assertEqual("", entryReadStream.readEntireString().await());
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("large").await())
+                    {
+                        test.assertEqual(DataSize.bytes(expectedText.length()), entryReadStream.getUncompressedSize());
+                        test.assertEqual(expectedText.toString(), entryReadStream.readEntireString().await());
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("small").await())
+                    {
+                        test.assertEqual("Hello there!", entryReadStream.readEntireString().await());
+                    }
+                });
+
+                runner.test("with copied entries",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile sourceFile = ZipFile.get(folder.getFile("source.zip").await());
+                    try (final ZipWriteStream writeStream = sourceFile.getContentsZipWriteStream().await())
+                    {
+                        writeStream
+                            .createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello world!").await();
+                            })
+                            .createEntry("hello/there", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello there!").await();
+                            });
+                    }
+
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    try (final ZipReader sourceReader = sourceFile.getReader().await();
+                         final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        final ZipCentralDirectoryEntry helloWorld = sourceReader.getEntry("hello/world").await();
+                        test.assertSame(writeStream, writeStream.copyEntry(sourceReader, helloWorld));
+
+                        try (final ZipEntryReadStream helloThere = sourceReader.getEntryReadStream("hello/there").await())
+                        {
+                            test.assertTrue(helloThere.canCopyCompressedData());
+                            test.assertSame(writeStream, writeStream.copyEntry(helloThere));
+                        }
+
+                        test.assertSame(writeStream, writeStream.copyEntry(sourceReader, helloWorld, ZipEntryParameters.create()
+                            .setEntryPath("renamed/world")
+                            .setLastModified(DateTime.create(1950, 1, 2))));
+                    }
+
+                    final Iterable<ZipCentralDirectoryEntry> entries = file.getEntries().await();
+                    test.assertEqual(3, entries.getCount());
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("hello/world").await())
+                    {
+                        test.assertEqual("Hello world!", entryReadStream.readEntireString().await());
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("hello/there").await())
+                    {
+                        test.assertEqual("Hello there!", entryReadStream.readEntireString().await());
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("renamed/world").await())
+                    {
+                        test.assertEqual(DateTime.create(1950, 1, 2), entryReadStream.getLastModified());
+                        test.assertEqual("Hello world!", entryReadStream.readEntireString().await());
+                    }
+
+                    try (final ZipEntryIterator entryIterator = ZipEntryIterator.create(file))
+                    {
+                        test.assertTrue(entryIterator.next());
+                        try (final ZipEntryReadStream entryReadStream = entryIterator.getCurrent())
+                        {
+                            test.assertFalse(entryReadStream.canCopyCompressedData());
+                            test.assertEqual("Hello world!", entryReadStream.readEntireString().await());
+                        }
+                    }
+                });
+
+                runner.test("with copied encrypted entry",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile sourceFile = ZipFile.get(folder.getFile("source.zip").await());
+                    try (final ZipWriteStream writeStream = sourceFile.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("Hello world!").await();
+                        });
+                    }
+
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    try (final ZipReader sourceReader = sourceFile.getReader().await();
+                         final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        final ZipCentralDirectoryEntry helloWorld = sourceReader.getEntry("hello/world").await();
+                        final ZipCentralDirectoryEntry encrypted = ZipCentralDirectoryEntry.create(
+                            helloWorld.getName(),
+                            helloWorld.getComment(),
+                            helloWorld.getFlags() | ZipFormat.encryptedFlag,
+                            helloWorld.getCompressionMethod(),
+                            helloWorld.getLastModifiedMilliseconds(),
+                            helloWorld.getCrc32(),
+                            helloWorld.getCompressedByteCount(),
+                            helloWorld.getUncompressedByteCount(),
+                            helloWorld.getLocalFileHeaderOffset());
+                        test.assertThrows(() -> writeStream.copyEntry(sourceReader, encrypted),
+                            new ZipFormatException("The zip entry hello/world can't be copied because it is encrypted."));
+                    }
+
+                    test.assertEqual(0, file.getEntries().await().getCount());
+                });
+
+                for (final boolean parallelCompression : new boolean[] { false, true })
+                {
+                    runner.test("with compression parameters and parallelCompression " + parallelCompression,
+                        (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                        (Test test, FakeDesktopProcess process) ->
+                    {
+                        final Folder folder = process.getCurrentFolder();
+                        final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+
+                        try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                        {
+                            if (parallelCompression)
+                            {
+                                writeStream.setParallelCompression(2);
+                            }
+
+                            writeStream
+                                .createEntry(ZipEntryParameters.create()
+                                    .setEntryPath("stored")
+                                    .setCompressionMethod(ZipCompressionMethod.Stored),
+                                    (ZipEntryWriteStream entryWriteStream) ->
+                                    {
+                                        entryWriteStream.write("Hello stored hello stored hello stored!").await();
+                                    })
+                                .createEntry(ZipEntryParameters.create()
+                                    .setEntryPath("fast")
+                                    .setCompressionLevel(1),
+                                    (ZipEntryWriteStream entryWriteStream) ->
+                                    {
+                                        entryWriteStream.write("Hello fast hello fast hello fast!").await();
+                                    })
+                                .createEntry(ZipEntryParameters.create()
+                                    .setEntryPath("huffman")
+                                    .setCompressionMethod(ZipCompressionMethod.Deflated)
+                                    .setCompressionLevel(9)
+                                    .setCompressionStrategy(ZipCompressionStrategy.HuffmanOnly),
+                                    (ZipEntryWriteStream entryWriteStream) ->
+                                    {
+                                        entryWriteStream.write("Hello huffman hello huffman hello huffman!").await();
+                                    });
+                        }
+
+                        final ZipCentralDirectoryEntry stored = file.getEntries().await().first();
+                        test.assertEqual("stored", stored.getName());
+                        test.assertEqual(ZipFormat.storedCompressionMethod, stored.getCompressionMethod());
+                        test.assertEqual(39L, stored.getCompressedByteCount());
+                        test.assertEqual(39L, stored.getUncompressedByteCount());
+
+                        try (final ZipEntryIterator entries = file.iterateEntries())
+                        {
+                            test.assertTrue(entries.next());
+                            try (final ZipEntryReadStream entryReadStream = entries.getCurrent())
+                            {
+                                test.assertEqual(Path.parse("stored"), entryReadStream.getPath());
+                                test.assertEqual(DataSize.bytes(39), entryReadStream.getUncompressedSize());
+                                test.assertEqual("Hello stored hello stored hello stored!", entryReadStream.readEntireString().await());
+                            }
+
+                            test.assertTrue(entries.next());
+                            try (final ZipEntryReadStream entryReadStream = entries.getCurrent())
+                            {
+                                test.assertEqual(Path.parse("fast"), entryReadStream.getPath());
+                                test.assertEqual("Hello fast hello fast hello fast!", entryReadStream.readEntireString().await());
+                            }
+
+                            test.assertTrue(entries.next());
+                            try (final ZipEntryReadStream entryReadStream = entries.getCurrent())
+                            {
+                                test.assertEqual(Path.parse("huffman"), entryReadStream.getPath());
+                                test.assertEqual("Hello huffman hello huffman hello huffman!", entryReadStream.readEntireString().await());
+                            }
+
+                            test.assertFalse(entries.next());
+                        }
+                    });
+                }
+
+                for (final ZipFileWriteMode writeMode : ZipFileWriteMode.values())
+                {
+                    runner.test("with stored entry that is larger than the buffer in " + writeMode + " file on disk",
+                        (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                        (Test test, Folder folder) ->
+                    {
+                        final ZipFile file = ZipFile.get(folder.getFile("test.zip").await())
+                            .setWriteMode(writeMode);
+                        final byte[] chunk = new byte[1024 * 1024];
+                        new java.util.Random(1).nextBytes(chunk);
+                        final int chunkCount = ZipEntryStoredOutputStream.maximumBufferedByteCount / chunk.length + 2;
+
+                        final java.util.zip.CRC32 expectedCrc32 = new java.util.zip.CRC32();
+                        try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                        {
+                            writeStream.createEntry(ZipEntryParameters.create().setEntryPath("large").setCompressionMethod(ZipCompressionMethod.Stored), (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                for (int i = 0; i < chunkCount; ++i)
+                                {
+                                    entryWriteStream.write(java.nio.ByteBuffer.wrap(chunk)).await();
+                                    expectedCrc32.update(chunk);
+                                }
+                            });
+                        }
+
+                        final ZipCentralDirectoryEntry entry = file.getEntries().await().first();
+                        test.assertEqual(ZipFormat.storedCompressionMethod, entry.getCompressionMethod());
+                        test.assertEqual(Long.valueOf((long)chunkCount * chunk.length), Long.valueOf(entry.getUncompressedByteCount()));
+                        test.assertEqual(Long.valueOf(expectedCrc32.getValue()), Long.valueOf(entry.getCrc32()));
+
+                        try (final ZipEntryIterator entries = ZipFile.get(file, ZipFileReadMode.Stream).iterateEntries())
+                        {
+                            test.assertTrue(entries.next());
+                            final java.util.zip.CRC32 crc32 = new java.util.zip.CRC32();
+                            crc32.update(entries.getCurrent().readAllBytes().await());
+                            test.assertEqual(Long.valueOf(expectedCrc32.getValue()), Long.valueOf(crc32.getValue()));
+                            test.assertFalse(entries.next());
+                        }
+                    });
+                }
+
+                runner.test("with stored entry stream that is closed before it is finished",
+                    (TestResources resources) -> Tuple.create(new java.io.ByteArrayOutputStream()),
+                    (Test test, java.io.ByteArrayOutputStream outputStream) ->
+                {
+                    final ZipArchiveOutputStream archiveOutputStream = ZipArchiveOutputStream.create(outputStream);
+                    final ZipCentralDirectoryEntry localFileHeader = ZipCentralDirectoryEntry.create("large", null, ZipFormat.utf8Flag, ZipFormat.storedCompressionMethod, 0, 0, 0, 0, 0);
+                    final ZipEntryStoredOutputStream entryOutputStream = ZipEntryStoredOutputStream.create(archiveOutputStream, localFileHeader, ZipCodecPool.create());
+
+                    // The entry's data is spilled to a temporary file, and closing the stream
+                    // deletes the file without writing the entry.
+                    final byte[] chunk = new byte[1024 * 1024];
+                    final int chunkCount = ZipEntryStoredOutputStream.maximumBufferedByteCount / chunk.length + 1;
+                    for (int i = 0; i < chunkCount; ++i)
+                    {
+                        entryOutputStream.write(chunk, 0, chunk.length);
+                    }
+
+                    entryOutputStream.close();
+                    entryOutputStream.close();
+                    test.assertEqual(0, outputStream.size());
+                    test.assertEqual(0, archiveOutputStream.getCentralDirectoryEntries().getCount());
+                });
+
+                runner.test("with adaptive compression",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+
+                    final java.util.Random random = new java.util.Random(7);
+                    final byte[] smallRandomBytes = new byte[1000];
+                    random.nextBytes(smallRandomBytes);
+                    final byte[] largeRandomBytes = new byte[200 * 1024];
+                    random.nextBytes(largeRandomBytes);
+
+                    final ZipAdaptiveCompressionStatistics statistics;
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        test.assertFalse(writeStream.isAdaptiveCompression());
+                        test.assertNull(writeStream.getAdaptiveCompressionStatistics());
+
+                        test.assertSame(writeStream, writeStream.setAdaptiveCompression(true));
+                        test.assertTrue(writeStream.isAdaptiveCompression());
+                        statistics = writeStream.getAdaptiveCompressionStatistics();
+                        test.assertNotNull(statistics);
+
+                        writeStream
+                            .createEntry("small-random", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write(smallRandomBytes, 0, smallRandomBytes.length).await();
+                            })
+                            .createEntry("large-random", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write(largeRandomBytes, 0, largeRandomBytes.length).await();
+                            })
+                            .createEntry("text", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("Hello there! Hello there! Hello there! Hello there!").await();
+                            })
+                            .createEntry(ZipEntryParameters.create()
+                                .setEntryPath("explicit")
+                                .setCompressionMethod(ZipCompressionMethod.Deflated),
+                                (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    entryWriteStream.write(smallRandomBytes, 0, smallRandomBytes.length).await();
+                                });
+                    }
+
+                    test.assertEqual(3, statistics.getSampledEntryCount());
+                    test.assertEqual(1, statistics.getStoredEntryCount());
+                    test.assertEqual(DataSize.bytes(smallRandomBytes.length), statistics.getStoredSize());
+                    test.assertEqual(1, statistics.getUncompressedDeflatedEntryCount());
+                    test.assertEqual(DataSize.bytes(largeRandomBytes.length), statistics.getUncompressedDeflatedSize());
+                    test.assertNotNull(statistics.getSampleDuration());
+                    test.assertNotNull(statistics.getEstimatedCompressionTimeSaved());
+
+                    final ZipCentralDirectoryEntry smallRandom = file.getEntries().await().first();
+                    test.assertEqual("small-random", smallRandom.getName());
+                    test.assertEqual(ZipFormat.storedCompressionMethod, smallRandom.getCompressionMethod());
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("large-random").await())
+                    {
+                        test.assertEqual(largeRandomBytes, entryReadStream.readAllBytes().await());
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("text").await())
+                    {
+                        test.assertEqual("Hello there! Hello there! Hello there! Hello there!", entryReadStream.readEntireString().await());
+                    }
+                });
+
+                runner.test("with adaptive compression statistics compared to the central directory",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final Folder folder = process.getCurrentFolder();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+
+                    final java.util.Random random = new java.util.Random(11);
+                    final ZipAdaptiveCompressionStatistics statistics;
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.setAdaptiveCompression(true);
+                        statistics = writeStream.getAdaptiveCompressionStatistics();
+
+                        for (final int entryByteCount : new int[] { 0, 10, 1000, 100 * 1024, 300 * 1024 })
+                        {
+                            final byte[] randomBytes = new byte[entryByteCount];
+                            random.nextBytes(randomBytes);
+                            final byte[] repeatedBytes = new byte[entryByteCount];
+                            java.util.Arrays.fill(repeatedBytes, (byte)'a');
+
+                            writeStream
+                                .createEntry("random-" + entryByteCount, (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    entryWriteStream.write(randomBytes, 0, randomBytes.length).await();
+                                })
+                                .createEntry("repeated-" + entryByteCount, (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    entryWriteStream.write(repeatedBytes, 0, repeatedBytes.length).await();
+                                });
+                        }
+                    }
+
+                    long storedEntryCount = 0;
+                    long storedByteCount = 0;
+                    long deflatedEntryCount = 0;
+                    long deflatedByteCount = 0;
+                    for (final ZipCentralDirectoryEntry entry : file.getEntries().await())
+                    {
+                        if (entry.getCompressionMethod() == ZipFormat.storedCompressionMethod)
+                        {
+                            ++storedEntryCount;
+                            storedByteCount += entry.getUncompressedByteCount();
+                        }
+                        else
+                        {
+                            test.assertEqual(ZipFormat.deflatedCompressionMethod, entry.getCompressionMethod());
+                            ++deflatedEntryCount;
+                            if (entry.getCompressedByteCount() >= entry.getUncompressedByteCount())
+                            {
+                                deflatedByteCount += entry.getUncompressedByteCount();
+                            }
+                        }
+                    }
+
+                    test.assertEqual(10, statistics.getSampledEntryCount());
+                    test.assertEqual(storedEntryCount, statistics.getStoredEntryCount());
+                    test.assertEqual(DataSize.bytes(storedByteCount), statistics.getStoredSize());
+                    test.assertEqual(2, statistics.getUncompressedDeflatedEntryCount());
+                    test.assertEqual(DataSize.bytes(100 * 1024 + 300 * 1024), statistics.getUncompressedDeflatedSize());
+                    test.assertEqual(DataSize.bytes(deflatedByteCount), statistics.getUncompressedDeflatedSize());
+                    test.assertEqual(10, storedEntryCount + deflatedEntryCount);
+                });
+
+                ZipFileTests.testInMemoryAndOnDisk(runner, "with entries created from files and streams", (Test test, Folder folder) ->
+                {
+                    final byte[] sourceBytes = new byte[300000];
+                    for (int i = 0; i < sourceBytes.length; ++i)
+                    {
+                        sourceBytes[i] = (byte)(i % 251);
+                    }
+                    final File sourceFile = folder.getFile("source.bin").await();
+                    try (final ByteWriteStream sourceWriteStream = sourceFile.getContentsByteWriteStream().await())
+                    {
+                        sourceWriteStream.write(sourceBytes, 0, sourceBytes.length).await();
+                    }
+
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry(ZipEntryParameters.create().setEntryPath("from-file"), sourceFile);
+                        writeStream.createEntry(ZipEntryParameters.create().setEntryPath("from-stored-file").setCompressionMethod(ZipCompressionMethod.Stored), sourceFile);
+                        try (final ByteReadStream sourceReadStream = sourceFile.getContentsReadStream().await())
+                        {
+                            writeStream.createEntry(ZipEntryParameters.create().setEntryPath("from-stream"), sourceReadStream);
+                        }
+                        writeStream.createEntry("from-entry-stream", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            test.assertEqual(3, (long)entryWriteStream.writeAll(InMemoryByteStream.create(new byte[] { 1, 2, 3 }).endOfStream()).await());
+                        });
+                        test.assertThrows(() -> writeStream.createEntry(ZipEntryParameters.create().setEntryPath("missing"), folder.getFile("missing.bin").await()),
+                            new FileNotFoundException(folder.getFile("missing.bin").await()));
+                    }
+
+                    for (final String entryPath : new String[] { "from-file", "from-stored-file", "from-stream" })
+                    {
+                        try (final ZipEntryReadStream entryReadStream = file.getEntry(entryPath).await())
+                        {
+                            test.assertEqual(sourceBytes, entryReadStream.readAllBytes().await());
+                        }
+                    }
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("from-entry-stream").await())
+                    {
+                        test.assertEqual(new byte[] { 1, 2, 3 }, entryReadStream.readAllBytes().await());
+                    }
+                });
+            });
+
+            runner.testGroup("getContentsZipAppendStream()", () ->
+            {
+                runner.test("with file that doesn't exist",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    try (final ZipWriteStream writeStream = file.getContentsZipAppendStream().await())
+                    {
+                        writeStream.createEntry("a", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("A").await();
+                        });
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("a").await())
+                    {
+                        test.assertEqual("A", entryReadStream.readEntireString().await());
+                    }
+                });
+
+                ZipFileTests.testInMemoryAndOnDisk(runner, "with existing file", (Test test, Folder folder) ->
+                {
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("a", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("A").await();
+                        });
+                    }
+
+                    for (final String entryName : new String[] { "b", "c" })
+                    {
+                        try (final ZipWriteStream writeStream = file.getContentsZipAppendStream().await())
+                        {
+                            writeStream.createEntry(entryName, (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write(entryName.toUpperCase()).await();
+                            });
+                        }
+                    }
+
+                    final Iterable<ZipCentralDirectoryEntry> entries = file.getEntries().await();
+                    test.assertEqual(3, entries.getCount());
+
+                    try (final ZipEntryIterator entryIterator = ZipEntryIterator.create(file))
+                    {
+                        for (final String entryName : new String[] { "a", "b", "c" })
+                        {
+                            test.assertTrue(entryIterator.next());
+                            try (final ZipEntryReadStream entryReadStream = entryIterator.getCurrent())
+                            {
+                                test.assertEqual(Path.parse(entryName), entryReadStream.getPath());
+                                test.assertEqual(entryName.toUpperCase(), entryReadStream.readEntireString().await());
+                            }
+                        }
+                        test.assertFalse(entryIterator.next());
+                    }
+                });
+            });
+
+            runner.testGroup("setListener(ZipListener)", () ->
+            {
+                runner.test("with null",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    final ZipFile setListenerResult = file.setListener(null);
+                    test.assertSame(file, setListenerResult);
+                    test.assertNull(file.getListener());
+                });
+
+                ZipFileTests.testInMemoryAndOnDisk(runner, "with file", (Test test, Folder folder) ->
+                {
+                    final ZipMetrics metrics = ZipMetrics.create();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await())
+                        .setListener(metrics);
+                    test.assertSame(metrics, file.getListener());
+
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        test.assertSame(metrics, writeStream.getListener());
+
+                        writeStream
+                            .createEntry("hello/world", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                for (int i = 0; i < 100; ++i)
+                                {
+                                    entryWriteStream.write("Hello world!").await();
+                                }
+                            })
+                            .createEntry(ZipEntryParameters.create()
+                                .setEntryPath("hello/there")
+                                .setCompressionMethod(ZipCompressionMethod.Stored),
+                                (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    entryWriteStream.write("Hello there!").await();
+                                });
+                    }
+
+                    test.assertEqual(2L, metrics.getWrittenEntryCount());
+                    test.assertEqual(DataSize.bytes(1212), metrics.getWrittenUncompressedSize());
+                    test.assertTrue(metrics.getWriteCompressionRatio() < 1);
+                    test.assertTrue(metrics.getWrittenEntriesPerSecond() > 0);
+                    test.assertEqual(0L, metrics.getReadEntryCount());
+
+                    try (final ZipEntryIterator iterator = file.iterateEntries())
+                    {
+                        test.assertSame(metrics, iterator.getListener());
+
+                        for (final ZipEntryReadStream entry : iterator)
+                        {
+                            entry.readEntireString().await();
+                        }
+                    }
+
+                    test.assertEqual(2L, metrics.getWrittenEntryCount());
+                    test.assertEqual(2L, metrics.getReadEntryCount());
+                    test.assertEqual(DataSize.bytes(1212), metrics.getReadUncompressedSize());
+                    test.assertEqual(metrics.getWrittenCompressedSize(), metrics.getReadCompressedSize());
+                    test.assertEqual(metrics.getWriteCompressionRatio(), metrics.getReadCompressionRatio());
+                });
+            });
+
+            runner.testGroup("setWriteMode(ZipFileWriteMode)", () ->
+            {
+                runner.test("with null",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    test.assertThrows(() -> file.setWriteMode(null),
+                        new PreConditionFailure("writeMode cannot be null."));
+                    test.assertEqual(ZipFileWriteMode.Stream, file.getWriteMode());
+                });
+
+                runner.test("with Seekable file in memory",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    final ZipFile setWriteModeResult = file.setWriteMode(ZipFileWriteMode.Seekable);
+                    test.assertSame(file, setWriteModeResult);
+                    test.assertEqual(ZipFileWriteMode.Stream, file.getWriteMode());
+                });
+
+                final Action2<String,Boolean> seekableTest = (String testName, Boolean append) ->
+                {
+                    runner.test(testName,
+                        (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                        (Test test, Folder folder) ->
+                    {
+                        final ZipFile file = ZipFile.get(folder.getFile("test.zip").await())
+                            .setWriteMode(ZipFileWriteMode.Seekable);
+                        test.assertEqual(ZipFileWriteMode.Seekable, file.getWriteMode());
+
+                        final java.util.List<String> expectedEntryPaths = new java.util.ArrayList<>();
+                        for (int pass = 0; pass < (append ? 2 : 1); ++pass)
+                        {
+                            try (final ZipWriteStream writeStream = pass == 0
+                                ? file.getContentsZipWriteStream().await()
+                                : file.getContentsZipAppendStream().await())
+                            {
+                                for (int i = 0; i < 5; ++i)
+                                {
+                                    final String entryPath = "pass" + pass + "/entry" + i;
+                                    writeStream.createEntry(entryPath, (ZipEntryWriteStream entryWriteStream) ->
+                                    {
+                                        for (int j = 0; j < 1000; ++j)
+                                        {
+                                            entryWriteStream.write(entryPath).await();
+                                        }
+                                    });
+                                    expectedEntryPaths.add(entryPath);
+                                }
+                            }
+                        }
+
+                        final java.util.List<String> entryPaths = new java.util.ArrayList<>();
+                        for (final ZipCentralDirectoryEntry entry : file.getEntries().await())
+                        {
+                            entryPaths.add(entry.getName());
+                            test.assertEqual(ZipFormat.deflatedCompressionMethod, entry.getCompressionMethod());
+                            test.assertEqual(0, entry.getFlags() & ZipFormat.dataDescriptorFlag);
+                        }
+                        test.assertEqual(expectedEntryPaths, entryPaths);
+
+                        // Reading the archive from start to end depends on the sizes that were
+                        // written back into the local file headers.
+                        final java.util.List<String> iteratedEntryPaths = new java.util.ArrayList<>();
+                        try (final ZipEntryIterator entries = ZipFile.get(file, ZipFileReadMode.Stream).iterateEntries())
+                        {
+                            while (entries.next())
+                            {
+                                final ZipEntryReadStream entry = entries.getCurrent();
+                                iteratedEntryPaths.add(entry.getPath().toString());
+                                test.assertEqual(1000 * entry.getPath().toString().length(), entry.readEntireString().await().length());
+                            }
+                        }
+                        test.assertEqual(expectedEntryPaths, iteratedEntryPaths);
+                    });
+                };
+
+                seekableTest.run("with Seekable file on disk", false);
+                seekableTest.run("with Seekable file on disk and appended entries", true);
+
+                runner.test("with Seekable file on disk reserves a ZIP64 extra field in each local file header",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await())
+                        .setWriteMode(ZipFileWriteMode.Seekable);
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("a.txt", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("Hello world!").await();
+                        });
+                    }
+
+                    final byte[] fileBytes;
+                    try
+                    {
+                        fileBytes = java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(file.getPath().toString()));
+                    }
+                    catch (java.io.IOException e)
+                    {
+                        throw Exceptions.asRuntime(e);
+                    }
+
+                    // The sizes of an entry that turns out to be 4 GiB or larger are written into
+                    // the reserved field, so small entries keep their zeroed ZIP64 sizes.
+                    test.assertEqual(0, ZipFormat.readUnsignedShort(fileBytes, 6) & ZipFormat.dataDescriptorFlag);
+                    test.assertEqual(Long.valueOf(12), Long.valueOf(ZipFormat.readUnsignedInt(fileBytes, 22)));
+                    test.assertEqual(5, ZipFormat.readUnsignedShort(fileBytes, 26));
+                    test.assertEqual(ZipFormat.zip64ExtraFieldId, ZipFormat.readUnsignedShort(fileBytes, 30 + 5));
+                    test.assertEqual(16, ZipFormat.readUnsignedShort(fileBytes, 30 + 5 + 2));
+                    test.assertEqual(Long.valueOf(0), Long.valueOf(ZipFormat.readLong(fileBytes, 30 + 5 + 4)));
+
+                    try (final ZipEntryIterator entries = ZipFile.get(file, ZipFileReadMode.Stream).iterateEntries())
+                    {
+                        test.assertTrue(entries.next());
+                        test.assertEqual("Hello world!", entries.getCurrent().readEntireString().await());
+                        test.assertFalse(entries.next());
+                    }
+                });
+            });
+
+            runner.testGroup("setCodecPool(ZipCodecPool)", () ->
+            {
+                runner.test("with null",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    test.assertThrows(() -> file.setCodecPool(null),
+                        new PreConditionFailure("codecPool cannot be null."));
+                    test.assertSame(ZipCodecPool.getDefault(), file.getCodecPool());
+                });
+
+                ZipFileTests.testInMemoryAndOnDisk(runner, "with file", (Test test, Folder folder) ->
+                {
+                    final ZipCodecPool codecPool = ZipCodecPool.create(1, 2);
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await())
+                        .setCodecPool(codecPool);
+                    test.assertSame(codecPool, file.getCodecPool());
+
+                    // Every entry reuses the same pooled Deflater, even though the entries
+                    // ask for different compression levels and strategies.
+                    final int entryCount = 5;
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        test.assertSame(codecPool, writeStream.getCodecPool());
+
+                        for (int i = 0; i < entryCount; ++i)
+                        {
+                            final String entryText = "Entry " + i + " ";
+                            writeStream.createEntry(ZipEntryParameters.create()
+                                .setEntryPath("entries/" + i)
+                                .setCompressionLevel(i * 2)
+                                .setCompressionStrategy(ZipCompressionStrategy.values()[i % ZipCompressionStrategy.values().length]),
+                                (ZipEntryWriteStream entryWriteStream) ->
+                                {
+                                    for (int j = 0; j < 1000; ++j)
+                                    {
+                                        entryWriteStream.write(entryText).await();
+                                    }
+                                });
+                            test.assertEqual(1, codecPool.getPooledDeflaterCount());
+                        }
+                    }
+
+                    for (int i = 0; i < entryCount; ++i)
+                    {
+                        try (final ZipEntryReadStream entryReadStream = file.getEntry("entries/" + i).await())
+                        {
+                            final String entryText = entryReadStream.readEntireString().await();
+                            test.assertEqual(1000 * ("Entry " + i + " ").length(), entryText.length());
+                            test.assertTrue(entryText.startsWith("Entry " + i + " Entry " + i + " "));
+                        }
+                    }
+                    test.assertTrue(codecPool.getPooledInflaterCount() <= 1);
+                    test.assertTrue(codecPool.getPooledBufferCount() <= 2);
+
+                    test.assertTrue(codecPool.dispose().await());
+                    test.assertEqual(0, codecPool.getPooledDeflaterCount());
+                    test.assertEqual(0, codecPool.getPooledInflaterCount());
+                    test.assertEqual(0, codecPool.getPooledBufferCount());
+                });
+
+                runner.test("with direct buffer written to a stored entry",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipCodecPool codecPool = ZipCodecPool.create(1, 2);
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await())
+                        .setCodecPool(codecPool);
+
+                    final byte[] bytes = new byte[3 * ZipCodecPool.bufferByteCount + 1];
+                    java.util.Arrays.fill(bytes, (byte)'a');
+                    final java.nio.ByteBuffer directBytes = java.nio.ByteBuffer.allocateDirect(bytes.length);
+                    directBytes.put(bytes);
+                    directBytes.flip();
+
+                    // The direct buffer is copied through a buffer from the file's pool instead
+                    // of the default pool.
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry(ZipEntryParameters.create()
+                            .setEntryPath("stored.txt")
+                            .setCompressionMethod(ZipCompressionMethod.Stored),
+                            (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                test.assertEqual(bytes.length, (int)entryWriteStream.write(directBytes).await());
+                                test.assertEqual(1, codecPool.getPooledBufferCount());
+                            });
+                    }
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("stored.txt").await())
+                    {
+                        test.assertEqual(bytes, entryReadStream.readAllBytes().await());
+                    }
+                });
+            });
+
+            runner.testGroup("setCentralDirectoryCache(ZipCentralDirectoryCache)", () ->
+            {
+                runner.test("with null",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                    final ZipFile setCentralDirectoryCacheResult = file.setCentralDirectoryCache(null);
+                    test.assertSame(file, setCentralDirectoryCacheResult);
+                    test.assertNull(file.getCentralDirectoryCache());
+                });
+
+                runner.test("with file on disk",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final ZipCentralDirectoryCache cache = ZipCentralDirectoryCache.create();
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await())
+                        .setCentralDirectoryCache(cache);
+                    test.assertSame(cache, file.getCentralDirectoryCache());
+
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("a.txt", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("hello").await();
+                        });
+                    }
+
+                    test.assertEqual(Iterable.create("a.txt"), file.getEntries().await().map(ZipCentralDirectoryEntry::getName));
+                    test.assertEqual(0, cache.getHitCount());
+                    test.assertEqual(1, cache.getMissCount());
+                    test.assertEqual(1, cache.getArchiveCount());
+
+                    try (final ZipEntryReadStream entryReadStream = file.getEntry("a.txt").await())
+                    {
+                        test.assertEqual("hello", entryReadStream.readEntireString().await());
+                    }
+                    test.assertEqual(1, cache.getHitCount());
+                    test.assertEqual(1, cache.getMissCount());
+
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("b.txt", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("there").await();
+                        });
+                    }
+                    test.assertEqual(1, cache.getInvalidationCount());
+                    test.assertEqual(0, cache.getArchiveCount());
+
+                    test.assertEqual(Iterable.create("b.txt"), file.getEntries().await().map(ZipCentralDirectoryEntry::getName));
+                    test.assertEqual(1, cache.getHitCount());
+                    test.assertEqual(2, cache.getMissCount());
+                });
+
+                runner.test("with more archives than the cache can hold",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final ZipCentralDirectoryCache cache = ZipCentralDirectoryCache.create(1, ZipCentralDirectoryCache.defaultMaximumByteCount);
+                    final ZipFile file1 = ZipFile.get(folder.getFile("1.zip").await()).setCentralDirectoryCache(cache);
+                    final ZipFile file2 = ZipFile.get(folder.getFile("2.zip").await()).setCentralDirectoryCache(cache);
+                    for (final ZipFile file : Iterable.create(file1, file2))
+                    {
+                        try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                        {
+                            writeStream.createEntry("a.txt", (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write("hello").await();
+                            });
+                        }
+                    }
+
+                    file1.getEntries().await();
+                    file2.getEntries().await();
+                    test.assertEqual(1, cache.getArchiveCount());
+                    test.assertEqual(1, cache.getEvictionCount());
+
+                    file2.getEntries().await();
+                    file1.getEntries().await();
+                    test.assertEqual(1, cache.getHitCount());
+                    test.assertEqual(3, cache.getMissCount());
+                    test.assertEqual(2, cache.getEvictionCount());
+                });
+            });
+
+            runner.testGroup("setCheckpointIndexing(boolean)", () ->
+            {
+                runner.test("with file in memory",
+                    (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                    (Test test, FakeDesktopProcess process) ->
+                {
+                    final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+                    test.assertFalse(file.isCheckpointIndexing());
+
+                    final ZipFile setCheckpointIndexingResult = file.setCheckpointIndexing(true);
+                    test.assertSame(file, setCheckpointIndexingResult);
+                    test.assertTrue(file.isCheckpointIndexing());
+                });
+
+                final Action2<String,ZipCompressionMethod> seekTest = (String testName, ZipCompressionMethod compressionMethod) ->
+                {
+                    runner.test(testName,
+                        (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                        (Test test, Folder folder) ->
+                    {
+                        final ZipFile file = ZipFile.get(folder.getFile("test.zip").await())
+                            .setCheckpointIndexing(true);
+
+                        final StringBuilder builder = new StringBuilder();
+                        for (int i = 0; builder.length() < 2 * 1024 * 1024; ++i)
+                        {
+                            builder.append("line ").append(i % 1000).append(i % 7 == 0 ? "\n" : " ");
+                        }
+                        final byte[] expectedBytes = builder.toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+                        try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                        {
+                            // Parallel compression flushes the deflated data after every block,
+                            // which is where checkpoints can be placed.
+                            writeStream.setParallelCompression(2);
+                            writeStream.createEntry(ZipEntryParameters.create().setEntryPath("log.txt").setCompressionMethod(compressionMethod), (ZipEntryWriteStream entryWriteStream) ->
+                            {
+                                entryWriteStream.write(expectedBytes, 0, expectedBytes.length).await();
+                            });
+                        }
+
+                        try (final ZipReader reader = file.getReader().await())
+                        {
+                            final ZipCentralDirectoryEntry entry = reader.getEntry("log.txt").await();
+                            if (compressionMethod == ZipCompressionMethod.Deflated)
+                            {
+                                final ZipEntryCheckpointIndex checkpointIndex = ZipEntryCheckpointIndex.build(reader, entry, 256 * 1024);
+                                test.assertTrue(checkpointIndex.getCheckpointCount() > 0);
+                                test.assertTrue(checkpointIndex.isIndexOf(entry));
+                                reader.setCheckpointIndex(entry, checkpointIndex);
+                            }
+
+                            try (final ZipEntryReadStream entryReadStream = reader.getEntryReadStream(entry))
+                            {
+                                test.assertTrue(entryReadStream.canSeek());
+
+                                final byte[] buffer = new byte[100];
+                                for (final long position : new long[] { 1500000, 10, 700000, 700050, 2000000, expectedBytes.length - 50 })
+                                {
+                                    entryReadStream.seek(position).await();
+                                    test.assertEqual(position, entryReadStream.getPosition());
+
+                                    final int bytesRead = entryReadStream.readBytesInto(buffer, 0, 50);
+                                    test.assertEqual(50, bytesRead);
+                                    test.assertEqual(
+                                        java.util.Arrays.copyOfRange(expectedBytes, (int)position, (int)position + 50),
+                                        java.util.Arrays.copyOfRange(buffer, 0, 50));
+                                }
+                                test.assertEqual(-1, entryReadStream.readBytesInto(buffer, 0, buffer.length));
+
+                                entryReadStream.seek(0).await();
+                                test.assertEqual(Long.valueOf(1000), entryReadStream.skipBytes(1000).await());
+                                test.assertEqual(Byte.valueOf(expectedBytes[1000]), entryReadStream.readByte().await());
+                                test.assertEqual(Long.valueOf(expectedBytes.length - 1001), entryReadStream.skipBytes(expectedBytes.length).await());
+                                test.assertEqual((long)expectedBytes.length, entryReadStream.getPosition());
+                            }
+                        }
+
+                        test.assertEqual(
+                            compressionMethod == ZipCompressionMethod.Deflated,
+                            folder.getFolder("test.zip.checkpoints").await().exists().await());
+                    });
+                };
+
+                seekTest.run("with stored entry on disk", ZipCompressionMethod.Stored);
+                seekTest.run("with deflated entry on disk", ZipCompressionMethod.Deflated);
+
+                runner.test("with deflated entry that is compressed in one pass",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final ZipFile file = ZipFile.get(folder.getFile("test.zip").await());
+                    final byte[] expectedBytes = new byte[(int)(2.5 * ZipEntryCheckpointIndex.defaultCheckpointSpacing)];
+                    for (int i = 0; i < expectedBytes.length; ++i)
+                    {
+                        expectedBytes[i] = (byte)('a' + (i * 31 + i / 4096) % 26);
+                    }
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        writeStream.createEntry("log.txt", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write(expectedBytes, 0, expectedBytes.length).await();
+                        });
+                    }
+
+                    try (final ZipReader reader = file.getReader().await())
+                    {
+                        final ZipCentralDirectoryEntry entry = reader.getEntry("log.txt").await();
+                        final ZipEntryCheckpointIndex checkpointIndex = ZipEntryCheckpointIndex.build(reader, entry);
+                        test.assertEqual(2, checkpointIndex.getCheckpointCount());
+                        test.assertEqual(ZipEntryCheckpointIndex.defaultCheckpointSpacing, checkpointIndex.getUncompressedOffset(0));
+                        test.assertEqual(2 * ZipEntryCheckpointIndex.defaultCheckpointSpacing, checkpointIndex.getUncompressedOffset(1));
+                        reader.setCheckpointIndex(entry, checkpointIndex);
+
+                        try (final ZipEntryReadStream entryReadStream = reader.getEntryReadStream(entry))
+                        {
+                            final int position = expectedBytes.length - 100;
+                            entryReadStream.seek(position).await();
+                            final byte[] buffer = new byte[100];
+                            test.assertEqual(100, entryReadStream.readBytesInto(buffer, 0, buffer.length));
+                            test.assertEqual(java.util.Arrays.copyOfRange(expectedBytes, position, expectedBytes.length), buffer);
+                        }
+                    }
+                });
+
+                runner.test("with deflated entry from another zip writer",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder folder) ->
+                {
+                    final File zipFile = folder.getFile("test.zip").await();
+                    final byte[] expectedBytes = new byte[1024 * 1024];
+                    for (int i = 0; i < expectedBytes.length; ++i)
+                    {
+                        expectedBytes[i] = (byte)('a' + (i * 31 + i / 4096) % 26);
+                    }
+                    try (final java.util.zip.ZipOutputStream zipOutputStream = new java.util.zip.ZipOutputStream(java.nio.file.Files.newOutputStream(java.nio.file.Paths.get(zipFile.getPath().toString()))))
+                    {
+                        zipOutputStream.putNextEntry(new java.util.zip.ZipEntry("log.txt"));
+                        zipOutputStream.write(expectedBytes);
+                        zipOutputStream.closeEntry();
+                    }
+                    catch (java.io.IOException e)
+                    {
+                        throw Exceptions.asRuntime(e);
+                    }
+
+                    final ZipFile file = ZipFile.get(zipFile).setCheckpointIndexing(true);
+                    try (final ZipReader reader = file.getReader().await())
+                    {
+                        final ZipCentralDirectoryEntry entry = reader.getEntry("log.txt").await();
+                        try (final ZipEntryReadStream entryReadStream = reader.getEntryReadStream(entry))
+                        {
+                            entryReadStream.seek(1000).await();
+                            test.assertEqual(Byte.valueOf(expectedBytes[1000]), entryReadStream.readByte().await());
+                        }
+
+                        // The entry doesn't have any checkpoints, and its empty index is kept so
+                        // that the entry isn't scanned again.
+                        final ZipEntryCheckpointIndex checkpointIndex = reader.getCheckpointIndex(entry);
+                        test.assertEqual(0, checkpointIndex.getCheckpointCount());
+                        test.assertTrue(checkpointIndex.isIndexOf(entry));
+                    }
+                    test.assertTrue(folder.getFolder("test.zip.checkpoints").await().exists().await());
+                });
+            });
+        });
+    }
+
+    /**
+     * Add the provided test twice: once with a {@link Folder} in a fake in-memory file system,
+     * and once with a temporary {@link Folder} on disk. The tests are named with the provided
+     * name followed by " in memory" and " on disk".
+     * @param runner The runner to add the tests to.
+     * @param testName The start of the tests' names.
+     * @param testAction The test to run with each folder.
+     */
+    static void testInMemoryAndOnDisk(TestRunner runner, String testName, Action2<Test,Folder> testAction)
+    {
+        runner.test(testName + " in memory",
+            (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess().getCurrentFolder()),
+            testAction);
+        runner.test(testName + " on disk",
+            (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+            testAction);
     }
 }
@@ -0,0 +1,195 @@
+package qub;
+
+/**
+ * Tests for archives that need the ZIP64 extensions. The tests that write multiple gigabytes to
+ * disk only run when the QUB_ZIP_LARGE_ARCHIVE_TESTS environment variable is set to "true".
+ * Entries are streamed in both directions, so these tests only use a few megabytes of memory
+ * regardless of how large the archive is.
+ */
+public interface ZipLargeArchiveTests
+{
+    long gibibyte = 1024L * 1024 * 1024;
+
+    static boolean largeArchiveTestsEnabled()
+    {
+        return "true".equalsIgnoreCase(System.getenv("QUB_ZIP_LARGE_ARCHIVE_TESTS"));
+    }
+
+    static void writeEntry(ZipWriteStream writeStream, ZipEntryParameters parameters, long byteCount, byte value)
+    {
+        writeStream.createEntry(parameters, (ZipEntryWriteStream entryWriteStream) ->
+        {
+            final byte[] buffer = new byte[1024 * 1024];
+            java.util.Arrays.fill(buffer, value);
+
+            long bytesWritten = 0;
+            while (bytesWritten < byteCount)
+            {
+                final int bytesToWrite = (int)Math.min(buffer.length, byteCount - bytesWritten);
+                entryWriteStream.write(buffer, 0, bytesToWrite).await();
+                bytesWritten += bytesToWrite;
+            }
+        });
+    }
+
+    static void assertEntry(Test test, ZipReader reader, String entryPath, long expectedByteCount, byte expectedValue)
+    {
+        final ZipCentralDirectoryEntry entry = reader.getEntry(entryPath).await();
+        test.assertEqual(expectedByteCount, entry.getUncompressedByteCount());
+
+        final java.util.zip.CRC32 crc32 = new java.util.zip.CRC32();
+        long bytesRead = 0;
+        boolean allBytesMatch = true;
+        try (final java.io.InputStream entryInputStream = reader.getEntryInputStream(entry))
+        {
+            final byte[] buffer = new byte[1024 * 1024];
+            int readResult = entryInputStream.read(buffer);
+            while (readResult >= 0)
+            {
+                crc32.update(buffer, 0, readResult);
+                for (int i = 0; allBytesMatch && i < readResult; ++i)
+                {
+                    allBytesMatch = (buffer[i] == expectedValue);
+                }
+                bytesRead += readResult;
+                readResult = entryInputStream.read(buffer);
+            }
+        }
+        catch (java.io.IOException e)
+        {
+            throw Exceptions.asRuntime(e);
+        }
+
+        test.assertEqual(expectedByteCount, bytesRead);
+        test.assertEqual(entry.getCrc32(), crc32.getValue());
+        test.assertTrue(allBytesMatch);
+    }
+
+    static void test(TestRunner runner)
+    {
+        runner.testGroup("ZIP64", () ->
+        {
+            runner.test("with more than 65535 entries",
+                (TestResources resources) -> Tuple.create(resources.createFakeDesktopProcess()),
+                (Test test, FakeDesktopProcess process) ->
+            {
+                final ZipFile file = ZipFile.get(process.getCurrentFolder().getFile("test.zip").await());
+
+                final int entryCount = 70000;
+                try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                {
+                    for (int i = 0; i < entryCount; ++i)
+                    {
+                        final String entryText = Integer.toString(i);
+                        writeStream.createEntry("entries/" + i, (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write(entryText).await();
+                        });
+                    }
+                }
+
+                final Iterable<ZipCentralDirectoryEntry> entries = file.getEntries().await();
+                test.assertEqual(entryCount, entries.getCount());
+
+                try (final ZipEntryReadStream entryReadStream = file.getEntry("entries/69999").await())
+                {
+                    test.assertEqual("69999", entryReadStream.readEntireString().await());
+                }
+
+                int iteratedEntryCount = 0;
+                try (final ZipEntryIterator entryIterator = file.iterateEntries())
+                {
+                    while (entryIterator.next())
+                    {
+                        entryIterator.getCurrent().dispose().await();
+                        ++iteratedEntryCount;
+                    }
+                }
+                test.assertEqual(entryCount, iteratedEntryCount);
+            });
+
+            if (ZipLargeArchiveTests.largeArchiveTestsEnabled())
+            {
+                runner.test("with entry larger than 4 GiB",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder temporaryFolder) ->
+                {
+                    final ZipFile file = ZipFile.get(temporaryFolder.getFile("test.zip").await());
+
+                    final long entryByteCount = 5 * ZipLargeArchiveTests.gibibyte;
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        ZipLargeArchiveTests.writeEntry(writeStream, ZipEntryParameters.create()
+                            .setEntryPath("large")
+                            .setCompressionLevel(1),
+                            entryByteCount,
+                            (byte)'a');
+                        writeStream.createEntry("small", (ZipEntryWriteStream entryWriteStream) ->
+                        {
+                            entryWriteStream.write("small").await();
+                        });
+                    }
+
+                    try (final ZipReader reader = file.getReader().await())
+                    {
+                        ZipLargeArchiveTests.assertEntry(test, reader, "large", entryByteCount, (byte)'a');
+                        try (final ZipEntryReadStream entryReadStream = reader.getEntryReadStream("small").await())
+                        {
+                            test.assertEqual("small", entryReadStream.readEntireString().await());
+                        }
+                    }
+                });
+
+                runner.test("with archive larger than 4 GiB",
+                    (TestResources resources) -> Tuple.create(resources.getTemporaryFolder()),
+                    (Test test, Folder temporaryFolder) ->
+                {
+                    final ZipFile file = ZipFile.get(temporaryFolder.getFile("test.zip").await());
+
+                    // DEFLATE level 0 doesn't compress, so the archive ends up larger than 4 GiB
+                    // and the last entry's local file header offset needs ZIP64.
+                    final long firstEntryByteCount = 2 * ZipLargeArchiveTests.gibibyte + 1;
+                    final long secondEntryByteCount = 2 * ZipLargeArchiveTests.gibibyte + 2;
+                    try (final ZipWriteStream writeStream = file.getContentsZipWriteStream().await())
+                    {
+                        ZipLargeArchiveTests.writeEntry(writeStream, ZipEntryParameters.create()
+                            .setEntryPath("first")
+                            .setCompressionLevel(0),
+                            firstEntryByteCount,
+                            (byte)1);
+                        ZipLargeArchiveTests.writeEntry(writeStream, ZipEntryParameters.create()
+                            .setEntryPath("second")
+                            .setCompressionLevel(0),
+                            secondEntryByteCount,
+                            (byte)2);
+                        ZipLargeArchiveTests.writeEntry(writeStream, ZipEntryParameters.create()
+                            .setEntryPath("third"),
+                            3,
+                            (byte)3);
+                    }
+
+                    try (final ZipReader reader = file.getReader().await())
+                    {
+                        final ZipCentralDirectoryEntry third = reader.getEntry("third").await();
+                        test.assertTrue(4 * ZipLargeArchiveTests.gibibyte < third.getLocalFileHeaderOffset());
+
+                        ZipLargeArchiveTests.assertEntry(test, reader, "first", firstEntryByteCount, (byte)1);
+                        ZipLargeArchiveTests.assertEntry(test, reader, "second", secondEntryByteCount, (byte)2);
+                        ZipLargeArchiveTests.assertEntry(test, reader, "third", 3, (byte)3);
+                    }
+
+                    int iteratedEntryCount = 0;
+                    try (final ZipEntryIterator entryIterator = ZipEntryIterator.create(file))
+                    {
+                        while (entryIterator.next())
+                        {
+                            entryIterator.getCurrent().dispose().await();
+                            ++iteratedEntryCount;
+                        }
+                    }
+                    test.assertEqual(3, iteratedEntryCount);
+                });
+            }
+        });
+    }
+}